@@ -27,33 +27,90 @@ package org.bitrepository.common;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.UnmarshalException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 
+import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
+import com.sun.xml.fastinfoset.stax.StAXDocumentSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
  * Provides extra JAXB related utilities
  * This class should not be considered light-weight, as it loads XSD from specified source!
+ * <p>
+ * The JAXBContext for each root class is created once and shared across all JaxbHelper instances, as JAXBContext
+ * is thread safe. Marshallers, unmarshallers and validators are not thread safe, so these are kept per thread and
+ * reused for subsequent calls from the same thread.
  */
 public final class JaxbHelper {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    /** The JAXBContexts created so far, mapped from the root class they are created for. */
+    private static final ConcurrentMap<Class<?>, JAXBContext> contexts =
+            new ConcurrentHashMap<Class<?>, JAXBContext>();
+    /** The marshallers of the current thread, mapped from the root class they are created for. */
+    private static final ThreadLocal<Map<Class<?>, Marshaller>> marshallers =
+            new ThreadLocal<Map<Class<?>, Marshaller>>() {
+        @Override
+        protected Map<Class<?>, Marshaller> initialValue() {
+            return new HashMap<Class<?>, Marshaller>();
+        }
+    };
+
     private final Schema schema;
+    /** The unmarshallers of the current thread, mapped from the root class they are created for. */
+    private final ThreadLocal<Map<Class<?>, Unmarshaller>> unmarshallers =
+            new ThreadLocal<Map<Class<?>, Unmarshaller>>() {
+        @Override
+        protected Map<Class<?>, Unmarshaller> initialValue() {
+            return new HashMap<Class<?>, Unmarshaller>();
+        }
+    };
+    /** The unmarshallers of the current thread validating against the schema while unmarshalling. */
+    private final ThreadLocal<Map<Class<?>, Unmarshaller>> validatingUnmarshallers =
+            new ThreadLocal<Map<Class<?>, Unmarshaller>>() {
+        @Override
+        protected Map<Class<?>, Unmarshaller> initialValue() {
+            return new HashMap<Class<?>, Unmarshaller>();
+        }
+    };
+    /** The schema validator of the current thread. */
+    private final ThreadLocal<Validator> validators = new ThreadLocal<Validator>() {
+        @Override
+        protected Validator initialValue() {
+            return schema.newValidator();
+        }
+    };
     
     /**
      * Used for creating a JaxbHelper instance for a specific schema.
@@ -91,9 +148,30 @@ public final class JaxbHelper {
     public <T> T loadXml(Class<T> xmlroot, InputStream inputStream) throws JAXBException {
         ArgumentValidator.checkNotNull(xmlroot, "xmlroot");
         ArgumentValidator.checkNotNull(inputStream, "inputStream");
-        JAXBContext context = JAXBContext.newInstance(xmlroot);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
-        return xmlroot.cast(unmarshaller.unmarshal(inputStream));
+        return xmlroot.cast(getUnmarshaller(xmlroot).unmarshal(inputStream));
+    }
+
+    /**
+     * Validates the xml against the schema while creating the object representation, so the xml is only parsed
+     * once. Equivalent to calling {@link #validate(InputStream)} followed by {@link #loadXml(Class, InputStream)}.
+     * @param <T> The root class to deserialize to.
+     * @param xmlroot The root class to deserialize to.
+     * @param inputStream The input stream containing the xml data.
+     * @return Returns a new object representation of the xml data.
+     * @throws SAXException The xml didn't validate.
+     * @throws JAXBException The attempt to load the xml into a new object representation failed.
+     */
+    public <T> T loadAndValidateXml(Class<T> xmlroot, InputStream inputStream) throws SAXException, JAXBException {
+        ArgumentValidator.checkNotNull(xmlroot, "xmlroot");
+        ArgumentValidator.checkNotNull(inputStream, "inputStream");
+        try {
+            return xmlroot.cast(getValidatingUnmarshaller(xmlroot).unmarshal(inputStream));
+        } catch (UnmarshalException e) {
+            if(e.getLinkedException() instanceof SAXException) {
+                throw (SAXException) e.getLinkedException();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -103,7 +181,8 @@ public final class JaxbHelper {
      * @throws IOException Problems accessing the input stream.
      */
     public void validate(InputStream inputStream) throws SAXException, IOException {
-        Validator schemaValidator = schema.newValidator();
+        Validator schemaValidator = validators.get();
+        schemaValidator.reset();
         schemaValidator.validate(new SAXSource(new InputSource(inputStream)));
     }
 
@@ -115,10 +194,167 @@ public final class JaxbHelper {
      */
     public String serializeToXml(Object object) throws JAXBException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JAXBContext.newInstance(object.getClass()).createMarshaller().marshal(object, baos);
+        getMarshaller(object.getClass()).marshal(object, baos);
         return baos.toString();
     }
 
+    /**
+     * Serializes a JAXB object as SAX events to the given handler, e.g. for writing it to a stream while it is
+     * validated by a {@link #newValidatingWriter(OutputStream)}.
+     * @param object The xml-serializable object to serialize.
+     * @param handler The handler to receive the SAX events.
+     * @throws JAXBException If the object could not be serialized as a JAXB object.
+     */
+    public void serializeToContentHandler(Object object, ContentHandler handler) throws JAXBException {
+        getMarshaller(object.getClass()).marshal(object, handler);
+    }
+
+    /**
+     * Serializes a JAXB object as part of a document to the given handler, without starting or ending the document.
+     * Used for writing the elements of a large document one at a time.
+     * @param xmlroot The root class of the document, which the element is part of.
+     * @param element The xml-serializable element, e.g. a {@link javax.xml.bind.JAXBElement}.
+     * @param handler The handler to receive the SAX events.
+     * @throws JAXBException If the element could not be serialized as a JAXB object.
+     */
+    public void serializeFragment(Class<?> xmlroot, Object element, ContentHandler handler) throws JAXBException {
+        Marshaller marshaller = getMarshaller(xmlroot);
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        try {
+            marshaller.marshal(element, handler);
+        } finally {
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * @return A new handler validating the SAX events it receives against the schema, before passing them on to its
+     * content handler. It is not thread safe.
+     */
+    public ValidatorHandler newValidatorHandler() {
+        return schema.newValidatorHandler();
+    }
+
+    /**
+     * @param out The stream to write the document to. It is not flushed or closed by the handler.
+     * @return A new handler validating the SAX events it receives against the schema, and writing the validated
+     * document to the stream as XML. It is not thread safe.
+     */
+    public ValidatorHandler newValidatingWriter(OutputStream out) {
+        TransformerHandler writer;
+        try {
+            writer = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+        } catch (TransformerConfigurationException e) {
+            throw new IllegalStateException("Could not create a writer for XML documents", e);
+        }
+        writer.setResult(new StreamResult(out));
+        ValidatorHandler validator = newValidatorHandler();
+        validator.setContentHandler(writer);
+        return validator;
+    }
+
+    /**
+     * Method for retrieving the content of a JAXB object as a Fast Infoset document, which is a binary encoding of
+     * the XML infoset, and thereby smaller and faster to parse than the XML.
+     * @param object The xml-serializable object which should be encoded.
+     * @return The Fast Infoset encoding of the object.
+     * @throws JAXBException If the object could not be serialized as a JAXB object.
+     */
+    public byte[] serializeToFastInfoset(Object object) throws JAXBException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLStreamWriter writer = new StAXDocumentSerializer(baos);
+        getMarshaller(object.getClass()).marshal(object, writer);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Validates a Fast Infoset document against the schema while creating the object representation of it.
+     * @param <T> The root class to deserialize to.
+     * @param xmlroot The root class to deserialize to.
+     * @param inputStream The input stream containing the Fast Infoset document.
+     * @return Returns a new object representation of the document.
+     * @throws SAXException The document didn't validate.
+     * @throws JAXBException The attempt to load the document into a new object representation failed.
+     */
+    public <T> T loadAndValidateFastInfoset(Class<T> xmlroot, InputStream inputStream)
+            throws SAXException, JAXBException {
+        ArgumentValidator.checkNotNull(xmlroot, "xmlroot");
+        ArgumentValidator.checkNotNull(inputStream, "inputStream");
+        XMLStreamReader reader = new StAXDocumentParser(inputStream);
+        try {
+            return xmlroot.cast(getValidatingUnmarshaller(xmlroot).unmarshal(reader));
+        } catch (UnmarshalException e) {
+            if(e.getLinkedException() instanceof SAXException) {
+                throw (SAXException) e.getLinkedException();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the JAXBContext for the given root class, creating it the first time it is requested.
+     * @param xmlroot The root class for the context.
+     * @return The shared JAXBContext for the root class.
+     * @throws JAXBException If the context could not be created.
+     */
+    private static JAXBContext getContext(Class<?> xmlroot) throws JAXBException {
+        JAXBContext context = contexts.get(xmlroot);
+        if(context == null) {
+            JAXBContext newContext = JAXBContext.newInstance(xmlroot);
+            context = contexts.putIfAbsent(xmlroot, newContext);
+            if(context == null) {
+                context = newContext;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * @param xmlroot The root class to marshal.
+     * @return The marshaller for the root class belonging to the current thread.
+     * @throws JAXBException If the marshaller could not be created.
+     */
+    private static Marshaller getMarshaller(Class<?> xmlroot) throws JAXBException {
+        Map<Class<?>, Marshaller> threadMarshallers = marshallers.get();
+        Marshaller marshaller = threadMarshallers.get(xmlroot);
+        if(marshaller == null) {
+            marshaller = getContext(xmlroot).createMarshaller();
+            threadMarshallers.put(xmlroot, marshaller);
+        }
+        return marshaller;
+    }
+
+    /**
+     * @param xmlroot The root class to unmarshal.
+     * @return The unmarshaller for the root class belonging to the current thread.
+     * @throws JAXBException If the unmarshaller could not be created.
+     */
+    private Unmarshaller getUnmarshaller(Class<?> xmlroot) throws JAXBException {
+        Map<Class<?>, Unmarshaller> threadUnmarshallers = unmarshallers.get();
+        Unmarshaller unmarshaller = threadUnmarshallers.get(xmlroot);
+        if(unmarshaller == null) {
+            unmarshaller = getContext(xmlroot).createUnmarshaller();
+            threadUnmarshallers.put(xmlroot, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
+    /**
+     * @param xmlroot The root class to unmarshal.
+     * @return The unmarshaller validating against the schema for the root class belonging to the current thread.
+     * @throws JAXBException If the unmarshaller could not be created.
+     */
+    private Unmarshaller getValidatingUnmarshaller(Class<?> xmlroot) throws JAXBException {
+        Map<Class<?>, Unmarshaller> threadUnmarshallers = validatingUnmarshallers.get();
+        Unmarshaller unmarshaller = threadUnmarshallers.get(xmlroot);
+        if(unmarshaller == null) {
+            unmarshaller = getContext(xmlroot).createUnmarshaller();
+            unmarshaller.setSchema(schema);
+            threadUnmarshallers.put(xmlroot, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
     private static class ResourceResolver implements LSResourceResolver {
         private final String prefix;
 
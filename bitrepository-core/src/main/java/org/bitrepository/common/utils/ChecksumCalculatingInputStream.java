@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+
+/**
+ * Input stream calculating checksums of the data, while it is read by someone else, e.g. while it is written to a 
+ * file. Thus the checksums are available when the data has been read, without reading the data again.
+ * <p>
+ * Mark and reset are not supported, and skipped data is read, so all data is included in the checksums.
+ */
+public class ChecksumCalculatingInputStream extends FilterInputStream {
+    /** The calculator for the checksums.*/
+    private final ChecksumCalculator calculator;
+    
+    /**
+     * @param in The stream with the data.
+     * @param csSpecs The specifications for the checksums to calculate.
+     * @throws IllegalArgumentException If a specification has a salt, when its algorithm does not use salt, or if it 
+     * has no salt, when its algorithm requires salt.
+     */
+    public ChecksumCalculatingInputStream(InputStream in, List<ChecksumSpecTYPE> csSpecs) {
+        super(in);
+        calculator = new ChecksumCalculator(csSpecs);
+    }
+    
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b != -1) {
+            calculator.update(new byte[] {(byte) b}, 0, 1);
+        }
+        return b;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int bytesRead = super.read(b, off, len);
+        if(bytesRead > 0) {
+            calculator.update(b, off, bytesRead);
+        }
+        return bytesRead;
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while(skipped < n) {
+            int bytesRead = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if(bytesRead < 0) {
+                break;
+            }
+            skipped += bytesRead;
+        }
+        return skipped;
+    }
+    
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+    
+    @Override
+    public synchronized void mark(int readlimit) {
+        // Not supported, since the checksums cannot be reset.
+    }
+    
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Reset is not supported, since the checksums cannot be reset.");
+    }
+    
+    /**
+     * Completes the checksums of the data read so far. Should be called when all the data has been read.
+     * @return The checksums in hexadecimal, in the same order as the checksum specifications.
+     */
+    public List<String> getChecksums() {
+        return calculator.getChecksums();
+    }
+}
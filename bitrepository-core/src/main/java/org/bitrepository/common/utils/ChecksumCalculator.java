@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.protocol.CoordinationLayerException;
+
+/**
+ * Calculates the checksums for several checksum specifications from the same data, so the data only has to be read 
+ * once. Each checksum is calculated either by message digest or by HMAC, depending on its checksum type.
+ */
+class ChecksumCalculator {
+    /** The calculations, in the same order as the checksum specifications.*/
+    private final List<Calculation> calculations = new ArrayList<Calculation>();
+
+    /**
+     * @param csSpecs The specifications for the checksums to calculate.
+     * @throws IllegalArgumentException If a specification has a salt, when its algorithm does not use salt, or if it 
+     * has no salt, when its algorithm requires salt.
+     */
+    ChecksumCalculator(List<ChecksumSpecTYPE> csSpecs) {
+        for(ChecksumSpecTYPE csSpec : csSpecs) {
+            calculations.add(createCalculation(csSpec));
+        }
+    }
+
+    /**
+     * Adds data to all the checksums.
+     * @param bytes The array with the data.
+     * @param offset The offset of the data in the array.
+     * @param length The number of bytes of data.
+     */
+    void update(byte[] bytes, int offset, int length) {
+        for(Calculation calculation : calculations) {
+            calculation.update(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Completes the checksums. No more data can be added afterwards.
+     * @return The checksums in hexadecimal, in the same order as the checksum specifications.
+     */
+    List<String> getChecksums() {
+        List<String> checksums = new ArrayList<String>();
+        for(Calculation calculation : calculations) {
+            checksums.add(Base16Utils.decodeBase16(calculation.complete()));
+        }
+        return checksums;
+    }
+
+    private Calculation createCalculation(ChecksumSpecTYPE csSpec) {
+        ChecksumType algorithm = csSpec.getChecksumType();
+        boolean hasSalt = csSpec.getChecksumSalt() != null && csSpec.getChecksumSalt().length > 0;
+        try {
+            if(ChecksumUtils.requiresSalt(algorithm)) {
+                if(!hasSalt) {
+                    throw new IllegalArgumentException("Cannot perform a HMAC checksum calculation without salt as "
+                            + "requested:" + csSpec);
+                }
+                return createHmacCalculation(algorithm, csSpec.getChecksumSalt());
+            } else {
+                if(hasSalt) {
+                    throw new IllegalArgumentException("Cannot perform a message-digest checksum calculation with salt "
+                            + "as requested:" + csSpec);
+                }
+                return createMessageDigestCalculation(algorithm);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The checksum algorithm '" + algorithm.name() + "' is not supported.");
+        }
+    }
+
+    /**
+     * NOTE: the 'SHA' algorithm need a dash, '-', after the SHA, which is currently not in the protocol defined
+     * algorithm names.
+     * @param csType The type of checksum to calculate.
+     * @return The calculation of the checksum by message digest.
+     */
+    private Calculation createMessageDigestCalculation(ChecksumType csType) {
+        String algorithmName = csType.name();
+        if(algorithmName.startsWith("SHA")) {
+            algorithmName = algorithmName.replace("SHA", "SHA-");
+        }
+        try {
+            final MessageDigest digester = MessageDigest.getInstance(algorithmName);
+            return new Calculation() {
+                @Override
+                public void update(byte[] bytes, int offset, int length) {
+                    digester.update(bytes, offset, length);
+                }
+
+                @Override
+                public byte[] complete() {
+                    return digester.digest();
+                }
+            };
+        } catch (NoSuchAlgorithmException e) {
+            throw new CoordinationLayerException("Cannot calculate the checksum with algorithm '" + algorithmName 
+                    + "'.", e);
+        }
+    }
+
+    /**
+     * NOTE: the 'HMAC' algorithms need to have the underscore, '_', after the HMAC removed, which is currently in the 
+     * protocol defined algorithm names.
+     * @param csType The type of checksum to calculate.
+     * @param salt The salt for key encrypting the HMAC calculation.
+     * @return The calculation of the checksum by HMAC.
+     */
+    private Calculation createHmacCalculation(ChecksumType csType, byte[] salt) {
+        String algorithmName = csType.name().replace("_", "");
+        try {
+            final Mac messageAuthenticationCode = Mac.getInstance(algorithmName);
+            Key key = new SecretKeySpec(salt, algorithmName);
+            messageAuthenticationCode.init(key);
+            return new Calculation() {
+                @Override
+                public void update(byte[] bytes, int offset, int length) {
+                    messageAuthenticationCode.update(bytes, offset, length);
+                }
+
+                @Override
+                public byte[] complete() {
+                    return messageAuthenticationCode.doFinal();
+                }
+            };
+        } catch (Exception e) {
+            throw new CoordinationLayerException("Cannot calculate the checksum with algorithm '" + algorithmName 
+                    + "' and salt '" + salt + "'", e);
+        }
+    }
+
+    /**
+     * The calculation of a single checksum.
+     */
+    private interface Calculation {
+        void update(byte[] bytes, int offset, int length);
+
+        byte[] complete();
+    }
+}
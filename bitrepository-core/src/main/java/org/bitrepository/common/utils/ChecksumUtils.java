@@ -28,12 +28,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.Key;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.util.Collections;
+import java.util.List;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
@@ -80,8 +77,19 @@ public final class ChecksumUtils {
      * @return The checksum of the file in hexadecimal.
      */
     public static String generateChecksum(FileInfo fileInfo, ChecksumSpecTYPE csSpec) {
-        try {
-            return generateChecksum(fileInfo.getInputstream(), csSpec);
+        return generateChecksums(fileInfo, Collections.singletonList(csSpec)).get(0);
+    }
+    
+    /**
+     * Calculates several checksums for a file, while reading the file only once.
+     * 
+     * @param fileInfo The file to calculate the checksums for.
+     * @param csSpecs The checksum specifications for the calculation of the checksums.
+     * @return The checksums of the file in hexadecimal, in the same order as the checksum specifications.
+     */
+    public static List<String> generateChecksums(FileInfo fileInfo, List<ChecksumSpecTYPE> csSpecs) {
+        try (InputStream content = fileInfo.getInputstream()) {
+            return generateChecksums(content, csSpecs);
         } catch (IOException e) {
             throw new CoordinationLayerException("Could not calculate the checksum for the file '"
                     + fileInfo.getFileID() + "'.", e);
@@ -120,95 +128,30 @@ public final class ChecksumUtils {
      * @return The HMAC calculated checksum in hexadecimal.
      */
     public static String generateChecksum(InputStream content, ChecksumSpecTYPE csSpec) {
-        byte[] digest = null;
-        ChecksumType algorithm = csSpec.getChecksumType();
-        
-        try {
-        	if(requiresSalt(algorithm)) {
-        		if(csSpec.getChecksumSalt() == null || csSpec.getChecksumSalt().length == 0) {
-        			throw new IllegalArgumentException("Cannot perform a HMAC checksum calculation without salt as requested:" 
-        					+ csSpec);
-        		}
-        		digest = calculateChecksumWithHMAC(content, algorithm, csSpec.getChecksumSalt());
-        	} else {
-        		if(csSpec.getChecksumSalt() != null && csSpec.getChecksumSalt().length > 0) {
-        			throw new IllegalArgumentException("Cannot perform a message-digest checksum calculation with salt "
-        					+ "as requested:" + csSpec);
-        		}
-        		digest = calculateChecksumWithMessageDigest(content, algorithm);
-        	}
-        } catch (NoSuchAlgorithmException e) {
-        	throw new IllegalStateException("The checksum algorithm '" + csSpec.getChecksumType().name() 
-        			+ "' is not supported.");        	
-        }
-
-        return Base16Utils.decodeBase16(digest);
+        return generateChecksums(content, Collections.singletonList(csSpec)).get(0);
     }
     
     /**
-     * Calculation of the checksum for a given input stream through the use of message digestion on the checksum 
-     * type as algorithm.
+     * Calculates several checksums of an inputstream, while reading it only once. Each checksum is calculated by 
+     * HMAC or message digest depending on its algorithm, as for {@link #generateChecksum(InputStream, 
+     * ChecksumSpecTYPE)}.
      * 
-     * NOTE: the 'SHA' algorithm need a dash, '-', after the SHA, which is currently not in the org.bitrepository.org.bitrepository.protocol defined
-     * algorithm names.
-     * 
-     * @param content The input stream with the content to calculate the checksum of.
-     * @param csType The type of checksum to calculate, e.g. the algorithm.
-     * @return The calculated checksum.
+     * @param content The inputstream for the data to calculate the checksums of.
+     * @param csSpecs The specifications for the checksums to calculate.
+     * @return The checksums in hexadecimal, in the same order as the checksum specifications.
      */
-    private static byte[] calculateChecksumWithMessageDigest(InputStream content, ChecksumType csType) {
+    public static List<String> generateChecksums(InputStream content, List<ChecksumSpecTYPE> csSpecs) {
+        ChecksumCalculator calculator = new ChecksumCalculator(csSpecs);
         byte[] bytes = new byte[BYTE_ARRAY_SIZE_FOR_DIGEST];
         int bytesRead;
-        
         try {
-            String algorithmName = csType.name();
-            if(algorithmName.startsWith("SHA")) {
-                algorithmName = algorithmName.replace("SHA", "SHA-");
-            }
-            
-            MessageDigest digester = MessageDigest.getInstance(algorithmName);
             while ((bytesRead = content.read(bytes)) > 0) {
-                digester.update(bytes, 0, bytesRead);
+                calculator.update(bytes, 0, bytesRead);
             }
-            return digester.digest();
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new CoordinationLayerException("Cannot calculate the checksum.", e);
         }
-    }
-    
-    /**
-     * Calculation of the checksum for a given input stream through the use of HMAC based on the checksum type as 
-     * algorithm and the optional salt.
-     * 
-     * NOTE: the 'HMAC' algorithms need to have the underscore, '_', after the HMAC removed, which is currently in the 
-     * org.bitrepository.org.bitrepository.protocol defined algorithm names.
-     * 
-     * @param content The input stream with the content to calculate the checksum of.
-     * @param csType The type of checksum to calculate, e.g. the algorithm.
-     * @param salt The salt for key encrypting the HMAC calculation.
-     * @return The calculated checksum.
-     */
-    private static byte[] calculateChecksumWithHMAC(InputStream content, ChecksumType csType, byte[] salt) {
-        byte[] bytes = new byte[BYTE_ARRAY_SIZE_FOR_DIGEST];
-        int bytesRead;
-        String algorithmName = csType.name().replace("_", "");
-        
-        try {
-            Mac messageAuthenticationCode = Mac.getInstance(algorithmName);
-            Key key = new SecretKeySpec(salt, algorithmName);
-            
-            // digest the content for calculating the checksum.
-            messageAuthenticationCode.init(key);
-            while ((bytesRead = content.read(bytes)) > 0) {
-                messageAuthenticationCode.update(bytes, 0, bytesRead);
-            }
-            
-            return messageAuthenticationCode.doFinal();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new CoordinationLayerException("Cannot calculate the checksum with algorithm '" + algorithmName 
-                    + "' and salt '" + salt + "'", e);
-        }
+        return calculator.getChecksums();
     }
     
     /**
@@ -0,0 +1,38 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Produces the content of a file while it is being uploaded, so the content does not have to be written to a
+ * temporary file first. See {@link FileExchange#putFile(ContentWriter, java.net.URL)}.
+ */
+public interface ContentWriter {
+    /**
+     * Writes the whole content to the stream. The stream must not be closed by the writer.
+     * @param out The stream to write the content to.
+     * @throws IOException If the content could not be produced or written.
+     */
+    void writeContent(OutputStream out) throws IOException;
+}
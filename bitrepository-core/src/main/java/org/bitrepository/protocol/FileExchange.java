@@ -47,6 +47,16 @@ public interface FileExchange {
      */
     void putFile(InputStream in, URL url) throws IOException;
 
+    /**
+     * Method for uploading content to a specific URL while it is being produced, e.g. without writing it to a
+     * temporary file first. The content is only produced once, thus a failed upload can not be resumed.
+     * @param content The writer producing the content to upload.
+     * @param url The URL where the content is to be put.
+     * @throws IOException If the content could not be produced, or any problems occurs during the transportation
+     * of the data.
+     */
+    void putFile(ContentWriter content, URL url) throws IOException;
+
     /**
      * Places a given file onto the file exchange
      *
@@ -50,6 +50,13 @@ public class LocalFileExchange implements FileExchange {
         FileUtils.writeStreamToFile(in, new File(url.getFile()));
     }
 
+    @Override
+    public void putFile(ContentWriter content, URL url) throws IOException {
+        try(OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(url.getFile())))) {
+            content.writeContent(out);
+        }
+    }
+
     @Override
     public URL putFile(File dataFile) {
         try {
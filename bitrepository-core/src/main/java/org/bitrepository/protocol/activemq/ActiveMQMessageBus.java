@@ -31,13 +31,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
-import javax.jms.DeliveryMode;
 import javax.jms.Destination;
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
 import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
@@ -54,6 +53,7 @@ import org.bitrepository.protocol.MessageVersionValidator;
 import org.bitrepository.protocol.OperationType;
 import org.bitrepository.protocol.messagebus.MessageBus;
 import org.bitrepository.protocol.messagebus.MessageListener;
+import org.bitrepository.protocol.messagebus.MessageThreadPoolMXBean;
 import org.bitrepository.protocol.messagebus.ReceivedMessageHandler;
 import org.bitrepository.protocol.messagebus.logger.AlarmMessageLogger;
 import org.bitrepository.protocol.messagebus.logger.DeleteFileMessageLogger;
@@ -65,9 +65,10 @@ import org.bitrepository.protocol.messagebus.logger.GetStatusMessageLogger;
 import org.bitrepository.protocol.messagebus.logger.MessageLoggerProvider;
 import org.bitrepository.protocol.messagebus.logger.PutFileMessageLogger;
 import org.bitrepository.protocol.security.SecurityManager;
+import org.bitrepository.protocol.security.SignerContext;
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
 import org.bitrepository.settings.referencesettings.MessageThreadPools;
 import org.bitrepository.settings.repositorysettings.MessageBusConfiguration;
-import org.bouncycastle.cms.SignerId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -86,18 +87,25 @@ public class ActiveMQMessageBus implements MessageBus {
     /** The key for storing the message type in a string property in the message headers. */
     public static final String MESSAGE_SIGNATURE_KEY = "org.bitrepository.messages.signature";
     public static final String MESSAGE_TO_KEY = "org.bitrepository.messages.to";
+    /** The key for storing the encoding of a message body which isn't XML text in a string property. */
+    public static final String MESSAGE_ENCODING_KEY = "org.bitrepository.messages.encoding";
+    /** The key for announcing the message encodings the sender accepts besides XML in a string property. */
+    public static final String ACCEPTED_ENCODINGS_KEY = "org.bitrepository.messages.acceptedencodings";
+    /** The key for storing the compression of a compressed message body in a string property. */
+    public static final String MESSAGE_COMPRESSION_KEY = "org.bitrepository.messages.compression";
     /** Default transacted. */
     public static final boolean TRANSACTED = false;
 
     /** The variable to separate the parts of the consumer key. */
     private static final String CONSUMER_KEY_SEPARATOR = "#";
 
-    /** The session for sending messages. Should not be the same as the consumer session, 
-     * as sessions are not thread safe. This also means the session should be used in a synchronized manor.
-     * TODO Switch to use a session pool/producer poll to allow multithreaded message sending, see 
-     * https://sbforge.org/jira/browse/BITMAG-357.
+    /** The default number of sessions used for sending messages. */
+    public static final int DEFAULT_PRODUCER_POOL_SIZE = 4;
+
+    /** The sessions for sending messages. Should not be the same as the consumer session, 
+     * as sessions are not thread safe. Each session is only used by one sending thread at a time.
      */
-    private final Session producerSession;
+    private final ProducerPool producerPool;
 
     /** The session for receiving messages. */
     private final Session consumerSession;
@@ -110,7 +118,8 @@ public class ActiveMQMessageBus implements MessageBus {
     private final Map<String, MessageConsumer> consumers = Collections
             .synchronizedMap(new HashMap<String, MessageConsumer>());
     /** Map of destinations, mapping from ID to destination. */
-    private final Map<String, Destination> destinations = new HashMap<String, Destination>();
+    private final Map<String, Destination> destinations = Collections
+            .synchronizedMap(new HashMap<String, Destination>());
     /** The configuration for the connection to the activeMQ. */
     private final MessageBusConfiguration configuration;
     private String schemaLocation = "BitRepositoryMessages.xsd";
@@ -121,10 +130,16 @@ public class ActiveMQMessageBus implements MessageBus {
     private final Set<String> componentFilter = new HashSet<String>();
     private final Set<String> collectionFilter = new HashSet<String>();
 
-    /** The single producer used to send all messages. The destination need to be sent on the messages. */
-    private final MessageProducer producer;
     /** Takes care of handling the further processing by the listeners in separated thread. */
     private final ReceivedMessageHandler receivedMessageHandler;
+    /** Decides which of the outgoing messages to validate. */
+    private final SendValidationPolicy sendValidationPolicy;
+    /** Decides which outgoing messages to send with the compact encoding or compressed. */
+    private final MessageEncodingNegotiator encodingNegotiator;
+    /** Compresses large outgoing messages and decompresses received compressed messages. */
+    private final MessageCompressor messageCompressor;
+    /** The time it takes to send messages, for each type of message. */
+    private final SendLatencyStatistics sendLatencyStatistics = new SendLatencyStatistics();
     
     /**
      * Use the {@link org.bitrepository.protocol.ProtocolComponentFactory} to get a handle on a instance of
@@ -142,6 +157,12 @@ public class ActiveMQMessageBus implements MessageBus {
         this.securityManager = securityManager;
         clientID = settings.getComponentID();
         jaxbHelper = new JaxbHelper("xsd/", schemaLocation);
+        MessageThreadPools messageThreadPoolConfig = null;
+        MessageBusSettings messageBusSettings = null;
+        if (settings.getReferenceSettings().getGeneralSettings() != null) {
+            messageThreadPoolConfig = settings.getReferenceSettings().getGeneralSettings().getMessageThreadPools();
+            messageBusSettings = settings.getReferenceSettings().getGeneralSettings().getMessageBusSettings();
+        }
         ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(configuration.getURL());
         registerCustomMessageLoggers();
         try {
@@ -149,10 +170,8 @@ public class ActiveMQMessageBus implements MessageBus {
             connection.setClientID(clientID);
             connection.setExceptionListener(new MessageBusExceptionListener());
 
-            producerSession = connection.createSession(TRANSACTED, Session.AUTO_ACKNOWLEDGE);
+            producerPool = new ProducerPool(connection, getProducerPoolSize(messageBusSettings), TRANSACTED);
             consumerSession = connection.createSession(TRANSACTED, Session.AUTO_ACKNOWLEDGE);
-            producer = producerSession.createProducer(null);
-            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
 
             startListeningForMessages();
         } catch (JMSException e) {
@@ -160,11 +179,22 @@ public class ActiveMQMessageBus implements MessageBus {
         }
         log.debug("ActiveMQConnection initialized for '" + configuration + "'.");
 
-        MessageThreadPools messageThreadPoolConfig = null;
-        if (settings.getReferenceSettings().getGeneralSettings() != null) {
-            messageThreadPoolConfig = settings.getReferenceSettings().getGeneralSettings().getMessageThreadPools();
+        receivedMessageHandler = new ReceivedMessageHandler(clientID, messageThreadPoolConfig);
+        sendValidationPolicy = SendValidationPolicy.createPolicy(messageBusSettings);
+        encodingNegotiator = MessageEncodingNegotiator.createNegotiator(messageBusSettings);
+        messageCompressor = MessageCompressor.createCompressor(messageBusSettings);
+        log.debug("Using " + sendValidationPolicy + " for outgoing messages.");
+    }
+
+    /**
+     * @param messageBusSettings The message bus settings, may be null.
+     * @return The configured number of sessions to use for sending messages, or the default if not configured.
+     */
+    private int getProducerPoolSize(MessageBusSettings messageBusSettings) {
+        if (messageBusSettings != null && messageBusSettings.getProducerPoolSize() != null) {
+            return messageBusSettings.getProducerPoolSize().intValue();
         }
-        receivedMessageHandler = new ReceivedMessageHandler(messageThreadPoolConfig);
+        return DEFAULT_PRODUCER_POOL_SIZE;
     }
 
     /**
@@ -222,10 +252,12 @@ public class ActiveMQMessageBus implements MessageBus {
 
     @Override
     public void close() throws JMSException {
+        log.info(sendLatencyStatistics.toString());
+        log.info(messageCompressor.toString());
         receivedMessageHandler.close();
         log.info("Closing message bus: " + configuration);
-        producerSession.close();
-        log.debug("Producer session closed.");
+        producerPool.close();
+        log.debug("Producer sessions closed.");
         consumerSession.close();
         log.debug("Consumer session closed.");
         connection.close();
@@ -242,7 +274,12 @@ public class ActiveMQMessageBus implements MessageBus {
     /**
      * Send a message using ActiveMQ.
      *
-     * Note that the method is synchronized to avoid multithreaded usage of the providerSession.
+     * The message is sent as XML text, unless the recipient has announced that it accepts the compact encoding, in
+     * which case it is sent as Fast Infoset bytes. The signature covers the bytes as they are sent.
+     *
+     * The message is serialized, validated and signed before a producer session is borrowed from the pool, so only
+     * the creation of the JMS message and the hand-off to the broker holds a session. The session is therefore never
+     * used by more than one thread at a time, while the CPU heavy preparation of messages runs concurrently.
      *
      * @param destinationID Name of destination to send message to.
      * @param replyTo       The queue to reply to.
@@ -251,24 +288,74 @@ public class ActiveMQMessageBus implements MessageBus {
      * @param correlationID The correlation ID of the message.
      * @param content       JAXB-serializable object to send.
      */
-    private synchronized void sendMessage(String destinationID,
-                                          String replyTo,
-                                          String recipient,
-                                          String collectionID,
-                                          String correlationID,
-                                          Message content) {
+    private void sendMessage(String destinationID,
+                             String replyTo,
+                             String recipient,
+                             String collectionID,
+                             String correlationID,
+                             Message content) {
+        long startTime = System.nanoTime();
+        String messageType = content.getClass().getSimpleName();
         String xmlContent = null;
+        ProducerPool.PooledProducer pooledProducer = null;
         try {
-            xmlContent = jaxbHelper.serializeToXml(content);
-            jaxbHelper.validate(new ByteArrayInputStream(xmlContent.getBytes()));
-            log.trace("The following message is sent to the destination '" + destinationID + "'" + " on message-bus '"
-                    + configuration.getName() + "': \n{}", xmlContent);
-
-            javax.jms.Message msg = producerSession.createTextMessage(xmlContent);
-            String stringData = ((TextMessage) msg).getText();
-            String messageSignature = securityManager.signMessage(stringData);
+            boolean compactEncoding = encodingNegotiator.useCompactEncoding(correlationID, destinationID);
+            byte[] binaryContent = null;
+            if (compactEncoding) {
+                binaryContent = jaxbHelper.serializeToFastInfoset(content);
+                if (sendValidationPolicy.shouldValidate()) {
+                    xmlContent = jaxbHelper.serializeToXml(content);
+                    jaxbHelper.validate(new ByteArrayInputStream(xmlContent.getBytes()));
+                }
+                log.trace("A Fast Infoset encoded {} of {} bytes is sent to the destination '" + destinationID + "'",
+                        messageType, binaryContent.length);
+            } else {
+                xmlContent = jaxbHelper.serializeToXml(content);
+                if (sendValidationPolicy.shouldValidate()) {
+                    jaxbHelper.validate(new ByteArrayInputStream(xmlContent.getBytes()));
+                }
+                log.trace("The following message is sent to the destination '" + destinationID + "'"
+                        + " on message-bus '" + configuration.getName() + "': \n{}", xmlContent);
+            }
+
+            boolean compressed = false;
+            if (encodingNegotiator.useCompression(correlationID, destinationID)) {
+                byte[] body = compactEncoding ? binaryContent : xmlContent.getBytes("UTF-8");
+                if (messageCompressor.shouldCompress(body)) {
+                    binaryContent = messageCompressor.compress(body);
+                    compressed = true;
+                    log.trace("The {} of {} bytes is compressed to {} bytes.", messageType, body.length,
+                            binaryContent.length);
+                }
+            }
+            String messageSignature;
+            if (binaryContent != null) {
+                messageSignature = securityManager.signMessage(binaryContent);
+            } else {
+                messageSignature = securityManager.signMessage(xmlContent);
+            }
+
+            pooledProducer = producerPool.borrow();
+            Session producerSession = pooledProducer.getSession();
+            javax.jms.Message msg;
+            if (binaryContent != null) {
+                BytesMessage bytesMessage = producerSession.createBytesMessage();
+                bytesMessage.writeBytes(binaryContent);
+                if (compactEncoding) {
+                    bytesMessage.setStringProperty(MESSAGE_ENCODING_KEY, MessageEncodingNegotiator.FAST_INFOSET);
+                }
+                if (compressed) {
+                    bytesMessage.setStringProperty(MESSAGE_COMPRESSION_KEY, MessageEncodingNegotiator.GZIP);
+                }
+                msg = bytesMessage;
+            } else {
+                msg = producerSession.createTextMessage(xmlContent);
+            }
+            if (encodingNegotiator.getAcceptedEncodings() != null) {
+                msg.setStringProperty(ACCEPTED_ENCODINGS_KEY, encodingNegotiator.getAcceptedEncodings());
+            }
             msg.setStringProperty(MESSAGE_SIGNATURE_KEY, messageSignature);
-            msg.setStringProperty(MESSAGE_TYPE_KEY, content.getClass().getSimpleName());
+            msg.setStringProperty(MESSAGE_TYPE_KEY, messageType);
             if (recipient != null) {
                 msg.setStringProperty(MESSAGE_TO_KEY, recipient);
             }
@@ -276,11 +363,21 @@ public class ActiveMQMessageBus implements MessageBus {
             msg.setJMSCorrelationID(correlationID);
             msg.setJMSReplyTo(getDestination(replyTo, producerSession));
 
-            producer.send(getDestination(destinationID, producerSession), msg);
+            pooledProducer.getProducer().send(getDestination(destinationID, producerSession), msg);
+            sendLatencyStatistics.registerLatency(messageType, System.nanoTime() - startTime);
         } catch (SAXException e) {
+            long failures = sendValidationPolicy.registerValidationFailure();
+            log.warn("Outgoing message failed validation. " + failures + " validation failures so far.");
             throw new CoordinationLayerException("Rejecting to send invalid message: " + xmlContent, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CoordinationLayerException("Interrupted while waiting for a producer session", e);
         } catch (Exception e) {
             throw new CoordinationLayerException("Could not send message", e);
+        } finally {
+            if (pooledProducer != null) {
+                producerPool.release(pooledProducer);
+            }
         }
     }
 
@@ -341,6 +438,20 @@ public class ActiveMQMessageBus implements MessageBus {
      * @return The object representing that destination. Will always return the same destination object for the same destination ID.
      */
     private Destination getDestination(String destinationID, Session session) {
+        synchronized (destinations) {
+            return getOrCreateDestination(destinationID, session);
+        }
+    }
+
+    /**
+     * Retrieves the destination object, creating it on the given session if it is unknown. Must be called while
+     * holding the lock on the destinations map.
+     *
+     * @param destinationID ID of the destination.
+     * @param session session
+     * @return The object representing that destination.
+     */
+    private Destination getOrCreateDestination(String destinationID, Session session) {
         Destination destination = destinations.get(destinationID);
         if (destination == null) {
             try {
@@ -430,25 +541,49 @@ public class ActiveMQMessageBus implements MessageBus {
                     }
                 }
                 String signature = jmsMessage.getStringProperty(MESSAGE_SIGNATURE_KEY);
-                text = ((TextMessage) jmsMessage).getText();
-                log.trace("Received xml message: " + text);
-                jaxbHelper.validate(new ByteArrayInputStream(text.getBytes("UTF-8")));
-                Message content = (Message) jaxbHelper.loadXml(Class.forName("org.bitrepository.bitrepositorymessages."
-                        + type),
-                        new ByteArrayInputStream(text.getBytes("UTF-8")));
-                log.trace("Checking signature " + signature);
-                SignerId signer =
-                    securityManager.authenticateMessage(text, signature);
-                securityManager.authorizeCertificateUse((content).getFrom(), text, signature);
+                Class<?> messageClass = Class.forName("org.bitrepository.bitrepositorymessages." + type);
+                Message content;
+                SignerContext signer;
+                if (jmsMessage instanceof BytesMessage) {
+                    byte[] data = readBytes((BytesMessage) jmsMessage);
+                    log.trace("Checking signature " + signature);
+                    signer = securityManager.verifyMessage(data, signature);
+                    if (MessageEncodingNegotiator.GZIP.equals(
+                            jmsMessage.getStringProperty(MESSAGE_COMPRESSION_KEY))) {
+                        log.trace("Received compressed " + type + " of " + data.length + " bytes.");
+                        data = messageCompressor.decompress(data);
+                    }
+                    if (MessageEncodingNegotiator.FAST_INFOSET.equals(
+                            jmsMessage.getStringProperty(MESSAGE_ENCODING_KEY))) {
+                        log.trace("Received Fast Infoset encoded " + type + " of " + data.length + " bytes.");
+                        content = (Message) jaxbHelper.loadAndValidateFastInfoset(messageClass,
+                                new ByteArrayInputStream(data));
+                    } else {
+                        text = new String(data, "UTF-8");
+                        log.trace("Received xml message: " + text);
+                        content = (Message) jaxbHelper.loadAndValidateXml(messageClass,
+                                new ByteArrayInputStream(data));
+                    }
+                } else {
+                    text = ((TextMessage) jmsMessage).getText();
+                    log.trace("Received xml message: " + text);
+                    content = (Message) jaxbHelper.loadAndValidateXml(messageClass,
+                            new ByteArrayInputStream(text.getBytes("UTF-8")));
+                    log.trace("Checking signature " + signature);
+                    signer = securityManager.verifyMessage(text, signature);
+                }
+                securityManager.authorizeCertificateUse((content).getFrom(), signer);
                 if (content instanceof MessageRequest) {
-                    securityManager.authorizeOperation(content.getClass().getSimpleName(), text, signature);
+                    securityManager.authorizeOperation(content.getClass().getSimpleName(), signer);
                 }
+                encodingNegotiator.registerReceivedMessage(jmsMessage.getStringProperty(ACCEPTED_ENCODINGS_KEY),
+                        content.getCorrelationID(), content.getReplyTo());
                 MessageVersionValidator.validateMessageVersion(content);
                 MessageLoggerProvider.getInstance().logMessageReceived(content);
 
                 String certificateFingerprint = null;
-                if (signer != null) {
-                    certificateFingerprint = securityManager.getCertificateFingerprint(signer);
+                if (signer.getAuthenticatedSigner() != null) {
+                    certificateFingerprint = securityManager.getCertificateFingerprint(signer.getAuthenticatedSigner());
                 }
                 MessageContext messageContext = new MessageContext(certificateFingerprint);
                 receivedMessageHandler.deliver(messageListener, content, messageContext);
@@ -460,6 +595,17 @@ public class ActiveMQMessageBus implements MessageBus {
         }
     }
 
+    /**
+     * @param message The bytes message to read.
+     * @return The full body of the message.
+     * @throws JMSException If the body could not be read.
+     */
+    private static byte[] readBytes(BytesMessage message) throws JMSException {
+        byte[] data = new byte[(int) message.getBodyLength()];
+        message.readBytes(data);
+        return data;
+    }
+
     // This should be done on a per module basis, but how?
     private void registerCustomMessageLoggers() {
         MessageLoggerProvider loggerProvider = MessageLoggerProvider.getInstance();
@@ -474,6 +620,35 @@ public class ActiveMQMessageBus implements MessageBus {
         loggerProvider.registerLogger(Arrays.asList("AlarmMessage"), new AlarmMessageLogger());
     }
 
+    /**
+     * @return The statistics of the time it takes to send each type of message, from the message is handed to the
+     * message bus until it has been handed to the broker.
+     */
+    public SendLatencyStatistics getSendLatencyStatistics() {
+        return sendLatencyStatistics;
+    }
+
+    /**
+     * @return The number of outgoing messages which has been rejected because they failed validation.
+     */
+    public long getNumberOfSendValidationFailures() {
+        return sendValidationPolicy.getValidationFailures();
+    }
+
+    /**
+     * @return The statistics of the thread pools handling the received messages.
+     */
+    public List<MessageThreadPoolMXBean> getMessageThreadPools() {
+        return receivedMessageHandler.getThreadPools();
+    }
+
+    /**
+     * @return The compressor of the outgoing messages, with the number of messages compressed and bytes saved.
+     */
+    public MessageCompressor getMessageCompressor() {
+        return messageCompressor;
+    }
+
     @Override
     public void setComponentFilter(List<String> componentIDs) {
         log.info("Settings component filter to: " + componentIDs);
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
+
+/**
+ * Compresses the bodies of large outgoing messages with gzip, decompresses received compressed message bodies, and
+ * keeps count of the bytes saved by the compression.
+ * <p>
+ * Only bodies larger than the compression threshold are compressed, as small messages gain little from compression.
+ * Whether the receiver accepts compressed messages is decided by the {@link MessageEncodingNegotiator}.
+ */
+public class MessageCompressor {
+    /** The size of the buffer used when decompressing. */
+    private static final int BUFFER_SIZE = 8192;
+    /** The default largest size in bytes of a decompressed message body. */
+    public static final long DEFAULT_MAX_DECOMPRESSED_SIZE = 64L * 1024 * 1024;
+
+    /** The smallest body size in bytes to compress, or null if compression is disabled. */
+    private final Long threshold;
+    /** The largest size in bytes a received message body may decompress to. */
+    private final long maxDecompressedSize;
+    /** The number of message bodies compressed so far. */
+    private final AtomicLong compressedMessages = new AtomicLong();
+    /** The total size of the compressed message bodies before compression. */
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    /** The total size of the compressed message bodies after compression. */
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+
+    /**
+     * Creates a compressor with the default limit for decompressed message bodies.
+     * @param threshold Message bodies larger than this number of bytes are compressed. Null disables compression.
+     */
+    public MessageCompressor(Long threshold) {
+        this(threshold, DEFAULT_MAX_DECOMPRESSED_SIZE);
+    }
+
+    /**
+     * @param threshold Message bodies larger than this number of bytes are compressed. Null disables compression.
+     * @param maxDecompressedSize The largest number of bytes a received message body may decompress to.
+     */
+    public MessageCompressor(Long threshold, long maxDecompressedSize) {
+        if(threshold != null && threshold < 0) {
+            throw new IllegalArgumentException("The compression threshold must not be negative, was " + threshold);
+        }
+        if(maxDecompressedSize <= 0) {
+            throw new IllegalArgumentException("The maximum decompressed size must be positive, was " 
+                    + maxDecompressedSize);
+        }
+        this.threshold = threshold;
+        this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    /**
+     * @param settings The message bus settings to create the compressor from. May be null, in which case
+     * compression is disabled.
+     * @return The compressor described by the settings.
+     */
+    public static MessageCompressor createCompressor(MessageBusSettings settings) {
+        if(settings == null) {
+            return new MessageCompressor(null);
+        }
+        Long threshold = null;
+        if(settings.getCompressionThreshold() != null) {
+            threshold = settings.getCompressionThreshold().longValue();
+        }
+        long maxDecompressedSize = DEFAULT_MAX_DECOMPRESSED_SIZE;
+        if(settings.getMaxDecompressedSize() != null) {
+            maxDecompressedSize = settings.getMaxDecompressedSize().longValue();
+        }
+        return new MessageCompressor(threshold, maxDecompressedSize);
+    }
+
+    /**
+     * @param body The message body to send.
+     * @return Whether the body is large enough to be compressed.
+     */
+    public boolean shouldCompress(byte[] body) {
+        return threshold != null && body.length > threshold;
+    }
+
+    /**
+     * Compresses a message body with gzip, and registers the bytes saved.
+     * @param body The message body to compress.
+     * @return The compressed body.
+     * @throws IOException If the body could not be compressed.
+     */
+    public byte[] compress(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        try {
+            gzip.write(body);
+        } finally {
+            gzip.close();
+        }
+        byte[] compressed = out.toByteArray();
+        compressedMessages.incrementAndGet();
+        bytesBeforeCompression.addAndGet(body.length);
+        bytesAfterCompression.addAndGet(compressed.length);
+        return compressed;
+    }
+
+    /**
+     * Decompresses a gzip compressed message body. The decompression is stopped as soon as the body exceeds the 
+     * maximum decompressed size, so a small message cannot inflate to an arbitrary size.
+     * @param compressed The compressed message body.
+     * @return The decompressed body.
+     * @throws IOException If the body could not be decompressed, or it exceeds the maximum decompressed size.
+     */
+    public byte[] decompress(byte[] compressed) throws IOException {
+        GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            int read;
+            while((read = gzip.read(buffer)) != -1) {
+                size += read;
+                if(size > maxDecompressedSize) {
+                    throw new IOException("The compressed message body of " + compressed.length + " bytes exceeds "
+                            + "the maximum decompressed size of " + maxDecompressedSize + " bytes.");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            gzip.close();
+        }
+    }
+
+    /**
+     * @return The number of message bodies compressed so far.
+     */
+    public long getNumberOfCompressedMessages() {
+        return compressedMessages.get();
+    }
+
+    /**
+     * @return The total number of bytes saved by compressing message bodies so far.
+     */
+    public long getBytesSaved() {
+        return bytesBeforeCompression.get() - bytesAfterCompression.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MessageCompressor [threshold=" + threshold + ", maxDecompressedSize=" + maxDecompressedSize
+                + ", compressedMessages=" + compressedMessages
+                + ", bytesBeforeCompression=" + bytesBeforeCompression
+                + ", bytesAfterCompression=" + bytesAfterCompression + "]";
+    }
+}
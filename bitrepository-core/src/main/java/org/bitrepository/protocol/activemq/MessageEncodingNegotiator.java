@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
+import org.bitrepository.settings.referencesettings.MessageEncoding;
+
+/**
+ * Decides whether a message should be sent with the compact Fast Infoset encoding instead of XML, and whether it may
+ * be compressed.
+ * <p>
+ * Components using the compact encoding or compression announce this in a header of every message they send. When
+ * such a message is received, its correlation ID and reply destination is remembered, and responses sent to that
+ * destination in the same conversation are encoded compactly or compressed. All other messages are sent as
+ * uncompressed XML, so components without these encodings, or listening on shared topics, never receive a message
+ * they can't decode.
+ */
+public class MessageEncodingNegotiator {
+    /** The name of the Fast Infoset encoding used in the message headers. */
+    public static final String FAST_INFOSET = "fastinfoset";
+    /** The name of the gzip compression used in the message headers. */
+    public static final String GZIP = "gzip";
+    /** The maximum number of conversations to remember the accepted encoding for. */
+    public static final int MAX_REMEMBERED_CONVERSATIONS = 10000;
+
+    /** Whether this component sends messages with the compact encoding. */
+    private final boolean compactEncodingEnabled;
+    /** Whether this component sends compressed messages. */
+    private final boolean compressionEnabled;
+    /** The encodings accepted by conversations and reply destinations. Oldest are forgotten first. */
+    private final Map<String, Set<String>> acceptingConversations = Collections.synchronizedMap(
+            new LinkedHashMap<String, Set<String>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                    return size() > MAX_REMEMBERED_CONVERSATIONS;
+                }
+            });
+
+    /**
+     * @param compactEncodingEnabled Whether this component should send messages with the compact encoding.
+     * @param compressionEnabled Whether this component should send compressed messages.
+     */
+    public MessageEncodingNegotiator(boolean compactEncodingEnabled, boolean compressionEnabled) {
+        this.compactEncodingEnabled = compactEncodingEnabled;
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * @param settings The message bus settings to create the negotiator from. May be null, in which case only XML
+     * is sent.
+     * @return The negotiator described by the settings.
+     */
+    public static MessageEncodingNegotiator createNegotiator(MessageBusSettings settings) {
+        if(settings == null) {
+            return new MessageEncodingNegotiator(false, false);
+        }
+        return new MessageEncodingNegotiator(settings.getMessageEncoding() == MessageEncoding.FAST_INFOSET,
+                settings.getCompressionThreshold() != null);
+    }
+
+    /**
+     * @return The value of the header announcing the encodings accepted by this component, or null if only
+     * uncompressed XML is accepted.
+     */
+    public String getAcceptedEncodings() {
+        if(compactEncodingEnabled && compressionEnabled) {
+            return FAST_INFOSET + "," + GZIP;
+        } else if(compactEncodingEnabled) {
+            return FAST_INFOSET;
+        } else if(compressionEnabled) {
+            return GZIP;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Registers the encodings accepted by the sender of a received message.
+     * @param acceptedEncodings The value of the accepted encodings header of the message, may be null.
+     * @param correlationID The correlation ID of the message.
+     * @param replyTo The destination the sender receives replies on.
+     */
+    public void registerReceivedMessage(String acceptedEncodings, String correlationID, String replyTo) {
+        if((!compactEncodingEnabled && !compressionEnabled) || acceptedEncodings == null || correlationID == null
+                || replyTo == null) {
+            return;
+        }
+        Set<String> encodings = new HashSet<String>();
+        for(String encoding : acceptedEncodings.split(",")) {
+            encodings.add(encoding.trim());
+        }
+        acceptingConversations.put(getKey(correlationID, replyTo), encodings);
+    }
+
+    /**
+     * @param correlationID The correlation ID of the message to send.
+     * @param destinationID The destination to send the message to.
+     * @return Whether the message should be sent with the compact encoding.
+     */
+    public boolean useCompactEncoding(String correlationID, String destinationID) {
+        return compactEncodingEnabled && isAccepted(FAST_INFOSET, correlationID, destinationID);
+    }
+
+    /**
+     * @param correlationID The correlation ID of the message to send.
+     * @param destinationID The destination to send the message to.
+     * @return Whether the message may be compressed.
+     */
+    public boolean useCompression(String correlationID, String destinationID) {
+        return compressionEnabled && isAccepted(GZIP, correlationID, destinationID);
+    }
+
+    private boolean isAccepted(String encoding, String correlationID, String destinationID) {
+        if(correlationID == null || destinationID == null) {
+            return false;
+        }
+        Set<String> encodings = acceptingConversations.get(getKey(correlationID, destinationID));
+        return encodings != null && encodings.contains(encoding);
+    }
+
+    private String getKey(String correlationID, String destinationID) {
+        return correlationID + "#" + destinationID;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed size pool of JMS sessions with a producer each, used for sending messages from multiple threads.
+ * <p>
+ * JMS sessions are not thread safe, so a producer must be borrowed from the pool with {@link #borrow()}, used by
+ * the borrowing thread only, and handed back with {@link #release(PooledProducer)}. A thread borrowing from an
+ * empty pool waits until another thread releases a producer.
+ */
+class ProducerPool {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /** The producers currently available for borrowing. */
+    private final BlockingQueue<PooledProducer> availableProducers;
+    /** All the producers in the pool, used when closing the pool. */
+    private final List<PooledProducer> allProducers;
+
+    /**
+     * Creates the sessions and producers of the pool.
+     * @param connection The connection to create the sessions on.
+     * @param size The number of sessions in the pool.
+     * @param transacted Whether the sessions should be transacted.
+     * @throws JMSException If the sessions or producers could not be created.
+     */
+    ProducerPool(Connection connection, int size, boolean transacted) throws JMSException {
+        if(size < 1) {
+            throw new IllegalArgumentException("The producer pool size must be positive, was " + size);
+        }
+        availableProducers = new ArrayBlockingQueue<PooledProducer>(size);
+        allProducers = new ArrayList<PooledProducer>(size);
+        for(int i = 0; i < size; i++) {
+            Session session = connection.createSession(transacted, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(null);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            PooledProducer pooledProducer = new PooledProducer(session, producer);
+            allProducers.add(pooledProducer);
+            availableProducers.add(pooledProducer);
+        }
+    }
+
+    /**
+     * Takes a producer from the pool, waiting for one to become available if necessary.
+     * @return The borrowed producer. Must be handed back with {@link #release(PooledProducer)}.
+     * @throws InterruptedException If interrupted while waiting for a producer.
+     */
+    PooledProducer borrow() throws InterruptedException {
+        return availableProducers.take();
+    }
+
+    /**
+     * Hands a borrowed producer back to the pool.
+     * @param producer The producer to hand back.
+     */
+    void release(PooledProducer producer) {
+        availableProducers.add(producer);
+    }
+
+    /**
+     * @return The number of sessions in the pool.
+     */
+    int size() {
+        return allProducers.size();
+    }
+
+    /**
+     * Closes all the sessions in the pool.
+     * @throws JMSException If a session could not be closed.
+     */
+    void close() throws JMSException {
+        for(PooledProducer producer : allProducers) {
+            producer.getSession().close();
+        }
+        log.debug("Closed " + allProducers.size() + " producer sessions.");
+    }
+
+    /**
+     * A session and the producer created on it.
+     */
+    static final class PooledProducer {
+        private final Session session;
+        private final MessageProducer producer;
+
+        private PooledProducer(Session session, MessageProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+
+        Session getSession() {
+            return session;
+        }
+
+        MessageProducer getProducer() {
+            return producer;
+        }
+    }
+}
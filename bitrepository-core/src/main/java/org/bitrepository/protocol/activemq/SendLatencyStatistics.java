@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the time it takes to send messages, for each type of message.
+ * <p>
+ * Only the latest {@link #SAMPLE_SIZE} latencies are kept for each message type, so the percentiles describe the
+ * recent sending behaviour.
+ */
+public class SendLatencyStatistics {
+    /** The number of latest latencies kept for each message type. */
+    public static final int SAMPLE_SIZE = 1024;
+
+    /** The latencies, mapped from the message type. */
+    private final ConcurrentMap<String, LatencySamples> latencies = new ConcurrentHashMap<String, LatencySamples>();
+
+    /**
+     * Registers the time it took to send a message.
+     * @param messageType The type of the message.
+     * @param latencyNanos The time it took to send the message in nanoseconds.
+     */
+    public void registerLatency(String messageType, long latencyNanos) {
+        LatencySamples samples = latencies.get(messageType);
+        if(samples == null) {
+            LatencySamples newSamples = new LatencySamples();
+            samples = latencies.putIfAbsent(messageType, newSamples);
+            if(samples == null) {
+                samples = newSamples;
+            }
+        }
+        samples.add(latencyNanos);
+    }
+
+    /**
+     * @return The types of the messages sent so far.
+     */
+    public Set<String> getMessageTypes() {
+        return new TreeSet<String>(latencies.keySet());
+    }
+
+    /**
+     * @param messageType The type of message.
+     * @return The total number of messages of the type sent so far.
+     */
+    public long getNumberOfMessages(String messageType) {
+        LatencySamples samples = latencies.get(messageType);
+        return (samples == null) ? 0 : samples.getCount();
+    }
+
+    /**
+     * @param messageType The type of message.
+     * @param percentile The percentile to find, between 0 and 100.
+     * @return The latency in nanoseconds at the given percentile of the latest messages of the type, or 0 if no
+     * messages of the type has been sent.
+     */
+    public long getPercentile(String messageType, double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100, was " + percentile);
+        }
+        LatencySamples samples = latencies.get(messageType);
+        if(samples == null) {
+            return 0;
+        }
+        long[] sorted = samples.getSortedSamples();
+        if(sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Send latencies in microseconds (p50/p90/p99/max):");
+        for(String messageType : getMessageTypes()) {
+            sb.append("\n  " + messageType + ": " + getPercentile(messageType, 50) / 1000
+                    + "/" + getPercentile(messageType, 90) / 1000
+                    + "/" + getPercentile(messageType, 99) / 1000
+                    + "/" + getPercentile(messageType, 100) / 1000
+                    + " (" + getNumberOfMessages(messageType) + " messages)");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Ring buffer of the latest latencies for a message type.
+     */
+    private static final class LatencySamples {
+        private final long[] samples = new long[SAMPLE_SIZE];
+        private long count = 0;
+
+        synchronized void add(long latency) {
+            samples[(int) (count % SAMPLE_SIZE)] = latency;
+            count++;
+        }
+
+        synchronized long getCount() {
+            return count;
+        }
+
+        synchronized long[] getSortedSamples() {
+            long[] copy = Arrays.copyOf(samples, (int) Math.min(count, SAMPLE_SIZE));
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
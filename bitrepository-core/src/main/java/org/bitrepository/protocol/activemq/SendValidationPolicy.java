@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
+import org.bitrepository.settings.referencesettings.SendValidation;
+
+/**
+ * Decides which outgoing messages should be validated against the message schema before they are sent, and keeps
+ * count of the validation failures found.
+ * <p>
+ * The messages are serialized from JAXB classes generated from the message schema, so validation of every message
+ * is normally redundant. The policy is configured through the <code>MessageBusSettings</code> in the
+ * <code>GeneralSettings</code>, and defaults to validating every message.
+ */
+public class SendValidationPolicy {
+    /** The sample rate used when sampling is enabled without a sample rate. */
+    public static final int DEFAULT_SAMPLE_RATE = 100;
+
+    private final SendValidation mode;
+    private final long sampleRate;
+    /** The number of messages considered for validation so far. */
+    private final AtomicLong messageCount = new AtomicLong();
+    /** The number of messages which has failed validation. */
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    /**
+     * @param mode The validation mode. Null means {@link SendValidation#ALWAYS}.
+     * @param sampleRate Validate one in this number of messages when sampling.
+     */
+    public SendValidationPolicy(SendValidation mode, int sampleRate) {
+        if(sampleRate < 1) {
+            throw new IllegalArgumentException("The sample rate must be positive, was " + sampleRate);
+        }
+        this.mode = (mode == null) ? SendValidation.ALWAYS : mode;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param settings The message bus settings to create the policy from. May be null, in which case every message
+     * is validated.
+     * @return The policy described by the settings.
+     */
+    public static SendValidationPolicy createPolicy(MessageBusSettings settings) {
+        if(settings == null) {
+            return new SendValidationPolicy(SendValidation.ALWAYS, DEFAULT_SAMPLE_RATE);
+        }
+        int sampleRate = DEFAULT_SAMPLE_RATE;
+        if(settings.getSendValidationSampleRate() != null) {
+            sampleRate = settings.getSendValidationSampleRate().intValue();
+        }
+        return new SendValidationPolicy(settings.getSendValidation(), sampleRate);
+    }
+
+    /**
+     * Should be called once for each message to send.
+     * @return Whether the message should be validated before it is sent.
+     */
+    public boolean shouldValidate() {
+        switch (mode) {
+        case OFF:
+            return false;
+        case SAMPLED:
+            return messageCount.getAndIncrement() % sampleRate == 0;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Registers that a message failed validation.
+     * @return The number of validation failures including this one.
+     */
+    public long registerValidationFailure() {
+        return validationFailures.incrementAndGet();
+    }
+
+    /**
+     * @return The number of outgoing messages which has failed validation.
+     */
+    public long getValidationFailures() {
+        return validationFailures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SendValidationPolicy [mode=" + mode + ", sampleRate=" + sampleRate + "]";
+    }
+}
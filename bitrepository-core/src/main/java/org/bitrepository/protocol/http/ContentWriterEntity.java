@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.http;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.util.Args;
+import org.bitrepository.protocol.ContentWriter;
+
+/**
+ * Entity producing its content with a {@link ContentWriter} while it is being sent, thus with an unknown length. 
+ * The content is written in large chunks, like {@link LargeChunkedInputStreamEntity}. 
+ * The content can only be produced once, so the entity is neither repeatable nor streaming. 
+ */
+public class ContentWriterEntity extends AbstractHttpEntity {
+
+    private final static int OUTPUT_BUFFER_SIZE = 128 * 1024; 
+    
+    private final ContentWriter contentWriter;
+    private boolean consumed = false;
+    
+    public ContentWriterEntity(ContentWriter contentWriter) {
+        this.contentWriter = Args.notNull(contentWriter, "Content writer");
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        throw new UnsupportedOperationException("The content is only available by writing it to a stream.");
+    }
+
+    @Override
+    public void writeTo(final OutputStream outstream) throws IOException {
+        Args.notNull(outstream, "Output stream");
+        if(consumed) {
+            throw new IllegalStateException("The content has already been written.");
+        }
+        consumed = true;
+        OutputStream out = new BufferedOutputStream(outstream, OUTPUT_BUFFER_SIZE);
+        contentWriter.writeContent(out);
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -43,7 +43,7 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.config.SocketConfig;
-import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
@@ -52,6 +52,7 @@ import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.StreamUtils;
+import org.bitrepository.protocol.ContentWriter;
 import org.bitrepository.protocol.CoordinationLayerException;
 import org.bitrepository.protocol.FileExchange;
 import org.bitrepository.settings.referencesettings.FileExchangeSettings;
@@ -83,7 +84,14 @@ public class HttpFileExchange implements FileExchange {
     
     @Override
     public void putFile(InputStream in, URL url) throws IOException {
-        performUpload(in, url);
+        ArgumentValidator.checkNotNull(in, "InputStream in");
+        performUpload(new LargeChunkedInputStreamEntity(in), url);
+    }
+    
+    @Override
+    public void putFile(ContentWriter content, URL url) throws IOException {
+        ArgumentValidator.checkNotNull(content, "ContentWriter content");
+        performUpload(new ContentWriterEntity(content), url);
     }
     
     @Override
@@ -106,7 +114,7 @@ public class HttpFileExchange implements FileExchange {
             URL url = getURL(dataFile.getName());
             
             try (InputStream in = new BufferedInputStream(new FileInputStream(dataFile), HTTP_BUFFER_SIZE)){
-                performUpload(in, url);
+                performUpload(new LargeChunkedInputStreamEntity(in), url);
             }
             return url;
         } catch (IOException e) {
@@ -177,20 +185,17 @@ public class HttpFileExchange implements FileExchange {
      * trying to uploaded several times to the same location simultaneously. 
      * Though it would not prevent synchronous upload from independent machines or JVMs. 
      * 
-     * @param in The data to put into the url.
+     * @param reqEntity The entity with the data to put into the url. It is sent with chunked transfer encoding.
      * @param url The place to put the data.
      * @throws IOException If a problem with the connection occurs during the 
      * transaction. Also if the response code is 300 or above, which indicates
      * that the transaction has not been successful.
      */
-    private void performUpload(InputStream in, URL url) throws IOException {
-        ArgumentValidator.checkNotNull(in, "InputStream in");
+    private void performUpload(AbstractHttpEntity reqEntity, URL url) throws IOException {
         ArgumentValidator.checkNotNull(url, "URL url");
-        
 
         try (CloseableHttpClient httpClient = getHttpClient()) {
             HttpPut httpPut = new HttpPut(url.toExternalForm());
-            InputStreamEntity reqEntity = new LargeChunkedInputStreamEntity(in);
             reqEntity.setChunked(true);
             httpPut.setEntity(reqEntity);
             HttpResponse response = httpClient.execute(httpPut);
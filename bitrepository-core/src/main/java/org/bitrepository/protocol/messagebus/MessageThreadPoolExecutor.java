@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.messagebus;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bitrepository.settings.referencesettings.RejectionPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread pool with a bounded number of threads and a bounded queue for handling received messages, which keeps
+ * statistics on the messages it handles.
+ * <p>
+ * Threads are created on demand up to the maximum, and are stopped again after being idle for a while. When both
+ * the threads and the queue are exhausted, new messages are handled according to the {@link RejectionPolicy}:
+ * the delivering thread either waits for room in the queue, which keeps the order of the messages, or processes 
+ * the message itself, which may process it before the queued messages. In both cases the message bus stops 
+ * receiving until there is capacity. Finally the message may be discarded.
+ */
+public class MessageThreadPoolExecutor extends ThreadPoolExecutor implements MessageThreadPoolMXBean {
+    /** The number of seconds an idle thread is kept alive. */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    /** The number of seconds between the warnings, while waiting for room in the queue. */
+    private static final long BLOCKED_WARNING_SECONDS = 60;
+
+    private final String name;
+    private final int queueCapacity;
+    private final AtomicLong rejectedMessages = new AtomicLong();
+    private final AtomicLong completedMessages = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maximumLatencyNanos = new AtomicLong();
+
+    /**
+     * @param name The name of the pool.
+     * @param maximumThreads The maximum number of threads.
+     * @param queueCapacity The maximum number of messages waiting for a thread.
+     * @param rejectionPolicy How to handle messages when the queue is full. Null means
+     * {@link RejectionPolicy#BLOCK}.
+     */
+    public MessageThreadPoolExecutor(String name, int maximumThreads, int queueCapacity,
+                                     RejectionPolicy rejectionPolicy) {
+        super(maximumThreads, maximumThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity));
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new CountingRejectionHandler(createRejectionHandler(rejectionPolicy)));
+    }
+
+    private RejectedExecutionHandler createRejectionHandler(RejectionPolicy rejectionPolicy) {
+        if (rejectionPolicy == RejectionPolicy.DISCARD) {
+            return new DiscardPolicy();
+        } else if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+            return new CallerRunsPolicy();
+        } else {
+            return new BlockPolicy();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedTask(command));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public int getActiveThreads() {
+        return getActiveCount();
+    }
+
+    @Override
+    public int getMaximumThreads() {
+        return getMaximumPoolSize();
+    }
+
+    @Override
+    public long getCompletedMessages() {
+        return completedMessages.get();
+    }
+
+    @Override
+    public long getRejectedMessages() {
+        return rejectedMessages.get();
+    }
+
+    @Override
+    public double getAverageLatencyMillis() {
+        long completed = completedMessages.get();
+        return (completed == 0) ? 0 : totalLatencyNanos.get() / 1000000.0 / completed;
+    }
+
+    @Override
+    public long getMaximumLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maximumLatencyNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "MessageThreadPool [name=" + name + ", queueDepth=" + getQueueDepth() + "/" + queueCapacity
+                + ", activeThreads=" + getActiveThreads() + "/" + getMaximumThreads()
+                + ", completedMessages=" + getCompletedMessages() + ", rejectedMessages=" + getRejectedMessages()
+                + ", averageLatencyMillis=" + getAverageLatencyMillis()
+                + ", maximumLatencyMillis=" + getMaximumLatencyMillis() + "]";
+    }
+
+    private void registerLatency(long latencyNanos) {
+        completedMessages.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        long maximum = maximumLatencyNanos.get();
+        while (latencyNanos > maximum && !maximumLatencyNanos.compareAndSet(maximum, latencyNanos)) {
+            maximum = maximumLatencyNanos.get();
+        }
+    }
+
+    /**
+     * Registers the time from the task was handed to the pool until it has been run.
+     */
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submitTime = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                registerLatency(System.nanoTime() - submitTime);
+            }
+        }
+    }
+
+    /**
+     * Makes the delivering thread wait until there is room for the message in the queue. The message is rejected
+     * with a RejectedExecutionException if the pool is shut down or the delivering thread is interrupted.
+     */
+    private class BlockPolicy implements RejectedExecutionHandler {
+        private final Logger log = LoggerFactory.getLogger(getClass());
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            try {
+                while (!executor.isShutdown()) {
+                    if (executor.getQueue().offer(task, BLOCKED_WARNING_SECONDS, TimeUnit.SECONDS)) {
+                        return;
+                    }
+                    log.warn("Still waiting for room in the queue of message thread pool '" + name + "'.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in the queue of message "
+                        + "thread pool '" + name + "'.", e);
+            }
+            throw new RejectedExecutionException("The message thread pool '" + name + "' is shut down.");
+        }
+    }
+
+    /**
+     * Counts and logs the rejected messages before handing them to the actual rejection policy.
+     */
+    private class CountingRejectionHandler implements RejectedExecutionHandler {
+        private final Logger log = LoggerFactory.getLogger(getClass());
+        private final RejectedExecutionHandler policy;
+
+        CountingRejectionHandler(RejectedExecutionHandler policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            long rejected = rejectedMessages.incrementAndGet();
+            log.warn("The queue of message thread pool '" + name + "' is full, using "
+                    + policy.getClass().getSimpleName() + ". " + rejected + " messages rejected so far.");
+            policy.rejectedExecution(task, executor);
+        }
+    }
+}
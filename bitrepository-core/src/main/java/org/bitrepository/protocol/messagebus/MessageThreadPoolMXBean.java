@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.messagebus;
+
+/**
+ * The JMX view of a thread pool handling received messages.
+ */
+public interface MessageThreadPoolMXBean {
+    /**
+     * @return The name of the pool, describing which messages it handles.
+     */
+    String getName();
+
+    /**
+     * @return The number of received messages waiting for a thread.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return The maximum number of received messages which may wait for a thread.
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return The number of threads currently processing messages.
+     */
+    int getActiveThreads();
+
+    /**
+     * @return The maximum number of threads in the pool.
+     */
+    int getMaximumThreads();
+
+    /**
+     * @return The number of messages processed by the pool.
+     */
+    long getCompletedMessages();
+
+    /**
+     * @return The number of messages rejected because the queue was full.
+     */
+    long getRejectedMessages();
+
+    /**
+     * @return The average time in milliseconds from a message was handed to the pool until it had been processed.
+     */
+    double getAverageLatencyMillis();
+
+    /**
+     * @return The longest time in milliseconds from a message was handed to the pool until it had been processed.
+     */
+    long getMaximumLatencyMillis();
+}
@@ -21,12 +21,19 @@
  */
 package org.bitrepository.protocol.messagebus;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.bitrepository.bitrepositorymessages.Message;
 import org.bitrepository.protocol.MessageContext;
@@ -34,18 +41,49 @@ import org.bitrepository.protocol.utils.MessageCategoryUtils;
 import org.bitrepository.settings.referencesettings.MessageCategory;
 import org.bitrepository.settings.referencesettings.MessageThreadPool;
 import org.bitrepository.settings.referencesettings.MessageThreadPools;
+import org.bitrepository.settings.referencesettings.RejectionPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Takes care of handling the further processing by the listeners in separated thread.
+ * <p>
+ * The messages are handled by bounded thread pools, which are registered in JMX under
+ * <code>org.bitrepository:type=MessageThreadPool</code> when a component ID is given.
  */
 public class ReceivedMessageHandler {
+    /** The maximum number of threads in a pool without a configured pool size. */
+    public static final int DEFAULT_MAXIMUM_POOL_SIZE = 100;
+    /** The number of messages which may wait for a thread in a pool without a configured queue size. */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    /** The number of seconds to wait for the pools to process the already received messages when closing. */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    /** The JMX domain the pools are registered in. */
+    private static final String JMX_DOMAIN = "org.bitrepository";
+
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final ExecutorModel executorModel;
+    /** The names the pools are registered under in JMX. */
+    private final List<ObjectName> registeredPools = new ArrayList<ObjectName>();
 
+    /**
+     * Creates the handler without registering the pools in JMX.
+     * @param messageThreadPools The configuration of the thread pools, may be null.
+     */
     public ReceivedMessageHandler(MessageThreadPools messageThreadPools) {
+        this(null, messageThreadPools);
+    }
+
+    /**
+     * @param componentID The ID of the component to register the pools in JMX for, or null if the pools shouldn't
+     * be registered.
+     * @param messageThreadPools The configuration of the thread pools, may be null.
+     */
+    public ReceivedMessageHandler(String componentID, MessageThreadPools messageThreadPools) {
         executorModel = new ExecutorModel(messageThreadPools);
+        if (componentID != null) {
+            registerPools(componentID);
+        }
     }
 
     /**
@@ -57,14 +95,48 @@ public class ReceivedMessageHandler {
     public void deliver(MessageListener listener, Message message, MessageContext messageContext) {
         MessageProcessor processor = new MessageProcessor(listener, message, messageContext);
         executorModel.retrieveExecuter(message).execute(processor);
-            }
+    }
+
+    /**
+     * @return The statistics of the thread pools handling the received messages.
+     */
+    public List<MessageThreadPoolMXBean> getThreadPools() {
+        return Collections.<MessageThreadPoolMXBean>unmodifiableList(executorModel.executors);
+    }
 
     /**
-     * Use this to close down the running executors.
+     * Use this to close down the running executors. Waits a while for the already received messages to be processed.
      */
     public void close() {
         log.debug("Shutting down handling of received messages");
         executorModel.shutdown();
+        unregisterPools();
+    }
+
+    private void registerPools(String componentID) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (MessageThreadPoolExecutor executor : executorModel.executors) {
+            try {
+                ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=MessageThreadPool,component="
+                        + ObjectName.quote(componentID) + ",name=" + ObjectName.quote(executor.getName()));
+                server.registerMBean(executor, objectName);
+                registeredPools.add(objectName);
+            } catch (JMException e) {
+                log.warn("Unable to register message thread pool '" + executor.getName() + "' in JMX", e);
+            }
+        }
+    }
+
+    private void unregisterPools() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registeredPools) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.debug("Unable to unregister message thread pool '" + objectName + "' from JMX", e);
+            }
+        }
+        registeredPools.clear();
     }
 
     /**
@@ -98,9 +170,15 @@ public class ReceivedMessageHandler {
      * Contains the different executors based on collections and message types.
      */
     private class ExecutorModel {
+        /** The name used for pools handling all collections. */
+        private static final String ALL_COLLECTIONS = "AllCollections";
+        /** The name used for pools handling all messages. */
+        private static final String ALL_MESSAGES = "AllMessages";
         private CollectionExecutorModel defaultCollectionExecutorModel;
         private final Map<String, CollectionExecutorModel> collectionExecutorModelMap =
                 new HashMap<String, CollectionExecutorModel>();
+        /** All the executors of the model. */
+        private final List<MessageThreadPoolExecutor> executors = new ArrayList<MessageThreadPoolExecutor>();
 
         /**
          * Creates the different executor services based on the supplied configuration.
@@ -113,13 +191,13 @@ public class ReceivedMessageHandler {
                     if (collections != null  && !collections.isEmpty()) {
                         for (String collection : collections) {
                             if (!collectionExecutorModelMap.containsKey(collection)) {
-                                collectionExecutorModelMap.put(collection, new CollectionExecutorModel());
+                                collectionExecutorModelMap.put(collection, new CollectionExecutorModel(collection));
                             }
                             collectionExecutorModelMap.get(collection).addPool(messageThreadPool);
                         }
                     } else {
                         if (defaultCollectionExecutorModel == null) {
-                            defaultCollectionExecutorModel = new CollectionExecutorModel();
+                            defaultCollectionExecutorModel = new CollectionExecutorModel(ALL_COLLECTIONS);
                         }
                         defaultCollectionExecutorModel.addPool(messageThreadPool);
                     }
@@ -127,10 +205,11 @@ public class ReceivedMessageHandler {
             }
 
             if (defaultCollectionExecutorModel == null) {
-                defaultCollectionExecutorModel = new CollectionExecutorModel();
+                defaultCollectionExecutorModel = new CollectionExecutorModel(ALL_COLLECTIONS);
             }
             if (defaultCollectionExecutorModel.defaultexecutor == null) {
-                defaultCollectionExecutorModel.defaultexecutor = Executors.newCachedThreadPool();
+                defaultCollectionExecutorModel.defaultexecutor = createExecutorService(
+                        ALL_COLLECTIONS + "/" + ALL_MESSAGES, null, null, null);
             }
         }
 
@@ -149,34 +228,64 @@ public class ReceivedMessageHandler {
             return executor;
         }
 
+        /**
+         * Shuts down all the executors, including the collection specific ones, and waits for the already received
+         * messages to be processed.
+         */
         public void shutdown() {
-            if (defaultCollectionExecutorModel != null) {
-                defaultCollectionExecutorModel.shutdown();
+            for (MessageThreadPoolExecutor executor : executors) {
+                executor.shutdown();
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+            try {
+                for (MessageThreadPoolExecutor executor : executors) {
+                    if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                        log.warn("Message thread pool not drained within " + SHUTDOWN_TIMEOUT_SECONDS
+                                + " seconds: " + executor);
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for the message thread pools to drain");
+                Thread.currentThread().interrupt();
             }
         }
 
-        private ExecutorService createExecutorService(BigInteger poolSize) {
-            if (poolSize == null) {
-                return Executors.newCachedThreadPool();
-            } else if (poolSize.intValue() == 1) {
-                return Executors.newSingleThreadExecutor();
-            } else {
-                return Executors.newFixedThreadPool(poolSize.intValue());
-            }
+        private MessageThreadPoolExecutor createExecutorService(String name, BigInteger poolSize,
+                BigInteger queueSize, RejectionPolicy rejectionPolicy) {
+            int threads = (poolSize == null) ? DEFAULT_MAXIMUM_POOL_SIZE : poolSize.intValue();
+            int queueCapacity = (queueSize == null) ? DEFAULT_QUEUE_SIZE : queueSize.intValue();
+            MessageThreadPoolExecutor executor = new MessageThreadPoolExecutor(name, threads, queueCapacity,
+                    rejectionPolicy);
+            executors.add(executor);
+            return executor;
         }
 
         /**
          * Contain the executors for a single collection.
          */
         private class CollectionExecutorModel {
+            /** The collection the model handles messages for, used for naming the pools. */
+            private final String collection;
             private ExecutorService defaultexecutor;
             private final Map<MessageCategory, ExecutorService> categoryExecutorMap = new HashMap<MessageCategory, ExecutorService>();
             private final Map<String, ExecutorService> messageExecutorMap = new HashMap<String, ExecutorService>();
 
+            CollectionExecutorModel(String collection) {
+                this.collection = collection;
+            }
+
             void addPool(MessageThreadPool messageThreadPool) {
                 List<String> messageNames = messageThreadPool.getMessageName();
                 MessageCategory messageCategory = messageThreadPool.getMessageCategory();
-                ExecutorService executor = createExecutorService(messageThreadPool.getPoolSize());
+                String messages = ALL_MESSAGES;
+                if (messageNames != null && !messageNames.isEmpty()) {
+                    messages = messageNames.toString();
+                } else if (messageCategory != null) {
+                    messages = messageCategory.value();
+                }
+                ExecutorService executor = createExecutorService(collection + "/" + messages,
+                        messageThreadPool.getPoolSize(), messageThreadPool.getQueueSize(),
+                        messageThreadPool.getRejectionPolicy());
                 if (messageNames != null && !messageNames.isEmpty()) {
                     for (String messageName : messageNames) {
                         messageExecutorMap.put(messageName, executor);
@@ -199,16 +308,6 @@ public class ReceivedMessageHandler {
                 }
                 return executor;
             }
-
-            void shutdown() {
-                if (defaultexecutor != null) {
-                    defaultexecutor.shutdown();
-                }
-
-                for (ExecutorService executor : messageExecutorMap.values()) {
-                    executor.shutdown();
-                }
-            }
         }
     }
 }
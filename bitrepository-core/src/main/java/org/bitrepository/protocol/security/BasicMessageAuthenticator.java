@@ -22,6 +22,8 @@
 package org.bitrepository.protocol.security;
 
 import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.bitrepository.protocol.security.exception.MessageAuthenticationException;
 import org.bitrepository.protocol.security.exception.PermissionStoreException;
@@ -37,31 +39,70 @@ import org.bouncycastle.operator.OperatorCreationException;
 
 /**
  * Class to handle authentication of messages.  
+ * <p>
+ * The verifiers for the signing certificates are cached, as the set of known certificates is small. The cache is
+ * cleared whenever new permissions are loaded into the permission store.
  */
 public class BasicMessageAuthenticator implements MessageAuthenticator {
+    /** The default maximum number of verifiers to cache. */
+    public static final int DEFAULT_VERIFIER_CACHE_SIZE = 100;
 
     /**
      * Non-infrastructure certificates and permission store  
      */
     private final PermissionStore permissionStore;
+    /** The maximum number of verifiers to cache. */
+    private final int verifierCacheSize;
+    /** The cached verifiers, mapped from the ID of the certificate they verify. Least recently used are evicted. */
+    private final Map<SignerId, CachedVerifier> verifiers;
+    /** The version of the permission store the cached verifiers belong to. */
+    private int cachedPermissionsVersion;
     
     /**
      * @param permissionStore the permissionStore holding the known certificates
      */
     public BasicMessageAuthenticator(PermissionStore permissionStore) {
+        this(permissionStore, DEFAULT_VERIFIER_CACHE_SIZE);
+    }
+
+    /**
+     * @param permissionStore the permissionStore holding the known certificates
+     * @param verifierCacheSize the maximum number of verifiers to cache. 0 disables the cache.
+     */
+    public BasicMessageAuthenticator(PermissionStore permissionStore, final int verifierCacheSize) {
+        if(verifierCacheSize < 0) {
+            throw new IllegalArgumentException("The verifier cache size may not be negative, was " + verifierCacheSize);
+        }
         this.permissionStore = permissionStore;
+        this.verifierCacheSize = verifierCacheSize;
+        this.verifiers = new LinkedHashMap<SignerId, CachedVerifier>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SignerId, CachedVerifier> eldest) {
+                return size() > verifierCacheSize;
+            }
+        };
+        this.cachedPermissionsVersion = permissionStore.getPermissionsVersion();
     }
 
     @Override
     public SignerId authenticateMessage(byte[] messageData, byte[] signatureData) throws MessageAuthenticationException {
+        SignerInformation signer;
         try {
             CMSSignedData s = new CMSSignedData(new CMSProcessableByteArray(messageData), signatureData);
-            SignerInformation signer = (SignerInformation) s.getSignerInfos().getSigners().iterator().next();
-            X509Certificate signingCert = permissionStore.getCertificate(signer.getSID());
-            SignerInformationVerifier verifier = new JcaSimpleSignerInfoVerifierBuilder().setProvider(
-                    SecurityModuleConstants.BC).build(signingCert);
-            
-            if(!signer.verify(verifier)) {
+            signer = (SignerInformation) s.getSignerInfos().getSigners().iterator().next();
+        } catch (CMSException e) {
+            throw new SecurityException(e.getMessage(), e);
+        }
+        return authenticateMessage(signer);
+    }
+
+    @Override
+    public SignerId authenticateMessage(SignerInformation signer) throws MessageAuthenticationException {
+        try {
+            CachedVerifier cachedVerifier = getVerifier(signer.getSID());
+            X509Certificate signingCert = cachedVerifier.certificate;
+
+            if(!signer.verify(cachedVerifier.verifier)) {
                 throw new MessageAuthenticationException("Signature does not match the message. Indicated " +
                     "certificate did not sign message. Certificate issuer: " 
                         + signingCert.getIssuerX500Principal().getName() + ", serial: " 
@@ -76,4 +117,53 @@ public class BasicMessageAuthenticator implements MessageAuthenticator {
             throw new SecurityException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Retrieves the verifier for the certificate of the signer, building it if it isn't cached.
+     * @param signerId the ID of the certificate to retrieve the verifier for.
+     * @return The verifier along with the certificate it verifies.
+     * @throws PermissionStoreException if the permission store doesn't contain the certificate.
+     * @throws OperatorCreationException if the verifier could not be build.
+     */
+    private CachedVerifier getVerifier(SignerId signerId) throws PermissionStoreException,
+            OperatorCreationException {
+        int permissionsVersion;
+        synchronized (verifiers) {
+            if(cachedPermissionsVersion != permissionStore.getPermissionsVersion()) {
+                verifiers.clear();
+                cachedPermissionsVersion = permissionStore.getPermissionsVersion();
+            }
+            permissionsVersion = cachedPermissionsVersion;
+            CachedVerifier cachedVerifier = verifiers.get(signerId);
+            if(cachedVerifier != null) {
+                return cachedVerifier;
+            }
+        }
+
+        X509Certificate signingCert = permissionStore.getCertificate(signerId);
+        SignerInformationVerifier verifier = new JcaSimpleSignerInfoVerifierBuilder().setProvider(
+                SecurityModuleConstants.BC).build(signingCert);
+        CachedVerifier cachedVerifier = new CachedVerifier(signingCert, verifier);
+        if(verifierCacheSize > 0) {
+            synchronized (verifiers) {
+                if(permissionsVersion == cachedPermissionsVersion) {
+                    verifiers.put(signerId, cachedVerifier);
+                }
+            }
+        }
+        return cachedVerifier;
+    }
+
+    /**
+     * Container for a verifier and the certificate it verifies.
+     */
+    private static final class CachedVerifier {
+        private final X509Certificate certificate;
+        private final SignerInformationVerifier verifier;
+
+        private CachedVerifier(X509Certificate certificate, SignerInformationVerifier verifier) {
+            this.certificate = certificate;
+            this.verifier = verifier;
+        }
+    }
 }
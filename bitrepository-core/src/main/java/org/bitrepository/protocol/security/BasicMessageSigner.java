@@ -22,6 +22,7 @@
 package org.bitrepository.protocol.security;
 
 import java.security.KeyStore.PrivateKeyEntry;
+import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 
 import org.bitrepository.protocol.security.exception.MessageSigningException;
@@ -36,6 +37,7 @@ import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 
 /**
  * Handles signing of messages.
+ * Messages may be signed concurrently from multiple threads, so each thread uses its own content signer.
  */
 public class BasicMessageSigner implements MessageSigner {
 
@@ -45,8 +47,8 @@ public class BasicMessageSigner implements MessageSigner {
     private PrivateKeyEntry privateKeyEntry;
     /** SignerInfoBuilder used in the signing process. */
     private JcaSignerInfoGeneratorBuilder builder;
-    /** Content signer used to sign messages */
-    private ContentSigner sha512Signer;
+    /** Content signers used to sign messages. The content signers are not thread safe, so one is kept per thread. */
+    private volatile ThreadLocal<ContentSigner> sha512Signers;
     
     /**
      * Sets the privateKeyEntry member and initializes the objects that's needed for signing messages.
@@ -58,8 +60,9 @@ public class BasicMessageSigner implements MessageSigner {
         }
         this.privateKeyEntry = privateKeyEntry;
         try {
-            sha512Signer = new JcaContentSignerBuilder(SecurityModuleConstants.SignatureType)
-                    .setProvider(SecurityModuleConstants.BC).build(privateKeyEntry.getPrivateKey());
+            sha512Signers = createContentSigners(privateKeyEntry.getPrivateKey());
+            // Build a signer up front, to fail early on a unusable private key.
+            sha512Signers.get();
             builder = new JcaSignerInfoGeneratorBuilder(
                     new JcaDigestCalculatorProviderBuilder().setProvider(SecurityModuleConstants.BC).build());
             builder.setDirectSignature(true);
@@ -68,6 +71,24 @@ public class BasicMessageSigner implements MessageSigner {
         }
     }
     
+    /**
+     * @param privateKey The private key to sign with.
+     * @return The per thread content signers for the private key.
+     */
+    private ThreadLocal<ContentSigner> createContentSigners(final PrivateKey privateKey) {
+        return new ThreadLocal<ContentSigner>() {
+            @Override
+            protected ContentSigner initialValue() {
+                try {
+                    return new JcaContentSignerBuilder(SecurityModuleConstants.SignatureType)
+                            .setProvider(SecurityModuleConstants.BC).build(privateKey);
+                } catch (OperatorCreationException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
     /**
      * Creates the CMS signature for a message. 
      * @param messageData the message data that is to be signed.
@@ -81,7 +102,7 @@ public class BasicMessageSigner implements MessageSigner {
         }
         try {
             CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
-            gen.addSignerInfoGenerator(builder.build(sha512Signer, (X509Certificate)privateKeyEntry.getCertificate()));
+            gen.addSignerInfoGenerator(builder.build(sha512Signers.get(), (X509Certificate)privateKeyEntry.getCertificate()));
             CMSSignedData signedData = gen.generate(new CMSProcessableByteArray(messageData), USE_ATTACHED_MODE);
 
             return signedData.getEncoded();
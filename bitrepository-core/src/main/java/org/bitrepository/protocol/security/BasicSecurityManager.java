@@ -148,6 +148,40 @@ public class BasicSecurityManager implements SecurityManager {
         }
         return null;
     }
+
+    @Override
+    public SignerContext verifyMessage(String message, String signature) throws MessageAuthenticationException {
+        try {
+            return verifyMessage(message.getBytes(SecurityModuleConstants.defaultEncodingType), signature);
+        } catch (UnsupportedEncodingException e) {
+            throw new SecurityException(SecurityModuleConstants.defaultEncodingType + " encoding not supported", e);
+        }
+    }
+
+    @Override
+    public SignerContext verifyMessage(byte[] messageData, String signature) throws MessageAuthenticationException {
+        boolean authenticate = repositorySettings.getProtocolSettings().isRequireMessageAuthentication();
+        boolean authorize = repositorySettings.getProtocolSettings().isRequireOperationAuthorization();
+        if(!authenticate && !authorize) {
+            return SignerContext.UNIDENTIFIED;
+        }
+        if(signature == null) {
+            if(authenticate) {
+                throw new MessageAuthenticationException("Received unsigned message, but authentication is required");
+            }
+            return SignerContext.UNIDENTIFIED;
+        }
+        try {
+            byte[] decodedSig = Base64.decode(signature.getBytes(SecurityModuleConstants.defaultEncodingType));
+            SignerInformation signer = getSigner(messageData, decodedSig);
+            if(authenticate) {
+                return new SignerContext(authenticator.authenticateMessage(signer), true);
+            }
+            return new SignerContext(signer.getSID(), false);
+        } catch (UnsupportedEncodingException e) {
+            throw new SecurityException(SecurityModuleConstants.defaultEncodingType + " encoding not supported", e);
+        }
+    }
     
     /**
      * Method to sign a message
@@ -167,6 +201,15 @@ public class BasicSecurityManager implements SecurityManager {
             return null;
         }
     }
+
+    @Override
+    public String signMessage(byte[] messageData) throws MessageSigningException {
+        if(repositorySettings.getProtocolSettings().isRequireMessageAuthentication()) {
+            return new String(Base64.encode(signer.signMessage(messageData)));
+        } else {
+            return null;
+        }
+    }
     
     /** 
      * Method to authorize the use of a certificate
@@ -178,19 +221,22 @@ public class BasicSecurityManager implements SecurityManager {
     public void authorizeCertificateUse(String certificateUser, String messageData, String signature) 
             throws CertificateUseException {
         if(repositorySettings.getProtocolSettings().isRequireOperationAuthorization()) {
-            byte[] decodeSig = Base64.decode(signature.getBytes());
-            CMSSignedData s;
-            try {
-                s = new CMSSignedData(new CMSProcessableByteArray(messageData.getBytes()), decodeSig);
-            } catch (CMSException e) {
-                throw new SecurityException(e.getMessage(), e);
-            }
-    
-            SignerInformation signer = (SignerInformation) s.getSignerInfos().getSigners().iterator().next();
+            SignerInformation signer = getSigner(messageData.getBytes(), Base64.decode(signature.getBytes()));
             authorizer.authorizeCertificateUse(certificateUser, signer.getSID());    
         }
     }
 
+    @Override
+    public void authorizeCertificateUse(String certificateUser, SignerContext signer) throws CertificateUseException {
+        if(repositorySettings.getProtocolSettings().isRequireOperationAuthorization()) {
+            if(signer.getSignerId() == null) {
+                throw new CertificateUseException("Unable to authorize the certificate use of '" + certificateUser
+                        + "' for a message without a signature.");
+            }
+            authorizer.authorizeCertificateUse(certificateUser, signer.getSignerId());
+        }
+    }
+
     @Override
     public String getCertificateFingerprint(SignerId signer) throws UnregisteredPermissionException {
             return permissionStore.getCertificateFingerprint(signer);
@@ -206,22 +252,43 @@ public class BasicSecurityManager implements SecurityManager {
     public void authorizeOperation(String operationType, String messageData, String signature) 
             throws OperationAuthorizationException {
         if(repositorySettings.getProtocolSettings().isRequireOperationAuthorization()) {
-            byte[] decodeSig = Base64.decode(signature.getBytes());
-            CMSSignedData s;
+            SignerInformation signer = getSigner(messageData.getBytes(), Base64.decode(signature.getBytes()));
             try {
-                s = new CMSSignedData(new CMSProcessableByteArray(messageData.getBytes()), decodeSig);
-            } catch (CMSException e) {
-                throw new SecurityException(e.getMessage(), e);
+                authorizer.authorizeOperation(operationType, signer.getSID());    
+            } catch (UnregisteredPermissionException e) {
+                log.info(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void authorizeOperation(String operationType, SignerContext signer)
+            throws OperationAuthorizationException {
+        if(repositorySettings.getProtocolSettings().isRequireOperationAuthorization()) {
+            if(signer.getSignerId() == null) {
+                throw new OperationAuthorizationException("Unable to authorize the operation '" + operationType
+                        + "' for a message without a signature.");
             }
-    
-            SignerInformation signer = (SignerInformation) s.getSignerInfos().getSigners().iterator().next();
             try {
-                authorizer.authorizeOperation(operationType, signer.getSID());    
+                authorizer.authorizeOperation(operationType, signer.getSignerId());
             } catch (UnregisteredPermissionException e) {
                 log.info(e.getMessage());
             }
-            
-            
+        }
+    }
+
+    /**
+     * Parses the CMS signature of a message.
+     * @param messageData the data of the message.
+     * @param signatureData the decoded signature belonging to the message.
+     * @return The information about the signer of the message.
+     */
+    private SignerInformation getSigner(byte[] messageData, byte[] signatureData) {
+        try {
+            CMSSignedData s = new CMSSignedData(new CMSProcessableByteArray(messageData), signatureData);
+            return (SignerInformation) s.getSignerInfos().getSigners().iterator().next();
+        } catch (CMSException e) {
+            throw new SecurityException(e.getMessage(), e);
         }
     }
     
@@ -23,6 +23,7 @@ package org.bitrepository.protocol.security;
 
 import org.bitrepository.protocol.security.exception.MessageAuthenticationException;
 import org.bouncycastle.cms.SignerId;
+import org.bouncycastle.cms.SignerInformation;
 
 /**
  * Interface for classes to authenticate messages based on a CMS signature. 
@@ -37,4 +38,12 @@ public interface MessageAuthenticator {
      * @throws MessageAuthenticationException in case authentication fails. 
      */
     abstract SignerId authenticateMessage(byte[] messageData, byte[] signatureData) throws MessageAuthenticationException;
+
+    /**
+     * Method to authenticate a message based on the signer information of an already parsed CMS signature.
+     * @param signer the signer information, with the signed message as content.
+     * @return The ID of the message signer
+     * @throws MessageAuthenticationException in case authentication fails.
+     */
+    abstract SignerId authenticateMessage(SignerInformation signer) throws MessageAuthenticationException;
 }
@@ -60,6 +60,8 @@ public class PermissionStore {
     private final Logger log = LoggerFactory.getLogger(PermissionStore.class);
     /** Mapping from certificate identifier to an object containing the certificate and the permissions registered with it*/
     private Map<CertificateID, CertificatePermission> permissionMap;
+    /** The number of times permissions has been loaded into the store. Used to detect changes to the store. */
+    private volatile int permissionsVersion = 0;
 
     /**
      * Public constructor, initializes the store. 
@@ -123,6 +125,16 @@ public class PermissionStore {
         } else {
             log.info("The provided PermissionSet was null");
         }
+        permissionsVersion++;
+    }
+
+    /**
+     * The version is changed every time permissions are loaded into the store, so information derived from the
+     * certificates in the store can be discarded when the version changes.
+     * @return The current version of the permissions in the store.
+     */
+    public int getPermissionsVersion() {
+        return permissionsVersion;
     }
 
     /**
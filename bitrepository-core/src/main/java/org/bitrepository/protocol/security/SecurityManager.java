@@ -37,6 +37,26 @@ public interface SecurityManager {
      * @throws MessageAuthenticationException in case of failure.
      */
     SignerId authenticateMessage(String message, String signature) throws MessageAuthenticationException;
+
+    /**
+     * Method to parse the signature of a received message once, and authenticate the message if authentication is
+     * required. The returned context is used for authorizing the certificate use and the operation of the message
+     * without parsing the signature again.
+     * @param message the message that needs to be authenticated.
+     * @param signature the signature belonging to the message.
+     * @return The context describing the signer of the message.
+     * @throws MessageAuthenticationException in case of failure.
+     */
+    SignerContext verifyMessage(String message, String signature) throws MessageAuthenticationException;
+
+    /**
+     * Method to verify a received message which is encoded as bytes, see {@link #verifyMessage(String, String)}.
+     * @param messageData the encoded message that needs to be authenticated.
+     * @param signature the signature belonging to the message.
+     * @return The context describing the signer of the message.
+     * @throws MessageAuthenticationException in case of failure.
+     */
+    SignerContext verifyMessage(byte[] messageData, String signature) throws MessageAuthenticationException;
     
     /**
      * Method to sign a message
@@ -45,6 +65,14 @@ public interface SecurityManager {
      * @throws MessageSigningException if signing of the message fails.   
      */
     String signMessage(String message) throws MessageSigningException;
+
+    /**
+     * Method to sign a message which is encoded as bytes.
+     * @param messageData the encoded message to sign
+     * @return the signature for the message, or null if authentication is disabled.
+     * @throws MessageSigningException if signing of the message fails.
+     */
+    String signMessage(byte[] messageData) throws MessageSigningException;
     
     /**
      * Method to authorize an operation 
@@ -55,6 +83,14 @@ public interface SecurityManager {
      */
     void authorizeOperation(String operationType, String messageData, String signature) 
             throws OperationAuthorizationException;
+
+    /**
+     * Method to authorize an operation based on an already verified signer.
+     * @param operationType the type of operation that is to be authorized.
+     * @param signer the context of the signer, as returned by {@link #verifyMessage(String, String)}.
+     * @throws OperationAuthorizationException in case of failure.
+     */
+    void authorizeOperation(String operationType, SignerContext signer) throws OperationAuthorizationException;
     
     /** 
      * Method to authorize the use of a certificate
@@ -66,6 +102,14 @@ public interface SecurityManager {
     void authorizeCertificateUse(String certificateUser, String messageData, String signature) 
             throws CertificateUseException;
 
+    /**
+     * Method to authorize the use of a certificate based on an already verified signer.
+     * @param certificateUser the user who signed the message
+     * @param signer the context of the signer, as returned by {@link #verifyMessage(String, String)}.
+     * @throws CertificateUseException in case the certificate use could not be authorized.
+     */
+    void authorizeCertificateUse(String certificateUser, SignerContext signer) throws CertificateUseException;
+
     /**
      * Returns the fingerprint for the certificate.
      * @param signer The signer to lookup the certificate fingerprint for.
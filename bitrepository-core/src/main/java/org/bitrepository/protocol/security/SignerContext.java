@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.security;
+
+import org.bouncycastle.cms.SignerId;
+
+/**
+ * The result of parsing and verifying the signature of a received message. Used for authorizing the certificate use
+ * and the operation of the message without having to parse the signature again.
+ */
+public class SignerContext {
+    /** The context for a message where the signer hasn't been identified. */
+    public static final SignerContext UNIDENTIFIED = new SignerContext(null, false);
+
+    /** The ID of the certificate which signed the message. */
+    private final SignerId signerId;
+    /** Whether the signature has been verified against the message. */
+    private final boolean authenticated;
+
+    /**
+     * @param signerId The ID of the certificate which signed the message, null if the signer hasn't been identified.
+     * @param authenticated Whether the signature has been verified against the message.
+     */
+    public SignerContext(SignerId signerId, boolean authenticated) {
+        this.signerId = signerId;
+        this.authenticated = authenticated;
+    }
+
+    /**
+     * @return The ID of the certificate which signed the message, or null if the signer hasn't been identified.
+     */
+    public SignerId getSignerId() {
+        return signerId;
+    }
+
+    /**
+     * @return Whether the signature has been verified against the message.
+     */
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * @return The ID of the certificate which signed the message if the signature has been verified, else null.
+     */
+    public SignerId getAuthenticatedSigner() {
+        return authenticated ? signerId : null;
+    }
+
+    @Override
+    public String toString() {
+        return "SignerContext [signerId=" + signerId + ", authenticated=" + authenticated + "]";
+    }
+}
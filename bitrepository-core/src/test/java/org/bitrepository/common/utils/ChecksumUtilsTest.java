@@ -25,9 +25,12 @@
 package org.bitrepository.common.utils;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumType;
@@ -145,6 +148,69 @@ public class ChecksumUtilsTest extends ExtendedTestCase {
         }        
     }
 
+    @Test(groups = { "regressiontest" })
+    public void calculateSeveralChecksumsInOnePass() throws Exception {
+        addDescription("Tests that several checksums can be calculated while reading the data once.");
+        addStep("Setup variables.", "Should be OK");
+        ChecksumSpecTYPE csMD5 = new ChecksumSpecTYPE();
+        csMD5.setChecksumType(ChecksumType.MD5);
+        ChecksumSpecTYPE csHmacSHA256 = new ChecksumSpecTYPE();
+        csHmacSHA256.setChecksumType(ChecksumType.HMAC_SHA256);
+        csHmacSHA256.setChecksumSalt("key".getBytes());
+        ChecksumSpecTYPE csSHA1 = new ChecksumSpecTYPE();
+        csSHA1.setChecksumType(ChecksumType.SHA1);
+        
+        addStep("Calculate MD5, HMAC_SHA256 and SHA1 of a text from a single stream", 
+                "Should give the same results as calculating them one at a time, in the same order");
+        String message = "The quick brown fox jumps over the lazy dog";
+        List<String> checksums = ChecksumUtils.generateChecksums(new ByteArrayInputStream(message.getBytes()), 
+                Arrays.asList(csMD5, csHmacSHA256, csSHA1));
+        Assert.assertEquals(checksums, Arrays.asList("9e107d9d372bb6826bd81d3542a419d6",
+                "f7bc83f430538424b13298e6aa6fb143ef4d59a14946175997479dbc2d1a3cd8", 
+                "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12"));
+        
+        addStep("Calculate with a message digest specification with salt", 
+                "Should throw an exception before reading the data");
+        csSHA1.setChecksumSalt("key".getBytes());
+        InputStream data = new ByteArrayInputStream(message.getBytes());
+        try {
+            ChecksumUtils.generateChecksums(data, Arrays.asList(csMD5, csSHA1));
+            Assert.fail("Should throw an IllegalArgumentException here!");
+        }  catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertEquals(data.available(), message.length());
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void calculateChecksumsWhileCopyingStream() throws Exception {
+        addDescription("Tests that the checksums of a stream can be calculated while it is read by someone else.");
+        addStep("Setup variables.", "Should be OK");
+        ChecksumSpecTYPE csMD5 = new ChecksumSpecTYPE();
+        csMD5.setChecksumType(ChecksumType.MD5);
+        ChecksumSpecTYPE csHmacSHA256 = new ChecksumSpecTYPE();
+        csHmacSHA256.setChecksumType(ChecksumType.HMAC_SHA256);
+        csHmacSHA256.setChecksumSalt("key".getBytes());
+        String message = "The quick brown fox jumps over the lazy dog";
+        
+        addStep("Copy the text through a checksum calculating stream, partly by single bytes and by skipping", 
+                "The copy should be the text after the skipped part, and the checksums of the whole text are given");
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (ChecksumCalculatingInputStream in = new ChecksumCalculatingInputStream(
+                new ByteArrayInputStream(message.getBytes()), Arrays.asList(csMD5, csHmacSHA256))) {
+            Assert.assertEquals(in.skip(4), 4);
+            copy.write(in.read());
+            byte[] buffer = new byte[7];
+            int bytesRead;
+            while((bytesRead = in.read(buffer)) != -1) {
+                copy.write(buffer, 0, bytesRead);
+            }
+            Assert.assertEquals(new String(copy.toByteArray()), message.substring(4));
+            Assert.assertEquals(in.getChecksums(), Arrays.asList("9e107d9d372bb6826bd81d3542a419d6",
+                    "f7bc83f430538424b13298e6aa6fb143ef4d59a14946175997479dbc2d1a3cd8"));
+        }
+    }
+
     @Test(groups = { "regressiontest" })
     public void testChecksumOnFile() throws Exception {
         addDescription("Test the checksum calculation on a file");
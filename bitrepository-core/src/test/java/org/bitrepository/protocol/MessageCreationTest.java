@@ -48,6 +48,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import static org.testng.Assert.assertEquals;
+
 /**
  * Test whether we are able to create message objects from xml. The input XML is the example code defined in the
  * message-xml, thereby also testing whether this is valid. *
@@ -78,6 +80,30 @@ public class MessageCreationTest extends ExtendedTestCase {
         AlarmMessage am = jaxbHelper.loadXml(AlarmMessage.class, new ByteArrayInputStream(message.getBytes()));
     }
 
+    @Test(groups = {"regressiontest"}, expectedExceptions = SAXException.class)
+    public void badDateMessageSinglePassTest() throws IOException, SAXException, JAXBException {
+        addDescription("Test that validating while loading a message rejects dates without offset.");
+        String messagePath = ExampleMessageFactory.PATH_TO_EXAMPLES + "BadMessages/" +
+                "BadDateAlarmMessage" + ExampleMessageFactory.EXAMPLE_FILE_POSTFIX;
+        String message = IOUtils.toString(Thread.currentThread().getContextClassLoader().getResourceAsStream(messagePath));
+        JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        jaxbHelper.loadAndValidateXml(AlarmMessage.class, new ByteArrayInputStream(message.getBytes()));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void fastInfosetRoundtripTest() throws Exception {
+        addDescription("Tests that messages can be encoded as Fast Infoset and loaded again without changes.");
+        JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        GetChecksumsFinalResponse message = ExampleMessageFactory.createMessage(GetChecksumsFinalResponse.class);
+
+        addStep("Encode the message as Fast Infoset and load it again",
+                "The loaded message should serialize to the same xml as the original message.");
+        byte[] encoded = jaxbHelper.serializeToFastInfoset(message);
+        GetChecksumsFinalResponse loaded = jaxbHelper.loadAndValidateFastInfoset(GetChecksumsFinalResponse.class,
+                new ByteArrayInputStream(encoded));
+        assertEquals(jaxbHelper.serializeToXml(loaded), jaxbHelper.serializeToXml(message));
+    }
+
     /**
      * Generates the list of messages to test by parsing the message xsd file.
      *
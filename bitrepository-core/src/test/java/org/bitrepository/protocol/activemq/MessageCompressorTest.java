@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class MessageCompressorTest extends ExtendedTestCase {
+    @Test(groups = {"regressiontest"})
+    public void noThresholdTest() throws Exception {
+        addDescription("Tests that nothing is compressed when no threshold is configured.");
+        MessageCompressor compressor = MessageCompressor.createCompressor(new MessageBusSettings());
+        assertFalse(compressor.shouldCompress(new byte[100000]));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void compressionRoundtripTest() throws Exception {
+        addDescription("Tests that large bodies are compressed and decompressed, and the bytes saved are counted.");
+        MessageBusSettings settings = new MessageBusSettings();
+        settings.setCompressionThreshold(BigInteger.valueOf(1000));
+        MessageCompressor compressor = MessageCompressor.createCompressor(settings);
+
+        addStep("Check bodies around the threshold", "Only bodies larger than the threshold should be compressed");
+        assertFalse(compressor.shouldCompress(new byte[1000]));
+        assertTrue(compressor.shouldCompress(new byte[1001]));
+
+        addStep("Compress and decompress a repetitive body", "The body should shrink and be restored");
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            sb.append("<ChecksumDataItem><FileID>file-" + i + "</FileID></ChecksumDataItem>");
+        }
+        byte[] body = sb.toString().getBytes("UTF-8");
+        byte[] compressed = compressor.compress(body);
+        assertTrue(compressed.length < body.length);
+        assertTrue(Arrays.equals(compressor.decompress(compressed), body));
+        assertEquals(compressor.getNumberOfCompressedMessages(), 1);
+        assertEquals(compressor.getBytesSaved(), body.length - compressed.length);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void maxDecompressedSizeTest() throws Exception {
+        addDescription("Tests that a body decompressing to more than the maximum decompressed size is rejected.");
+        MessageBusSettings settings = new MessageBusSettings();
+        settings.setCompressionThreshold(BigInteger.valueOf(1000));
+        settings.setMaxDecompressedSize(BigInteger.valueOf(100000));
+        MessageCompressor compressor = MessageCompressor.createCompressor(settings);
+
+        addStep("Decompress a body at the maximum size", "The body should be restored");
+        byte[] body = new byte[100000];
+        assertTrue(Arrays.equals(compressor.decompress(compressor.compress(body)), body));
+
+        addStep("Decompress a small body inflating to more than the maximum size", "The body should be rejected");
+        byte[] compressed = compressor.compress(new byte[100001]);
+        assertTrue(compressed.length < 1000);
+        try {
+            compressor.decompress(compressed);
+            fail("The body exceeding the maximum decompressed size should be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
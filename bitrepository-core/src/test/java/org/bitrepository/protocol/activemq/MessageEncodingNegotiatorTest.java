@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.math.BigInteger;
+
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
+import org.bitrepository.settings.referencesettings.MessageEncoding;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class MessageEncodingNegotiatorTest extends ExtendedTestCase {
+    private static final String CORRELATION_ID = "correlation";
+    private static final String CLIENT_QUEUE = "client-queue";
+
+    @Test(groups = {"regressiontest"})
+    public void xmlOnlyTest() throws Exception {
+        addDescription("Tests that only XML is used when the compact encoding isn't configured.");
+        MessageEncodingNegotiator negotiator = MessageEncodingNegotiator.createNegotiator(null);
+        assertNull(negotiator.getAcceptedEncodings());
+        negotiator.registerReceivedMessage(MessageEncodingNegotiator.FAST_INFOSET, CORRELATION_ID, CLIENT_QUEUE);
+        assertFalse(negotiator.useCompactEncoding(CORRELATION_ID, CLIENT_QUEUE));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void compactResponseTest() throws Exception {
+        addDescription("Tests that the compact encoding is only used for replies to components accepting it.");
+        MessageBusSettings settings = new MessageBusSettings();
+        settings.setMessageEncoding(MessageEncoding.FAST_INFOSET);
+        MessageEncodingNegotiator negotiator = MessageEncodingNegotiator.createNegotiator(settings);
+        assertEquals(negotiator.getAcceptedEncodings(), MessageEncodingNegotiator.FAST_INFOSET);
+
+        addStep("Check a message to a component which hasn't announced the encoding", "Should be sent as XML");
+        assertFalse(negotiator.useCompactEncoding(CORRELATION_ID, CLIENT_QUEUE));
+
+        addStep("Receive a message from a component not accepting the encoding", "Replies should be sent as XML");
+        negotiator.registerReceivedMessage(null, CORRELATION_ID, CLIENT_QUEUE);
+        assertFalse(negotiator.useCompactEncoding(CORRELATION_ID, CLIENT_QUEUE));
+
+        addStep("Receive a message from a component accepting the encoding",
+                "Replies should be compact, messages to other destinations or conversations should be XML");
+        negotiator.registerReceivedMessage(MessageEncodingNegotiator.FAST_INFOSET, CORRELATION_ID, CLIENT_QUEUE);
+        assertTrue(negotiator.useCompactEncoding(CORRELATION_ID, CLIENT_QUEUE));
+        assertFalse(negotiator.useCompactEncoding(CORRELATION_ID, "collection-topic"));
+        assertFalse(negotiator.useCompactEncoding("other-correlation", CLIENT_QUEUE));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void compressedResponseTest() throws Exception {
+        addDescription("Tests that compression is only used for replies to components accepting it.");
+        MessageBusSettings settings = new MessageBusSettings();
+        settings.setCompressionThreshold(BigInteger.valueOf(1024));
+        MessageEncodingNegotiator negotiator = MessageEncodingNegotiator.createNegotiator(settings);
+        assertEquals(negotiator.getAcceptedEncodings(), MessageEncodingNegotiator.GZIP);
+
+        addStep("Receive a message from a component accepting only the compact encoding",
+                "Replies should not be compressed");
+        negotiator.registerReceivedMessage(MessageEncodingNegotiator.FAST_INFOSET, CORRELATION_ID, CLIENT_QUEUE);
+        assertFalse(negotiator.useCompression(CORRELATION_ID, CLIENT_QUEUE));
+        assertFalse(negotiator.useCompactEncoding(CORRELATION_ID, CLIENT_QUEUE));
+
+        addStep("Receive a message from a component accepting both encodings",
+                "Replies should be compressed, but not compactly encoded as it isn't enabled");
+        negotiator.registerReceivedMessage(MessageEncodingNegotiator.FAST_INFOSET + ","
+                + MessageEncodingNegotiator.GZIP, CORRELATION_ID, CLIENT_QUEUE);
+        assertTrue(negotiator.useCompression(CORRELATION_ID, CLIENT_QUEUE));
+        assertFalse(negotiator.useCompactEncoding(CORRELATION_ID, CLIENT_QUEUE));
+        assertFalse(negotiator.useCompression(CORRELATION_ID, "collection-topic"));
+    }
+}
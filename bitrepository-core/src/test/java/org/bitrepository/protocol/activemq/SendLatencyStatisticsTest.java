@@ -0,0 +1,64 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class SendLatencyStatisticsTest extends ExtendedTestCase {
+    private static final String MESSAGE_TYPE = "IdentifyPillarsForGetFileRequest";
+
+    @Test(groups = {"regressiontest"})
+    public void percentileTest() throws Exception {
+        addDescription("Tests the percentiles calculated from the registered latencies.");
+        SendLatencyStatistics statistics = new SendLatencyStatistics();
+        assertEquals(statistics.getPercentile(MESSAGE_TYPE, 50), 0);
+
+        addStep("Register the latencies 1 to 100", "The percentiles should match the latencies");
+        for (int i = 100; i > 0; i--) {
+            statistics.registerLatency(MESSAGE_TYPE, i);
+        }
+        assertEquals(statistics.getPercentile(MESSAGE_TYPE, 50), 50);
+        assertEquals(statistics.getPercentile(MESSAGE_TYPE, 99), 99);
+        assertEquals(statistics.getPercentile(MESSAGE_TYPE, 100), 100);
+        assertEquals(statistics.getPercentile(MESSAGE_TYPE, 0), 1);
+        assertEquals(statistics.getNumberOfMessages(MESSAGE_TYPE), 100);
+        assertTrue(statistics.getMessageTypes().contains(MESSAGE_TYPE));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void onlyLatestSamplesTest() throws Exception {
+        addDescription("Tests that only the latest latencies are used for the percentiles.");
+        SendLatencyStatistics statistics = new SendLatencyStatistics();
+        for (int i = 0; i < SendLatencyStatistics.SAMPLE_SIZE; i++) {
+            statistics.registerLatency(MESSAGE_TYPE, 1000);
+        }
+        for (int i = 0; i < SendLatencyStatistics.SAMPLE_SIZE; i++) {
+            statistics.registerLatency(MESSAGE_TYPE, 1);
+        }
+        assertEquals(statistics.getPercentile(MESSAGE_TYPE, 100), 1);
+        assertEquals(statistics.getNumberOfMessages(MESSAGE_TYPE), 2 * SendLatencyStatistics.SAMPLE_SIZE);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.math.BigInteger;
+
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
+import org.bitrepository.settings.referencesettings.SendValidation;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class SendValidationPolicyTest extends ExtendedTestCase {
+    @Test(groups = {"regressiontest"})
+    public void defaultPolicyTest() throws Exception {
+        addDescription("Tests that all messages are validated when no message bus settings are defined.");
+        SendValidationPolicy policy = SendValidationPolicy.createPolicy(null);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(policy.shouldValidate());
+        }
+
+        addStep("Create a policy from settings without a validation mode", "All messages should be validated");
+        policy = SendValidationPolicy.createPolicy(new MessageBusSettings());
+        assertTrue(policy.shouldValidate());
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void offPolicyTest() throws Exception {
+        addDescription("Tests that no messages are validated when validation is turned off.");
+        SendValidationPolicy policy = new SendValidationPolicy(SendValidation.OFF, 1);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(policy.shouldValidate());
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void sampledPolicyTest() throws Exception {
+        addDescription("Tests that one in the sample rate messages are validated when sampling.");
+        MessageBusSettings settings = new MessageBusSettings();
+        settings.setSendValidation(SendValidation.SAMPLED);
+        settings.setSendValidationSampleRate(BigInteger.valueOf(5));
+        SendValidationPolicy policy = SendValidationPolicy.createPolicy(settings);
+        int validated = 0;
+        for (int i = 0; i < 20; i++) {
+            if (policy.shouldValidate()) {
+                validated++;
+            }
+        }
+        assertEquals(validated, 4);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void validationFailureCountTest() throws Exception {
+        addDescription("Tests that validation failures are counted.");
+        SendValidationPolicy policy = new SendValidationPolicy(SendValidation.ALWAYS, 1);
+        assertEquals(policy.getValidationFailures(), 0);
+        assertEquals(policy.registerValidationFailure(), 1);
+        assertEquals(policy.registerValidationFailure(), 2);
+        assertEquals(policy.getValidationFailures(), 2);
+    }
+
+    @Test(groups = {"regressiontest"}, expectedExceptions = IllegalArgumentException.class)
+    public void invalidSampleRateTest() throws Exception {
+        addDescription("Tests that a non-positive sample rate is rejected.");
+        new SendValidationPolicy(SendValidation.SAMPLED, 0);
+    }
+}
@@ -13,6 +13,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import org.apache.commons.io.IOUtils;
+import org.bitrepository.protocol.ContentWriter;
 import org.bitrepository.protocol.FileExchange;
 import org.bitrepository.protocol.LocalFileExchange;
 import org.fusesource.hawtbuf.ByteArrayInputStream;
@@ -87,6 +88,27 @@ public class LocalFileExchangeTest {
         fileExchangeFile.delete();
     }
     
+    @Test 
+    public void putFileByContentWriterTest() throws IOException {
+        String testFileName = "putFileByContentWriterTestFile";
+        final String testFileContent = "lorem ipsum7";
+        
+        FileExchange lfe = new LocalFileExchange(BASE_FILE_EXCHANGE_DIR);
+        
+        URL fileExchangeUrl = lfe.getURL(testFileName);
+        lfe.putFile(new ContentWriter() {
+            @Override
+            public void writeContent(OutputStream out) throws IOException {
+                out.write(testFileContent.getBytes());
+            }
+        }, fileExchangeUrl);
+        
+        File fileExchangeFile = new File(fileExchangeUrl.getFile());
+        String fileExchangeContent = readTestFileContent(fileExchangeFile);
+        Assert.assertEquals(fileExchangeContent, testFileContent);
+        fileExchangeFile.delete();
+    }
+    
     @Test
     public void getFileByInputStreamTest() throws IOException {
         String testFileName = "getFileByInputStreamTestFile";
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2012 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.bitrepository.protocol.ContentWriter;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class ContentWriterEntityTest extends ExtendedTestCase {
+    @Test(groups = { "regressiontest" })
+    public void writeContentTest() throws IOException {
+        addDescription("Tests that the entity writes the content produced by its content writer");
+        final byte[] content = new byte[200 * 1024];
+        for(int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ContentWriterEntity entity = new ContentWriterEntity(new ContentWriter() {
+            @Override
+            public void writeContent(OutputStream out) throws IOException {
+                out.write(content);
+            }
+        });
+
+        addStep("Check the properties of the entity", "The entity has an unknown length, and is not repeatable");
+        assertEquals(entity.getContentLength(), -1);
+        assertFalse(entity.isRepeatable());
+        assertFalse(entity.isStreaming());
+
+        addStep("Write the entity to a stream", "The stream receives all the content, also the buffered part");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertEquals(out.toByteArray(), content);
+
+        addStep("Write the entity a second time", "The content can not be produced again");
+        try {
+            entity.writeTo(new ByteArrayOutputStream());
+            fail("The content should only be written once");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void failingContentWriterTest() {
+        addDescription("Tests that a failure of the content writer is passed on by the entity");
+        final IOException failure = new IOException("Could not write the content");
+        ContentWriterEntity entity = new ContentWriterEntity(new ContentWriter() {
+            @Override
+            public void writeContent(OutputStream out) throws IOException {
+                throw failure;
+            }
+        });
+
+        addStep("Write the entity to a stream", "The failure of the content writer is thrown");
+        try {
+            entity.writeTo(new ByteArrayOutputStream());
+            fail("The failure of the content writer should be thrown");
+        } catch (IOException e) {
+            assertSame(e, failure);
+        }
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void contentNotAvailableAsStreamTest() throws IOException {
+        addDescription("Tests that the content of the entity is only available by writing it");
+        ContentWriterEntity entity = new ContentWriterEntity(new ContentWriter() {
+            @Override
+            public void writeContent(OutputStream out) throws IOException {
+                out.write(1);
+            }
+        });
+        try {
+            entity.getContent();
+            fail("The content should not be available as a stream");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -31,10 +31,15 @@ import org.bitrepository.protocol.MessageContext;
 import org.bitrepository.settings.referencesettings.MessageCategory;
 import org.bitrepository.settings.referencesettings.MessageThreadPool;
 import org.bitrepository.settings.referencesettings.MessageThreadPools;
+import org.bitrepository.settings.referencesettings.RejectionPolicy;
 import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.InOrder;
 import org.testng.annotations.Test;
 
 import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class ReceivedMessageHandlerTest extends ExtendedTestCase {
 
@@ -53,7 +58,7 @@ public class ReceivedMessageHandlerTest extends ExtendedTestCase {
     public void parallelMessageDispatch() {
         addDescription("Tests that two messages can be handled in parallel in the default pool configuration.");
         addFixture("Create a ReceivedMessageHandler with a null configuration. This should create a " +
-                "ReceivedMessageHandler with a single CachedThreadPool.");
+                "ReceivedMessageHandler with a single default pool.");
         ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(
                 createMessageThreadPool(2, null, null, null)
         ));
@@ -77,7 +82,7 @@ public class ReceivedMessageHandlerTest extends ExtendedTestCase {
     public void manyMessageDispatch() {
         addDescription("Tests that many (50) messages can be handled in parallel in the default pool configuration.");
         addFixture("Create a ReceivedMessageHandler with a null configuration. This should create a " +
-                "ReceivedMessageHandler with a single CachedThreadPool.");
+                "ReceivedMessageHandler with a single default pool.");
         ReceivedMessageHandler handler = new ReceivedMessageHandler(null);
 
         addStep("Dispatch messages to 49 listeners, where the first 49 are blocking.",
@@ -302,6 +307,126 @@ public class ReceivedMessageHandlerTest extends ExtendedTestCase {
         verify(secondCollection1Listener, timeout(100)).onMessage(putFileRequest, null);
     }
 
+    @Test(groups = { "regressiontest" })
+    public void fullQueueDiscardTest() {
+        addDescription("Tests that messages are discarded and counted when the queue of a pool is full and the " +
+                "DISCARD policy is used.");
+        addFixture("Create a ReceivedMessageHandler with a single pool of size 1 with a queue of size 1.");
+        MessageThreadPool pool = createMessageThreadPool(1, null, null, null);
+        pool.setQueueSize(BigInteger.ONE);
+        pool.setRejectionPolicy(RejectionPolicy.DISCARD);
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(pool));
+        MessageThreadPoolMXBean poolStatistics = handler.getThreadPools().get(0);
+
+        addStep("Dispatch messages to three listeners, the first blocking.",
+                "The second message should be queued and the third should be rejected.");
+        BlockingMessageListener blockingListener = new BlockingMessageListener(mock(MessageListener.class));
+        MessageListener secondListener = mock(MessageListener.class);
+        MessageListener thirdListener = mock(MessageListener.class);
+        Message testMessage = new Message();
+        deliverAsynchronously(handler, testMessage, blockingListener, secondListener, thirdListener);
+        assertEquals(poolStatistics.getQueueDepth(), 1);
+        assertEquals(poolStatistics.getActiveThreads(), 1);
+        assertEquals(poolStatistics.getRejectedMessages(), 1);
+
+        addStep("Unblock the first listener", "The first two listeners should be notified, but not the third.");
+        blockingListener.unblock();
+        verify(blockingListener.listener, timeout(100)).onMessage(testMessage, null);
+        verify(secondListener, timeout(100)).onMessage(testMessage, null);
+        verifyZeroInteractions(thirdListener);
+        handler.close();
+        assertEquals(poolStatistics.getCompletedMessages(), 2);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void fullQueueCallerRunsTest() {
+        addDescription("Tests that messages are processed by the delivering thread when the queue of a pool is full " +
+                "and the CALLER_RUNS policy is used.");
+        addFixture("Create a ReceivedMessageHandler with a single pool of size 1 with a queue of size 1.");
+        MessageThreadPool pool = createMessageThreadPool(1, null, null, null);
+        pool.setQueueSize(BigInteger.ONE);
+        pool.setRejectionPolicy(RejectionPolicy.CALLER_RUNS);
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(pool));
+
+        addStep("Dispatch messages to two listeners, the first blocking.", "The second message should be queued.");
+        BlockingMessageListener blockingListener = new BlockingMessageListener(mock(MessageListener.class));
+        MessageListener secondListener = mock(MessageListener.class);
+        Message testMessage = new Message();
+        deliverAsynchronously(handler, testMessage, blockingListener, secondListener);
+        verifyZeroInteractions(secondListener);
+
+        addStep("Dispatch a message to a third listener.",
+                "The third listener should be notified by the delivering thread before deliver returns.");
+        MessageListener thirdListener = mock(MessageListener.class);
+        handler.deliver(thirdListener, testMessage, null);
+        verify(thirdListener).onMessage(testMessage, null);
+        assertEquals(handler.getThreadPools().get(0).getRejectedMessages(), 1);
+
+        blockingListener.unblock();
+        verify(secondListener, timeout(100)).onMessage(testMessage, null);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void fullQueueBlockTest() throws Exception {
+        addDescription("Tests that the delivering thread waits for room in the queue when the queue of a pool is " +
+                "full and the default policy is used, and that the order of the messages is kept.");
+        addFixture("Create a ReceivedMessageHandler with a single pool of size 1 with a queue of size 1.");
+        MessageThreadPool pool = createMessageThreadPool(1, null, null, null);
+        pool.setQueueSize(BigInteger.ONE);
+        final ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(pool));
+
+        addStep("Dispatch messages to two listeners, the first blocking.", "The second message should be queued.");
+        BlockingMessageListener blockingListener = new BlockingMessageListener(mock(MessageListener.class));
+        final MessageListener secondListener = mock(MessageListener.class);
+        final Message testMessage = new Message();
+        deliverAsynchronously(handler, testMessage, blockingListener, secondListener);
+
+        addStep("Dispatch a message to a third listener from another thread.",
+                "The delivering thread should wait, and the third listener should not be notified.");
+        final MessageListener thirdListener = mock(MessageListener.class);
+        Thread deliveringThread = new Thread() {
+            @Override
+            public void run() {
+                handler.deliver(thirdListener, testMessage, null);
+            }
+        };
+        deliveringThread.start();
+        deliveringThread.join(200);
+        assertTrue(deliveringThread.isAlive());
+        verifyZeroInteractions(secondListener, thirdListener);
+
+        addStep("Unblock the first listener", "The second and third listeners should be notified in order.");
+        blockingListener.unblock();
+        deliveringThread.join(1000);
+        assertFalse(deliveringThread.isAlive());
+        verify(thirdListener, timeout(100)).onMessage(testMessage, null);
+        InOrder inOrder = inOrder(secondListener, thirdListener);
+        inOrder.verify(secondListener).onMessage(testMessage, null);
+        inOrder.verify(thirdListener).onMessage(testMessage, null);
+        handler.close();
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void closeDrainsCollectionPoolsTest() throws Exception {
+        addDescription("Tests that closing the handler waits for the messages in the collection specific pools to " +
+                "be processed.");
+        addFixture("Create a ReceivedMessageHandler with a pool of size 1 for Collection1.");
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(
+                createMessageThreadPool(1, new String[] {"Collection1"}, null, null)
+        ));
+
+        addStep("Dispatch two Collection1 messages to a slow listener and close the handler.",
+                "Both messages should have been processed when close returns.");
+        MessageListener listener = mock(MessageListener.class);
+        SlowMessageListener slowListener = new SlowMessageListener(listener);
+        Message collection1Message = new Message();
+        collection1Message.setCollectionID("Collection1");
+        handler.deliver(slowListener, collection1Message, null);
+        handler.deliver(slowListener, collection1Message, null);
+        handler.close();
+        verify(listener, times(2)).onMessage(collection1Message, null);
+    }
+
     private BlockingMessageListener[] createBlockingMessageListeners(int number) {
         BlockingMessageListener[] listeners = new BlockingMessageListener[number];
         for (int i=0; i<number;i++) {
@@ -320,6 +445,22 @@ public class ReceivedMessageHandlerTest extends ExtendedTestCase {
     }
 
 
+    private class SlowMessageListener implements MessageListener {
+        final MessageListener listener;
+
+        private SlowMessageListener(MessageListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onMessage(Message message, MessageContext messageContext) {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {}
+            listener.onMessage(message, messageContext);
+        }
+    }
+
     private class BlockingMessageListener implements MessageListener {
         final MessageListener listener;
 
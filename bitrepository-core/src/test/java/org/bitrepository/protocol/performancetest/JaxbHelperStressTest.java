@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.performancetest;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.bind.JAXBContext;
+
+import org.apache.activemq.util.ByteArrayInputStream;
+import org.bitrepository.bitrepositorymessages.GetChecksumsFinalResponse;
+import org.bitrepository.bitrepositorymessages.GetChecksumsProgressResponse;
+import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetChecksumsRequest;
+import org.bitrepository.bitrepositorymessages.Message;
+import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.protocol.message.ExampleMessageFactory;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Measures the number of messages per second the JaxbHelper can serialize, validate and load, compared to creating
+ * a new JAXBContext for each message as was done before the contexts were cached.
+ */
+public class JaxbHelperStressTest extends ExtendedTestCase {
+    /** The number of times each message is sent through the serialize, validate, load cycle. */
+    private static final int NUMBER_OF_ITERATIONS = 2000;
+    /** The number of iterations to run before measuring, to let the JIT settle. */
+    private static final int NUMBER_OF_WARMUP_ITERATIONS = 200;
+
+    private JaxbHelper jaxbHelper;
+    private Message[] messages;
+
+    @BeforeClass(alwaysRun = true)
+    public void setup() throws Exception {
+        jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        messages = new Message[] {
+                ExampleMessageFactory.createMessage(IdentifyPillarsForGetChecksumsRequest.class),
+                ExampleMessageFactory.createMessage(GetChecksumsProgressResponse.class),
+                ExampleMessageFactory.createMessage(GetChecksumsFinalResponse.class)};
+    }
+
+    @Test( groups = {"StressTest"} )
+    public void compareCachedAndUncachedJaxbHandling() throws Exception {
+        addDescription("Compares the message throughput of the cached JaxbHelper with creating a new JAXBContext "
+                + "for each message.");
+        for (Message message : messages) {
+            String messageName = message.getClass().getSimpleName();
+            addStep("Run the cycle for " + messageName + " with a new JAXBContext per call",
+                    "Should give the baseline message rate.");
+            runUncached(message, NUMBER_OF_WARMUP_ITERATIONS);
+            long uncachedRate = messagesPerSecond(NUMBER_OF_ITERATIONS, runUncached(message, NUMBER_OF_ITERATIONS));
+
+            addStep("Run the cycle for " + messageName + " through the JaxbHelper",
+                    "Should give a higher message rate than the baseline.");
+            runCached(message, NUMBER_OF_WARMUP_ITERATIONS);
+            long cachedRate = messagesPerSecond(NUMBER_OF_ITERATIONS, runCached(message, NUMBER_OF_ITERATIONS));
+
+            System.out.println(messageName + ": " + uncachedRate + " msg/s uncached, " + cachedRate
+                    + " msg/s cached.");
+        }
+    }
+
+    /**
+     * @return The time in nanoseconds it took to run the iterations through the JaxbHelper.
+     */
+    private long runCached(Message message, int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            String xml = jaxbHelper.serializeToXml(message);
+            jaxbHelper.validate(new ByteArrayInputStream(xml.getBytes()));
+            jaxbHelper.loadXml(message.getClass(), new ByteArrayInputStream(xml.getBytes()));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return The time in nanoseconds it took to run the iterations with a new JAXBContext per call.
+     */
+    private long runUncached(Message message, int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            JAXBContext.newInstance(message.getClass()).createMarshaller().marshal(message, baos);
+            String xml = baos.toString();
+            jaxbHelper.validate(new ByteArrayInputStream(xml.getBytes()));
+            JAXBContext.newInstance(message.getClass()).createUnmarshaller().unmarshal(
+                    new ByteArrayInputStream(xml.getBytes()));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long messagesPerSecond(int iterations, long nanos) {
+        return iterations * 1000000000L / Math.max(nanos, 1L);
+    }
+}
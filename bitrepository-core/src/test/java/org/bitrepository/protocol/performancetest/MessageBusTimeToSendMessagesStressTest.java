@@ -24,6 +24,7 @@
  */
 package org.bitrepository.protocol.performancetest;
 
+import java.math.BigInteger;
 import java.util.Date;
 import org.bitrepository.bitrepositorymessages.AlarmMessage;
 import org.bitrepository.bitrepositorymessages.Message;
@@ -38,6 +39,8 @@ import org.bitrepository.protocol.messagebus.MessageBus;
 import org.bitrepository.protocol.messagebus.MessageListener;
 import org.bitrepository.protocol.security.DummySecurityManager;
 import org.bitrepository.protocol.security.SecurityManager;
+import org.bitrepository.settings.referencesettings.GeneralSettings;
+import org.bitrepository.settings.referencesettings.MessageBusSettings;
 import org.bitrepository.settings.repositorysettings.MessageBusConfiguration;
 import org.jaccept.structure.ExtendedTestCase;
 import org.testng.Assert;
@@ -179,6 +182,86 @@ public class MessageBusTimeToSendMessagesStressTest extends ExtendedTestCase {
         }
     }
 
+    /**
+     * Compares the time it takes for many threads to send messages through a single message bus, when the bus
+     * has a single producer session and when it has a producer session for each thread.
+     * @throws Exception
+     */
+    @Test( groups = {"StressTest"} )
+    public void SendManyMessagesConcurrentlyThroughOneBus() throws Exception {
+        addDescription("Tests how much the pool of producer sessions improves the throughput when sending from many "
+                + "threads through one message bus.");
+        addStep("Define constants", "This should not be possible to fail.");
+        QUEUE += "-" + (new Date()).getTime();
+
+        addStep("Make configuration for the messagebus and define the local broker.", "Both should be created.");
+        MessageBusConfiguration conf = MessageBusConfigurationFactory.createEmbeddedMessageBusConfiguration();
+        LocalActiveMQBroker broker = new LocalActiveMQBroker(conf);
+
+        try {
+            addStep("Starting the broker.", "Should be allowed");
+            broker.start();
+
+            addStep("Send the messages from " + NUMBER_OF_SENDERS + " threads through a bus with one producer "
+                    + "session", "Gives the single session throughput");
+            long singleSessionTime = timeConcurrentSending(1);
+
+            addStep("Send the messages from " + NUMBER_OF_SENDERS + " threads through a bus with " + NUMBER_OF_SENDERS
+                    + " producer sessions", "Should have higher throughput than the single session");
+            long pooledSessionTime = timeConcurrentSending(NUMBER_OF_SENDERS);
+
+            System.out.println("Sent '" + NUMBER_OF_MESSAGES + "' messages from " + NUMBER_OF_SENDERS + " threads in "
+                    + singleSessionTime + " ms with one producer session, and in " + pooledSessionTime + " ms with "
+                    + NUMBER_OF_SENDERS + " producer sessions.");
+        } finally {
+            broker.stop();
+        }
+    }
+
+    /**
+     * Sends the messages from NUMBER_OF_SENDERS threads through a single message bus.
+     * @param producerPoolSize The number of producer sessions the message bus should use.
+     * @return The time in milliseconds it took to send all the messages.
+     */
+    private long timeConcurrentSending(int producerPoolSize) throws Exception {
+        if (settings.getReferenceSettings().getGeneralSettings() == null) {
+            settings.getReferenceSettings().setGeneralSettings(new GeneralSettings());
+        }
+        MessageBusSettings messageBusSettings = new MessageBusSettings();
+        messageBusSettings.setProducerPoolSize(BigInteger.valueOf(producerPoolSize));
+        settings.getReferenceSettings().getGeneralSettings().setMessageBusSettings(messageBusSettings);
+        final MessageBus bus = new ActiveMQMessageBus(settings, new DummySecurityManager());
+        try {
+            Thread[] senders = new Thread[NUMBER_OF_SENDERS];
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < NUMBER_OF_SENDERS; i++) {
+                final String id = "#" + i;
+                senders[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            AlarmMessage message = ExampleMessageFactory.createMessage(AlarmMessage.class);
+                            message.setDestination(QUEUE);
+                            for (int j = 0; j < NUMBER_OF_MESSAGES / NUMBER_OF_SENDERS; j++) {
+                                message.setCorrelationID(id + ":" + j);
+                                bus.sendMessage(message);
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+                senders[i].start();
+            }
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            return System.currentTimeMillis() - start;
+        } finally {
+            bus.close();
+        }
+    }
+
     /**
      * Sends the wanted amount of messages.
      * @param conf The configuration for the messagebus, where the messages should be sent.
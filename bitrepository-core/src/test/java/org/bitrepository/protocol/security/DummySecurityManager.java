@@ -41,24 +41,52 @@ public class DummySecurityManager implements SecurityManager {
         return null;
     }
 
+    @Override
+    public SignerContext verifyMessage(String message, String signature) throws MessageAuthenticationException {
+        return SignerContext.UNIDENTIFIED;
+    }
+
+    @Override
+    public SignerContext verifyMessage(byte[] messageData, String signature) throws MessageAuthenticationException {
+        return SignerContext.UNIDENTIFIED;
+    }
+
     @Override
     public String signMessage(String message) throws MessageSigningException {
         // Safe empty implementation
         return null;
     }
 
+    @Override
+    public String signMessage(byte[] messageData) throws MessageSigningException {
+        // Safe empty implementation
+        return null;
+    }
+
     @Override
     public void authorizeOperation(String operationType, String messageData, String signature) 
             throws OperationAuthorizationException {
         // Safe empty implementation
     }
 
+    @Override
+    public void authorizeOperation(String operationType, SignerContext signer)
+            throws OperationAuthorizationException {
+        // Safe empty implementation
+    }
+
     @Override
     public void authorizeCertificateUse(String certificateUser, String messageData, String signature)
             throws CertificateUseException {
         // Safe empty implementation
     }
 
+    @Override
+    public void authorizeCertificateUse(String certificateUser, SignerContext signer)
+            throws CertificateUseException {
+        // Safe empty implementation
+    }
+
     @Override
     public String getCertificateFingerprint(SignerId signer) throws UnregisteredPermissionException {
         return null;
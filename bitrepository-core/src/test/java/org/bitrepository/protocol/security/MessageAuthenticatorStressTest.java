@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.security;
+
+import java.util.Arrays;
+
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.settings.repositorysettings.Certificate;
+import org.bitrepository.settings.repositorysettings.ComponentIDs;
+import org.bitrepository.settings.repositorysettings.Operation;
+import org.bitrepository.settings.repositorysettings.OperationPermission;
+import org.bitrepository.settings.repositorysettings.Permission;
+import org.bitrepository.settings.repositorysettings.PermissionSet;
+import org.bouncycastle.util.encoders.Base64;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Measures the per message verification latency of the BasicMessageAuthenticator with and without the verifier
+ * cache, for message sizes ranging from identify requests to large final responses.
+ */
+public class MessageAuthenticatorStressTest extends ExtendedTestCase {
+    /** The message sizes to measure in bytes. */
+    private static final int[] MESSAGE_SIZES = {1024, 10 * 1024, 100 * 1024, 1024 * 1024};
+    /** The number of verifications to measure for each message size. */
+    private static final int NUMBER_OF_VERIFICATIONS = 500;
+    /** The number of verifications to run before measuring, to let the JIT settle. */
+    private static final int NUMBER_OF_WARMUP_VERIFICATIONS = 50;
+
+    private SecurityManager securityManager;
+    private PermissionStore permissionStore;
+
+    @BeforeClass(alwaysRun = true)
+    public void setUp() throws Exception {
+        permissionStore = new PermissionStore();
+        Settings settings = TestSettingsProvider.reloadSettings(getClass().getSimpleName());
+        settings.getRepositorySettings().getProtocolSettings().setRequireMessageAuthentication(true);
+        settings.getRepositorySettings().setPermissionSet(SecurityTestConstants.getDefaultPermissions());
+        securityManager = new BasicSecurityManager(settings.getRepositorySettings(),
+                SecurityTestConstants.getKeyFile(),
+                new BasicMessageAuthenticator(permissionStore),
+                new BasicMessageSigner(),
+                new BasicOperationAuthorizor(permissionStore),
+                permissionStore,
+                SecurityTestConstants.getComponentID());
+        permissionStore.loadPermissions(getSigningCertPermission(), SecurityTestConstants.getComponentID());
+    }
+
+    @Test( groups = {"StressTest"} )
+    public void compareCachedAndUncachedVerification() throws Exception {
+        addDescription("Compares the verification latency with and without caching the signer verifiers.");
+        MessageAuthenticator uncachedAuthenticator = new BasicMessageAuthenticator(permissionStore, 0);
+        MessageAuthenticator cachedAuthenticator = new BasicMessageAuthenticator(permissionStore);
+
+        for (int size : MESSAGE_SIZES) {
+            addStep("Sign a message of " + size + " bytes and verify it repeatedly",
+                    "The cached verification should have lower latency than the uncached.");
+            byte[] message = createMessage(size);
+            byte[] signature = Base64.decode(securityManager.signMessage(
+                    new String(message, SecurityModuleConstants.defaultEncodingType)));
+
+            verify(uncachedAuthenticator, message, signature, NUMBER_OF_WARMUP_VERIFICATIONS);
+            long uncachedNanos = verify(uncachedAuthenticator, message, signature, NUMBER_OF_VERIFICATIONS);
+            verify(cachedAuthenticator, message, signature, NUMBER_OF_WARMUP_VERIFICATIONS);
+            long cachedNanos = verify(cachedAuthenticator, message, signature, NUMBER_OF_VERIFICATIONS);
+
+            System.out.println(size + " bytes: " + (uncachedNanos / NUMBER_OF_VERIFICATIONS / 1000)
+                    + " us per message uncached, " + (cachedNanos / NUMBER_OF_VERIFICATIONS / 1000)
+                    + " us per message cached.");
+        }
+    }
+
+    /**
+     * @return The time in nanoseconds it took to verify the message the given number of times.
+     */
+    private long verify(MessageAuthenticator authenticator, byte[] message, byte[] signature, int verifications)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < verifications; i++) {
+            authenticator.authenticateMessage(message, signature);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private byte[] createMessage(int size) {
+        byte[] message = new byte[size];
+        Arrays.fill(message, (byte) 'a');
+        return message;
+    }
+
+    private PermissionSet getSigningCertPermission() throws Exception {
+        PermissionSet permissions = new PermissionSet();
+        ComponentIDs allowedUsers = new ComponentIDs();
+        allowedUsers.getIDs().add(SecurityTestConstants.getAllowedCertificateUser());
+        Certificate signingCert = new Certificate();
+        signingCert.setCertificateData(SecurityTestConstants.getSigningCertificate()
+                .getBytes(SecurityModuleConstants.defaultEncodingType));
+        signingCert.setAllowedCertificateUsers(allowedUsers);
+
+        Permission signingCertPerm = new Permission();
+        signingCertPerm.setCertificate(signingCert);
+        OperationPermission opPerm = new OperationPermission();
+        opPerm.setOperation(Operation.ALL);
+        signingCertPerm.getOperationPermission().add(opPerm);
+        permissions.getPermission().add(signingCertPerm);
+        return permissions;
+    }
+}
@@ -32,6 +32,7 @@ import org.bouncycastle.cms.SignerId;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.util.encoders.Base64;
 import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -88,6 +89,14 @@ public class PermissionStoreTest extends ExtendedTestCase  {
         assertEquals(positiveCertificate, certificateFromStore);
     }
     
+    @Test(groups = {"regressiontest"})
+    public void permissionsVersionTest() throws Exception {
+        addDescription("Tests that the permissions version changes when permissions are loaded.");
+        int version = permissionStore.getPermissionsVersion();
+        permissionStore.loadPermissions(SecurityTestConstants.getDefaultPermissions(), componentID);
+        Assert.assertNotEquals(permissionStore.getPermissionsVersion(), version);
+    }
+
     //@Test(groups = {"regressiontest"})
     public void certificatePermissionCheckTest() throws Exception {
         addDescription("Tests that a certificate only allows for the expected permission.");
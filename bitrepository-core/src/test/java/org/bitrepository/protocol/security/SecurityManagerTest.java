@@ -188,6 +188,38 @@ public class SecurityManagerTest extends ExtendedTestCase  {
         }  
     }
     
+    @Test(groups = {"regressiontest"})
+    public void verifiedSignerRoundtripTest() throws Exception {
+        addDescription("Tests that a message can be authenticated and authorized with a single parse of the signature.");
+        addStep("Sign a chunk of data.", "Data is signed succesfully");
+        String signature = securityManager.signMessage(SecurityTestConstants.getTestData());
+        permissionStore.loadPermissions(getSigningCertPermission(), SecurityTestConstants.getComponentID());
+
+        addStep("Verify the message", "The returned context identifies the authenticated signer.");
+        SignerContext signer = securityManager.verifyMessage(SecurityTestConstants.getTestData(), signature);
+        Assert.assertTrue(signer.isAuthenticated());
+        Assert.assertNotNull(signer.getAuthenticatedSigner());
+
+        addStep("Authorize the certificate use and operation through the context.",
+                "The registered component and operation is allowed, the unregistered component is not.");
+        securityManager.authorizeCertificateUse(SecurityTestConstants.getAllowedCertificateUser(), signer);
+        securityManager.authorizeOperation(GetFileRequest.class.getSimpleName(), signer);
+        try {
+            securityManager.authorizeCertificateUse(SecurityTestConstants.getDisallowedCertificateUser(), signer);
+            Assert.fail("SecurityManager did not throw the expected CertificateUseException");
+        } catch (CertificateUseException e) {
+
+        }
+
+        addStep("Verify the message with corrupt data", "Authentication fails.");
+        try {
+            securityManager.verifyMessage(SecurityTestConstants.getTestData() + "foobar", signature);
+            Assert.fail("Authentication did not fail as expected!");
+        } catch (MessageAuthenticationException e) {
+            log.info(e.getMessage());
+        }
+    }
+
     private PermissionSet getSigningCertPermission() throws UnsupportedEncodingException {
         PermissionSet permissions = new PermissionSet();
         ComponentIDs allowedUsers = new ComponentIDs();
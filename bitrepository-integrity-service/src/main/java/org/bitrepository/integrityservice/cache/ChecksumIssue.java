@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache;
+
+/**
+ * Class to carry a checksum issue for a file on a pillar, together with the classification of the inconsistency 
+ * of the checksums of the file.
+ * @see org.bitrepository.integrityservice.cache.database.IntegrityDAO#findChecksumIssues(String) 
+ */
+public class ChecksumIssue {
+    /**
+     * The classifications of the inconsistency of the checksums of a file.
+     */
+    public enum Classification {
+        /** A single pillar deviates from the checksum, which all the other pillars (at least 2) agree upon.*/
+        DEVIATING_PILLAR,
+        /** No majority of the pillars agree upon the checksum, thus all the pillars have the issue.*/
+        NO_MAJORITY
+    }
+    
+    /** The ID of the file.*/
+    private final String fileID;
+    /** The ID of the pillar with the issue.*/
+    private final String pillarID;
+    /** The classification of the inconsistency.*/
+    private final Classification classification;
+    
+    public ChecksumIssue(String fileID, String pillarID, Classification classification) {
+        this.fileID = fileID;
+        this.pillarID = pillarID;
+        this.classification = classification;
+    }
+    
+    public String getFileID() {
+        return fileID;
+    }
+    
+    public String getPillarID() {
+        return pillarID;
+    }
+    
+    public Classification getClassification() {
+        return classification;
+    }
+    
+    @Override
+    public String toString() {
+        return "ChecksumIssue [fileID=" + fileID + ", pillarID=" + pillarID + ", classification=" 
+                + classification + "]";
+    }
+}
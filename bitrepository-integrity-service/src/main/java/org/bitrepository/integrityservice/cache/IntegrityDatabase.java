@@ -29,6 +29,7 @@ import java.util.Map;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
 import org.bitrepository.common.settings.Settings;
+import org.bitrepository.integrityservice.cache.database.ChecksumIssueIterator;
 import org.bitrepository.integrityservice.cache.database.IntegrityDAO;
 import org.bitrepository.integrityservice.cache.database.IntegrityDAOFactory;
 import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
@@ -89,6 +90,17 @@ public class IntegrityDatabase implements IntegrityModel {
         return store.findFilesWithMissingCopies(collectionID, expectedCopies, firstIndex, maxResults);
     }
     
+    @Override
+    public void updateFilesMissingOnPillar(String collectionID, String pillarID, Date cutoffDate, 
+            Date changedSince) {
+        store.updateFilesMissingOnPillar(collectionID, pillarID, cutoffDate, changedSince);
+    }
+    
+    @Override
+    public IntegrityIssueIterator findFilesMissingOnPillar(String collectionID, String pillarID) {
+        return store.findFilesMissingOnPillar(collectionID, pillarID);
+    }
+    
     @Override
     public void deleteFileIdEntry(String collectionID, String pillarID, String fileID) {
         store.removeFile(collectionID, pillarID, fileID);
@@ -114,6 +126,26 @@ public class IntegrityDatabase implements IntegrityModel {
         return store.findFilesWithChecksumInconsistincies(collectionID);
     }
 
+    @Override
+    public void updateChecksumIssues(String collectionID, Date changedSince) {
+        store.updateChecksumIssues(collectionID, changedSince);
+    }
+
+    @Override
+    public ChecksumIssueIterator getChecksumIssues(String collectionID) {
+        return store.findChecksumIssues(collectionID);
+    }
+
+    @Override
+    public Date getDateForLatestEvaluation(String collectionID) {
+        return store.getDateForLatestEvaluation(collectionID);
+    }
+
+    @Override
+    public void setDateForLatestEvaluation(String collectionID, Date evaluationDate) {
+        store.setDateForLatestEvaluation(collectionID, evaluationDate);
+    }
+
     @Override
     public Date getDateForNewestFileEntryForCollection(String collectionID) {
         return store.getLatestFileDateInCollection(collectionID);
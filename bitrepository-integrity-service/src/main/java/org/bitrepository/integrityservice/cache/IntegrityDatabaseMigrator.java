@@ -51,8 +51,10 @@ public class IntegrityDatabaseMigrator extends DatabaseMigrator {
     private static final String UPDATE_SCRIPT_VERSION_5_TO_6 = "sql/derby/integrityDB5to6Migration.sql";
     /** The name of the update script for version 6 to 7.*/
     private static final String UPDATE_SCRIPT_VERSION_6_TO_7 = "sql/derby/integrityDB6to7migration.sql";
+    /** The name of the update script for version 7 to 8.*/
+    private static final String UPDATE_SCRIPT_VERSION_7_TO_8 = "sql/derby/integrityDB7to8migration.sql";
     /** The current version of the database. */
-    private final Integer currentVersion = 7;
+    private final Integer currentVersion = 8;
     
     /**
      * Constructor.
@@ -101,6 +103,10 @@ public class IntegrityDatabaseMigrator extends DatabaseMigrator {
             log.warn("Migrating integrityDB from version 6 to 7");
             migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_6_TO_7);
         }
+        if(versions.get(DATABASE_VERSION_ENTRY) < 8) {
+            log.warn("Migrating integrityDB from version 7 to 8");
+            migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_7_TO_8);
+        }
     }
 
     @Override
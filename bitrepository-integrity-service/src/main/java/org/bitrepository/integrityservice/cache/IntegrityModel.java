@@ -31,6 +31,7 @@ import java.util.Map;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.integrityservice.cache.database.ChecksumIssueIterator;
 import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
 import org.bitrepository.integrityservice.statistics.StatisticsCollector;
 
@@ -91,6 +92,24 @@ public interface IntegrityModel {
      */
     IntegrityIssueIterator getFilesOnPillar(String pillarID, long firstIndex, long maxResults, String collectionID);
     
+    /**
+     * Evaluates which files are missing on a given pillar, though another pillar has had the file since before 
+     * a given date. The result replaces the previous result for the evaluated files.
+     * @param collectionID The ID of the collection in which to look for missing files
+     * @param pillarID The pillar on which to look for missing files
+     * @param cutoffDate The date the earliest copy of a file must be older than for the file to be considered missing
+     * @param changedSince Only evaluate the files changed since this date. If null, all files are evaluated.
+     */
+    void updateFilesMissingOnPillar(String collectionID, String pillarID, Date cutoffDate, Date changedSince);
+    
+    /**
+     * Retrieves the files which were found missing on a given pillar by the latest evaluation.
+     * @param collectionID The ID of the collection in which to look for missing files
+     * @param pillarID The pillar on which to look for missing files
+     * @return The IntegrityIssueIterator of file ids for the files missing on the pillar.
+     */
+    IntegrityIssueIterator findFilesMissingOnPillar(String collectionID, String pillarID);
+    
     /**
      * An IntegrityIssueIterator for files with less than the expected number of copies, restricted by first index and max results.
      * @param collectionID The ID of the collection to get missing files from
@@ -146,6 +165,37 @@ public interface IntegrityModel {
      * @return The IntegrityIssueIterator of file ids for the files with inconsistent checksums.
      */
     IntegrityIssueIterator getFilesWithInconsistentChecksums(String collectionID);
+    
+    /**
+     * Evaluates the checksum issues for the files, where the pillars does not agree about the checksums. 
+     * The issues are classified in the database, so the file infos need not be retrieved for each file.
+     * The result replaces the previous result for the evaluated files.
+     * @param collectionID The ID of the collection in which to evaluate the files.
+     * @param changedSince Only evaluate the files changed since this date. If null, all files are evaluated.
+     */
+    void updateChecksumIssues(String collectionID, Date changedSince);
+    
+    /**
+     * Retrieves the checksum issues found by the latest evaluation.
+     * @param collectionID The ID of the collection in which to get files from.
+     * @return The ChecksumIssueIterator of the checksum issues, ordered by file id.
+     */
+    ChecksumIssueIterator getChecksumIssues(String collectionID);
+    
+    /**
+     * Retrieves the date of the latest integrity evaluation of the given collection.
+     * @param collectionID The ID of the collection
+     * @return The date of the latest evaluation, or null if the collection has not been evaluated.
+     */
+    Date getDateForLatestEvaluation(String collectionID);
+    
+    /**
+     * Registers the date of the latest integrity evaluation of the given collection.
+     * The files changed since this date are evaluated by the next incremental evaluation.
+     * @param collectionID The ID of the collection
+     * @param evaluationDate The date the evaluation started.
+     */
+    void setDateForLatestEvaluation(String collectionID, Date evaluationDate);
       
     /**
      * Retrieves the date for the latest file entry for a given collection.
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.cache.database;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.bitrepository.integrityservice.cache.ChecksumIssue;
+import org.bitrepository.integrityservice.cache.ChecksumIssue.Classification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class to handle iteration over large set of checksum issues. The query must deliver the fileID, the pillarID and 
+ * whether the pillar is a single deviating pillar (1) or not (0), ordered by fileID.
+ */
+public class ChecksumIssueIterator implements Closeable {
+    
+    /** The log.*/
+    private Logger log = LoggerFactory.getLogger(getClass());
+    private ResultSet issueResultSet = null;
+    private Connection conn = null;
+    private final PreparedStatement ps;
+    
+    public ChecksumIssueIterator(PreparedStatement ps) {
+        this.ps = ps;
+    }
+    
+    /**
+     * Method to explicitly close the ResultSet in the ChecksumIssueIterator 
+     */
+    public void close() {
+        if(issueResultSet != null) {
+            try {
+                issueResultSet.close();
+            } catch (SQLException ignored) {}
+        }
+        
+        if(ps != null) {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {}
+        }
+        try {
+            if (conn != null && !conn.isClosed()) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+            conn = null;
+        } catch (SQLException ignored) {}
+    }
+    
+    /**
+     * Method to return the next ChecksumIssue in the ResultSet.
+     * When no more issues are available, null is returned and the internal ResultSet closed. 
+     * @return The next ChecksumIssue available in the ResultSet, or null if no more issues are available. 
+     * @throws IllegalStateException In case of a sql error.
+     */
+    public ChecksumIssue getNextChecksumIssue() throws IllegalStateException {
+        try {
+            ChecksumIssue issue = null;
+            if(issueResultSet == null) {
+                conn = ps.getConnection();
+                conn.setAutoCommit(false);
+                ps.setFetchSize(100);
+                long tStart = System.currentTimeMillis();
+                log.debug("Executing query to get checksum issues resultset");
+                issueResultSet = ps.executeQuery();
+                log.debug("Finished executing checksum issues query, it took: " 
+                        + (System.currentTimeMillis() - tStart) + "ms");
+            }
+            if(issueResultSet.next()) {
+                Classification classification = issueResultSet.getInt(3) == 1 ? Classification.DEVIATING_PILLAR 
+                        : Classification.NO_MAJORITY;
+                issue = new ChecksumIssue(issueResultSet.getString(1), issueResultSet.getString(2), classification);
+            } else {
+                close();
+            }
+    
+            return issue;
+        } catch (Exception e) {
+            close();
+            throw new IllegalStateException("Could not extract the wanted checksum issues", e);
+        }
+    }
+}
@@ -39,41 +39,16 @@ import org.slf4j.LoggerFactory;
  * Class to handle the update of fileIDs information in the integrity database. 
  * Does this by batching of sql statements for performance.  
  * 
- *  Implementation detail: Postgres will first feature 'upsert' functionality in version 9.5. 
- *  This means that we currently can't use the functionality, and is forced
- *  to use the two call way. I.e. the conditional update, the conditional insert 
- *  
+ * Each checksum is inserted or updated by a single database specific 'upsert' statement, 
+ * see the implementations in {@link DerbyIntegrityDAO} and {@link PostgresIntegrityDAO}.
+ * 
  *  When updating checksums, if a file was not known by the database it is inserted and the 
  *  timestamp for the file is set to the checksum timestamp. 
  *  This should be no problem since 1) it will get overwritten the next time the files is reported
  *  and 2) the pillar calculated a checksum meaning that at that time the pillar must have had the 
  *  file.  
  */
-public class ChecksumUpdater {
-
-    /**
-     * SQL for conditional insert of the fileID in the files table.
-     * The insert is only performed when the (file_id, collection_key) 
-     * tuple is not already found in the database  
-     */
-    private final String insertFileInfoWithChecksumSql = "INSERT INTO fileinfo ("
-            + " collectionID, pillarID, fileID, file_timestamp, last_seen_getfileids,"
-            + " checksum, checksum_timestamp, last_seen_getchecksums)"
-            + " (SELECT collectionID, ?, ?, ?, ?, ?, ?, ? FROM collections"
-                + " WHERE collectionID = ?"
-                + " AND NOT EXISTS ("
-                    + " SELECT * FROM fileinfo "
-                    + " WHERE fileID = ?"
-                    + " AND collectionID = ?"
-                    + " AND pillarID = ?))";
-
-    private final String updateChecksumSql = "UPDATE fileinfo "
-            + "	SET checksum = ?,"
-            + " checksum_timestamp = ?,"
-            + " last_seen_getchecksums = ?"
-            + " WHERE fileID = ?"
-            + "	AND collectionID = ?"
-            + " AND pillarID = ?";	
+public abstract class ChecksumUpdater {
 
     private final String insertLatestChecksumTime = "INSERT INTO collection_progress "
             + "(collectionID, pillarID, latest_checksum_timestamp)"
@@ -94,12 +69,11 @@ public class ChecksumUpdater {
     private final String collectionID;
     private final String pillar;
     private final Connection conn;
-    private PreparedStatement insertFileInfoPS;
-    private PreparedStatement updateChecksumPS;
+    private PreparedStatement upsertChecksumPS;
     private PreparedStatement insertLatestChecksumTimePS;
     private PreparedStatement updateLatestChecksumTimePS;
 
-    public ChecksumUpdater(String pillar, Connection dbConnection, String collectionID) {
+    protected ChecksumUpdater(String pillar, Connection dbConnection, String collectionID) {
         this.collectionID = collectionID;
         this.pillar = pillar;
         conn = dbConnection;
@@ -107,8 +81,7 @@ public class ChecksumUpdater {
 
     private void init() throws SQLException {
         conn.setAutoCommit(false);
-        insertFileInfoPS = conn.prepareStatement(insertFileInfoWithChecksumSql);
-        updateChecksumPS = conn.prepareStatement(updateChecksumSql);
+        upsertChecksumPS = conn.prepareStatement(getUpsertChecksumSql());
         insertLatestChecksumTimePS = conn.prepareStatement(insertLatestChecksumTime);
         updateLatestChecksumTimePS = conn.prepareStatement(updateLatestChecksumTime);
     }
@@ -125,8 +98,7 @@ public class ChecksumUpdater {
             try {
                 Date maxDate = new Date(0);
                 for(ChecksumDataForChecksumSpecTYPE csData : data) {
-                    updateChecksum(csData);
-                    addFileInfoWithChecksum(csData);
+                    upsertChecksum(csData);
                     maxDate = TimeUtils.getMaxDate(maxDate, 
                             CalendarUtils.convertFromXMLGregorianCalendar(csData.getCalculationTimestamp()));                	
                 }
@@ -142,35 +114,35 @@ public class ChecksumUpdater {
         }
     } 
 
-    private void addFileInfoWithChecksum(ChecksumDataForChecksumSpecTYPE item) throws SQLException {
-        long calculationTime = CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp()).getTime();
-
-        Date now = new Date();
-        insertFileInfoPS.setString(1, pillar);
-        insertFileInfoPS.setString(2, item.getFileID());
-        insertFileInfoPS.setLong(3, calculationTime);
-        insertFileInfoPS.setLong(4, now.getTime());
-        insertFileInfoPS.setString(5, Base16Utils.decodeBase16(item.getChecksumValue()));
-        insertFileInfoPS.setLong(6, calculationTime);
-        insertFileInfoPS.setLong(7, now.getTime());
-        insertFileInfoPS.setString(8, collectionID);
-        insertFileInfoPS.setString(9, item.getFileID());
-        insertFileInfoPS.setString(10, collectionID);
-        insertFileInfoPS.setString(11, pillar);
-        insertFileInfoPS.addBatch();
-    }
+    /**
+     * @return The SQL for updating the checksum of the file in the fileinfo table, or inserting the file with the 
+     * checksum if it is not already there. The file timestamp of an inserted file is the calculation time of the 
+     * checksum, and it is seen on the list of fileIDs at the same time as on the list of checksums. The file is only 
+     * inserted, if the collection exists.
+     */
+    protected abstract String getUpsertChecksumSql();
+    
+    /**
+     * Sets the parameters of the upsert statement from {@link #getUpsertChecksumSql()} for a single checksum.
+     * @param upsertPS The upsert statement.
+     * @param collectionID The ID of the collection.
+     * @param pillarID The ID of the pillar.
+     * @param fileID The ID of the file.
+     * @param checksum The checksum of the file.
+     * @param calculationTime The calculation time (millis since epoch) of the checksum.
+     * @param lastSeen The time (millis since epoch) the checksum was seen on the list of checksums.
+     * @throws SQLException If the parameters could not be set.
+     */
+    protected abstract void setUpsertChecksumParameters(PreparedStatement upsertPS, String collectionID, 
+            String pillarID, String fileID, String checksum, long calculationTime, long lastSeen) throws SQLException;
 
-    private void updateChecksum(ChecksumDataForChecksumSpecTYPE item) throws SQLException {
+    private void upsertChecksum(ChecksumDataForChecksumSpecTYPE item) throws SQLException {
         long calculationTime = CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp()).getTime();
 
         Date now = new Date();
-        updateChecksumPS.setString(1, Base16Utils.decodeBase16(item.getChecksumValue()));
-        updateChecksumPS.setLong(2, calculationTime);
-        updateChecksumPS.setLong(3, now.getTime());
-        updateChecksumPS.setString(4, item.getFileID());
-        updateChecksumPS.setString(5, collectionID);
-        updateChecksumPS.setString(6, pillar);
-        updateChecksumPS.addBatch();
+        setUpsertChecksumParameters(upsertChecksumPS, collectionID, pillar, item.getFileID(), 
+                Base16Utils.decodeBase16(item.getChecksumValue()), calculationTime, now.getTime());
+        upsertChecksumPS.addBatch();
     }
 
     private void updateMaxTime(Date maxDate) throws SQLException {
@@ -186,19 +158,15 @@ public class ChecksumUpdater {
     }
 
     private void execute() throws SQLException {
-        updateChecksumPS.executeBatch();
-        insertFileInfoPS.executeBatch();
+        upsertChecksumPS.executeBatch();
         updateLatestChecksumTimePS.execute();
         insertLatestChecksumTimePS.execute();
         conn.commit();
     }
 
     private void close() throws SQLException {
-        if(updateChecksumPS != null) {
-            updateChecksumPS.close();
-        }
-        if(insertFileInfoPS != null) {
-            insertFileInfoPS.close();
+        if(upsertChecksumPS != null) {
+            upsertChecksumPS.close();
         }
         if(conn != null) {
             conn.setAutoCommit(true);
@@ -21,6 +21,9 @@
  */
 package org.bitrepository.integrityservice.cache.database;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -111,4 +114,117 @@ public class DerbyIntegrityDAO extends IntegrityDAO {
         return getFileIDAtIndexSql;
     }
 
+    @Override
+    protected FileUpdater createFileUpdater(String pillarID, Connection dbConnection, String collectionID) {
+        return new DerbyFileUpdater(pillarID, dbConnection, collectionID);
+    }
+    
+    @Override
+    protected ChecksumUpdater createChecksumUpdater(String pillarID, Connection dbConnection, 
+            String collectionID) {
+        return new DerbyChecksumUpdater(pillarID, dbConnection, collectionID);
+    }
+    
+    /**
+     * Upserts the files with MERGE. Derby only allows a table as source of a MERGE, so the collections table is 
+     * used, which also ensures that the file is only inserted if the collection exists. 
+     * The entry is marked as changed, when it is inserted or the timestamp of the file changes.
+     */
+    private static class DerbyFileUpdater extends FileUpdater {
+        private static final String UPSERT_FILE_INFO_SQL = "MERGE INTO fileinfo f"
+                + " USING collections c"
+                + " ON c.collectionID = ?"
+                + " AND f.collectionID = c.collectionID"
+                + " AND f.pillarID = ?"
+                + " AND f.fileID = ?"
+                + " WHEN MATCHED THEN UPDATE SET filesize = ?, file_timestamp = ?, last_seen_getfileids = ?,"
+                    + " changed_timestamp = CASE WHEN f.file_timestamp = ? THEN f.changed_timestamp"
+                    + " ELSE CAST(? AS BIGINT) END"
+                + " WHEN NOT MATCHED AND c.collectionID = ? THEN INSERT"
+                    + " (collectionID, pillarID, fileID, filesize, file_timestamp, last_seen_getfileids,"
+                    + " changed_timestamp)"
+                    + " VALUES (c.collectionID, ?, ?, ?, ?, ?, ?)";
+        
+        DerbyFileUpdater(String pillarID, Connection dbConnection, String collectionID) {
+            super(pillarID, dbConnection, collectionID);
+        }
+        
+        @Override
+        protected String getUpsertFileInfoSql() {
+            return UPSERT_FILE_INFO_SQL;
+        }
+        
+        @Override
+        protected void setUpsertFileInfoParameters(PreparedStatement upsertPS, String collectionID, 
+                String pillarID, String fileID, Long fileSize, long fileTimestamp, long lastSeen) 
+                throws SQLException {
+            upsertPS.setString(1, collectionID);
+            upsertPS.setString(2, pillarID);
+            upsertPS.setString(3, fileID);
+            setFileSize(upsertPS, 4, fileSize);
+            upsertPS.setLong(5, fileTimestamp);
+            upsertPS.setLong(6, lastSeen);
+            upsertPS.setLong(7, fileTimestamp);
+            upsertPS.setLong(8, lastSeen);
+            upsertPS.setString(9, collectionID);
+            upsertPS.setString(10, pillarID);
+            upsertPS.setString(11, fileID);
+            setFileSize(upsertPS, 12, fileSize);
+            upsertPS.setLong(13, fileTimestamp);
+            upsertPS.setLong(14, lastSeen);
+            upsertPS.setLong(15, lastSeen);
+        }
+    }
+    
+    /**
+     * Upserts the checksums with MERGE, using the collections table as source like {@link DerbyFileUpdater}.
+     * The entry is marked as changed, when it is inserted or the checksum changes.
+     */
+    private static class DerbyChecksumUpdater extends ChecksumUpdater {
+        private static final String UPSERT_CHECKSUM_SQL = "MERGE INTO fileinfo f"
+                + " USING collections c"
+                + " ON c.collectionID = ?"
+                + " AND f.collectionID = c.collectionID"
+                + " AND f.pillarID = ?"
+                + " AND f.fileID = ?"
+                + " WHEN MATCHED THEN UPDATE SET checksum = ?, checksum_timestamp = ?, last_seen_getchecksums = ?,"
+                    + " changed_timestamp = CASE WHEN f.checksum = ? THEN f.changed_timestamp"
+                    + " ELSE CAST(? AS BIGINT) END"
+                + " WHEN NOT MATCHED AND c.collectionID = ? THEN INSERT"
+                    + " (collectionID, pillarID, fileID, file_timestamp, last_seen_getfileids,"
+                    + " checksum, checksum_timestamp, last_seen_getchecksums, changed_timestamp)"
+                    + " VALUES (c.collectionID, ?, ?, ?, ?, ?, ?, ?, ?)";
+        
+        DerbyChecksumUpdater(String pillarID, Connection dbConnection, String collectionID) {
+            super(pillarID, dbConnection, collectionID);
+        }
+        
+        @Override
+        protected String getUpsertChecksumSql() {
+            return UPSERT_CHECKSUM_SQL;
+        }
+        
+        @Override
+        protected void setUpsertChecksumParameters(PreparedStatement upsertPS, String collectionID, 
+                String pillarID, String fileID, String checksum, long calculationTime, long lastSeen) 
+                throws SQLException {
+            upsertPS.setString(1, collectionID);
+            upsertPS.setString(2, pillarID);
+            upsertPS.setString(3, fileID);
+            upsertPS.setString(4, checksum);
+            upsertPS.setLong(5, calculationTime);
+            upsertPS.setLong(6, lastSeen);
+            upsertPS.setString(7, checksum);
+            upsertPS.setLong(8, lastSeen);
+            upsertPS.setString(9, collectionID);
+            upsertPS.setString(10, pillarID);
+            upsertPS.setString(11, fileID);
+            upsertPS.setLong(12, calculationTime);
+            upsertPS.setLong(13, lastSeen);
+            upsertPS.setString(14, checksum);
+            upsertPS.setLong(15, calculationTime);
+            upsertPS.setLong(16, lastSeen);
+            upsertPS.setLong(17, lastSeen);
+        }
+    }
 }
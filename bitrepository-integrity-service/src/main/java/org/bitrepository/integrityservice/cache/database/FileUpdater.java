@@ -38,35 +38,11 @@ import org.slf4j.LoggerFactory;
  * Class to handle the update of fileIDs information in the integrity database. 
  * Does this by batching of sql statements for performance.  
  * 
- *  Implementation detail: Postgres will first feature 'upsert' functionality in version 9.5. 
- *  This means that we currently can't use the functionality, and is forced
- *  to use the two call way. I.e. the conditional update, the conditional insert 
+ * Each file is inserted or updated by a single database specific 'upsert' statement, 
+ * see the implementations in {@link DerbyIntegrityDAO} and {@link PostgresIntegrityDAO}.
  */
-public class FileUpdater {
+public abstract class FileUpdater {
 
-    /**
-     * SQL for conditional insert of the fileID in the files table.
-     * The insert is only performed when the (file_id, collection_key) 
-     * tuple is not already found in the database  
-     */
-    private final String insertFileInfoSql = "INSERT INTO fileinfo ("
-    		+ " collectionID, pillarID, fileID, filesize, file_timestamp, last_seen_getfileids)"
-    		+ " (SELECT collectionID, ?, ?, ?, ?, ? FROM collections"
-    		+ " WHERE collectionID = ? "
-    		+ " AND NOT EXISTS ("
-    			+ " SELECT * FROM fileinfo "
-    			+ " WHERE fileID = ?"
-    			+ " AND collectionID = ?"
-    			+ " AND pillarID = ?))";
-    
-    private final String updateFileInfoSql = "UPDATE fileinfo "
-    		+ "	SET filesize = ?,"
-    		+ " file_timestamp = ?,"
-    		+ " last_seen_getfileids = ?"
-    		+ " WHERE fileID = ?"
-    		+ "	AND collectionID = ?"
-    		+ " AND pillarID = ?";	
-    
     private final String insertLatestFileTime = "INSERT INTO collection_progress "
             + "(collectionID, pillarID, latest_file_timestamp)"
             + " ( SELECT collectionID, ?, ? FROM collections"
@@ -85,12 +61,11 @@ public class FileUpdater {
     private final String collectionID;
     private final String pillar;
     private final Connection conn;
-    private PreparedStatement insertFileInfoPS;
-    private PreparedStatement updateFileInfoPS;
+    private PreparedStatement upsertFileInfoPS;
     private PreparedStatement insertLatestFileTimePS;
     private PreparedStatement updateLatestFileTimePS;
     
-    public FileUpdater(String pillar, Connection dbConnection, String collectionID) {
+    protected FileUpdater(String pillar, Connection dbConnection, String collectionID) {
         this.collectionID = collectionID;
         this.pillar = pillar;
         conn = dbConnection;
@@ -98,8 +73,7 @@ public class FileUpdater {
     
     private void init() throws SQLException {
         conn.setAutoCommit(false);
-        insertFileInfoPS = conn.prepareStatement(insertFileInfoSql);
-        updateFileInfoPS = conn.prepareStatement(updateFileInfoSql);
+        upsertFileInfoPS = conn.prepareStatement(getUpsertFileInfoSql());
         insertLatestFileTimePS = conn.prepareStatement(insertLatestFileTime);
         updateLatestFileTimePS = conn.prepareStatement(updateLatestFileTime);
     }
@@ -115,8 +89,7 @@ public class FileUpdater {
             try {
                 Date maxDate = new Date(0);
                 for(FileIDsDataItem item : dataItems.getFileIDsDataItem()) {
-                	updateFileInfo(item);
-                	addFileInfo(item);
+                	upsertFileInfo(item);
                 	maxDate = TimeUtils.getMaxDate(maxDate, 
                 	        CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()));
                 }
@@ -132,39 +105,48 @@ public class FileUpdater {
         }
     } 
     
-    private void addFileInfo(FileIDsDataItem item) throws SQLException {
-        Date now = new Date();
-        insertFileInfoPS.setString(1, pillar);
-        insertFileInfoPS.setString(2, item.getFileID());
-    	if(item.getFileSize() == null) {
-        	insertFileInfoPS.setNull(3, Types.BIGINT);
+    /**
+     * @return The SQL for inserting the file in the fileinfo table, or updating it if it is already there. 
+     * The file is only inserted, if the collection exists.
+     */
+    protected abstract String getUpsertFileInfoSql();
+    
+    /**
+     * Sets the parameters of the upsert statement from {@link #getUpsertFileInfoSql()} for a single file.
+     * @param upsertPS The upsert statement.
+     * @param collectionID The ID of the collection.
+     * @param pillarID The ID of the pillar.
+     * @param fileID The ID of the file.
+     * @param fileSize The size of the file, or null if it is unknown.
+     * @param fileTimestamp The last modified time (millis since epoch) of the file on the pillar.
+     * @param lastSeen The time (millis since epoch) the file was seen on the list of fileIDs.
+     * @throws SQLException If the parameters could not be set.
+     */
+    protected abstract void setUpsertFileInfoParameters(PreparedStatement upsertPS, String collectionID, 
+            String pillarID, String fileID, Long fileSize, long fileTimestamp, long lastSeen) throws SQLException;
+    
+    /**
+     * Sets a file size parameter, which may be null.
+     * @param ps The statement.
+     * @param index The index of the parameter.
+     * @param fileSize The file size, or null if it is unknown.
+     * @throws SQLException If the parameter could not be set.
+     */
+    protected static void setFileSize(PreparedStatement ps, int index, Long fileSize) throws SQLException {
+        if(fileSize == null) {
+            ps.setNull(index, Types.BIGINT);
         } else {
-        	insertFileInfoPS.setLong(3, item.getFileSize().longValue());
+            ps.setLong(index, fileSize);
         }
-    	long time = CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()).getTime();
-    	insertFileInfoPS.setLong(4, time);
-    	insertFileInfoPS.setLong(5, now.getTime());
-        insertFileInfoPS.setString(6, collectionID);
-        insertFileInfoPS.setString(7, item.getFileID());
-    	insertFileInfoPS.setString(8, collectionID);
-    	insertFileInfoPS.setString(9, pillar);
-    	insertFileInfoPS.addBatch();
     }
     
-    private void updateFileInfo(FileIDsDataItem item) throws SQLException {
+    private void upsertFileInfo(FileIDsDataItem item) throws SQLException {
         Date now = new Date();
-        if(item.getFileSize() == null) {
-            updateFileInfoPS.setNull(1, Types.BIGINT);
-        } else {
-            updateFileInfoPS.setLong(1, item.getFileSize().longValue());
-        }
+        Long fileSize = (item.getFileSize() == null) ? null : item.getFileSize().longValue();
         long time = CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()).getTime();
-        updateFileInfoPS.setLong(2, time);
-        updateFileInfoPS.setLong(3, now.getTime());
-        updateFileInfoPS.setString(4, item.getFileID());
-        updateFileInfoPS.setString(5, collectionID);
-        updateFileInfoPS.setString(6, pillar);
-        updateFileInfoPS.addBatch();
+        setUpsertFileInfoParameters(upsertFileInfoPS, collectionID, pillar, item.getFileID(), fileSize, time, 
+                now.getTime());
+        upsertFileInfoPS.addBatch();
     }
     
     private void updateMaxTime(Date maxDate) throws SQLException {
@@ -180,19 +162,15 @@ public class FileUpdater {
     }
     
     private void execute() throws SQLException {
-        updateFileInfoPS.executeBatch();
-        insertFileInfoPS.executeBatch();
+        upsertFileInfoPS.executeBatch();
         updateLatestFileTimePS.execute();
         insertLatestFileTimePS.execute();
         conn.commit();
     }
     
     private void close() throws SQLException {
-        if(updateFileInfoPS != null) {
-            updateFileInfoPS.close();
-        }
-        if(insertFileInfoPS != null) {
-        	insertFileInfoPS.close();
+        if(upsertFileInfoPS != null) {
+            upsertFileInfoPS.close();
         }
         if(conn != null) {
             conn.setAutoCommit(true);
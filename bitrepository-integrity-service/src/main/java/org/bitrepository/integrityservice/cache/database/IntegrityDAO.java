@@ -53,6 +53,13 @@ import org.slf4j.LoggerFactory;
 public abstract class IntegrityDAO {
 	private Logger log = LoggerFactory.getLogger(getClass());
 	
+    /** The type of the integrity issue for a file missing on a pillar.*/
+    private static final String MISSING_FILE_ISSUE = "MISSING_FILE";
+    /** The type of the integrity issue for the single pillar deviating from the checksum of the other pillars.*/
+    private static final String CHECKSUM_DEVIATING_PILLAR_ISSUE = "CHECKSUM_DEVIATING_PILLAR";
+    /** The type of the integrity issue for a pillar with a checksum, which there is no majority for.*/
+    private static final String CHECKSUM_NO_MAJORITY_ISSUE = "CHECKSUM_NO_MAJORITY";
+    
     /** The connector to the database.*/
     protected final DBConnector dbConnector;
     
@@ -110,7 +117,7 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
         log.trace("Updating the file ids '" + data + "' for pillar '" + pillarID + "'");
         
-        FileUpdater fu = new FileUpdater(pillarID, dbConnector.getConnection(), collectionID);
+        FileUpdater fu = createFileUpdater(pillarID, dbConnector.getConnection(), collectionID);
         fu.updateFiles(data.getFileIDsDataItems());
     }
     
@@ -125,9 +132,29 @@ public abstract class IntegrityDAO {
         ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
         ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
         
-        ChecksumUpdater cu = new ChecksumUpdater(pillarID, dbConnector.getConnection(), collectionID);
+        ChecksumUpdater cu = createChecksumUpdater(pillarID, dbConnector.getConnection(), collectionID);
         cu.updateChecksums(data);
     }
+    
+    /**
+     * Method that should deliver the database specific updater for fileIDs data.
+     * @param pillarID The ID of the pillar to update
+     * @param dbConnection The connection to the database, which is closed by the updater
+     * @param collectionID The ID of the collection to update
+     * @return The database specific updater for fileIDs data
+     */
+    protected abstract FileUpdater createFileUpdater(String pillarID, Connection dbConnection, 
+            String collectionID);
+    
+    /**
+     * Method that should deliver the database specific updater for checksum data.
+     * @param pillarID The ID of the pillar to update
+     * @param dbConnection The connection to the database, which is closed by the updater
+     * @param collectionID The ID of the collection to update
+     * @return The database specific updater for checksum data
+     */
+    protected abstract ChecksumUpdater createChecksumUpdater(String pillarID, Connection dbConnection, 
+            String collectionID);
 
     /**
      * Get the date of latest file known on the given pillar in the given collection.
@@ -268,7 +295,9 @@ public abstract class IntegrityDAO {
     }
     
     /**
-     * Remove the file entry for a given pillar in a given collection from the database
+     * Remove the file entry for a given pillar in a given collection from the database. 
+     * The integrity issues of the file are removed, and the remaining entries of the file are marked as changed, 
+     * so the file is evaluated again.
      * @param collectionID The ID of the collection
      * @param pillarID The ID of the pillar
      * @param fileID The ID of the file
@@ -282,8 +311,18 @@ public abstract class IntegrityDAO {
                 + " WHERE collectionID = ?"
                 + " AND pillarID = ?"
                 + " AND fileID = ?";
+        String removeIssuesSql = "DELETE FROM integrity_issues"
+                + " WHERE collectionID = ?"
+                + " AND fileID = ?";
+        String markChangedSql = "UPDATE fileinfo"
+                + " SET changed_timestamp = ?"
+                + " WHERE collectionID = ?"
+                + " AND fileID = ?";
         
-        DatabaseUtils.executeStatement(dbConnector, removeSql, collectionID, pillarID, fileID);
+        executeInTransaction(Arrays.asList(removeSql, removeIssuesSql, markChangedSql), Arrays.asList(
+                new Object[] {collectionID, pillarID, fileID}, 
+                new Object[] {collectionID, fileID},
+                new Object[] {System.currentTimeMillis(), collectionID, fileID}));
     }
     
     /**
@@ -312,6 +351,64 @@ public abstract class IntegrityDAO {
                 first, maxRes);
     }
     
+    /**
+     * Method to evaluate which files in a collection are missing on a given pillar, while at least one other pillar 
+     * has had the file since before a given date. The result replaces the missing files on the pillar from the 
+     * previous evaluation of the evaluated files.
+     * @param collectionID The ID of the collection
+     * @param pillarID The ID of the pillar
+     * @param cutoffDate The date the earliest copy of a file must be older than for the file to be considered missing
+     * @param changedSince Only the files with an entry changed since this date are evaluated. If null, all the files 
+     * in the collection are evaluated.
+     */
+    public void updateFilesMissingOnPillar(String collectionID, String pillarID, Date cutoffDate, 
+            Date changedSince) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        ArgumentValidator.checkNotNull(cutoffDate, "Date cutoffDate");
+        
+        List<Object> deleteArgs = new ArrayList<Object>(Arrays.<Object>asList(collectionID, pillarID, 
+                MISSING_FILE_ISSUE));
+        String deleteMissingFilesSql = "DELETE FROM integrity_issues"
+                + " WHERE collectionID = ?"
+                + " AND pillarID = ?"
+                + " AND issue_type = ?"
+                + getChangedFilesRestriction("fileID", collectionID, changedSince, deleteArgs);
+        
+        List<Object> insertArgs = new ArrayList<Object>(Arrays.<Object>asList(pillarID, MISSING_FILE_ISSUE, 
+                collectionID));
+        String insertMissingFilesSql = "INSERT INTO integrity_issues (collectionID, pillarID, fileID, issue_type)"
+                + " SELECT collectionID, CAST(? AS VARCHAR(100)), fileID, CAST(? AS VARCHAR(50)) FROM fileinfo"
+                + " WHERE collectionID = ?"
+                + getChangedFilesRestriction("fileID", collectionID, changedSince, insertArgs)
+                + " GROUP BY collectionID, fileID"
+                + " HAVING MIN(file_timestamp) < ?"
+                + " AND SUM(CASE WHEN pillarID = ? THEN 1 ELSE 0 END) = 0";
+        insertArgs.add(cutoffDate.getTime());
+        insertArgs.add(pillarID);
+        
+        replaceIntegrityIssues(deleteMissingFilesSql, deleteArgs, insertMissingFilesSql, insertArgs);
+    }
+    
+    /**
+     * Method to find the files in a collection, which were missing on a given pillar at the latest evaluation.
+     * @param collectionID The ID of the collection
+     * @param pillarID The ID of the pillar
+     * @return Iterator with the fileIDs missing on the pillar
+     * @see #updateFilesMissingOnPillar(String, String, Date, Date)
+     */
+    public IntegrityIssueIterator findFilesMissingOnPillar(String collectionID, String pillarID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        
+        String findMissingFilesSql = "SELECT fileID FROM integrity_issues"
+                + " WHERE collectionID = ?"
+                + " AND issue_type = ?"
+                + " AND pillarID = ?";
+        
+        return makeIntegrityIssueIterator(findMissingFilesSql, collectionID, MISSING_FILE_ISSUE, pillarID);
+    }
+    
     /**
      * Method to find the files in a collection where the pillars does not agree upon the checksum
      * @param collectionID The ID of the collection
@@ -329,6 +426,113 @@ public abstract class IntegrityDAO {
         return makeIntegrityIssueIterator(findInconsistentChecksumsSql, collectionID);
     }
     
+    /**
+     * Method to evaluate and classify the checksum issues in a collection in a single pass over the database.
+     * For each file where the pillars does not agree upon the checksum, either the single pillar deviating from the 
+     * checksum, which all the other pillars (at least 2) agree upon, is registered, or all the pillars with the file 
+     * are registered, if no such single pillar exists. A missing checksum on a pillar counts as a checksum of its own.
+     * The result replaces the checksum issues from the previous evaluation of the evaluated files.
+     * @param collectionID The ID of the collection
+     * @param changedSince Only the files with an entry changed since this date are evaluated. If null, all the files 
+     * in the collection are evaluated.
+     */
+    public void updateChecksumIssues(String collectionID, Date changedSince) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        
+        List<Object> deleteArgs = new ArrayList<Object>(Arrays.<Object>asList(collectionID, 
+                CHECKSUM_DEVIATING_PILLAR_ISSUE, CHECKSUM_NO_MAJORITY_ISSUE));
+        String deleteChecksumIssuesSql = "DELETE FROM integrity_issues"
+                + " WHERE collectionID = ?"
+                + " AND issue_type IN (?, ?)"
+                + getChangedFilesRestriction("fileID", collectionID, changedSince, deleteArgs);
+        
+        List<Object> insertArgs = new ArrayList<Object>(Arrays.<Object>asList(CHECKSUM_DEVIATING_PILLAR_ISSUE, 
+                CHECKSUM_NO_MAJORITY_ISSUE, collectionID));
+        String checksumGroupsSql = "SELECT fileID, COALESCE(checksum, '') AS grouped_checksum, COUNT(*) AS copies"
+                + " FROM fileinfo"
+                + " WHERE collectionID = ?"
+                + getChangedFilesRestriction("fileID", collectionID, changedSince, insertArgs)
+                + " GROUP BY fileID, COALESCE(checksum, '')";
+        insertArgs.addAll(new ArrayList<Object>(insertArgs.subList(2, insertArgs.size())));
+        insertArgs.add(collectionID);
+        String insertChecksumIssuesSql = "INSERT INTO integrity_issues (collectionID, pillarID, fileID, issue_type)"
+                + " SELECT f.collectionID, f.pillarID, f.fileID,"
+                + " CASE WHEN files.checksum_groups = 2 AND files.single_groups = 1"
+                + " THEN CAST(? AS VARCHAR(50)) ELSE CAST(? AS VARCHAR(50)) END"
+                + " FROM fileinfo f"
+                + " JOIN (" + checksumGroupsSql + ") AS g"
+                + " ON g.fileID = f.fileID AND g.grouped_checksum = COALESCE(f.checksum, '')"
+                + " JOIN (SELECT fileID, COUNT(*) AS checksum_groups,"
+                + " SUM(CASE WHEN copies = 1 THEN 1 ELSE 0 END) AS single_groups"
+                + " FROM (" + checksumGroupsSql + ") AS groupings"
+                + " GROUP BY fileID"
+                + " HAVING SUM(CASE WHEN grouped_checksum <> '' THEN 1 ELSE 0 END) > 1) AS files"
+                + " ON files.fileID = f.fileID"
+                + " WHERE f.collectionID = ?"
+                + " AND (files.checksum_groups <> 2 OR files.single_groups <> 1 OR g.copies = 1)";
+        
+        replaceIntegrityIssues(deleteChecksumIssuesSql, deleteArgs, insertChecksumIssuesSql, insertArgs);
+    }
+    
+    /**
+     * Method to find the checksum issues in a collection found at the latest evaluation.
+     * @param collectionID The ID of the collection
+     * @return Iterator with the checksum issues, ordered by fileID.
+     * @see #updateChecksumIssues(String, Date)
+     */
+    public ChecksumIssueIterator findChecksumIssues(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        
+        String findChecksumIssuesSql = "SELECT fileID, pillarID,"
+                + " CASE WHEN issue_type = ? THEN 1 ELSE 0 END"
+                + " FROM integrity_issues"
+                + " WHERE collectionID = ?"
+                + " AND issue_type IN (?, ?)"
+                + " ORDER BY fileID, pillarID";
+        
+        try {
+            Connection conn = dbConnector.getConnection();
+            PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, findChecksumIssuesSql, 
+                    CHECKSUM_DEVIATING_PILLAR_ISSUE, collectionID, CHECKSUM_DEVIATING_PILLAR_ISSUE, 
+                    CHECKSUM_NO_MAJORITY_ISSUE);
+            return new ChecksumIssueIterator(ps);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create ChecksumIssueIterator for query '" 
+                    + findChecksumIssuesSql + "' for collection " + collectionID, e);
+        }
+    }
+    
+    /**
+     * Get the date of the latest integrity evaluation of the given collection. 
+     * @param collectionID The ID of the collection
+     * @return The date of the latest evaluation, or null if the collection has not been evaluated.
+     */
+    public Date getDateForLatestEvaluation(String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        
+        String retrieveSql = "SELECT latest_evaluation_timestamp FROM collections"
+                + " WHERE collectionID = ?";
+        
+        Long time = DatabaseUtils.selectFirstLongValue(dbConnector, retrieveSql, collectionID);
+        return (time == null ? null : new Date(time));
+    }
+    
+    /**
+     * Set the date of the latest integrity evaluation of the given collection.
+     * @param collectionID The ID of the collection
+     * @param evaluationDate The date of the evaluation, i.e. when it started.
+     */
+    public void setDateForLatestEvaluation(String collectionID, Date evaluationDate) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNull(evaluationDate, "Date evaluationDate");
+        
+        String updateSql = "UPDATE collections"
+                + " SET latest_evaluation_timestamp = ?"
+                + " WHERE collectionID = ?";
+        
+        DatabaseUtils.executeStatement(dbConnector, updateSql, evaluationDate.getTime(), collectionID);
+    }
+    
     /**
      * Method that should deliver the database specific SQL for all files at a pillar
      * @return the database specific SQL for all files at a pillar
@@ -594,6 +798,75 @@ public abstract class IntegrityDAO {
         return new Date(time);
     }
     
+    /**
+     * Delivers the SQL restricting the files to those with an entry changed since a given date, and adds the 
+     * arguments for it.
+     * @param fileIDColumn The column with the fileID to restrict.
+     * @param collectionID The ID of the collection.
+     * @param changedSince The date the files must have changed since. If null, the files are not restricted.
+     * @param args The arguments to add the arguments for the restriction to.
+     * @return The SQL for the restriction, or the empty string if the files are not restricted.
+     */
+    private String getChangedFilesRestriction(String fileIDColumn, String collectionID, Date changedSince, 
+            List<Object> args) {
+        if(changedSince == null) {
+            return "";
+        }
+        args.add(collectionID);
+        args.add(changedSince.getTime());
+        return " AND " + fileIDColumn + " IN (SELECT fileID FROM fileinfo"
+                + " WHERE collectionID = ?"
+                + " AND changed_timestamp >= ?)";
+    }
+    
+    /**
+     * Replaces integrity issues in a single transaction, so the issues of the previous evaluation are kept, 
+     * if the evaluation fails.
+     * @param deleteSql The SQL for deleting the issues to replace.
+     * @param deleteArgs The arguments for deleting the issues.
+     * @param insertSql The SQL for inserting the evaluated issues.
+     * @param insertArgs The arguments for inserting the issues.
+     */
+    private void replaceIntegrityIssues(String deleteSql, List<Object> deleteArgs, String insertSql, 
+            List<Object> insertArgs) {
+        long tStart = System.currentTimeMillis();
+        int[] updates = executeInTransaction(Arrays.asList(deleteSql, insertSql), 
+                Arrays.asList(deleteArgs.toArray(), insertArgs.toArray()));
+        log.debug("Registered " + updates[1] + " integrity issues, it took: " 
+                + (System.currentTimeMillis() - tStart) + "ms");
+    }
+    
+    /**
+     * Executes a number of update statements in a single transaction, so either all or none of them take effect.
+     * @param sqls The SQL of the statements, in the order they are to be executed.
+     * @param args The arguments for each of the statements.
+     * @return The number of rows updated by each of the statements.
+     */
+    private int[] executeInTransaction(List<String> sqls, List<Object[]> args) {
+        Connection conn = dbConnector.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            int[] updates = new int[sqls.size()];
+            for(int i = 0; i < sqls.size(); i++) {
+                try (PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sqls.get(i), args.get(i))) {
+                    updates[i] = ps.executeUpdate();
+                }
+            }
+            conn.commit();
+            return updates;
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {}
+            throw new IllegalStateException("Could not execute the statements " + sqls + " in a transaction", e);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+                conn.close();
+            } catch (SQLException ignored) {}
+        }
+    }
+    
     private IntegrityIssueIterator makeIntegrityIssueIterator(String query, Object... args) {
         PreparedStatement ps = null;
         Connection conn = null;
@@ -21,6 +21,9 @@
  */
 package org.bitrepository.integrityservice.cache.database;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.List;
 
 import org.bitrepository.common.utils.SettingsUtils;
@@ -103,4 +106,97 @@ public class PostgresIntegrityDAO extends IntegrityDAO {
                 + " LIMIT ?";
         return getFileIDAtIndexSql;
     }
+
+    @Override
+    protected FileUpdater createFileUpdater(String pillarID, Connection dbConnection, String collectionID) {
+        return new PostgresFileUpdater(pillarID, dbConnection, collectionID);
+    }
+    
+    @Override
+    protected ChecksumUpdater createChecksumUpdater(String pillarID, Connection dbConnection, 
+            String collectionID) {
+        return new PostgresChecksumUpdater(pillarID, dbConnection, collectionID);
+    }
+    
+    /**
+     * Upserts the files with INSERT ... ON CONFLICT, which requires Postgres 9.5 or later.
+     * The entry is marked as changed, when it is inserted or the timestamp of the file changes.
+     */
+    private static class PostgresFileUpdater extends FileUpdater {
+        private static final String UPSERT_FILE_INFO_SQL = "INSERT INTO fileinfo"
+                + " (collectionID, pillarID, fileID, filesize, file_timestamp, last_seen_getfileids,"
+                + " changed_timestamp)"
+                + " SELECT collectionID, ?, ?, ?, ?, ?, ? FROM collections"
+                + " WHERE collectionID = ?"
+                + " ON CONFLICT (collectionID, pillarID, fileID) DO UPDATE"
+                + " SET filesize = EXCLUDED.filesize,"
+                + " file_timestamp = EXCLUDED.file_timestamp,"
+                + " last_seen_getfileids = EXCLUDED.last_seen_getfileids,"
+                + " changed_timestamp = CASE WHEN fileinfo.file_timestamp = EXCLUDED.file_timestamp"
+                    + " THEN fileinfo.changed_timestamp ELSE EXCLUDED.changed_timestamp END";
+        
+        PostgresFileUpdater(String pillarID, Connection dbConnection, String collectionID) {
+            super(pillarID, dbConnection, collectionID);
+        }
+        
+        @Override
+        protected String getUpsertFileInfoSql() {
+            return UPSERT_FILE_INFO_SQL;
+        }
+        
+        @Override
+        protected void setUpsertFileInfoParameters(PreparedStatement upsertPS, String collectionID, 
+                String pillarID, String fileID, Long fileSize, long fileTimestamp, long lastSeen) 
+                throws SQLException {
+            upsertPS.setString(1, pillarID);
+            upsertPS.setString(2, fileID);
+            setFileSize(upsertPS, 3, fileSize);
+            upsertPS.setLong(4, fileTimestamp);
+            upsertPS.setLong(5, lastSeen);
+            upsertPS.setLong(6, lastSeen);
+            upsertPS.setString(7, collectionID);
+        }
+    }
+    
+    /**
+     * Upserts the checksums with INSERT ... ON CONFLICT, which requires Postgres 9.5 or later.
+     * The entry is marked as changed, when it is inserted or the checksum changes.
+     */
+    private static class PostgresChecksumUpdater extends ChecksumUpdater {
+        private static final String UPSERT_CHECKSUM_SQL = "INSERT INTO fileinfo"
+                + " (collectionID, pillarID, fileID, file_timestamp, last_seen_getfileids,"
+                + " checksum, checksum_timestamp, last_seen_getchecksums, changed_timestamp)"
+                + " SELECT collectionID, ?, ?, ?, ?, ?, ?, ?, ? FROM collections"
+                + " WHERE collectionID = ?"
+                + " ON CONFLICT (collectionID, pillarID, fileID) DO UPDATE"
+                + " SET checksum = EXCLUDED.checksum,"
+                + " checksum_timestamp = EXCLUDED.checksum_timestamp,"
+                + " last_seen_getchecksums = EXCLUDED.last_seen_getchecksums,"
+                + " changed_timestamp = CASE WHEN fileinfo.checksum = EXCLUDED.checksum"
+                    + " THEN fileinfo.changed_timestamp ELSE EXCLUDED.changed_timestamp END";
+        
+        PostgresChecksumUpdater(String pillarID, Connection dbConnection, String collectionID) {
+            super(pillarID, dbConnection, collectionID);
+        }
+        
+        @Override
+        protected String getUpsertChecksumSql() {
+            return UPSERT_CHECKSUM_SQL;
+        }
+        
+        @Override
+        protected void setUpsertChecksumParameters(PreparedStatement upsertPS, String collectionID, 
+                String pillarID, String fileID, String checksum, long calculationTime, long lastSeen) 
+                throws SQLException {
+            upsertPS.setString(1, pillarID);
+            upsertPS.setString(2, fileID);
+            upsertPS.setLong(3, calculationTime);
+            upsertPS.setLong(4, lastSeen);
+            upsertPS.setString(5, checksum);
+            upsertPS.setLong(6, calculationTime);
+            upsertPS.setLong(7, lastSeen);
+            upsertPS.setLong(8, lastSeen);
+            upsertPS.setString(9, collectionID);
+        }
+    }
 }
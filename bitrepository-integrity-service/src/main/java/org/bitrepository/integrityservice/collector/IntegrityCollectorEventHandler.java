@@ -27,11 +27,11 @@ import java.util.concurrent.TimeUnit;
 
 import org.bitrepository.access.getchecksums.conversation.ChecksumsCompletePillarEvent;
 import org.bitrepository.access.getfileids.conversation.FileIDsCompletePillarEvent;
+import org.bitrepository.client.eventhandler.ContributorEvent;
 import org.bitrepository.client.eventhandler.ContributorFailedEvent;
 import org.bitrepository.client.eventhandler.EventHandler;
 import org.bitrepository.client.eventhandler.OperationEvent;
 import org.bitrepository.client.eventhandler.OperationEvent.OperationEventType;
-import org.bitrepository.integrityservice.cache.IntegrityModel;
 import org.bitrepository.integrityservice.workflow.IntegrityContributors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,8 +44,8 @@ import org.slf4j.LoggerFactory;
 public class IntegrityCollectorEventHandler implements EventHandler {
     /** The log.*/
     private Logger log = LoggerFactory.getLogger(getClass());
-    /** The model where the integrity data is stored.*/
-    private final IntegrityModel store;
+    /** The ingester writing the integrity data to the model.*/
+    private final IntegrityDataIngester ingester;
     /** The amount of milliseconds before the results are required.*/
     private final long timeout;
     
@@ -56,13 +56,13 @@ public class IntegrityCollectorEventHandler implements EventHandler {
     
     /**
      * Constructor.
-     * @param model The integrity model, where the results of GetChecksums or GetFileIDs are to be delivered.
+     * @param ingester The ingester, where the results of GetChecksums or GetFileIDs are to be delivered.
      * @param timeout The maximum amount of millisecond to wait for an result.
      * @param integrityContributors the integrity contributors
      */
-    public IntegrityCollectorEventHandler(IntegrityModel model, long timeout, 
+    public IntegrityCollectorEventHandler(IntegrityDataIngester ingester, long timeout, 
             IntegrityContributors integrityContributors) {
-        this.store = model;
+        this.ingester = ingester;
         this.timeout = timeout;
         this.integrityContributors = integrityContributors;
     }
@@ -98,17 +98,41 @@ public class IntegrityCollectorEventHandler implements EventHandler {
     }
     
     /**
-     * Handle the results of the GetChecksums operation at a single pillar.
+     * Fails a contributor, whose results could not be written, so no more results are collected from it.
+     * @param contributorID The ID of the contributor.
+     */
+    private void failContributorAfterWriteFailure(String contributorID) {
+        log.warn("The results from '" + contributorID + "' could not be written. Failing the contributor.");
+        integrityContributors.failContributor(contributorID);
+    }
+    
+    /**
+     * Handle the results of the GetChecksums operation at a single pillar. The results are handed to the ingester, 
+     * which waits if the writing of the previous results is falling behind.
      * @param event The event for the completion of a GetChecksums for a single pillar.
      */
     private void handleResult(OperationEvent event) {
+        try {
+            ingestResult(event);
+        } catch (InterruptedException e) {
+            ContributorEvent contributorEvent = (ContributorEvent) event;
+            log.warn("Interrupted while handing over the results from '" + contributorEvent.getContributorID() 
+                    + "'.", e);
+            integrityContributors.failContributor(contributorEvent.getContributorID());
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void ingestResult(OperationEvent event) throws InterruptedException {
         if(event instanceof ChecksumsCompletePillarEvent) {
             ChecksumsCompletePillarEvent checksumEvent = (ChecksumsCompletePillarEvent) event;
             log.trace("Receiving GetChecksums result: {}", 
                     checksumEvent.getChecksums().getChecksumDataItems().toString());
-            store.addChecksums(checksumEvent.getChecksums().getChecksumDataItems(), checksumEvent.getContributorID(), 
+            ingester.addChecksums(checksumEvent.getChecksums().getChecksumDataItems(), checksumEvent.getContributorID(), 
                     checksumEvent.getCollectionID());
-            if(checksumEvent.isPartialResult()) {
+            if(ingester.hasWriteFailed(checksumEvent.getContributorID())) {
+                failContributorAfterWriteFailure(checksumEvent.getContributorID());
+            } else if(checksumEvent.isPartialResult()) {
                 integrityContributors.succeedContributor(checksumEvent.getContributorID());
             } else {
                 integrityContributors.finishContributor(checksumEvent.getContributorID());
@@ -116,9 +140,11 @@ public class IntegrityCollectorEventHandler implements EventHandler {
         } else if(event instanceof FileIDsCompletePillarEvent) {
             FileIDsCompletePillarEvent fileidEvent = (FileIDsCompletePillarEvent) event;
             log.trace("Receiving GetFileIDs result: {}", fileidEvent.getFileIDs().getFileIDsData().toString());
-            store.addFileIDs(fileidEvent.getFileIDs().getFileIDsData(), fileidEvent.getContributorID(),
+            ingester.addFileIDs(fileidEvent.getFileIDs().getFileIDsData(), fileidEvent.getContributorID(),
                     fileidEvent.getCollectionID());
-            if(fileidEvent.isPartialResult()) {
+            if(ingester.hasWriteFailed(fileidEvent.getContributorID())) {
+                failContributorAfterWriteFailure(fileidEvent.getContributorID());
+            } else if(fileidEvent.isPartialResult()) {
                 integrityContributors.succeedContributor(fileidEvent.getContributorID());
             } else {
                 integrityContributors.finishContributor(fileidEvent.getContributorID());
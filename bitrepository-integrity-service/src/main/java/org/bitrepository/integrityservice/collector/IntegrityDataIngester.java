@@ -0,0 +1,393 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.collector;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.TimeUtils;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the results collected from the pillars to the integrity model in dedicated writer threads, so the next 
+ * pages can be collected from the pillars while the previous pages are written to the database.
+ * <p>
+ * The pages from a pillar are always written by the same writer, in the order they were received. Each pillar has a 
+ * window of pages, which may be received before they have been written. Adding a page waits while the window of the 
+ * pillar is full, so the collection from a pillar is held back when the writing of its pages falls behind, without 
+ * holding back the collection from the other pillars.
+ * <p>
+ * The newest dates of the results written for each pillar are kept. The next pages are requested from the newest 
+ * dates received, so they can be requested before the previous pages have been written. 
+ * <p>
+ * If a page from a pillar cannot be written, no later pages from the pillar are written, so the data in the store 
+ * never skips the failed page, and the next pages are requested from the newest dates written. The ingester must be 
+ * finished with {@link #finish()}, which waits for all the received pages to be written, and fails if any page could 
+ * not be written.
+ */
+public class IntegrityDataIngester {
+    /** The default number of writer threads.*/
+    public static final int DEFAULT_NUMBER_OF_WRITERS = 2;
+    /** The default number of pages from a pillar, which may be received before they have been written.*/
+    public static final int DEFAULT_PAGE_WINDOW = 2;
+    
+    /** The page marking the end of the queue of a writer.*/
+    private static final Runnable STOP = new Runnable() {
+        @Override
+        public void run() {}
+    };
+    
+    /** The log.*/
+    private Logger log = LoggerFactory.getLogger(getClass());
+    /** The model where the integrity data is stored.*/
+    private final IntegrityModel store;
+    /** The writers.*/
+    private final List<PageWriter> writers = new ArrayList<PageWriter>();
+    /** The writer for each pillar.*/
+    private final Map<String, PageWriter> writerForPillar = new HashMap<String, PageWriter>();
+    /** The number of pages from a pillar, which may be received before they have been written.*/
+    private final int pageWindow;
+    /** The window of pages, which have been received but not yet written, for each pillar.*/
+    private final Map<String, Semaphore> pageWindows = new HashMap<String, Semaphore>();
+    /** The newest last modification time of the files received from each pillar.*/
+    private final Map<String, Date> receivedFileDates = new HashMap<String, Date>();
+    /** The newest calculation time of the checksums received from each pillar.*/
+    private final Map<String, Date> receivedChecksumDates = new HashMap<String, Date>();
+    /** The newest last modification time of the files written for each pillar.*/
+    private final Map<String, Date> writtenFileDates = new HashMap<String, Date>();
+    /** The newest calculation time of the checksums written for each pillar.*/
+    private final Map<String, Date> writtenChecksumDates = new HashMap<String, Date>();
+    /** The failure to write a page from each pillar, for the pillars where the writing has failed.*/
+    private final Map<String, RuntimeException> writeFailures = new HashMap<String, RuntimeException>();
+    
+    /**
+     * Constructor with the default number of writers and page window.
+     * @param store The model where the integrity data is stored.
+     */
+    public IntegrityDataIngester(IntegrityModel store) {
+        this(store, DEFAULT_NUMBER_OF_WRITERS, DEFAULT_PAGE_WINDOW);
+    }
+    
+    /**
+     * Constructor. Starts the writers.
+     * @param store The model where the integrity data is stored.
+     * @param numberOfWriters The number of writer threads.
+     * @param pageWindow The number of pages from a pillar, which may be received before they have been written.
+     */
+    public IntegrityDataIngester(IntegrityModel store, int numberOfWriters, int pageWindow) {
+        if(numberOfWriters < 1 || pageWindow < 1) {
+            throw new IllegalArgumentException("There must be at least one writer and a window of at least one page, "
+                    + "but there were " + numberOfWriters + " writers and a window of " + pageWindow + " pages.");
+        }
+        this.store = store;
+        this.pageWindow = pageWindow;
+        for(int i = 0; i < numberOfWriters; i++) {
+            PageWriter writer = new PageWriter();
+            Thread thread = new Thread(writer, "IntegrityDataWriter-" + i);
+            thread.setDaemon(true);
+            writer.thread = thread;
+            writers.add(writer);
+            thread.start();
+        }
+    }
+    
+    /**
+     * Adds a page of file ids to be written. Waits while the page window of the pillar is full. The page is ignored, 
+     * if the writing of an earlier page from the pillar has failed.
+     * @param data The file ids.
+     * @param pillarID The ID of the pillar the file ids were collected from.
+     * @param collectionID The ID of the collection.
+     * @throws InterruptedException If interrupted while waiting for room in the page window.
+     */
+    public void addFileIDs(final FileIDsData data, final String pillarID, final String collectionID) 
+            throws InterruptedException {
+        final Date newestDate;
+        if(data.getFileIDsDataItems() != null && !data.getFileIDsDataItems().getFileIDsDataItem().isEmpty()) {
+            Date date = new Date(0);
+            for(FileIDsDataItem item : data.getFileIDsDataItems().getFileIDsDataItem()) {
+                date = TimeUtils.getMaxDate(date, 
+                        CalendarUtils.convertFromXMLGregorianCalendar(item.getLastModificationTime()));
+            }
+            newestDate = date;
+        } else {
+            newestDate = null;
+        }
+        addPage(pillarID, newestDate, receivedFileDates, writtenFileDates, new Runnable() {
+            @Override
+            public void run() {
+                store.addFileIDs(data, pillarID, collectionID);
+            }
+        });
+    }
+    
+    /**
+     * Adds a page of checksums to be written. Waits while the page window of the pillar is full. The page is 
+     * ignored, if the writing of an earlier page from the pillar has failed.
+     * @param data The checksums.
+     * @param pillarID The ID of the pillar the checksums were collected from.
+     * @param collectionID The ID of the collection.
+     * @throws InterruptedException If interrupted while waiting for room in the page window.
+     */
+    public void addChecksums(final List<ChecksumDataForChecksumSpecTYPE> data, final String pillarID, 
+            final String collectionID) throws InterruptedException {
+        final Date newestDate;
+        if(!data.isEmpty()) {
+            Date date = new Date(0);
+            for(ChecksumDataForChecksumSpecTYPE item : data) {
+                date = TimeUtils.getMaxDate(date, 
+                        CalendarUtils.convertFromXMLGregorianCalendar(item.getCalculationTimestamp()));
+            }
+            newestDate = date;
+        } else {
+            newestDate = null;
+        }
+        addPage(pillarID, newestDate, receivedChecksumDates, writtenChecksumDates, new Runnable() {
+            @Override
+            public void run() {
+                store.addChecksums(data, pillarID, collectionID);
+            }
+        });
+    }
+    
+    /**
+     * Queues a page to be written by the writer of the pillar. The newest written date is only registered when the 
+     * page has been written.
+     * @param pillarID The ID of the pillar the page was collected from.
+     * @param newestDate The newest date in the page, or null if the page is empty.
+     * @param receivedDates The newest dates received from each pillar.
+     * @param writtenDates The newest dates written for each pillar.
+     * @param write Writes the page to the store.
+     * @throws InterruptedException If interrupted while waiting for room in the page window.
+     */
+    private void addPage(final String pillarID, final Date newestDate, Map<String, Date> receivedDates, 
+            final Map<String, Date> writtenDates, final Runnable write) throws InterruptedException {
+        synchronized(this) {
+            if(hasWriteFailed(pillarID)) {
+                log.warn("Ignoring a page from '" + pillarID + "', since an earlier page from it could not be "
+                        + "written.");
+                return;
+            }
+            if(newestDate != null) {
+                registerNewestDate(receivedDates, pillarID, newestDate);
+            }
+        }
+        final Semaphore window = getPageWindow(pillarID);
+        window.acquire();
+        getWriter(pillarID).add(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if(hasWriteFailed(pillarID)) {
+                        log.warn("Skipping a page from '" + pillarID + "', since an earlier page from it could "
+                                + "not be written.");
+                        return;
+                    }
+                    write.run();
+                    if(newestDate != null) {
+                        registerNewestDate(writtenDates, pillarID, newestDate);
+                    }
+                } catch (RuntimeException e) {
+                    registerWriteFailure(pillarID, e);
+                } finally {
+                    window.release();
+                }
+            }
+        });
+    }
+    
+    /**
+     * @param pillarID The ID of the pillar.
+     * @return The newest last modification time of the files written for the pillar, or null if no files have 
+     * been written for the pillar.
+     */
+    public synchronized Date getNewestFileDate(String pillarID) {
+        return writtenFileDates.get(pillarID);
+    }
+    
+    /**
+     * @param pillarID The ID of the pillar.
+     * @return The newest calculation time of the checksums written for the pillar, or null if no checksums have 
+     * been written for the pillar.
+     */
+    public synchronized Date getNewestChecksumDate(String pillarID) {
+        return writtenChecksumDates.get(pillarID);
+    }
+    
+    /**
+     * The date to request the next page of file ids from. It is the newest last modification time of the files 
+     * received from the pillar, so the next page can be requested before the previous pages have been written. 
+     * If a page from the pillar could not be written, it is the newest time written.
+     * @param pillarID The ID of the pillar.
+     * @return The date to request the next page of file ids from, or null if no such date is known.
+     */
+    public synchronized Date getNextFileIDsPageDate(String pillarID) {
+        return receivedFileDates.get(pillarID);
+    }
+    
+    /**
+     * The date to request the next page of checksums from. It is the newest calculation time of the checksums 
+     * received from the pillar, so the next page can be requested before the previous pages have been written. 
+     * If a page from the pillar could not be written, it is the newest time written.
+     * @param pillarID The ID of the pillar.
+     * @return The date to request the next page of checksums from, or null if no such date is known.
+     */
+    public synchronized Date getNextChecksumsPageDate(String pillarID) {
+        return receivedChecksumDates.get(pillarID);
+    }
+    
+    /**
+     * @param pillarID The ID of the pillar.
+     * @return Whether a page from the pillar could not be written.
+     */
+    public synchronized boolean hasWriteFailed(String pillarID) {
+        return writeFailures.containsKey(pillarID);
+    }
+    
+    /**
+     * Waits for all the received pages to be written, and stops the writers.
+     * @throws InterruptedException If interrupted while waiting for the writers, in which case the writers are 
+     * interrupted, and the remaining pages are not written.
+     * @throws IllegalStateException If any page could not be written. The failure to write the first failed page is 
+     * the cause.
+     */
+    public void finish() throws InterruptedException {
+        for(PageWriter writer : writers) {
+            writer.add(STOP);
+        }
+        try {
+            for(PageWriter writer : writers) {
+                writer.thread.join();
+            }
+        } catch (InterruptedException e) {
+            for(PageWriter writer : writers) {
+                writer.thread.interrupt();
+            }
+            throw e;
+        }
+        synchronized(this) {
+            if(!writeFailures.isEmpty()) {
+                throw new IllegalStateException("Could not write the integrity data collected from " 
+                        + writeFailures.keySet(), writeFailures.values().iterator().next());
+            }
+        }
+    }
+    
+    /**
+     * Finishes the ingester after the collection has failed, see {@link #finish()}. A failure to finish is added to 
+     * the failure of the collection as suppressed, so it does not hide the failure of the collection.
+     * @param collectionFailure The failure of the collection.
+     */
+    public void finishAfterFailure(Exception collectionFailure) {
+        try {
+            finish();
+        } catch (InterruptedException e) {
+            collectionFailure.addSuppressed(e);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            collectionFailure.addSuppressed(e);
+        }
+    }
+    
+    private synchronized void registerWriteFailure(String pillarID, RuntimeException e) {
+        log.error("Failed to write integrity data collected from '" + pillarID + "'. No more pages from it are "
+                + "written.", e);
+        if(!writeFailures.containsKey(pillarID)) {
+            writeFailures.put(pillarID, e);
+        }
+        resetToWrittenDate(receivedFileDates, writtenFileDates, pillarID);
+        resetToWrittenDate(receivedChecksumDates, writtenChecksumDates, pillarID);
+    }
+    
+    private void resetToWrittenDate(Map<String, Date> receivedDates, Map<String, Date> writtenDates, 
+            String pillarID) {
+        if(writtenDates.containsKey(pillarID)) {
+            receivedDates.put(pillarID, writtenDates.get(pillarID));
+        } else {
+            receivedDates.remove(pillarID);
+        }
+    }
+    
+    private synchronized void registerNewestDate(Map<String, Date> newestDates, String pillarID, Date date) {
+        Date currentDate = newestDates.get(pillarID);
+        newestDates.put(pillarID, (currentDate == null) ? date : TimeUtils.getMaxDate(currentDate, date));
+    }
+    
+    private synchronized Semaphore getPageWindow(String pillarID) {
+        Semaphore window = pageWindows.get(pillarID);
+        if(window == null) {
+            window = new Semaphore(pageWindow);
+            pageWindows.put(pillarID, window);
+        }
+        return window;
+    }
+    
+    private synchronized PageWriter getWriter(String pillarID) {
+        PageWriter writer = writerForPillar.get(pillarID);
+        if(writer == null) {
+            writer = writers.get(writerForPillar.size() % writers.size());
+            writerForPillar.put(pillarID, writer);
+        }
+        return writer;
+    }
+    
+    /**
+     * Writes the pages from its queue in order, until it is stopped.
+     */
+    private final class PageWriter implements Runnable {
+        /** The pages waiting to be written.*/
+        private final BlockingQueue<Runnable> pages;
+        /** The thread running the writer.*/
+        private Thread thread;
+        
+        PageWriter() {
+            pages = new LinkedBlockingQueue<Runnable>();
+        }
+        
+        void add(Runnable page) {
+            pages.add(page);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                Runnable page;
+                while((page = pages.take()) != STOP) {
+                    page.run();
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for collected integrity data to write.", e);
+            }
+        }
+    }
+}
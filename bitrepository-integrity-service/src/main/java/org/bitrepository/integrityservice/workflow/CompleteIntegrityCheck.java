@@ -68,6 +68,11 @@ public class CompleteIntegrityCheck extends IntegrityCheckWorkflow {
         return true;
     }
 
+    @Override
+    protected boolean evaluateChangedFilesOnly() {
+        return false;
+    }
+
 
     @Override
     protected Date getChecksumUpdateCutoffDate() {
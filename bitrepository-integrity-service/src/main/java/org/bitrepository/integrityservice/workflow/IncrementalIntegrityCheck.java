@@ -65,6 +65,11 @@ public class IncrementalIntegrityCheck extends IntegrityCheckWorkflow {
         return false;
     }
 
+    @Override
+    protected boolean evaluateChangedFilesOnly() {
+        return true;
+    }
+
     @Override
     protected Date getChecksumUpdateCutoffDate() {
         return new Date(0);
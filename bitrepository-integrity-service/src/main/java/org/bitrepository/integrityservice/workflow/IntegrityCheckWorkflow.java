@@ -77,8 +77,32 @@ public abstract class IntegrityCheckWorkflow extends Workflow {
     
     protected abstract boolean cleanDeletedFiles();
     
+    /**
+     * @return Whether only the files changed since the latest evaluation should be evaluated for missing files and 
+     * checksum issues. The issues found for the other files by earlier evaluations are reported again.
+     */
+    protected abstract boolean evaluateChangedFilesOnly();
+    
     protected abstract Date getChecksumUpdateCutoffDate();
     
+    /**
+     * @return The reporter for the integrity issues found by this run of the workflow.
+     */
+    protected IntegrityReporter createReporter() {
+        return new BasicIntegrityReporter(jobID.getCollectionID(), jobID.getWorkflowName(),
+                IntegrityServiceManager.getIntegrityReportStorageDir());
+    }
+    
+    /**
+     * Generates the report and makes it the latest report of the collection.
+     * @param reporter The reporter for the integrity issues found by this run of the workflow.
+     * @throws IOException If the report could not be generated.
+     */
+    protected void publishReport(IntegrityReporter reporter) throws IOException {
+        reporter.generateReport();
+        IntegrityServiceManager.getIntegrityReportProvider().setLatestReport(collectionID, reporter.getReportDir());
+    }
+    
     @Override
     public void start() {
         
@@ -88,8 +112,7 @@ public abstract class IntegrityCheckWorkflow extends Workflow {
             throw new IllegalStateException("The workflow can not be started before the initialise method has been " +
                     "called.");
         }
-        IntegrityReporter reporter = new BasicIntegrityReporter(jobID.getCollectionID(), jobID.getWorkflowName(),
-                IntegrityServiceManager.getIntegrityReportStorageDir());
+        IntegrityReporter reporter = createReporter();
         
         super.start();
         try {
@@ -114,15 +137,20 @@ public abstract class IntegrityCheckWorkflow extends Workflow {
             }
             
             statisticsCollector.getCollectionStat().setStatsTime(new Date());
+            Date evaluationStart = new Date();
+            Date changedSince = null;
+            if(evaluateChangedFilesOnly()) {
+                changedSince = context.getStore().getDateForLatestEvaluation(collectionID);
+            }
             Long missingFileGracePeriod 
                 = context.getSettings().getReferenceSettings().getIntegrityServiceSettings().getTimeBeforeMissingFileCheck();
             HandleMissingFilesStep handleMissingFilesStep = new HandleMissingFilesStep(context.getStore(), reporter,
-                    statisticsCollector, missingFileGracePeriod);
+                    statisticsCollector, missingFileGracePeriod, changedSince);
             performStep(handleMissingFilesStep);
             
             HandleChecksumValidationStep handleChecksumValidationStep 
                     = new HandleChecksumValidationStep(context.getStore(), context.getAuditManager(), reporter, 
-                            statisticsCollector);
+                            statisticsCollector, changedSince);
             performStep(handleChecksumValidationStep);
             
             HandleMissingChecksumsStep handleMissingChecksumsStep = new HandleMissingChecksumsStep(context.getStore(), 
@@ -139,12 +167,12 @@ public abstract class IntegrityCheckWorkflow extends Workflow {
             performStep(createStatistics);
 
             if(currentState() != WorkflowState.ABORTED) {
+                context.getStore().setDateForLatestEvaluation(collectionID, evaluationStart);
                 if(reporter.hasIntegrityIssues()) {
                     context.getAlerter().integrityFailed(reporter.generateSummaryOfReport(), collectionID);
                 }
                 try {
-                    reporter.generateReport();
-                    IntegrityServiceManager.getIntegrityReportProvider().setLatestReport(collectionID, reporter.getReportDir());
+                    publishReport(reporter);
                 } catch (IOException e) {
                     log.error("Failed to generate integrity report", e);
                     context.getAlerter().integrityComponentFailure("Failed to generate integrity report", collectionID);
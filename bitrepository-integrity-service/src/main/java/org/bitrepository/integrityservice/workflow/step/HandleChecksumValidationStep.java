@@ -23,7 +23,7 @@ package org.bitrepository.integrityservice.workflow.step;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,9 +31,10 @@ import java.util.Map.Entry;
 
 import org.bitrepository.bitrepositoryelements.FileAction;
 import org.bitrepository.common.utils.SettingsUtils;
-import org.bitrepository.integrityservice.cache.FileInfo;
+import org.bitrepository.integrityservice.cache.ChecksumIssue;
+import org.bitrepository.integrityservice.cache.ChecksumIssue.Classification;
 import org.bitrepository.integrityservice.cache.IntegrityModel;
-import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
+import org.bitrepository.integrityservice.cache.database.ChecksumIssueIterator;
 import org.bitrepository.integrityservice.reports.IntegrityReporter;
 import org.bitrepository.integrityservice.statistics.StatisticsCollector;
 import org.bitrepository.service.audit.AuditTrailManager;
@@ -58,10 +59,25 @@ public class HandleChecksumValidationStep extends AbstractWorkFlowStep {
     private final Map<String, Long> pillarChecksumErrors;
     private Long allPillarChecksumErrors = 0L;
     private Long collectionChecksumErrors = 0L; 
+    /** The date of the previous evaluation, or null if all the files should be evaluated. */
+    private final Date changedSince;
     
+    /**
+     * Evaluates all the files.
+     */
     public HandleChecksumValidationStep(IntegrityModel store, AuditTrailManager auditManager, 
             IntegrityReporter reporter, StatisticsCollector statisticsCollector) {
+        this(store, auditManager, reporter, statisticsCollector, null);
+    }
+    
+    /**
+     * Evaluates the files changed since the previous evaluation.
+     * @param changedSince The date of the previous evaluation. If null, all the files are evaluated.
+     */
+    public HandleChecksumValidationStep(IntegrityModel store, AuditTrailManager auditManager, 
+            IntegrityReporter reporter, StatisticsCollector statisticsCollector, Date changedSince) {
         this.store = store;
+        this.changedSince = changedSince;
         this.auditManager = auditManager;
         this.reporter = reporter;
         this.sc = statisticsCollector;
@@ -78,20 +94,26 @@ public class HandleChecksumValidationStep extends AbstractWorkFlowStep {
     }
 
     /**
-     * Queries the IntegrityModel for missing files on each pillar. Reports them if any is returned.
+     * Lets the IntegrityModel evaluate the checksum issues, which are classified by the database, and reports all 
+     * the issues after the evaluation, including those from previous evaluations of unchanged files.
+     * The issues are delivered ordered by file, so the issues for a file are handled together. 
      */
     @Override
     public synchronized void performStep() throws StepFailedException {
-        IntegrityIssueIterator inconsistentFilesIterator 
-            = store.getFilesWithInconsistentChecksums(reporter.getCollectionID());
-        String fileID;
-        try {
-            while((fileID = inconsistentFilesIterator.getNextIntegrityIssue()) != null) {
-                handleChecksumInconsistency(store.getFileInfos(fileID, reporter.getCollectionID()), fileID);
-                collectionChecksumErrors++;
+        store.updateChecksumIssues(reporter.getCollectionID(), changedSince);
+        try (ChecksumIssueIterator checksumIssueIterator = store.getChecksumIssues(reporter.getCollectionID())) {
+            List<ChecksumIssue> issuesForFile = new ArrayList<ChecksumIssue>();
+            ChecksumIssue issue;
+            while((issue = checksumIssueIterator.getNextChecksumIssue()) != null) {
+                if(!issuesForFile.isEmpty() && !issuesForFile.get(0).getFileID().equals(issue.getFileID())) {
+                    handleChecksumInconsistency(issuesForFile);
+                    issuesForFile.clear();
+                }
+                issuesForFile.add(issue);
+            }
+            if(!issuesForFile.isEmpty()) {
+                handleChecksumInconsistency(issuesForFile);
             }
-        } finally {
-            inconsistentFilesIterator.close();
         }
         for(Entry<String, Long> entry : pillarChecksumErrors.entrySet()) {
             sc.getPillarCollectionStat(entry.getKey()).setChecksumErrors(entry.getValue() + allPillarChecksumErrors);
@@ -100,24 +122,26 @@ public class HandleChecksumValidationStep extends AbstractWorkFlowStep {
     }
 
     /**
-     * Locates the source of the checksum inconsistency.
+     * Reports the checksum issues for a file.
      * If only a single pillar is inconsistent with the majority, then it alone will be set to checksum error for the 
      * file.
      * Otherwise all the pillars will be set to checksum error for the file.
-     * @param infos The FileInfos
-     * @param fileID The id of the file.
-     * @throws StepFailedException 
+     * @param issues The checksum issues for the file.
+     * @throws StepFailedException If the issues could not be reported.
      */
-    private void handleChecksumInconsistency(Collection<FileInfo> infos, String fileID) throws StepFailedException {
-        Map<String, List<String>> checksumMap = getChecksumMapping(infos);
-        String pillarID = findSingleInconsistentPillar(checksumMap);
+    private void handleChecksumInconsistency(List<ChecksumIssue> issues) throws StepFailedException {
+        String fileID = issues.get(0).getFileID();
+        String pillarID = null;
+        if(issues.get(0).getClassification() == Classification.DEVIATING_PILLAR) {
+            pillarID = issues.get(0).getPillarID();
+        }
 
         createAuditForInconsistentChecksum(pillarID, fileID);
         try {
             if(pillarID == null) {
                 allPillarChecksumErrors++;
-                for(FileInfo info : infos) {
-                    reporter.reportChecksumIssue(fileID, info.getPillarId());
+                for(ChecksumIssue issue : issues) {
+                    reporter.reportChecksumIssue(fileID, issue.getPillarID());
                 }
             } else {
                 pillarChecksumErrors.put(pillarID, pillarChecksumErrors.get(pillarID) + 1);
@@ -126,7 +150,7 @@ public class HandleChecksumValidationStep extends AbstractWorkFlowStep {
         } catch (IOException e) {
             throw new StepFailedException("Failed to report file: " + fileID + " as having a checksum issue", e);
         }
-        
+        collectionChecksumErrors++;
     }
     
     /**
@@ -152,52 +176,4 @@ public class HandleChecksumValidationStep extends AbstractWorkFlowStep {
         auditManager.addAuditEvent(reporter.getCollectionID(), fileID, "IntegrityService",
                 auditText, "IntegrityService validating the checksums.", FileAction.INCONSISTENCY, null, null);
     }
-    
-    /**
-     * Retrieves the mapping between the checksums and the pillars, e.g. which pillars have a given checksum.
-     * @param infos The information about a given file at all the pillars. 
-     * @return The mapping between checksums and the pillars with that checksum.
-     */
-    private Map<String, List<String>> getChecksumMapping(Collection<FileInfo> infos) {
-        Map<String, List<String>> checksumMap = new HashMap<String, List<String>>();
-        for(FileInfo info : infos) {
-            List<String> pillarIDsForChecksum;
-            if(checksumMap.containsKey(info.getChecksum())) {
-                pillarIDsForChecksum = checksumMap.get(info.getChecksum());
-            } else {
-                pillarIDsForChecksum = new ArrayList<String>();
-            }
-            pillarIDsForChecksum.add(info.getPillarId());
-            checksumMap.put(info.getChecksum(), pillarIDsForChecksum);
-        }
-        
-        return checksumMap;
-    }
-    
-    /**
-     * Tries to find a single pillar, who causes the inconsistency, otherwise a null is returned.
-     * This pillar must be alone with its checksum, whereas all the other pillars (minimum 2 other pillars) must 
-     * agree upon another checksum. 
-     * @param checksumMap The mapping between checksums and the pillars with that checksum.
-     * @return The id of the pillar possibly causing the inconsistency, or null if no single pillar can be found.
-     */
-    private String findSingleInconsistentPillar(Map<String, List<String>> checksumMap) {
-        if(checksumMap.size() != 2) {
-            return null;
-        }
-        List<List<String>> pillarLists = new ArrayList<List<String>>(checksumMap.values());
-        
-        if((pillarLists.get(0).size() > 1) && (pillarLists.get(1).size() > 1)) {
-            return null;
-        }
-        if((pillarLists.get(0).size() == 1) && (pillarLists.get(1).size() == 1)) {
-            return null;
-        }
-        
-        if(pillarLists.get(0).size() == 1) {
-            return pillarLists.get(0).get(0);
-        } else {
-            return pillarLists.get(1).get(0);
-        }
-    }
 }
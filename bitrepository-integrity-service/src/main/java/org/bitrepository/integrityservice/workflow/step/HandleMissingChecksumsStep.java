@@ -64,6 +64,8 @@ public class HandleMissingChecksumsStep extends AbstractWorkFlowStep {
 
     /**
      * Queries the IntegrityModel for files with missing checksums. Reports them if any is returned.
+     * All the files of each pillar are checked, also in incremental integrity checks, as a checksum becomes missing 
+     * when the cutoff date passes rather than when the entry of the file changes.
      * @throws StepFailedException if the report file could not be written
      * @throws IllegalStateException if there was a problem with the database
      */
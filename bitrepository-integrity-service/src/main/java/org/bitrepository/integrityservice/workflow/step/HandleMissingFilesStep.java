@@ -22,16 +22,10 @@
 package org.bitrepository.integrityservice.workflow.step;
 
 import java.io.IOException;
-import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import org.bitrepository.common.utils.SettingsUtils;
-import org.bitrepository.integrityservice.cache.FileInfo;
 import org.bitrepository.integrityservice.cache.IntegrityModel;
 import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
 import org.bitrepository.integrityservice.reports.IntegrityReporter;
@@ -55,13 +49,30 @@ public class HandleMissingFilesStep extends AbstractWorkFlowStep {
     private final StatisticsCollector sc;
     /** The period in which a file should not be considered as missing. */
     private final Long gracePeriod;
+    /** The date of the previous evaluation, or null if all the files should be evaluated. */
+    private final Date changedSince;
     
+    /**
+     * Evaluates all the files.
+     */
     public HandleMissingFilesStep(IntegrityModel store, IntegrityReporter reporter, 
             StatisticsCollector statisticsCollector, Long missingFileGracePeriod) {
+        this(store, reporter, statisticsCollector, missingFileGracePeriod, null);
+    }
+    
+    /**
+     * Evaluates the files changed since the previous evaluation, and the files which have passed the grace period 
+     * since the previous evaluation. The latter are found by their entries, since a file is seen on a pillar after 
+     * it has been created there.
+     * @param changedSince The date of the previous evaluation. If null, all the files are evaluated.
+     */
+    public HandleMissingFilesStep(IntegrityModel store, IntegrityReporter reporter, 
+            StatisticsCollector statisticsCollector, Long missingFileGracePeriod, Date changedSince) {
         this.store = store;
         this.reporter = reporter;
         this.sc = statisticsCollector;
         this.gracePeriod = missingFileGracePeriod;
+        this.changedSince = changedSince;
     }
     
     @Override
@@ -70,60 +81,42 @@ public class HandleMissingFilesStep extends AbstractWorkFlowStep {
     }
 
     /**
-     * Queries the IntegrityModel for inconsistent checksums in the collection. 
-     * Checks every reported inconsistent checksum, to verify that it's actually inconsistent. 
-     * Updates database model to reflect the discovered situation. 
+     * Lets the IntegrityModel evaluate the files missing on each pillar, and reports all the files missing after 
+     * the evaluation, including those from previous evaluations of unchanged files. 
+     * The files too recent to be considered missing are filtered out by the evaluation. 
      */
     @Override
     public synchronized void performStep() throws StepFailedException {
         List<String> pillars = SettingsUtils.getPillarIDsForCollection(reporter.getCollectionID());
-        Map<String, Long> missingFilesMap = new HashMap<>();
-        for(String pillar : pillars) {
-            missingFilesMap.put(pillar, 0L);
-        }
         Date missingAfterDate = new Date(System.currentTimeMillis() - gracePeriod);
         log.info("Looking for missing files, files needs to be older than {} to be considered missing.", 
                 missingAfterDate);
+        Date evaluateChangedSince = null;
+        if(changedSince != null) {
+            evaluateChangedSince = new Date(changedSince.getTime() - gracePeriod);
+        }
         
-        try(IntegrityIssueIterator issueIterator = store.findFilesWithMissingCopies(reporter.getCollectionID(), 
-                pillars.size(), 0L, Long.MAX_VALUE)) {
+        for(String pillar : pillars) {
+            Long missingFiles = 0L;
+            store.updateFilesMissingOnPillar(reporter.getCollectionID(), pillar, missingAfterDate, 
+                    evaluateChangedSince);
             
             String missingFile;
-            while((missingFile = issueIterator.getNextIntegrityIssue()) != null) {
-                Date earliestDate = store.getEarlistFileDate(reporter.getCollectionID(), missingFile);
-                if(earliestDate.before(missingAfterDate)) {
+            try(IntegrityIssueIterator issueIterator = store.findFilesMissingOnPillar(reporter.getCollectionID(), 
+                    pillar)) {
+                while((missingFile = issueIterator.getNextIntegrityIssue()) != null) {
                     try {
-                        Set<String> pillarsWithFile = getPillarsWithFile(missingFile, reporter.getCollectionID());
-                        for(String pillar : pillars) {
-                            if(!pillarsWithFile.contains(pillar)) {
-                                reporter.reportMissingFile(missingFile, pillar);
-                                missingFilesMap.put(pillar, missingFilesMap.get(pillar) + 1);         
-                            }
-                        }
+                        reporter.reportMissingFile(missingFile, pillar);
+                        missingFiles++;
                     } catch (IOException e) {
                         throw new StepFailedException("Failed to report file: " + missingFile + " as missing", e);
                     }
-                } else {
-                    log.info("The file '{}' was too recent ({}) to be considered missing.", missingFile, earliestDate);
-                }
-                
-                for(String pillar : missingFilesMap.keySet()) {
-                    sc.getPillarCollectionStat(pillar).setMissingFiles(missingFilesMap.get(pillar));
                 }
-                
             }
+            sc.getPillarCollectionStat(pillar).setMissingFiles(missingFiles);
         }
     }
 
-    private Set<String> getPillarsWithFile(String fileID, String collectionID) {
-        Collection<FileInfo> fileInfos = store.getFileInfos(fileID, collectionID);
-        Set<String> pillarsWithFile = new HashSet<>();
-        for(FileInfo fi : fileInfos) {
-            pillarsWithFile.add(fi.getPillarId());
-        }
-        return pillarsWithFile;
-    }
-    
     public static String getDescription() {
         return "Detects and reports files that are missing from one or more pillars in the collection.";
     }
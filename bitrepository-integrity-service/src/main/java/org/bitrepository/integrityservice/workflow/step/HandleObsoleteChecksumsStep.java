@@ -72,6 +72,8 @@ public class HandleObsoleteChecksumsStep extends AbstractWorkFlowStep {
      * Queries the IntegrityModel for files with obsolete checksums. Reports them if any is returned.
      * If a pillar is configured to never have it's checksums expire, it will be skipped. This is set 
      * by having a maxChecksumAge of 0. 
+     * All the files of each pillar are checked, also in incremental integrity checks, as a checksum becomes obsolete 
+     * when it grows older than the max age rather than when the entry of the file changes.
      */
     @Override
     public synchronized void performStep() throws StepFailedException {
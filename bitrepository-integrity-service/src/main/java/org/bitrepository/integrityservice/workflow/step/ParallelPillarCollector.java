@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.workflow.step;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.service.exception.WorkflowAbortedException;
+
+/**
+ * Runs the collection from each pillar in its own thread, so each pillar is paged through independently of the 
+ * others, and a slow pillar does not hold back the collection from the faster pillars.
+ * <p>
+ * If the collection from a pillar aborts the workflow or fails, the collection from the other pillars is interrupted
+ * right away, as the collections are awaited in the order they finish.
+ */
+final class ParallelPillarCollector {
+    /**
+     * The collection from a single pillar.
+     */
+    interface PillarCollection {
+        /**
+         * Collects all the data from the pillar.
+         * @param pillarID The ID of the pillar to collect from.
+         * @throws InterruptedException If interrupted while collecting.
+         * @throws WorkflowAbortedException If the workflow should be aborted.
+         */
+        void collect(String pillarID) throws InterruptedException, WorkflowAbortedException;
+    }
+    
+    /**
+     * Collects from all the pillars, and waits for the collection from all of them to finish.
+     * @param collectionID The ID of the collection, used for naming the collecting threads.
+     * @param pillarIDs The IDs of the pillars to collect from.
+     * @param collection The collection to perform for each pillar.
+     * @throws InterruptedException If interrupted while waiting for the collection from the pillars.
+     * @throws WorkflowAbortedException If the collection from one of the pillars aborted the workflow.
+     */
+    static void collect(String collectionID, Collection<String> pillarIDs, final PillarCollection collection)
+            throws InterruptedException, WorkflowAbortedException {
+        if(pillarIDs.isEmpty()) {
+            return;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(pillarIDs.size(), 
+                new DefaultThreadFactory("PillarCollector-" + collectionID, Thread.NORM_PRIORITY));
+        try {
+            CompletionService<Void> results = new ExecutorCompletionService<Void>(executor);
+            int numberOfCollections = 0;
+            for(final String pillarID : pillarIDs) {
+                results.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        collection.collect(pillarID);
+                        return null;
+                    }
+                });
+                numberOfCollections++;
+            }
+            
+            for(int i = 0; i < numberOfCollections; i++) {
+                try {
+                    results.take().get();
+                } catch (ExecutionException e) {
+                    executor.shutdownNow();
+                    Throwable cause = e.getCause();
+                    if(cause instanceof WorkflowAbortedException) {
+                        throw (WorkflowAbortedException) cause;
+                    } else if(cause instanceof InterruptedException) {
+                        throw (InterruptedException) cause;
+                    } else if(cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw new IllegalStateException("Failed to collect from the pillars.", cause);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /** Private constructor as the class is meant to be used in a static way.*/
+    private ParallelPillarCollector() {}
+}
@@ -24,6 +24,7 @@ package org.bitrepository.integrityservice.workflow.step;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -37,6 +38,7 @@ import org.bitrepository.common.utils.SettingsUtils;
 import org.bitrepository.integrityservice.alerter.IntegrityAlerter;
 import org.bitrepository.integrityservice.cache.IntegrityModel;
 import org.bitrepository.integrityservice.collector.IntegrityCollectorEventHandler;
+import org.bitrepository.integrityservice.collector.IntegrityDataIngester;
 import org.bitrepository.integrityservice.collector.IntegrityInformationCollector;
 import org.bitrepository.integrityservice.workflow.IntegrityContributors;
 import org.bitrepository.service.exception.WorkflowAbortedException;
@@ -67,6 +69,8 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
     private boolean abortInCaseOfFailure = true;
     /** Contributors for collecting information */
     private final IntegrityContributors integrityContributors;
+    /** The number of pages from each pillar, which may be received before they have been written.*/
+    private final int pageWindow;
         
     /**
      * Constructor.
@@ -88,6 +92,10 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
         if(settings.getReferenceSettings().getIntegrityServiceSettings().isSetAbortOnFailedContributor()) {
             abortInCaseOfFailure = settings.getReferenceSettings().getIntegrityServiceSettings().isAbortOnFailedContributor();
         }
+        Integer collectionPageWindow 
+            = settings.getReferenceSettings().getIntegrityServiceSettings().getCollectionPageWindow();
+        this.pageWindow = collectionPageWindow == null ? IntegrityDataIngester.DEFAULT_PAGE_WINDOW 
+                : collectionPageWindow;
     }
     
     /**
@@ -95,39 +103,76 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
      */
     protected void initialStepAction() {}
     
+    /**
+     * Collects the file ids page by page. Each pillar is paged through independently of the other pillars, so a 
+     * slow pillar does not hold back the collection from the other pillars. The pages are written to the store by an 
+     * {@link IntegrityDataIngester}, so the next pages are requested while the previous pages are written. The step 
+     * does not finish before all the collected file ids are written, and fails if any of them could not be written.
+     */
     @Override
     public synchronized void performStep() throws WorkflowAbortedException {
         initialStepAction();
 
         try {
-            Set<String> pillarsToCollectFrom = integrityContributors.getActiveContributors();
-            log.debug("Collecting fileIDs from: " + pillarsToCollectFrom);
-            while (!pillarsToCollectFrom.isEmpty()) {
-                IntegrityCollectorEventHandler eventHandler 
-                    = new IntegrityCollectorEventHandler(store, timeout, integrityContributors);
-                ContributorQuery[] queries = getQueries(pillarsToCollectFrom);
-                collector.getFileIDs(collectionID, pillarsToCollectFrom,
-                        "IntegrityService: " + getName(), queries, eventHandler);
-                
-                OperationEvent event = eventHandler.getFinish();
-                if(event.getEventType() == OperationEventType.FAILED) {
-                    handleFailureEvent(event);
-                 }
-                log.debug("Collection of file ids had the final event: " + event);
-                pillarsToCollectFrom = integrityContributors.getActiveContributors();
+            IntegrityDataIngester ingester = new IntegrityDataIngester(store, 
+                    IntegrityDataIngester.DEFAULT_NUMBER_OF_WRITERS, pageWindow);
+            try {
+                collectFileIDs(ingester);
+            } catch (InterruptedException | WorkflowAbortedException | RuntimeException e) {
+                ingester.finishAfterFailure(e);
+                throw e;
             }
+            ingester.finish();
         } catch (InterruptedException e) {
             log.warn("Interrupted while collecting file ids.", e);
         }
     }
     
+    private void collectFileIDs(final IntegrityDataIngester ingester) 
+            throws InterruptedException, WorkflowAbortedException {
+        Set<String> pillarsToCollectFrom = integrityContributors.getActiveContributors();
+        log.debug("Collecting fileIDs from: " + pillarsToCollectFrom);
+        ParallelPillarCollector.collect(collectionID, pillarsToCollectFrom, 
+                new ParallelPillarCollector.PillarCollection() {
+            @Override
+            public void collect(String pillarID) throws InterruptedException, WorkflowAbortedException {
+                collectFileIDsFromPillar(pillarID, ingester);
+            }
+        });
+    }
+    
     /**
-     * Handle a failure event. This includes checking if any contributors have failed (if not just retry), 
+     * Collects the file ids from a single pillar, one page at the time, until the pillar is no longer active.
+     * @param pillarID The ID of the pillar to collect from.
+     * @param ingester The ingester for the collected file ids.
+     */
+    private void collectFileIDsFromPillar(String pillarID, IntegrityDataIngester ingester) 
+            throws InterruptedException, WorkflowAbortedException {
+        List<String> pillars = Collections.singletonList(pillarID);
+        do {
+            IntegrityCollectorEventHandler eventHandler 
+                = new IntegrityCollectorEventHandler(ingester, timeout, integrityContributors);
+            ContributorQuery[] queries = getQueries(pillars, ingester);
+            collector.getFileIDs(collectionID, pillars,
+                    "IntegrityService: " + getName(), queries, eventHandler);
+            
+            OperationEvent event = eventHandler.getFinish();
+            if(event.getEventType() == OperationEventType.FAILED) {
+                handleFailureEvent(event, pillarID);
+            }
+            log.debug("Collection of file ids from '" + pillarID + "' had the final event: " + event);
+        } while (integrityContributors.getActiveContributors().contains(pillarID));
+    }
+    
+    /**
+     * Handle a failure event. This includes checking if the pillar has failed (if not just retry), 
      * checking to see if the workflow should be aborted, and sending alarms if needed.  
+     * @param event The failure event.
+     * @param pillarID The ID of the pillar, which was collected from.
      */
-    private void handleFailureEvent(OperationEvent event) throws WorkflowAbortedException {
-        if(integrityContributors.getFailedContributors().isEmpty()) {
-            log.info("Get failure event, but no contributors marked as failed, retrying");
+    private void handleFailureEvent(OperationEvent event, String pillarID) throws WorkflowAbortedException {
+        if(!integrityContributors.getFailedContributors().contains(pillarID)) {
+            log.info("Get failure event, but '" + pillarID + "' is not marked as failed, retrying");
         } else {
             OperationFailedEvent ofe = (OperationFailedEvent) event;
             if(abortInCaseOfFailure) {
@@ -146,13 +191,21 @@ public abstract class UpdateFileIDsStep extends AbstractWorkFlowStep {
     
     /**
      * Define the queries for the collection of FileIDs for the given pillars.
+     * The newest file already received from a pillar is used, even if it has not been written to the store yet, 
+     * unless the writing of a page from the pillar has failed.
+     * The page starts at the date of the newest file, inclusive, which limits the paging as described at
+     * {@code ChecksumExtractor#warnIfPageCannotProgress} in the reference pillar.
      * @param pillars The pillars to collect from.
+     * @param ingester The ingester of the file ids received so far.
      * @return The queries for the pillars for collecting the file ids.
      */
-    private ContributorQuery[] getQueries(Collection<String> pillars) {
+    private ContributorQuery[] getQueries(Collection<String> pillars, IntegrityDataIngester ingester) {
         List<ContributorQuery> res = new ArrayList<ContributorQuery>();
         for(String pillar : pillars) {
-            Date latestFileIDEntry = store.getDateForNewestFileEntryForPillar(pillar, collectionID);
+            Date latestFileIDEntry = ingester.getNextFileIDsPageDate(pillar);
+            if(latestFileIDEntry == null) {
+                latestFileIDEntry = store.getDateForNewestFileEntryForPillar(pillar, collectionID);
+            }
             res.add(new ContributorQuery(pillar, latestFileIDEntry, null, maxNumberOfResultsPerConversation));
         }
         
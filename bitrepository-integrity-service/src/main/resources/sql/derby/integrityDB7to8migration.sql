@@ -0,0 +1,52 @@
+---
+-- #%L
+-- Bitrepository Integrity Client
+-- %%
+-- Copyright (C) 2010 - 2012 The State and University Library, The Royal Library and The State Archives, Denmark
+-- %%
+-- This program is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU Lesser General Public License as 
+-- published by the Free Software Foundation, either version 2.1 of the 
+-- License, or (at your option) any later version.
+-- 
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Lesser Public License for more details.
+-- 
+-- You should have received a copy of the GNU General Lesser Public 
+-- License along with this program.  If not, see
+-- <http://www.gnu.org/licenses/lgpl-2.1.html>.
+-- #L%
+---
+
+connect 'jdbc:derby:integritydb';
+
+-- Update table versions.
+UPDATE tableversions SET version = 7 WHERE tablename = 'fileinfo';
+UPDATE tableversions SET version = 3 WHERE tablename = 'collections';
+UPDATE tableversions SET version = 8 WHERE tablename = 'integritydb';
+INSERT INTO tableversions (tablename, version) VALUES ('integrity_issues', 1);
+
+-- Migrate fileinfo table
+-- The existing entries are marked as changed when migrated. The first evaluation after the migration 
+-- evaluates all the files anyway, since no evaluation has been registered for the collections.
+ALTER TABLE fileinfo ADD COLUMN changed_timestamp BIGINT;
+UPDATE fileinfo SET changed_timestamp = last_seen_getfileids;
+CREATE INDEX changedtimestampindex ON fileinfo(collectionid, changed_timestamp);
+
+-- Migrate collections table
+ALTER TABLE collections ADD COLUMN latest_evaluation_timestamp BIGINT DEFAULT NULL;
+
+-- Create integrity_issues table
+CREATE TABLE integrity_issues (
+    collectionID VARCHAR(255) NOT NULL,
+    pillarID VARCHAR(100) NOT NULL,
+    fileID VARCHAR(255) NOT NULL,
+    issue_type VARCHAR(50) NOT NULL,
+    PRIMARY KEY (collectionID, pillarID, fileID, issue_type),
+    FOREIGN KEY (collectionID) REFERENCES collections(collectionID),
+    FOREIGN KEY (pillarID) REFERENCES pillar(pillarID)
+);
+
+CREATE INDEX issuetypeindex ON integrity_issues(collectionid, issue_type, fileid);
@@ -37,15 +37,16 @@ CREATE TABLE tableversions (
     version INT NOT NULL             -- version of table
 );
 
-INSERT INTO tableversions (tablename, version) VALUES ('fileinfo', 6);
+INSERT INTO tableversions (tablename, version) VALUES ('fileinfo', 7);
 INSERT INTO tableversions (tablename, version) VALUES ('files', 2);
 INSERT INTO tableversions (tablename, version) VALUES ('pillar', 3);
-INSERT INTO tableversions (tablename, version) VALUES ('collections', 2);
-INSERT INTO tableversions (tablename, version) VALUES ('integritydb', 7);
+INSERT INTO tableversions (tablename, version) VALUES ('collections', 3);
+INSERT INTO tableversions (tablename, version) VALUES ('integritydb', 8);
 INSERT INTO tableversions (tablename, version) VALUES ('stats', 3);
 INSERT INTO tableversions (tablename, version) VALUES ('collectionstats', 3);
 INSERT INTO tableversions (tablename, version) VALUES ('pillarstats', 2);
 INSERT INTO tableversions (tablename, version) VALUES ('collection_progress', 2);
+INSERT INTO tableversions (tablename, version) VALUES ('integrity_issues', 1);
 
 --*************************************************************************--
 -- Name:     collections
@@ -54,7 +55,8 @@ INSERT INTO tableversions (tablename, version) VALUES ('collection_progress', 2)
 -- Expected entry count: Few
 --*************************************************************************--
 CREATE TABLE collections (
-    collectionID VARCHAR(255) PRIMARY KEY  -- The id for the collection.
+    collectionID VARCHAR(255) PRIMARY KEY, -- The id for the collection.
+    latest_evaluation_timestamp BIGINT DEFAULT NULL -- The time (millis since epoch) of the latest integrity evaluation
 );
 
 --*************************************************************************--
@@ -85,6 +87,7 @@ CREATE TABLE fileinfo (
     checksum_timestamp BIGINT,              -- The calculation timestamp (millis since epoch) of the checksum
     last_seen_getfileids BIGINT,            -- The last time (millis since epoch) the file was seen on a list of fileIDs for the pillar
     last_seen_getchecksums BIGINT,          -- The last time (millis since epoch) the files was seen on a list of checksums for the pillar
+    changed_timestamp BIGINT,               -- The last time (millis since epoch) the entry was inserted, or the file or checksum changed
 
     PRIMARY KEY (collectionID, pillarID, fileID),
     FOREIGN KEY (collectionID) REFERENCES collections(collectionID),
@@ -92,6 +95,29 @@ CREATE TABLE fileinfo (
 );
 
 CREATE INDEX collectionfileidx ON fileinfo(collectionid, fileid);
+CREATE INDEX changedtimestampindex ON fileinfo(collectionid, changed_timestamp);
+
+--*************************************************************************--
+-- Name:     integrity_issues
+-- Descr.:   Contains the integrity issues found by the latest evaluation of
+--           the files in the collections.
+-- Purpose:  Keeps the integrity issues of the files, which have not changed
+--           since they were evaluated, so only the changed files need to be
+--           evaluated again.
+-- Expected entry count: As many as the integrity issues.
+--*************************************************************************--
+CREATE TABLE integrity_issues (
+    collectionID VARCHAR(255) NOT NULL,     -- The collection ID
+    pillarID VARCHAR(100) NOT NULL,         -- The ID of the pillar with the issue
+    fileID VARCHAR(255) NOT NULL,           -- The file ID
+    issue_type VARCHAR(50) NOT NULL,        -- The type of the issue
+
+    PRIMARY KEY (collectionID, pillarID, fileID, issue_type),
+    FOREIGN KEY (collectionID) REFERENCES collections(collectionID),
+    FOREIGN KEY (pillarID) REFERENCES pillar(pillarID)
+);
+
+CREATE INDEX issuetypeindex ON integrity_issues(collectionid, issue_type, fileid);
 
 --*************************************************************************--
 -- Name:     collection_progress
@@ -58,6 +58,7 @@ public abstract class IntegrityDatabaseTestCase extends ExtendedTestCase {
     @AfterMethod (alwaysRun = true)
     public void clearDatabase() throws Exception {
         DBConnector connector = new DBConnector(settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
+        DatabaseUtils.executeStatement(connector, "DELETE FROM integrity_issues", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM fileinfo", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM collection_progress", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM pillarstats", new Object[0]);
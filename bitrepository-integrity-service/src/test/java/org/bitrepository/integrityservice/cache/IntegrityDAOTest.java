@@ -41,6 +41,8 @@ import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.utils.Base16Utils;
 import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.integrityservice.IntegrityDatabaseTestCase;
+import org.bitrepository.integrityservice.cache.ChecksumIssue.Classification;
+import org.bitrepository.integrityservice.cache.database.ChecksumIssueIterator;
 import org.bitrepository.integrityservice.cache.database.DerbyIntegrityDAO;
 import org.bitrepository.integrityservice.cache.database.IntegrityDAO;
 import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
@@ -371,6 +373,68 @@ public class IntegrityDAOTest extends IntegrityDatabaseTestCase {
             = getIssuesFromIterator(cache.findFilesWithChecksumInconsistincies(TEST_COLLECTIONID));
         Assert.assertEquals(filesWithChecksumError, Arrays.asList(BAD_FILE_ID_1, BAD_FILE_ID_2));
     }
+    
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testClassifyChecksumIssues() throws Exception {
+        addDescription("Testing the classification of the checksum issues in the database.");
+        IntegrityDAO cache = createDAO();
+        
+        String BAD_FILE_ID_1 = "BAD-FILE-1";
+        String BAD_FILE_ID_2 = "BAD-FILE-2";
+        String GOOD_FILE_ID = "GOOD-FILE";
+
+        addStep("Update the database with a file deviating on one pillar, a file without a majority checksum and "
+                + "a consistent file.", "Ingesting the data into the database");
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_1, "11"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_1, "11"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_1, "22"), EXTRA_PILLAR, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_2, "11"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_2, "22"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(GOOD_FILE_ID, "33"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(GOOD_FILE_ID, "33"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(GOOD_FILE_ID, "33"), EXTRA_PILLAR, TEST_COLLECTIONID);
+
+        addStep("Evaluate and find the checksum issues", 
+                "The deviating pillar for bad file 1, and both pillars for bad file 2");
+        cache.updateChecksumIssues(TEST_COLLECTIONID, null);
+        List<ChecksumIssue> issues = getChecksumIssues(cache);
+        Assert.assertEquals(issues.size(), 3, issues.toString());
+        assertChecksumIssue(issues.get(0), BAD_FILE_ID_1, EXTRA_PILLAR, Classification.DEVIATING_PILLAR);
+        assertChecksumIssue(issues.get(1), BAD_FILE_ID_2, TEST_PILLAR_1, Classification.NO_MAJORITY);
+        assertChecksumIssue(issues.get(2), BAD_FILE_ID_2, TEST_PILLAR_2, Classification.NO_MAJORITY);
+    }
+
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testIncrementalChecksumIssueEvaluation() throws Exception {
+        addDescription("Tests that an incremental evaluation of the checksum issues only replaces the issues of the "
+                + "changed files.");
+        IntegrityDAO cache = createDAO();
+        
+        String BAD_FILE_ID_1 = "BAD-FILE-1";
+        String BAD_FILE_ID_2 = "BAD-FILE-2";
+
+        addStep("Update the database with a file deviating on one pillar and a file without a majority checksum, "
+                + "and evaluate all the files", "Both files have checksum issues");
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_1, "11"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_1, "11"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_1, "22"), EXTRA_PILLAR, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_2, "11"), TEST_PILLAR_1, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_2, "22"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        cache.updateChecksumIssues(TEST_COLLECTIONID, null);
+        Assert.assertEquals(getChecksumIssues(cache).size(), 3);
+        Thread.sleep(10);
+        Date evaluationDate = new Date();
+        Thread.sleep(10);
+        
+        addStep("Receive the same checksum for the deviating file, and a consistent checksum for the other file, "
+                + "and evaluate the changed files", "Only the issue for the unchanged file remains");
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_1, "22"), EXTRA_PILLAR, TEST_COLLECTIONID);
+        cache.updateChecksums(getChecksumResults(BAD_FILE_ID_2, "11"), TEST_PILLAR_2, TEST_COLLECTIONID);
+        cache.updateChecksumIssues(TEST_COLLECTIONID, evaluationDate);
+        List<ChecksumIssue> issues = getChecksumIssues(cache);
+        Assert.assertEquals(issues.size(), 1, issues.toString());
+        assertChecksumIssue(issues.get(0), BAD_FILE_ID_1, EXTRA_PILLAR, Classification.DEVIATING_PILLAR);
+    }
 
     @Test(groups = {"regressiontest", "databasetest", "integritytest"})
     public void testNoChecksums() throws Exception {
@@ -569,6 +633,48 @@ public class IntegrityDAOTest extends IntegrityDatabaseTestCase {
         Assert.assertEquals(missingFiles, Arrays.asList(file2));
     }
     
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testFindFilesMissingOnPillar() throws Exception {
+        addDescription("Tests the extraction of the files missing on a specific pillar.");
+        IntegrityDAO cache = createDAO();
+        String file2 = TEST_FILE_ID + "-2";
+        
+        addStep("Insert two files on the first pillar, and one of them on the second pillar", 
+                "Ingesting the data into the database");
+        cache.updateFileIDs(getFileIDsData(TEST_FILE_ID, file2), TEST_PILLAR_1, TEST_COLLECTIONID);
+        cache.updateFileIDs(getFileIDsData(TEST_FILE_ID), TEST_PILLAR_2, TEST_COLLECTIONID);
+        Date afterInsert = new Date(System.currentTimeMillis() + 1000);
+        
+        addStep("Evaluate and extract the files missing on each pillar", 
+                "The second file is missing on the second pillar");
+        cache.updateFilesMissingOnPillar(TEST_COLLECTIONID, TEST_PILLAR_1, afterInsert, null);
+        cache.updateFilesMissingOnPillar(TEST_COLLECTIONID, TEST_PILLAR_2, afterInsert, null);
+        Assert.assertEquals(getIssuesFromIterator(
+                cache.findFilesMissingOnPillar(TEST_COLLECTIONID, TEST_PILLAR_1)), Arrays.asList());
+        Assert.assertEquals(getIssuesFromIterator(
+                cache.findFilesMissingOnPillar(TEST_COLLECTIONID, TEST_PILLAR_2)), Arrays.asList(file2));
+        
+        addStep("Evaluate the files missing on the second pillar, with a cutoff before the files", 
+                "No files are old enough to be considered missing");
+        cache.updateFilesMissingOnPillar(TEST_COLLECTIONID, TEST_PILLAR_2, new Date(0), null);
+        Assert.assertEquals(getIssuesFromIterator(
+                cache.findFilesMissingOnPillar(TEST_COLLECTIONID, TEST_PILLAR_2)), Arrays.asList());
+    }
+    
+    @Test(groups = {"regressiontest", "databasetest", "integritytest"})
+    public void testLatestEvaluationDate() throws Exception {
+        addDescription("Tests the registration of the date of the latest evaluation of a collection.");
+        IntegrityDAO cache = createDAO();
+        
+        addStep("Get the date of the latest evaluation of a new collection", "No evaluation has been registered");
+        Assert.assertNull(cache.getDateForLatestEvaluation(TEST_COLLECTIONID));
+        
+        addStep("Register an evaluation", "The date of the evaluation is delivered");
+        Date evaluationDate = new Date();
+        cache.setDateForLatestEvaluation(TEST_COLLECTIONID, evaluationDate);
+        Assert.assertEquals(cache.getDateForLatestEvaluation(TEST_COLLECTIONID), evaluationDate);
+    }
+    
     @Test(groups = {"regressiontest", "databasetest", "integritytest"})
     public void testExtractingAllMissingFilesForPillarsLimits() throws Exception {
         addDescription("Tests the limits for extracting missing files for specific pillars.");
@@ -745,10 +851,27 @@ public class IntegrityDAOTest extends IntegrityDatabaseTestCase {
         return new DerbyIntegrityDAO(dm.getConnector());
     }
     
+    private void assertChecksumIssue(ChecksumIssue issue, String fileID, String pillarID, 
+            Classification classification) {
+        Assert.assertEquals(issue.getFileID(), fileID);
+        Assert.assertEquals(issue.getPillarID(), pillarID);
+        Assert.assertEquals(issue.getClassification(), classification);
+    }
+    
     /**
      * This is not the way to handle the iterators, as the lists might grow really long. 
      * It's here to make the tests simple, and can be done as there's only small amounts of test data in the tests. 
      */
+    private List<ChecksumIssue> getChecksumIssues(IntegrityDAO cache) {
+        List<ChecksumIssue> issues = new ArrayList<ChecksumIssue>();
+        ChecksumIssueIterator it = cache.findChecksumIssues(TEST_COLLECTIONID);
+        ChecksumIssue issue;
+        while((issue = it.getNextChecksumIssue()) != null) {
+            issues.add(issue);
+        }
+        return issues;
+    }
+    
     private List<String> getIssuesFromIterator(IntegrityIssueIterator it) {
         List<String> issues = new ArrayList<String>();
         String issue = null;
@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.collector;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class IntegrityDataIngesterTest extends ExtendedTestCase {
+    public static final String TEST_COLLECTION = "dummy-collection";
+    public static final String TEST_PILLAR_1 = "test-pillar-1";
+    public static final String TEST_PILLAR_2 = "test-pillar-2";
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testIngestingPages() throws Exception {
+        addDescription("Tests that the pages are written to the model in the order they were received, that the "
+                + "dates for the next pages are available before the pages are written, and that the newest dates "
+                + "are available when the pages have been written.");
+        IntegrityModel model = mock(IntegrityModel.class);
+        IntegrityDataIngester ingester = new IntegrityDataIngester(model);
+        
+        addStep("Add two pages from one pillar and one page from another", 
+                "The newest calculation dates of the pages are delivered for the next page from each pillar");
+        List<ChecksumDataForChecksumSpecTYPE> page1 = createChecksumPage(1000L, 2000L);
+        List<ChecksumDataForChecksumSpecTYPE> page2 = createChecksumPage(3000L);
+        List<ChecksumDataForChecksumSpecTYPE> page3 = createChecksumPage(1500L);
+        ingester.addChecksums(page1, TEST_PILLAR_1, TEST_COLLECTION);
+        ingester.addChecksums(page2, TEST_PILLAR_1, TEST_COLLECTION);
+        ingester.addChecksums(page3, TEST_PILLAR_2, TEST_COLLECTION);
+        Assert.assertEquals(ingester.getNextChecksumsPageDate(TEST_PILLAR_1), new Date(3000L));
+        Assert.assertEquals(ingester.getNextChecksumsPageDate(TEST_PILLAR_2), new Date(1500L));
+        Assert.assertNull(ingester.getNextFileIDsPageDate(TEST_PILLAR_1));
+        
+        addStep("Finish the ingester", "All pages have been written, the pages from a pillar in order. The newest "
+                + "calculation dates of the written pages are delivered for each pillar");
+        ingester.finish();
+        Assert.assertEquals(ingester.getNewestChecksumDate(TEST_PILLAR_1), new Date(3000L));
+        Assert.assertEquals(ingester.getNewestChecksumDate(TEST_PILLAR_2), new Date(1500L));
+        Assert.assertNull(ingester.getNewestFileDate(TEST_PILLAR_1));
+        InOrder inOrder = inOrder(model);
+        inOrder.verify(model).addChecksums(page1, TEST_PILLAR_1, TEST_COLLECTION);
+        inOrder.verify(model).addChecksums(page2, TEST_PILLAR_1, TEST_COLLECTION);
+        verify(model).addChecksums(page3, TEST_PILLAR_2, TEST_COLLECTION);
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testBackPressure() throws Exception {
+        addDescription("Tests that adding pages from a pillar waits when the writing of its pages falls behind, "
+                + "without holding back the pages from other pillars.");
+        IntegrityModel model = mock(IntegrityModel.class);
+        final CountDownLatch writeAllowed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                writeAllowed.await();
+                return null;
+            }
+        }).when(model).addChecksums(Matchers.<List<ChecksumDataForChecksumSpecTYPE>>any(), anyString(), anyString());
+        final IntegrityDataIngester ingester = new IntegrityDataIngester(model, 1, 2);
+        
+        addStep("Add pages while the writer is blocked", 
+                "The first page is being written, and the second page is queued. The third page must wait.");
+        ingester.addChecksums(createChecksumPage(1000L), TEST_PILLAR_1, TEST_COLLECTION);
+        ingester.addChecksums(createChecksumPage(2000L), TEST_PILLAR_1, TEST_COLLECTION);
+        final CountDownLatch thirdPageAdded = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ingester.addChecksums(createChecksumPage(3000L), TEST_PILLAR_1, TEST_COLLECTION);
+                    thirdPageAdded.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        Assert.assertFalse(thirdPageAdded.await(500, TimeUnit.MILLISECONDS));
+        
+        addStep("Add a page from another pillar", "The page is added without waiting");
+        ingester.addChecksums(createChecksumPage(1000L), TEST_PILLAR_2, TEST_COLLECTION);
+        Assert.assertFalse(thirdPageAdded.await(100, TimeUnit.MILLISECONDS));
+        
+        addStep("Let the writer continue", "The third page is added, and all pages are written");
+        writeAllowed.countDown();
+        Assert.assertTrue(thirdPageAdded.await(10, TimeUnit.SECONDS));
+        ingester.finish();
+        verify(model, times(3)).addChecksums(Matchers.<List<ChecksumDataForChecksumSpecTYPE>>any(), 
+                eq(TEST_PILLAR_1), eq(TEST_COLLECTION));
+        verify(model).addChecksums(Matchers.<List<ChecksumDataForChecksumSpecTYPE>>any(), 
+                eq(TEST_PILLAR_2), eq(TEST_COLLECTION));
+    }
+    
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testWriteFailure() throws Exception {
+        addDescription("Tests that a page, which cannot be written, stops the writing of the later pages from the "
+                + "pillar, resets the date for its next page to the newest written date, and fails the ingester.");
+        IntegrityModel model = mock(IntegrityModel.class);
+        final List<ChecksumDataForChecksumSpecTYPE> page1 = createChecksumPage(1000L);
+        final List<ChecksumDataForChecksumSpecTYPE> page2 = createChecksumPage(2000L);
+        final List<ChecksumDataForChecksumSpecTYPE> page3 = createChecksumPage(3000L);
+        final List<ChecksumDataForChecksumSpecTYPE> otherPage = createChecksumPage(1500L);
+        final CountDownLatch writeAllowed = new CountDownLatch(1);
+        final RuntimeException failure = new IllegalStateException("Database unavailable");
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                writeAllowed.await();
+                if(invocation.getArguments()[0] == page2) {
+                    throw failure;
+                }
+                return null;
+            }
+        }).when(model).addChecksums(Matchers.<List<ChecksumDataForChecksumSpecTYPE>>any(), anyString(), anyString());
+        IntegrityDataIngester ingester = new IntegrityDataIngester(model, 2, 3);
+        
+        addStep("Add three pages from one pillar, where the second cannot be written, and a page from another "
+                + "pillar", "The date for the next page is the newest received date, until the writing fails");
+        ingester.addChecksums(page1, TEST_PILLAR_1, TEST_COLLECTION);
+        ingester.addChecksums(page2, TEST_PILLAR_1, TEST_COLLECTION);
+        ingester.addChecksums(page3, TEST_PILLAR_1, TEST_COLLECTION);
+        ingester.addChecksums(otherPage, TEST_PILLAR_2, TEST_COLLECTION);
+        Assert.assertEquals(ingester.getNextChecksumsPageDate(TEST_PILLAR_1), new Date(3000L));
+        Assert.assertFalse(ingester.hasWriteFailed(TEST_PILLAR_1));
+        
+        addStep("Let the writers continue, and finish the ingester", 
+                "The ingester fails with the write failure as cause. The third page is not written, and the dates "
+                + "for the failed pillar are those of the first page, while the other pillar is unaffected");
+        writeAllowed.countDown();
+        try {
+            ingester.finish();
+            Assert.fail("The ingester should fail, when a page could not be written");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(e.getCause(), failure);
+        }
+        Assert.assertTrue(ingester.hasWriteFailed(TEST_PILLAR_1));
+        Assert.assertFalse(ingester.hasWriteFailed(TEST_PILLAR_2));
+        verify(model).addChecksums(page1, TEST_PILLAR_1, TEST_COLLECTION);
+        verify(model).addChecksums(page2, TEST_PILLAR_1, TEST_COLLECTION);
+        verify(model, never()).addChecksums(page3, TEST_PILLAR_1, TEST_COLLECTION);
+        verify(model).addChecksums(otherPage, TEST_PILLAR_2, TEST_COLLECTION);
+        Assert.assertEquals(ingester.getNewestChecksumDate(TEST_PILLAR_1), new Date(1000L));
+        Assert.assertEquals(ingester.getNextChecksumsPageDate(TEST_PILLAR_1), new Date(1000L));
+        Assert.assertEquals(ingester.getNewestChecksumDate(TEST_PILLAR_2), new Date(1500L));
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testFinishAfterFailure() throws Exception {
+        addDescription("Tests that finishing the ingester after a failed collection does not hide the failure of "
+                + "the collection.");
+        IntegrityModel model = mock(IntegrityModel.class);
+        RuntimeException writeFailure = new IllegalStateException("Database unavailable");
+        doThrow(writeFailure).when(model).addChecksums(Matchers.<List<ChecksumDataForChecksumSpecTYPE>>any(), 
+                anyString(), anyString());
+        IntegrityDataIngester ingester = new IntegrityDataIngester(model);
+        ingester.addChecksums(createChecksumPage(1000L), TEST_PILLAR_1, TEST_COLLECTION);
+        
+        addStep("Finish the ingester after a failed collection", 
+                "The failure of the ingester is added as suppressed to the failure of the collection");
+        Exception collectionFailure = new IllegalStateException("Collection failed");
+        ingester.finishAfterFailure(collectionFailure);
+        Assert.assertEquals(collectionFailure.getSuppressed().length, 1);
+        Assert.assertSame(collectionFailure.getSuppressed()[0].getCause(), writeFailure);
+    }
+    
+    private List<ChecksumDataForChecksumSpecTYPE> createChecksumPage(Long ... calculationTimes) {
+        List<ChecksumDataForChecksumSpecTYPE> res = new ArrayList<ChecksumDataForChecksumSpecTYPE>();
+        for(Long calculationTime : calculationTimes) {
+            ChecksumDataForChecksumSpecTYPE csData = new ChecksumDataForChecksumSpecTYPE();
+            csData.setCalculationTimestamp(CalendarUtils.getFromMillis(calculationTime));
+            csData.setChecksumValue(Base16Utils.encodeBase16("0123456789"));
+            csData.setFileID("file-" + calculationTime);
+            res.add(csData);
+        }
+        return res;
+    }
+}
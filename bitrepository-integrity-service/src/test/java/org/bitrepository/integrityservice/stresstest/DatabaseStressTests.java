@@ -22,18 +22,24 @@
 package org.bitrepository.integrityservice.stresstest;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
 import org.bitrepository.bitrepositoryelements.FileIDsData.FileIDsDataItems;
 import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.Base16Utils;
 import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.common.utils.TimeUtils;
 import org.bitrepository.integrityservice.cache.IntegrityDatabaseManager;
+import org.bitrepository.integrityservice.cache.PillarCollectionMetric;
 import org.bitrepository.integrityservice.cache.database.DerbyIntegrityDAO;
 import org.bitrepository.integrityservice.cache.database.IntegrityDAO;
 import org.bitrepository.integrityservice.cache.database.IntegrityDatabaseCreator;
@@ -78,17 +84,7 @@ public class DatabaseStressTests extends ExtendedTestCase {
     }
     
     protected void populateDatabase(IntegrityDAO cache) {
-        FileIDsData data = new FileIDsData();
-        FileIDsDataItems items = new FileIDsDataItems();
-        XMLGregorianCalendar lastModificationTime = CalendarUtils.getNow();
-        for(int i = 0; i < NUMBER_OF_FILES; i++) {
-            FileIDsDataItem item = new FileIDsDataItem();
-            item.setFileID("fileid-" + i);
-            item.setFileSize(BigInteger.valueOf(i));
-            item.setLastModificationTime(lastModificationTime);
-            items.getFileIDsDataItem().add(item);
-        }
-        data.setFileIDsDataItems(items);
+        FileIDsData data = createFileIDsPage();
         String collectionID = settings.getRepositorySettings().getCollections().getCollection().get(0).getID();
         cache.updateFileIDs(data, PILLAR_1, collectionID);
         cache.updateFileIDs(data, PILLAR_2, collectionID);
@@ -99,6 +95,7 @@ public class DatabaseStressTests extends ExtendedTestCase {
     @AfterMethod (alwaysRun = true)
     public void clearDatabase() throws Exception {
         DBConnector connector = new DBConnector(settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
+        DatabaseUtils.executeStatement(connector, "DELETE FROM integrity_issues", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM fileinfo", new Object[0]);
         DatabaseUtils.executeStatement(connector, "DELETE FROM pillar", new Object[0]);
     }
@@ -126,6 +123,70 @@ public class DatabaseStressTests extends ExtendedTestCase {
         System.err.println("Time to find missing checksums: " + TimeUtils.millisecondsToHuman(System.currentTimeMillis() - startTime));
     }
     
+    @Test(groups = {"stresstest", "integritytest"})
+    public void testIngestPerformance() {
+        addDescription("Testing the number of rows ingested per second, when pages of '" + NUMBER_OF_FILES 
+                + "' fileIDs and checksums are ingested, both for new and for known files.");
+        IntegrityDAO cache = createDAO();
+        String collectionID = settings.getRepositorySettings().getCollections().getCollection().get(0).getID();
+        FileIDsData fileIDsPage = createFileIDsPage();
+        List<ChecksumDataForChecksumSpecTYPE> checksumPage = createChecksumPage();
+        
+        long startTime = System.currentTimeMillis();
+        cache.updateFileIDs(fileIDsPage, PILLAR_1, collectionID);
+        reportIngestRate("new fileIDs", startTime);
+        
+        startTime = System.currentTimeMillis();
+        cache.updateFileIDs(fileIDsPage, PILLAR_1, collectionID);
+        reportIngestRate("known fileIDs", startTime);
+        
+        startTime = System.currentTimeMillis();
+        cache.updateChecksums(checksumPage, PILLAR_1, collectionID);
+        reportIngestRate("checksums for known files", startTime);
+        
+        startTime = System.currentTimeMillis();
+        cache.updateChecksums(checksumPage, PILLAR_2, collectionID);
+        reportIngestRate("checksums for new files", startTime);
+        
+        Map<String, PillarCollectionMetric> metrics = cache.getPillarCollectionMetrics(collectionID);
+        AssertJUnit.assertEquals(NUMBER_OF_FILES.longValue(), metrics.get(PILLAR_1).getPillarFileCount());
+        AssertJUnit.assertEquals(NUMBER_OF_FILES.longValue(), metrics.get(PILLAR_2).getPillarFileCount());
+    }
+    
+    private FileIDsData createFileIDsPage() {
+        FileIDsData data = new FileIDsData();
+        FileIDsDataItems items = new FileIDsDataItems();
+        XMLGregorianCalendar lastModificationTime = CalendarUtils.getNow();
+        for(int i = 0; i < NUMBER_OF_FILES; i++) {
+            FileIDsDataItem item = new FileIDsDataItem();
+            item.setFileID("fileid-" + i);
+            item.setFileSize(BigInteger.valueOf(i));
+            item.setLastModificationTime(lastModificationTime);
+            items.getFileIDsDataItem().add(item);
+        }
+        data.setFileIDsDataItems(items);
+        return data;
+    }
+    
+    private List<ChecksumDataForChecksumSpecTYPE> createChecksumPage() {
+        List<ChecksumDataForChecksumSpecTYPE> checksums = new ArrayList<ChecksumDataForChecksumSpecTYPE>();
+        XMLGregorianCalendar calculationTime = CalendarUtils.getNow();
+        for(int i = 0; i < NUMBER_OF_FILES; i++) {
+            ChecksumDataForChecksumSpecTYPE checksum = new ChecksumDataForChecksumSpecTYPE();
+            checksum.setFileID("fileid-" + i);
+            checksum.setChecksumValue(Base16Utils.encodeBase16("1234567890abcdef1234567890abcdef"));
+            checksum.setCalculationTimestamp(calculationTime);
+            checksums.add(checksum);
+        }
+        return checksums;
+    }
+    
+    private void reportIngestRate(String description, long startTime) {
+        long millis = Math.max(1, System.currentTimeMillis() - startTime);
+        System.err.println("Time to ingest a page of '" + NUMBER_OF_FILES + "' " + description + ": " 
+                + TimeUtils.millisecondsToHuman(millis) + " (" + (NUMBER_OF_FILES * 1000L / millis) + " rows/s)");
+    }
+    
     private IntegrityDAO createDAO() {
         DatabaseManager dm = new IntegrityDatabaseManager(
                 settings.getReferenceSettings().getIntegrityServiceSettings().getIntegrityDatabase());
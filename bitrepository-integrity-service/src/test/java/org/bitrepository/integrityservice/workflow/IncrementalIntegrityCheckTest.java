@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2013 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.workflow;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.integrityservice.alerter.IntegrityAlerter;
+import org.bitrepository.integrityservice.cache.IntegrityModel;
+import org.bitrepository.integrityservice.cache.database.ChecksumIssueIterator;
+import org.bitrepository.integrityservice.cache.database.IntegrityIssueIterator;
+import org.bitrepository.integrityservice.collector.IntegrityInformationCollector;
+import org.bitrepository.integrityservice.reports.IntegrityReporter;
+import org.bitrepository.integrityservice.workflow.step.UpdateChecksumsStep;
+import org.bitrepository.integrityservice.workflow.step.UpdateFileIDsStep;
+import org.bitrepository.service.audit.AuditTrailManager;
+import org.bitrepository.service.exception.WorkflowAbortedException;
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class IncrementalIntegrityCheckTest extends ExtendedTestCase {
+    
+    private static final String PILLAR_1 = "pillar1";
+    private static final String PILLAR_2 = "pillar2";
+    private String TEST_COLLECTION;
+
+    protected Settings settings;
+    protected IntegrityInformationCollector collector;
+    protected IntegrityAlerter alerter;
+    protected IntegrityModel model;
+    protected AuditTrailManager auditManager;
+    protected IntegrityReporter reporter;
+    protected UpdateFileIDsStep updateFileIDsStep;
+    protected UpdateChecksumsStep updateChecksumsStep;
+    
+    @BeforeMethod (alwaysRun = true)
+    public void setup() throws Exception {
+        settings = TestSettingsProvider.reloadSettings("IntegrityWorkflowTest");
+
+        settings.getRepositorySettings().getCollections().getCollection().get(0).getPillarIDs().getPillarID().clear();
+        settings.getRepositorySettings().getCollections().getCollection().get(0).getPillarIDs().getPillarID().add(PILLAR_1);
+        settings.getRepositorySettings().getCollections().getCollection().get(0).getPillarIDs().getPillarID().add(PILLAR_2);
+        settings.getReferenceSettings().getIntegrityServiceSettings().setTimeBeforeMissingFileCheck(0);
+        
+        TEST_COLLECTION = settings.getRepositorySettings().getCollections().getCollection().get(0).getID();
+        SettingsUtils.initialize(settings);
+        
+        collector = mock(IntegrityInformationCollector.class);
+        alerter = mock(IntegrityAlerter.class);
+        model = mock(IntegrityModel.class);
+        auditManager = mock(AuditTrailManager.class);
+        reporter = mock(IntegrityReporter.class);
+        when(reporter.getCollectionID()).thenReturn(TEST_COLLECTION);
+        updateFileIDsStep = mock(UpdateFileIDsStep.class);
+        when(updateFileIDsStep.getName()).thenReturn("Update fileIDs");
+        updateChecksumsStep = mock(UpdateChecksumsStep.class);
+        when(updateChecksumsStep.getName()).thenReturn("Update checksums");
+        
+        when(model.findFilesMissingOnPillar(anyString(), anyString())).thenReturn(mock(IntegrityIssueIterator.class));
+        when(model.getChecksumIssues(anyString())).thenReturn(mock(ChecksumIssueIterator.class));
+        when(model.findFilesWithMissingChecksum(anyString(), anyString(), any(Date.class)))
+            .thenReturn(mock(IntegrityIssueIterator.class));
+        when(model.findChecksumsOlderThan(any(Date.class), anyString(), anyString()))
+            .thenReturn(mock(IntegrityIssueIterator.class));
+    }
+
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testEvaluationOfChangedFiles() throws Exception {
+        addDescription("Test that the incremental integrity check only evaluates the files changed since the latest "
+                + "evaluation, and registers the start of its evaluation as the latest evaluation.");
+        addStep("Prepare the model with a latest evaluation", "");
+        Date latestEvaluation = new Date(System.currentTimeMillis() - 3600000);
+        when(model.getDateForLatestEvaluation(TEST_COLLECTION)).thenReturn(latestEvaluation);
+
+        addStep("Run the incremental integrity check", "The missing files and the checksum issues are evaluated for "
+                + "the files changed since the latest evaluation, and the evaluation date is updated.");
+        Date beforeStart = new Date();
+        IncrementalIntegrityCheck workflow = createWorkflow();
+        workflow.start();
+        Date afterStart = new Date();
+        
+        verify(model).getDateForLatestEvaluation(TEST_COLLECTION);
+        verify(model).updateFilesMissingOnPillar(eq(TEST_COLLECTION), eq(PILLAR_1), any(Date.class), 
+                eq(latestEvaluation));
+        verify(model).updateFilesMissingOnPillar(eq(TEST_COLLECTION), eq(PILLAR_2), any(Date.class), 
+                eq(latestEvaluation));
+        verify(model).updateChecksumIssues(TEST_COLLECTION, latestEvaluation);
+        
+        ArgumentCaptor<Date> evaluationDate = ArgumentCaptor.forClass(Date.class);
+        verify(model).setDateForLatestEvaluation(eq(TEST_COLLECTION), evaluationDate.capture());
+        Assert.assertFalse(evaluationDate.getValue().before(beforeStart));
+        Assert.assertFalse(evaluationDate.getValue().after(afterStart));
+        verify(reporter).generateReport();
+    }
+    
+    @Test(groups = {"regressiontest", "integritytest"})
+    public void testAbortedCheckDoesNotUpdateEvaluationDate() throws Exception {
+        addDescription("Test that an aborted incremental integrity check does not register a latest evaluation, "
+                + "so the files changed since the previous evaluation are evaluated by the next check.");
+        addStep("Prepare the model with a latest evaluation, and the checksum update to abort the workflow", "");
+        Date latestEvaluation = new Date(System.currentTimeMillis() - 3600000);
+        when(model.getDateForLatestEvaluation(TEST_COLLECTION)).thenReturn(latestEvaluation);
+        doThrow(new WorkflowAbortedException("Aborted")).when(updateChecksumsStep).performStep();
+
+        addStep("Run the incremental integrity check", "The workflow is aborted, and neither evaluates the files nor "
+                + "updates the evaluation date.");
+        IncrementalIntegrityCheck workflow = createWorkflow();
+        workflow.start();
+        
+        verify(model, never()).updateChecksumIssues(anyString(), any(Date.class));
+        verify(model, never()).setDateForLatestEvaluation(anyString(), any(Date.class));
+        verify(reporter, never()).generateReport();
+    }
+    
+    private IncrementalIntegrityCheck createWorkflow() {
+        IncrementalIntegrityCheck workflow = new IncrementalIntegrityCheck() {
+            @Override
+            protected UpdateFileIDsStep getUpdateFileIDsStep() {
+                return updateFileIDsStep;
+            }
+            
+            @Override
+            protected UpdateChecksumsStep getUpdateChecksumsStep() {
+                return updateChecksumsStep;
+            }
+            
+            @Override
+            protected IntegrityReporter createReporter() {
+                return reporter;
+            }
+            
+            @Override
+            protected void publishReport(IntegrityReporter reporter) throws IOException {
+                reporter.generateReport();
+            }
+        };
+        IntegrityWorkflowContext context = new IntegrityWorkflowContext(settings, collector, model, alerter, 
+                auditManager);
+        workflow.initialise(context, TEST_COLLECTION);
+        return workflow;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * Bitrepository Integrity Service
+ * %%
+ * Copyright (C) 2010 - 2012 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.integrityservice.workflow.step;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.service.exception.WorkflowAbortedException;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ParallelPillarCollectorTest extends ExtendedTestCase {
+    public static final String TEST_PILLAR_1 = "test-pillar-1";
+    public static final String TEST_PILLAR_2 = "test-pillar-2";
+    public static final String TEST_PILLAR_3 = "test-pillar-3";
+    public static final String TEST_COLLECTION = "test-collection";
+
+    @Test(groups = {"regressiontest"})
+    public void testSlowPillarDoesNotHoldBackOthers() throws Exception {
+        addDescription("Tests that the collection from a slow pillar does not hold back the collection from the "
+                + "other pillars.");
+        final CountDownLatch slowPillarAllowed = new CountDownLatch(1);
+        final CountDownLatch fastPillarsFinished = new CountDownLatch(2);
+        final List<Thread> collectingThreads = new CopyOnWriteArrayList<Thread>();
+        final ParallelPillarCollector.PillarCollection collection = new ParallelPillarCollector.PillarCollection() {
+            @Override
+            public void collect(String pillarID) throws InterruptedException {
+                collectingThreads.add(Thread.currentThread());
+                if(pillarID.equals(TEST_PILLAR_1)) {
+                    slowPillarAllowed.await();
+                } else {
+                    fastPillarsFinished.countDown();
+                }
+            }
+        };
+        final CountDownLatch collectionFinished = new CountDownLatch(1);
+        Thread collector = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ParallelPillarCollector.collect(TEST_COLLECTION, 
+                            Arrays.asList(TEST_PILLAR_1, TEST_PILLAR_2, TEST_PILLAR_3), collection);
+                    collectionFinished.countDown();
+                } catch (InterruptedException | WorkflowAbortedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        
+        addStep("Collect from three pillars, where the first pillar does not finish", 
+                "The other pillars finish, but the collection waits for the first pillar");
+        collector.start();
+        Assert.assertTrue(fastPillarsFinished.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(collectionFinished.await(200, TimeUnit.MILLISECONDS));
+        for(Thread thread : collectingThreads) {
+            Assert.assertTrue(thread.getName().startsWith("PillarCollector-" + TEST_COLLECTION), thread.getName());
+            Assert.assertTrue(thread.isDaemon());
+        }
+        
+        addStep("Let the first pillar finish", "The collection finishes");
+        slowPillarAllowed.countDown();
+        Assert.assertTrue(collectionFinished.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void testFailureInterruptsOtherPillars() throws Exception {
+        addDescription("Tests that a failure of the collection from one pillar interrupts the collection from the "
+                + "other pillars right away, and is thrown.");
+        final CountDownLatch otherPillarStarted = new CountDownLatch(1);
+        final CountDownLatch otherPillarInterrupted = new CountDownLatch(1);
+        final RuntimeException failure = new IllegalStateException("Collection failed");
+        ParallelPillarCollector.PillarCollection collection = new ParallelPillarCollector.PillarCollection() {
+            @Override
+            public void collect(String pillarID) throws InterruptedException {
+                if(pillarID.equals(TEST_PILLAR_1)) {
+                    otherPillarStarted.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        otherPillarInterrupted.countDown();
+                        throw e;
+                    }
+                } else {
+                    otherPillarStarted.await();
+                    throw failure;
+                }
+            }
+        };
+        
+        addStep("Collect from two pillars, where the first never finishes and the second fails", 
+                "The failure is thrown, and the collection from the first pillar is interrupted");
+        try {
+            ParallelPillarCollector.collect(TEST_COLLECTION, Arrays.asList(TEST_PILLAR_1, TEST_PILLAR_2), collection);
+            Assert.fail("The failure of the collection should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(e, failure);
+        }
+        Assert.assertTrue(otherPillarInterrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void testAbortInterruptsOtherPillars() throws Exception {
+        addDescription("Tests that aborting the workflow while collecting from one pillar interrupts the collection "
+                + "from the other pillars, and aborts the collection.");
+        final CountDownLatch otherPillarStarted = new CountDownLatch(1);
+        final CountDownLatch otherPillarInterrupted = new CountDownLatch(1);
+        ParallelPillarCollector.PillarCollection collection = new ParallelPillarCollector.PillarCollection() {
+            @Override
+            public void collect(String pillarID) throws InterruptedException, WorkflowAbortedException {
+                if(pillarID.equals(TEST_PILLAR_1)) {
+                    otherPillarStarted.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        otherPillarInterrupted.countDown();
+                        throw e;
+                    }
+                } else {
+                    otherPillarStarted.await();
+                    throw new WorkflowAbortedException("Aborting");
+                }
+            }
+        };
+        
+        addStep("Collect from two pillars, where the first never finishes and the second aborts the workflow", 
+                "The abort is thrown, and the collection from the first pillar is interrupted");
+        try {
+            ParallelPillarCollector.collect(TEST_COLLECTION, Arrays.asList(TEST_PILLAR_1, TEST_PILLAR_2), collection);
+            Assert.fail("The workflow should be aborted");
+        } catch (WorkflowAbortedException e) {
+            // expected
+        }
+        Assert.assertTrue(otherPillarInterrupted.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -25,6 +25,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -33,7 +34,13 @@ import static org.mockito.Mockito.when;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bitrepository.access.ContributorQuery;
 import org.bitrepository.access.getfileids.conversation.FileIDsCompletePillarEvent;
@@ -58,6 +65,7 @@ import org.testng.annotations.Test;
 @SuppressWarnings("rawtypes")
 public class UpdateFileIDsStepTest extends WorkflowstepTest {
     public static final String TEST_PILLAR_1 = "test-pillar-1";
+    public static final String TEST_PILLAR_2 = "test-pillar-2";
     public static final String TEST_FILE_1 = "test-file-1";
 
     @Test(groups = {"regressiontest"})
@@ -270,6 +278,146 @@ public class UpdateFileIDsStepTest extends WorkflowstepTest {
                 any(EventHandler.class));
     }
 
+    @Test(groups = {"regressiontest"})
+    public void testPageWindowOfEachPillar() throws Exception {
+        addDescription("Test that no more than the page window of pages are collected from a pillar, while its "
+                + "pages are not written, without holding back the collection from the other pillars.");
+        settings.getReferenceSettings().getIntegrityServiceSettings().setCollectionPageWindow(1);
+        final CountDownLatch writeAllowed = new CountDownLatch(1);
+        final AtomicInteger pagesRequestedFromPillar1 = new AtomicInteger();
+        
+        addStep("Setup the model to wait with writing the pages from the first pillar, and the collector mock to "
+                + "deliver three pages from the first pillar and a single page from the second", "No failure here");
+        doAnswer(new Answer() {
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                if(invocation.getArguments()[1].equals(TEST_PILLAR_1)) {
+                    writeAllowed.await();
+                }
+                return null;
+            }
+        }).when(model).addFileIDs(any(FileIDsData.class), anyString(), anyString());
+        doAnswer(new Answer() {
+            public Void answer(InvocationOnMock invocation) {
+                String pillarID = getPillarID(invocation);
+                EventHandler eventHandler = (EventHandler) invocation.getArguments()[4];
+                boolean partial = pillarID.equals(TEST_PILLAR_1) && pagesRequestedFromPillar1.incrementAndGet() < 3;
+                eventHandler.handleEvent(new FileIDsCompletePillarEvent(pillarID, TEST_COLLECTION, 
+                        createResultingFileIDs(TEST_FILE_1), partial));
+                eventHandler.handleEvent(new CompleteEvent(TEST_COLLECTION, null));
+                return null;
+            }
+        }).when(collector).getFileIDs(
+                eq(TEST_COLLECTION), Matchers.<Collection<String>>any(), anyString(), any(ContributorQuery[].class),
+                any(EventHandler.class));
+        setupActiveContributors(TEST_PILLAR_1, TEST_PILLAR_2);
+
+        addStep("Perform the step", "The page from the second pillar is written. Only two pages are requested from "
+                + "the first pillar: the one being written, and the one waiting for room in the page window.");
+        UpdateFileIDsStep step = new IncrementalUpdateFileIDsStep(collector, model, alerter, settings, 
+                TEST_COLLECTION, integrityContributors);
+        Thread stepThread = startStep(step);
+        verify(model, timeout(10000)).addFileIDs(any(FileIDsData.class), eq(TEST_PILLAR_2), eq(TEST_COLLECTION));
+        Thread.sleep(500);
+        Assert.assertEquals(pagesRequestedFromPillar1.get(), 2);
+
+        addStep("Let the pages from the first pillar be written", "All three pages from the first pillar are "
+                + "collected and written");
+        writeAllowed.countDown();
+        stepThread.join(10000);
+        Assert.assertFalse(stepThread.isAlive());
+        Assert.assertEquals(pagesRequestedFromPillar1.get(), 3);
+        verify(model, times(3)).addFileIDs(any(FileIDsData.class), eq(TEST_PILLAR_1), eq(TEST_COLLECTION));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void testAbortInterruptsOtherPillars() throws Exception {
+        addDescription("Test that aborting the workflow due to a failed pillar interrupts the collection from the "
+                + "other pillars.");
+        final CountDownLatch pillar1Interrupted = new CountDownLatch(1);
+        
+        addStep("Setup the collector mock to never answer for the first pillar, and to fail the second pillar",
+                "No failure here");
+        doAnswer(new Answer() {
+            public Void answer(InvocationOnMock invocation) {
+                String pillarID = getPillarID(invocation);
+                EventHandler eventHandler = (EventHandler) invocation.getArguments()[4];
+                if(pillarID.equals(TEST_PILLAR_1)) {
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        pillar1Interrupted.countDown();
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    eventHandler.handleEvent(new ContributorFailedEvent(TEST_PILLAR_2, TEST_COLLECTION, 
+                            ResponseCode.FAILURE));
+                    eventHandler.handleEvent(new OperationFailedEvent(TEST_COLLECTION, "Problem encountered", null));
+                }
+                return null;
+            }
+        }).when(collector).getFileIDs(
+                eq(TEST_COLLECTION), Matchers.<Collection<String>>any(), anyString(), any(ContributorQuery[].class),
+                any(EventHandler.class));
+        setupActiveContributors(TEST_PILLAR_1, TEST_PILLAR_2);
+        when(integrityContributors.getFailedContributors()).thenReturn(new HashSet<>(Arrays.asList(TEST_PILLAR_2)));
+        settings.getReferenceSettings().getIntegrityServiceSettings().setAbortOnFailedContributor(true);
+
+        addStep("Perform the step", "The workflow is aborted, and the collection from the first pillar is "
+                + "interrupted");
+        UpdateFileIDsStep step = new IncrementalUpdateFileIDsStep(collector, model, alerter, settings, 
+                TEST_COLLECTION, integrityContributors);
+        try {
+            step.performStep();
+            Assert.fail("The step should have thrown an WorkflowAbortedException");
+        } catch (WorkflowAbortedException e) {
+            // expected
+        }
+        Assert.assertTrue(pillar1Interrupted.await(10, TimeUnit.SECONDS));
+        verify(alerter).integrityFailed(anyString(), eq(TEST_COLLECTION));
+    }
+    
+    /**
+     * Sets up the integrity contributors mock to have the given pillars active, until they finish or fail.
+     * @param pillarIDs The IDs of the active pillars.
+     */
+    private void setupActiveContributors(String ... pillarIDs) {
+        final Set<String> activeContributors = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        activeContributors.addAll(Arrays.asList(pillarIDs));
+        when(integrityContributors.getActiveContributors()).thenAnswer(new Answer<Set<String>>() {
+            public Set<String> answer(InvocationOnMock invocation) {
+                return new HashSet<>(activeContributors);
+            }
+        });
+        Answer removeContributor = new Answer() {
+            public Void answer(InvocationOnMock invocation) {
+                activeContributors.remove(invocation.getArguments()[0]);
+                return null;
+            }
+        };
+        doAnswer(removeContributor).when(integrityContributors).finishContributor(anyString());
+        doAnswer(removeContributor).when(integrityContributors).failContributor(anyString());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private String getPillarID(InvocationOnMock invocation) {
+        return ((Collection<String>) invocation.getArguments()[1]).iterator().next();
+    }
+    
+    private Thread startStep(final UpdateFileIDsStep step) {
+        Thread stepThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    step.performStep();
+                } catch (WorkflowAbortedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        stepThread.start();
+        return stepThread;
+    }
+    
     private ResultingFileIDs createResultingFileIDs(String ... fileIDs) {
         ResultingFileIDs res = new ResultingFileIDs();
         res.setFileIDsData(getFileIDsData(fileIDs));
@@ -31,6 +31,7 @@ import org.bitrepository.common.utils.SettingsUtils;
 import org.bitrepository.pillar.common.MessageHandlerContext;
 import org.bitrepository.pillar.messagehandler.PillarMediator;
 import org.bitrepository.pillar.schedulablejobs.RecalculateChecksumJob;
+import org.bitrepository.pillar.schedulablejobs.UpdateMissingFileInfoJob;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.protocol.messagebus.MessageBus;
 import org.bitrepository.service.scheduler.JobScheduler;
@@ -89,7 +90,8 @@ public class Pillar {
     }
     
     /**
-     * Initializes one RecalculateChecksums workflow for each collection.
+     * Initializes one RecalculateChecksums workflow for each collection, and starts a one-off UpdateMissingFileInfo 
+     * job for each collection, which gives the entries without a last modified timestamp one.
      */
     private void initializeWorkflows() {
         Long interval = DEFAULT_RECALCULATION_WORKFLOW_TIME;
@@ -99,6 +101,7 @@ public class Pillar {
         }
         for(String collectionID : SettingsUtils.getCollectionIDsForPillar(
                 settings.getReferenceSettings().getPillarSettings().getPillarID())) {
+            scheduler.startJob(new UpdateMissingFileInfoJob(collectionID, pillarModel));
             SchedulableJob workflow = new RecalculateChecksumJob(collectionID, pillarModel);
             scheduler.schedule(workflow, interval);
         }
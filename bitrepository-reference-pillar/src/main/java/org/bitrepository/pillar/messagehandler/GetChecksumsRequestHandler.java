@@ -24,17 +24,18 @@
  */
 package org.bitrepository.pillar.messagehandler;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.Date;
 
 import javax.xml.bind.JAXBException;
 
-import org.apache.activemq.util.ByteArrayInputStream;
 import org.bitrepository.bitrepositorydata.GetChecksumsResults;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
@@ -48,6 +49,7 @@ import org.bitrepository.common.JaxbHelper;
 import org.bitrepository.pillar.common.MessageHandlerContext;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
+import org.bitrepository.protocol.ContentWriter;
 import org.bitrepository.protocol.MessageContext;
 import org.bitrepository.protocol.utils.MessageUtils;
 import org.bitrepository.service.exception.InvalidMessageException;
@@ -113,12 +115,15 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
             throws RequestHandlerException {
         log.debug(MessageUtils.createMessageIdentifier(request) + " Performing GetChecksums for file(s) " 
                 + request.getFileIDs() + " on collection " + request.getCollectionID());
-        ExtractedChecksumResultSet extractedChecksums = extractChecksumResults(request);
+        ExtractedChecksumResultSet extractedChecksums;
         ResultingChecksums checksumResults;
         if(request.getResultAddress() == null) {
+            extractedChecksums = extractChecksumResults(request);
             checksumResults = compileResultsForMessage(request, extractedChecksums);
         } else {
-            checksumResults = createAndUploadResults(request, extractedChecksums);
+            extractedChecksums = createAndUploadResults(request);
+            checksumResults = new ResultingChecksums();
+            checksumResults.setResultAddress(request.getResultAddress());
         }
         sendFinalResponse(request, checksumResults, extractedChecksums.hasMoreEntries());
     }
@@ -137,40 +142,132 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
                     request.getCollectionID(), request.getMinTimestamp(), request.getMaxTimestamp(), 
                     request.getChecksumRequestForExistingFile());
         } else {
-            Long maxResults = null;
-            if(request.getMaxNumberOfResults() != null) {
-                maxResults = request.getMaxNumberOfResults().longValue();
+            return getPillarModel().getChecksumResultSet(request.getMinTimestamp(), request.getMaxTimestamp(), 
+                    getMaxNumberOfResults(request), request.getCollectionID(), 
+                    request.getChecksumRequestForExistingFile());
+        }
+    }
+
+    /**
+     * Method for calculating the checksum results requested, and inserting them into the given result set as they are
+     * extracted.
+     * @param request The message with the checksum request.
+     * @param results The result set to insert the extracted results into.
+     * @throws RequestHandlerException If the requested checksum specification is not supported.
+     */
+    private void extractChecksumResults(GetChecksumsRequest request, ExtractedChecksumResultSet results) 
+            throws RequestHandlerException {
+        if(request.getFileIDs().isSetFileID()) {
+            for(ChecksumDataForChecksumSpecTYPE cs : extractChecksumResults(request).getEntries()) {
+                results.insertChecksumEntry(cs);
             }
-            return getPillarModel().getChecksumResultSet(request.getMinTimestamp(), request.getMaxTimestamp(), maxResults,
-                    request.getCollectionID(), request.getChecksumRequestForExistingFile());
+        } else {
+            log.debug("Starting to extracting the checksum of the requested files.");
+            getPillarModel().extractChecksumResults(request.getMinTimestamp(), request.getMaxTimestamp(), 
+                    getMaxNumberOfResults(request), request.getCollectionID(), 
+                    request.getChecksumRequestForExistingFile(), results);
+        }
+    }
+
+    /**
+     * @param request The message with the checksum request.
+     * @return The maximum number of results requested, or null if not limited.
+     */
+    private Long getMaxNumberOfResults(GetChecksumsRequest request) {
+        if(request.getMaxNumberOfResults() == null) {
+            return null;
         }
+        return request.getMaxNumberOfResults().longValue();
     }
 
     /**
-     * Uploads the extracted checksum results to the given URL, and creates the ResultingChecksums object for 
-     * the final response message.
+     * Uploads the requested checksum results to the result address of the request, while they are extracted. 
+     * If the direct upload fails during the transfer, the results are extracted again into a temporary file, which 
+     * is then uploaded. A failure to extract, serialize or validate the results is not retried.
      * 
      * @param request The message requesting the calculation of the checksums.
-     * @param checksumResultSet List containing the requested checksums.
-     * @return The ResultingChecksums containing the URL.
+     * @return The result set, which has written the uploaded checksum results.
+     * @throws RequestHandlerException If the results could not be extracted, written or uploaded. A failure to 
+     * write or upload the results, also from the storage model, gives FILE_TRANSFER_FAILURE.
      */
-    private ResultingChecksums createAndUploadResults(GetChecksumsRequest request, 
-            ExtractedChecksumResultSet checksumResultSet) throws RequestHandlerException {
-        ResultingChecksums res = new ResultingChecksums();
+    private ExtractedChecksumResultSet createAndUploadResults(GetChecksumsRequest request) 
+            throws RequestHandlerException {
+        try {
+            URL url = new URL(request.getResultAddress());
+            ChecksumResultsWriter writer = new ChecksumResultsWriter(request);
+            try {
+                log.debug("Uploading the list of checksums directly to '" + url + "'");
+                context.getFileExchange().putFile(writer, url);
+            } catch (IOException e) {
+                if(writer.getExtractionFailure() != null) {
+                    throw writer.getExtractionFailure();
+                }
+                if(writer.getWriteFailure() != null) {
+                    throw createUploadFailure(request, writer.getWriteFailure());
+                }
+                log.warn("Could not upload the list of checksums directly to '" + url + "'. Retrying through a "
+                        + "temporary file.", e);
+                return uploadThroughTemporaryFile(request, url);
+            }
+            if(writer.getResults() == null) {
+                log.warn("The list of checksums was not written during the upload to '" + url + "'. Retrying "
+                        + "through a temporary file.");
+                return uploadThroughTemporaryFile(request, url);
+            }
+            log.debug("Uploaded " + writer.getResults().getNumberOfEntries() + " checksums to '" + url + "'");
+            return writer.getResults();
+        } catch (IOException e) {
+            throw createUploadFailure(request, e);
+        } catch (JAXBException e) {
+            throw createUploadFailure(request, e);
+        } catch (SAXException e) {
+            throw createUploadFailure(request, e);
+        } catch (IllegalStateException e) {
+            throw createUploadFailure(request, e);
+        }
+    }
 
-        String url = request.getResultAddress();
+    /**
+     * Writes the requested checksum results to a temporary file as they are extracted, and uploads the file.
+     * 
+     * @param request The message requesting the calculation of the checksums.
+     * @param url The location where the results should be uploaded.
+     * @return The result set, which has written the checksum results to the uploaded file.
+     * @throws IOException If the file could not be written or uploaded.
+     * @throws JAXBException If the resulting structure cannot be serialized.
+     * @throws SAXException If the results does not validate against the XSD.
+     * @throws RequestHandlerException If the requested checksums could not be extracted.
+     */
+    private StreamingChecksumResultSet uploadThroughTemporaryFile(GetChecksumsRequest request, URL url) 
+            throws IOException, JAXBException, SAXException, RequestHandlerException {
+        File checksumResultFile = File.createTempFile(request.getCorrelationID(), new Date().getTime() + ".cs");
         try {
-            File fileToUpload = makeTemporaryChecksumFile(request, checksumResultSet);
-            uploadFile(fileToUpload, url);
-        } catch (Exception e) {
-            throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not handle the creation "
-                    + "and upload of the results due to: " + e.getMessage(), request.getCollectionID(), e);
+            log.debug("Writing the list of checksums to the file '" + checksumResultFile + "'");
+            StreamingChecksumResultSet results;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(checksumResultFile))) {
+                results = writeChecksumResults(request, out);
+            }
+            log.debug("Wrote " + results.getNumberOfEntries() + " checksums to the file '" + checksumResultFile 
+                    + "'");
+            uploadFile(checksumResultFile, url);
+            return results;
+        } finally {
+            if(!checksumResultFile.delete()) {
+                log.warn("Could not delete the temporary file '" + checksumResultFile + "'");
+            }
         }
+    }
 
-        res.setResultAddress(url);
-        return res;
+    /**
+     * @param request The request, whose results could not be created or uploaded.
+     * @param e The cause.
+     * @return The exception for the failure.
+     */
+    private InvalidMessageException createUploadFailure(GetChecksumsRequest request, Exception e) {
+        return new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not handle the creation "
+                + "and upload of the results due to: " + e.getMessage(), request.getCollectionID(), e);
     }
-    
+
     /**
      * Compiles the extracted checksum results into the message format.
      * @param request The GetChecksumsRequest.
@@ -189,47 +286,30 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
     }
 
     /**
-     * Method for creating a file containing the list of calculated checksums.
+     * Method for writing the requested checksums to a stream. The checksums are validated and written one at a time, 
+     * while they are extracted.
      * 
      * @param request The GetChecksumMessage requesting the checksum calculations.
-     * @param checksumResultSet The list of checksums to put into the list.
-     * @return A file containing all the checksums in the list.
-     * @throws IOException If something goes wrong in the upload.
+     * @param out The stream to write the checksums to. It is flushed, but not closed.
+     * @return The result set, which has written the checksums to the stream.
+     * @throws IOException If the stream could not be written.
      * @throws JAXBException If the resulting structure cannot be serialized.
      * @throws SAXException If the results does not validate against the XSD.
+     * @throws RequestHandlerException If the requested checksums could not be extracted.
      */
-    private File makeTemporaryChecksumFile(GetChecksumsRequest request,
-            ExtractedChecksumResultSet checksumResultSet) throws IOException, JAXBException, SAXException {
-        // Create the temporary file.
-        File checksumResultFile = File.createTempFile(request.getCorrelationID(), new Date().getTime() + ".cs");
-        log.debug("Writing the list of checksums to the file '" + checksumResultFile + "'");
-
-        // Create data format 
-        GetChecksumsResults results = new GetChecksumsResults();
-        results.setVersion(VERSION);
-        results.setMinVersion(MIN_VERSION);
-        results.setPillarID(getSettings().getReferenceSettings().getPillarSettings().getPillarID());
-        results.setCollectionID(request.getCollectionID());
-        for(ChecksumDataForChecksumSpecTYPE cs : checksumResultSet.getEntries()) {
-            results.getChecksumDataItems().add(cs);
-        }
-
-        // Print all the checksums safely (close the streams!)
-        OutputStream is = null;
-        try {
-            is = new FileOutputStream(checksumResultFile);
-            JaxbHelper jaxb = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
-            String xmlMessage = jaxb.serializeToXml(results);
-            jaxb.validate(new ByteArrayInputStream(xmlMessage.getBytes()));
-            is.write(xmlMessage.getBytes());
-            is.flush();
-        } finally {
-            if(is != null) {
-                is.close();
-            }
-        }
-
-        return checksumResultFile;
+    private StreamingChecksumResultSet writeChecksumResults(GetChecksumsRequest request, OutputStream out) 
+            throws IOException, JAXBException, SAXException, RequestHandlerException {
+        GetChecksumsResults header = new GetChecksumsResults();
+        header.setVersion(VERSION);
+        header.setMinVersion(MIN_VERSION);
+        header.setPillarID(getSettings().getReferenceSettings().getPillarSettings().getPillarID());
+        header.setCollectionID(request.getCollectionID());
+
+        JaxbHelper jaxb = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
+        StreamingChecksumResultSet results = new StreamingChecksumResultSet(out, header, jaxb);
+        extractChecksumResults(request, results);
+        results.finish();
+        return results;
     }
 
     /**
@@ -237,14 +317,13 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
      * 
      * @param fileToUpload The File to upload.
      * @param url The location where the file should be uploaded.
-     * @throws Exception If something goes wrong.
+     * @throws IOException If the file could not be read or uploaded.
      */
-    private void uploadFile(File fileToUpload, String url) throws IOException {
-        URL uploadUrl = new URL(url);
-
-        // Upload the file.
+    private void uploadFile(File fileToUpload, URL url) throws IOException {
         log.debug("Uploading file: " + fileToUpload.getName() + " to " + url);
-        context.getFileExchange().putFile(new FileInputStream(fileToUpload), uploadUrl);
+        try (InputStream in = new FileInputStream(fileToUpload)) {
+            context.getFileExchange().putFile(in, url);
+        }
     }
 
     /**
@@ -301,4 +380,81 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
 
         return res;
     }
+
+    /**
+     * Writes the requested checksum results while they are extracted, e.g. directly into the body of an upload.
+     * A failure to extract, serialize or validate the results is kept, so it is reported instead of a failure to 
+     * transfer the results.
+     */
+    private class ChecksumResultsWriter implements ContentWriter {
+        /** The request for the checksum results.*/
+        private final GetChecksumsRequest request;
+        /** The result set, which has written the checksum results.*/
+        private StreamingChecksumResultSet results;
+        /** The failure to extract the checksum results, if any.*/
+        private RequestHandlerException extractionFailure;
+        /** The failure to serialize or validate the checksum results, if any.*/
+        private Exception writeFailure;
+
+        /**
+         * @param request The request for the checksum results.
+         */
+        ChecksumResultsWriter(GetChecksumsRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void writeContent(OutputStream out) throws IOException {
+            TransferFailureRecordingOutputStream recordingOut = new TransferFailureRecordingOutputStream(out);
+            try {
+                results = writeChecksumResults(request, recordingOut);
+            } catch (RequestHandlerException e) {
+                extractionFailure = e;
+                throw new IOException("Could not extract the checksum results.", e);
+            } catch (JAXBException e) {
+                throw createWriteFailure(recordingOut, e, "Could not write the checksum results.");
+            } catch (SAXException e) {
+                throw createWriteFailure(recordingOut, e, "The checksum results are not valid.");
+            } catch (IllegalStateException e) {
+                throw createWriteFailure(recordingOut, e, "Could not write the checksum results.");
+            }
+        }
+
+        /**
+         * Keeps the failure as a failure to write the results, unless it was caused by a failure of the stream.
+         * @param out The stream, which the results were written to.
+         * @param e The failure.
+         * @param message The message for the failure.
+         * @return The exception to throw.
+         */
+        private IOException createWriteFailure(TransferFailureRecordingOutputStream out, Exception e, 
+                String message) {
+            if(out.getTransferFailure() != null) {
+                return out.getTransferFailure();
+            }
+            writeFailure = e;
+            return new IOException(message, e);
+        }
+
+        /**
+         * @return The result set, which has written the checksum results, or null if they have not been written.
+         */
+        StreamingChecksumResultSet getResults() {
+            return results;
+        }
+
+        /**
+         * @return The failure to extract the checksum results, or null if no such failure has occurred.
+         */
+        RequestHandlerException getExtractionFailure() {
+            return extractionFailure;
+        }
+
+        /**
+         * @return The failure to serialize or validate the checksum results, or null if no such failure has occurred.
+         */
+        Exception getWriteFailure() {
+            return writeFailure;
+        }
+    }
 }
@@ -24,17 +24,12 @@
  */
 package org.bitrepository.pillar.messagehandler;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
-import java.util.Date;
 
 import javax.xml.bind.JAXBException;
 
-import org.apache.activemq.util.ByteArrayInputStream;
 import org.bitrepository.bitrepositorydata.GetFileIDsResults;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
@@ -48,13 +43,13 @@ import org.bitrepository.common.JaxbHelper;
 import org.bitrepository.pillar.common.MessageHandlerContext;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
+import org.bitrepository.protocol.ContentWriter;
 import org.bitrepository.protocol.MessageContext;
 import org.bitrepository.protocol.utils.MessageUtils;
 import org.bitrepository.service.exception.InvalidMessageException;
 import org.bitrepository.service.exception.RequestHandlerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
 
 /**
  * Class for handling requests for the GetFileIDs operation.
@@ -138,83 +133,50 @@ public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRe
     }
     
     /**
-     * Uploads the results to the URL in the request.
+     * Uploads the results to the URL in the request. The results are written directly into the upload, and as they
+     * are kept in memory, a failed transfer is retried once by writing them again. A failure to serialize or 
+     * validate the results is not retried.
      *  
      * @param request The request.
      * @param extractedFileIDs The extracted file ids.
-     * @throws RequestHandlerException If the file with the resutls could not be created, or could not be uploaded.
+     * @throws RequestHandlerException If the results could not be serialized, or could not be uploaded.
      */
-    private void uploadResults(GetFileIDsRequest request,  ExtractedFileIDsResultSet extractedFileIDs) 
+    private void uploadResults(GetFileIDsRequest request, ExtractedFileIDsResultSet extractedFileIDs) 
             throws RequestHandlerException {
-        String resultingAddress = request.getResultAddress();
         try {
-            File outputFile = makeTemporaryResultFile(request, extractedFileIDs.getEntries());
-            uploadFile(outputFile, resultingAddress);
-        } catch (Exception e) {
+            URL url = new URL(request.getResultAddress());
+            FileIDsResultsWriter resultWriter = createResultWriter(request, extractedFileIDs.getEntries());
+            try {
+                context.getFileExchange().putFile(resultWriter, url);
+            } catch (IOException e) {
+                if(resultWriter.getWriteFailure() != null) {
+                    throw e;
+                }
+                log.warn("Could not upload the file ids to '" + url + "'. Retrying once.", e);
+                context.getFileExchange().putFile(resultWriter, url);
+            }
+        } catch (IOException e) {
             throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not deliver results.", 
                     request.getCollectionID(), e);
         }
     }
     
     /**
-     * Method for creating a file containing the resulting list of file ids.
+     * Method for creating the writer of the resulting list of file ids. The results are validated while they are
+     * written.
      * 
-     * @param request The GetFileIDsMessage requesting the checksum calculations.
-     * @param fileIDs The file ids to be put into the result file.
-     * @return A file containing all the checksums in the list.
-     * @throws IOException If a problem occurs during accessing or handling the data.
-     * @throws JAXBException If the resulting structure cannot be serialized or if it is invalid.
+     * @param request The GetFileIDsMessage requesting the file ids.
+     * @param fileIDs The file ids to be put into the results.
+     * @return The writer of the results.
      */
-    private File makeTemporaryResultFile(GetFileIDsRequest request, FileIDsData fileIDs)
-            throws IOException, JAXBException {
-        // Create the temporary file.
-        File checksumResultFile = File.createTempFile(request.getCorrelationID(), new Date().getTime() + ".id");
-        log.info("Writing the requested fileids to the file '" + checksumResultFile + "'");
-
-        // Print all the file ids data safely (close the streams!)
-        OutputStream is = null;
-        try {
-            is = new FileOutputStream(checksumResultFile);
-            GetFileIDsResults result = new GetFileIDsResults();
-            result.setCollectionID(request.getCollectionID());
-            result.setMinVersion(MIN_VERSION);
-            result.setVersion(VERSION);
-            result.setPillarID(getSettings().getReferenceSettings().getPillarSettings().getPillarID());
-            result.setFileIDsData(fileIDs);
-            
-            JaxbHelper jaxbHelper = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
-            String file = jaxbHelper.serializeToXml(result);
-            try {
-                jaxbHelper.validate(new ByteArrayInputStream(file.getBytes()));
-            } catch (SAXException e) {
-                String errMsg = "The resulting XML for the GetFileIDsRequest does not validate. \n"
-                        + file;
-                log.error(errMsg, e);
-                throw new JAXBException(errMsg, e);
-            }
-            is.write(file.getBytes());
-            is.flush();
-        } finally {
-            if(is != null) {
-                is.close();
-            }
-        }
-        
-        return checksumResultFile;
-    }
-    
-    /**
-     * Method for uploading a file to a given URL.
-     * 
-     * @param fileToUpload The File to upload.
-     * @param url The location where the file should be uploaded.
-     * @throws Exception If something goes wrong.
-     */
-    private void uploadFile(File fileToUpload, String url) throws IOException {
-        URL uploadUrl = new URL(url);
-
-        log.debug("Uploading file: " + fileToUpload.getName() + " to " + url);
-        context.getFileExchange().putFile(new FileInputStream(fileToUpload), uploadUrl);
+    private FileIDsResultsWriter createResultWriter(GetFileIDsRequest request, FileIDsData fileIDs) {
+        GetFileIDsResults result = new GetFileIDsResults();
+        result.setCollectionID(request.getCollectionID());
+        result.setMinVersion(MIN_VERSION);
+        result.setVersion(VERSION);
+        result.setPillarID(getSettings().getReferenceSettings().getPillarSettings().getPillarID());
+        result.setFileIDsData(fileIDs);
+        return new FileIDsResultsWriter(result);
     }
     
     /**
@@ -272,4 +234,48 @@ public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRe
 
         return res;
     }
+
+    /**
+     * Writes the resulting list of file ids, e.g. directly into the body of an upload. A failure to serialize or 
+     * validate the results is kept, so it can be told apart from a failure to transfer the results.
+     */
+    private class FileIDsResultsWriter implements ContentWriter {
+        /** The results to write.*/
+        private final GetFileIDsResults result;
+        /** The helper for serializing and validating the results.*/
+        private final JaxbHelper jaxbHelper = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
+        /** The failure to serialize or validate the results, if any.*/
+        private JAXBException writeFailure;
+
+        /**
+         * @param result The results to write.
+         */
+        FileIDsResultsWriter(GetFileIDsResults result) {
+            this.result = result;
+        }
+
+        @Override
+        public void writeContent(OutputStream out) throws IOException {
+            TransferFailureRecordingOutputStream recordingOut = new TransferFailureRecordingOutputStream(out);
+            try {
+                jaxbHelper.serializeToContentHandler(result, jaxbHelper.newValidatingWriter(recordingOut));
+            } catch (JAXBException e) {
+                if(recordingOut.getTransferFailure() != null) {
+                    throw recordingOut.getTransferFailure();
+                }
+                writeFailure = e;
+                String errMsg = "The resulting XML for the GetFileIDsRequest could not be written or does not "
+                        + "validate.";
+                log.error(errMsg, e);
+                throw new IOException(errMsg, e);
+            }
+        }
+
+        /**
+         * @return The failure to serialize or validate the results, or null if no such failure has occurred.
+         */
+        JAXBException getWriteFailure() {
+            return writeFailure;
+        }
+    }
 }
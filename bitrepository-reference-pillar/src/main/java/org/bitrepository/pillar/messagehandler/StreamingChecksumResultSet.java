@@ -0,0 +1,206 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.messagehandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.validation.ValidatorHandler;
+
+import org.bitrepository.bitrepositorydata.GetChecksumsResults;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Result set writing the checksum entries to a GetChecksumsResults document as they are inserted, instead of keeping
+ * them in memory. The document is validated against the schema while it is written, so the memory used does not
+ * depend on the number of entries. The stream may e.g. be a file or the body of an upload.
+ * <p>
+ * The document must be completed with {@link #finish()} after the last entry has been inserted.
+ */
+public class StreamingChecksumResultSet extends ExtractedChecksumResultSet {
+    /** The name of the element for each checksum entry in the GetChecksumsResults. */
+    static final String CHECKSUM_DATA_ELEMENT = "ChecksumDataItems";
+
+    /** The helper for serializing and validating the entries. */
+    private final JaxbHelper jaxb;
+    /** The stream to write the document to. */
+    private final OutputStream out;
+    /** The validator, which passes the validated document on to be written to the stream. */
+    private final ValidatorHandler validator;
+    /** The filter keeping the document open, while the entries are written. */
+    private final DocumentEndDeferringFilter documentFilter;
+    /** The name of the element for each checksum entry. */
+    private final QName checksumDataElement;
+    /** The number of entries written so far. */
+    private long numberOfEntries = 0;
+
+    /**
+     * Writes the start of the document to the stream.
+     * @param out The stream to write the results to. It is not closed by the result set.
+     * @param header The results without any checksum entries, e.g. with the version and pillar id.
+     * @param jaxb The helper for serializing and validating against the schema for the results.
+     * @throws JAXBException If the header could not be serialized or it is not valid.
+     */
+    public StreamingChecksumResultSet(OutputStream out, GetChecksumsResults header, JaxbHelper jaxb)
+            throws JAXBException {
+        this.jaxb = jaxb;
+        this.out = out;
+        validator = jaxb.newValidatingWriter(out);
+        documentFilter = new DocumentEndDeferringFilter(validator);
+        jaxb.serializeToContentHandler(header, documentFilter);
+        checksumDataElement = new QName(documentFilter.getRootNamespace(), CHECKSUM_DATA_ELEMENT);
+    }
+
+    /**
+     * Writes the entry to the stream.
+     * @param entry The entry to write.
+     */
+    @Override
+    public void insertChecksumEntry(ChecksumDataForChecksumSpecTYPE entry) {
+        try {
+            jaxb.serializeFragment(GetChecksumsResults.class, new JAXBElement<ChecksumDataForChecksumSpecTYPE>(
+                    checksumDataElement, ChecksumDataForChecksumSpecTYPE.class, entry), validator);
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Could not write the checksum entry for the file '" + entry.getFileID()
+                    + "' to the checksum results.", e);
+        }
+        numberOfEntries++;
+    }
+
+    /**
+     * The entries are written to the stream instead of being kept, thus none are delivered here.
+     * @return An empty list.
+     */
+    @Override
+    public List<ChecksumDataForChecksumSpecTYPE> getEntries() {
+        return new ArrayList<ChecksumDataForChecksumSpecTYPE>();
+    }
+
+    /**
+     * @return The number of entries written to the stream.
+     */
+    public long getNumberOfEntries() {
+        return numberOfEntries;
+    }
+
+    /**
+     * Ends the document, validates the whole document and writes the rest of it to the stream, which is flushed.
+     * @throws SAXException If the document is not valid.
+     * @throws IOException If the stream could not be written.
+     */
+    public void finish() throws SAXException, IOException {
+        documentFilter.endDeferredDocument();
+        out.flush();
+    }
+
+    /**
+     * Passes the SAX events of a serialized document on, except the end of the root element and of the document.
+     * These are passed on by {@link #endDeferredDocument()}, so more elements can be added to the root element
+     * in between.
+     */
+    private static final class DocumentEndDeferringFilter extends XMLFilterImpl {
+        /** The depth of the current element. */
+        private int depth = 0;
+        /** The namespace of the root element. */
+        private String rootUri;
+        /** The local name of the root element. */
+        private String rootLocalName;
+        /** The qualified name of the root element. */
+        private String rootQName;
+        /** Whether the root element has ended. */
+        private boolean rootEnded = false;
+        /** The prefix mappings ending after the root element. */
+        private final List<String> rootPrefixes = new ArrayList<String>();
+
+        /**
+         * @param handler The handler to pass the SAX events on to.
+         */
+        DocumentEndDeferringFilter(ContentHandler handler) {
+            setContentHandler(handler);
+        }
+
+        /**
+         * @return The namespace of the root element.
+         */
+        String getRootNamespace() {
+            return rootUri;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            if(depth == 0) {
+                rootUri = uri;
+                rootLocalName = localName;
+                rootQName = qName;
+            }
+            depth++;
+            super.startElement(uri, localName, qName, atts);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            depth--;
+            if(depth == 0) {
+                rootEnded = true;
+            } else {
+                super.endElement(uri, localName, qName);
+            }
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) throws SAXException {
+            if(rootEnded) {
+                rootPrefixes.add(prefix);
+            } else {
+                super.endPrefixMapping(prefix);
+            }
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            // Deferred until endDeferredDocument.
+        }
+
+        /**
+         * Passes on the end of the root element and the document.
+         * @throws SAXException If the handler fails, e.g. if the document is not valid.
+         */
+        void endDeferredDocument() throws SAXException {
+            super.endElement(rootUri, rootLocalName, rootQName);
+            for(String prefix : rootPrefixes) {
+                super.endPrefixMapping(prefix);
+            }
+            super.endDocument();
+        }
+    }
+}
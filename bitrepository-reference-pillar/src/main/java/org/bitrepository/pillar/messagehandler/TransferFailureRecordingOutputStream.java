@@ -0,0 +1,88 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.messagehandler;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream recording the failures of the stream it writes to. The XML writers wrap such failures in serialization 
+ * exceptions, so the recorded failure tells a failed transfer of the results apart from results, which could not 
+ * be serialized or validated.
+ */
+class TransferFailureRecordingOutputStream extends FilterOutputStream {
+    /** The first failure of the underlying stream, if any.*/
+    private IOException transferFailure;
+
+    /**
+     * @param out The stream to write to.
+     */
+    TransferFailureRecordingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            throw record(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            throw record(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw record(e);
+        }
+    }
+
+    /**
+     * @param e The failure of the underlying stream.
+     * @return The failure.
+     */
+    private IOException record(IOException e) {
+        if(transferFailure == null) {
+            transferFailure = e;
+        }
+        return e;
+    }
+
+    /**
+     * @return The first failure of the underlying stream, or null if it has not failed.
+     */
+    IOException getTransferFailure() {
+        return transferFailure;
+    }
+}
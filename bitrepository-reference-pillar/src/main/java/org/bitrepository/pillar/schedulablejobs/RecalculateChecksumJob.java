@@ -21,6 +21,7 @@
  */
 package org.bitrepository.pillar.schedulablejobs;
 
+import org.bitrepository.pillar.store.ChecksumRecalculationProgress;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.service.workflow.JobID;
 import org.bitrepository.service.workflow.SchedulableJob;
@@ -42,6 +43,8 @@ public class RecalculateChecksumJob implements SchedulableJob {
     
     /** The state of this workflow. */
     private WorkflowState state = WorkflowState.NOT_RUNNING;
+    /** The progress of the current or latest run, or null if it has not been run.*/
+    private volatile ChecksumRecalculationProgress progress;
     private final JobID id;
     
     /**
@@ -60,7 +63,8 @@ public class RecalculateChecksumJob implements SchedulableJob {
         log.info("Recalculating old checksums for collection '" + collectionID + "'.");
         try {
             state = WorkflowState.RUNNING;
-            model.verifyFileToCacheConsistencyOfAllData(collectionID);
+            progress = new ChecksumRecalculationProgress();
+            model.verifyFileToCacheConsistencyOfAllData(collectionID, progress);
         } finally {
             state = WorkflowState.NOT_RUNNING;
         }
@@ -93,6 +97,13 @@ public class RecalculateChecksumJob implements SchedulableJob {
 
     @Override
     public String getHumanReadableState() {
-       return state.name();
+        ChecksumRecalculationProgress currentProgress = progress;
+        if(currentProgress == null) {
+            return state.name();
+        }
+        if(state == WorkflowState.RUNNING) {
+            return state.name() + ": " + currentProgress;
+        }
+        return state.name() + " (latest run: " + currentProgress + ")";
     }
 }
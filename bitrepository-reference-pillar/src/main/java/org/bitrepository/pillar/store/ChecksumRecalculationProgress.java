@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of a recalculation of checksums, which may be updated by several threads and read by others.
+ */
+public class ChecksumRecalculationProgress {
+    /** The number of files to recalculate the checksum for, as far as it is known.*/
+    private final AtomicLong filesToRecalculate = new AtomicLong();
+    /** The number of files whose checksum has been recalculated.*/
+    private final AtomicLong recalculatedFiles = new AtomicLong();
+    /** The number of files whose checksum could not be recalculated.*/
+    private final AtomicLong failedFiles = new AtomicLong();
+    /** The number of bytes read for the recalculations.*/
+    private final AtomicLong bytesRead = new AtomicLong();
+    /** The time the recalculation was started in nanoseconds, or 0 if not started.*/
+    private volatile long startTime = 0;
+    /** Whether the recalculation is resumed from a checkpoint.*/
+    private volatile boolean resumed = false;
+
+    /**
+     * Marks the start of the recalculation.
+     * @param resumed Whether the recalculation is resumed from a checkpoint.
+     */
+    void start(boolean resumed) {
+        this.resumed = resumed;
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * @param numberOfFiles The number of files added to the recalculation.
+     */
+    void addFilesToRecalculate(long numberOfFiles) {
+        filesToRecalculate.addAndGet(numberOfFiles);
+    }
+
+    /**
+     * @param size The size of the file, whose checksum has been recalculated.
+     */
+    void fileRecalculated(long size) {
+        recalculatedFiles.incrementAndGet();
+        bytesRead.addAndGet(size);
+    }
+
+    /**
+     * Registers a file, whose checksum could not be recalculated.
+     */
+    void fileFailed() {
+        failedFiles.incrementAndGet();
+    }
+
+    /**
+     * @return The number of files to recalculate the checksum for, as far as it is known.
+     */
+    public long getFilesToRecalculate() {
+        return filesToRecalculate.get();
+    }
+
+    /**
+     * @return The number of files whose checksum has been recalculated.
+     */
+    public long getRecalculatedFiles() {
+        return recalculatedFiles.get();
+    }
+
+    /**
+     * @return The number of files whose checksum could not be recalculated.
+     */
+    public long getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    /**
+     * @return The number of bytes read for the recalculations.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return The average number of megabytes read per second since the start, or 0 if not started.
+     */
+    public double getMegabytesPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        if(startTime == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return (getBytesRead() / (1024.0 * 1024.0)) / (elapsed / 1000000000.0);
+    }
+
+    @Override
+    public String toString() {
+        return (resumed ? "Resumed, " : "") + getRecalculatedFiles() + " of " + getFilesToRecalculate() 
+                + " files recalculated, " + getFailedFiles() + " failed, " + (getBytesRead() / (1024 * 1024)) 
+                + " MB read at " + String.format("%.1f", getMegabytesPerSecond()) + " MB/s";
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.filestore.DefaultFileInfo;
+import org.bitrepository.common.filestore.FileInfo;
+import org.bitrepository.common.filestore.FileStore;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.bitrepository.settings.referencesettings.ChecksumRecalculation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recalculates the checksums of files in parallel.
+ * <p>
+ * The number of files read at the same time is limited both in total and for each volume (file system), so a single
+ * disk is not given more concurrent reads than it handles well. The total number of bytes read per second can also be 
+ * limited, so the recalculation leaves room for the operations of the pillar.
+ * <p>
+ * The recalculated checksums are stored in batches of {@link #BATCH_SIZE} files, each in a single transaction.
+ */
+class ChecksumRecalculator {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The default number of files to recalculate at the same time.*/
+    static final int DEFAULT_THREADS = 4;
+    /** The default number of files on the same volume to recalculate at the same time.*/
+    static final int DEFAULT_THREADS_PER_VOLUME = 2;
+    /** The number of recalculated checksums to store at a time.*/
+    static final int BATCH_SIZE = 200;
+    /** The volume used for files, whose volume cannot be determined.*/
+    private static final String UNKNOWN_VOLUME = "unknown";
+
+    /** The model to recalculate the checksums with.*/
+    private final FileStorageModel model;
+    /** The archive with the files.*/
+    private final FileStore fileArchive;
+    /** The store for the recalculated checksums.*/
+    private final ChecksumStore cache;
+    /** The number of files to recalculate at the same time.*/
+    private final int threads;
+    /** The number of files on the same volume to recalculate at the same time.*/
+    private final int threadsPerVolume;
+    /** The limit for the bytes read per second, or null if not limited.*/
+    private final ThroughputLimiter throughputLimiter;
+    /** The permits for reading files on each volume.*/
+    private final ConcurrentMap<String, Semaphore> volumePermits = new ConcurrentHashMap<String, Semaphore>();
+    /** The volumes of the directories seen so far.*/
+    private final ConcurrentMap<String, String> volumesOfDirectories = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @param model The model to recalculate the checksums with.
+     * @param fileArchive The archive with the files.
+     * @param cache The store for the recalculated checksums.
+     * @param settings The settings for the recalculation. May be null, in which case the defaults are used.
+     */
+    ChecksumRecalculator(FileStorageModel model, FileStore fileArchive, ChecksumStore cache, 
+            ChecksumRecalculation settings) {
+        this.model = model;
+        this.fileArchive = fileArchive;
+        this.cache = cache;
+        if(settings != null && settings.getThreads() != null) {
+            threads = settings.getThreads().intValue();
+        } else {
+            threads = DEFAULT_THREADS;
+        }
+        if(settings != null && settings.getThreadsPerVolume() != null) {
+            threadsPerVolume = settings.getThreadsPerVolume().intValue();
+        } else {
+            threadsPerVolume = DEFAULT_THREADS_PER_VOLUME;
+        }
+        if(settings != null && settings.getMaxMegabytesPerSecond() != null) {
+            throughputLimiter = new ThroughputLimiter(settings.getMaxMegabytesPerSecond().longValue() * 1024 * 1024);
+        } else {
+            throughputLimiter = null;
+        }
+    }
+
+    /**
+     * Recalculates the checksums of the given files, and waits until all of them are done and stored.
+     * A file whose checksum cannot be recalculated or stored is logged and registered as failed in the progress.
+     * @param fileIDs The ids of the files.
+     * @param collectionID The id of the collection of the files.
+     * @param progress The progress to register the recalculated files in.
+     * @throws InterruptedException If interrupted, in which case the remaining files are not recalculated.
+     */
+    void recalculate(Collection<String> fileIDs, String collectionID, ChecksumRecalculationProgress progress) 
+            throws InterruptedException {
+        if(fileIDs.isEmpty()) {
+            return;
+        }
+        progress.addFilesToRecalculate(fileIDs.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, 
+                new DefaultThreadFactory("ChecksumRecalculation-" + collectionID, Thread.MIN_PRIORITY));
+        // Only a few files are queued at a time, instead of all of the possibly millions of files.
+        Semaphore queuedFiles = new Semaphore(threads * 2);
+        RecalculatedChecksums recalculatedChecksums = new RecalculatedChecksums(collectionID, progress);
+        try {
+            for(String fileID : fileIDs) {
+                queuedFiles.acquire();
+                executor.execute(new RecalculationTask(fileID, collectionID, recalculatedChecksums, progress, 
+                        queuedFiles));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            log.info("Interrupted the recalculation of checksums for collection '" + collectionID + "'.");
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            recalculatedChecksums.store();
+        }
+    }
+
+    /**
+     * @param fileInfo The file.
+     * @return The permits for reading the file, shared by all files on the same volume.
+     */
+    private Semaphore getVolumePermits(FileInfo fileInfo) {
+        String volume = getVolume(fileInfo);
+        Semaphore permits = volumePermits.get(volume);
+        if(permits == null) {
+            Semaphore newPermits = new Semaphore(threadsPerVolume);
+            permits = volumePermits.putIfAbsent(volume, newPermits);
+            if(permits == null) {
+                permits = newPermits;
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * Finds the volume of a file from its directory. The volume is only looked up once for each directory.
+     * @param fileInfo The file.
+     * @return The name of the volume of the file.
+     */
+    private String getVolume(FileInfo fileInfo) {
+        if(!(fileInfo instanceof DefaultFileInfo)) {
+            return UNKNOWN_VOLUME;
+        }
+        File dir = ((DefaultFileInfo) fileInfo).getFile().getAbsoluteFile().getParentFile();
+        String volume = volumesOfDirectories.get(dir.getPath());
+        if(volume == null) {
+            try {
+                volume = Files.getFileStore(dir.toPath()).name();
+            } catch (IOException e) {
+                log.debug("Could not find the volume of the directory '" + dir + "'.", e);
+                volume = UNKNOWN_VOLUME;
+            }
+            volumesOfDirectories.put(dir.getPath(), volume);
+        }
+        return volume;
+    }
+
+    /**
+     * The recalculated checksums, which are stored when a batch of them has been recalculated.
+     * The progress is registered when the checksums have been stored.
+     */
+    private class RecalculatedChecksums {
+        private final String collectionID;
+        private final ChecksumRecalculationProgress progress;
+        /** The recalculated checksums, which have not been stored yet.*/
+        private List<ChecksumEntry> entries = new ArrayList<ChecksumEntry>();
+
+        RecalculatedChecksums(String collectionID, ChecksumRecalculationProgress progress) {
+            this.collectionID = collectionID;
+            this.progress = progress;
+        }
+
+        /**
+         * Adds a recalculated checksum, and stores the batch if it is full.
+         * @param entry The recalculated checksum.
+         */
+        void add(ChecksumEntry entry) {
+            List<ChecksumEntry> batch = null;
+            synchronized(this) {
+                entries.add(entry);
+                if(entries.size() >= BATCH_SIZE) {
+                    batch = entries;
+                    entries = new ArrayList<ChecksumEntry>();
+                }
+            }
+            if(batch != null) {
+                store(batch);
+            }
+        }
+
+        /**
+         * Stores the recalculated checksums, which have not been stored yet.
+         */
+        void store() {
+            List<ChecksumEntry> batch;
+            synchronized(this) {
+                batch = entries;
+                entries = new ArrayList<ChecksumEntry>();
+            }
+            store(batch);
+        }
+
+        private void store(List<ChecksumEntry> batch) {
+            if(batch.isEmpty()) {
+                return;
+            }
+            try {
+                cache.insertChecksumCalculations(batch, collectionID);
+                for(ChecksumEntry entry : batch) {
+                    progress.fileRecalculated(entry.getFileSize());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not store the recalculated checksums of " + batch.size() + " files in collection '" 
+                        + collectionID + "'.", e);
+                for(int i = 0; i < batch.size(); i++) {
+                    progress.fileFailed();
+                }
+            }
+        }
+    }
+
+    /**
+     * Recalculates the checksum of a single file, when its volume has a permit available.
+     */
+    private class RecalculationTask implements Runnable {
+        private final String fileID;
+        private final String collectionID;
+        private final RecalculatedChecksums recalculatedChecksums;
+        private final ChecksumRecalculationProgress progress;
+        private final Semaphore queuedFiles;
+
+        RecalculationTask(String fileID, String collectionID, RecalculatedChecksums recalculatedChecksums, 
+                ChecksumRecalculationProgress progress, Semaphore queuedFiles) {
+            this.fileID = fileID;
+            this.collectionID = collectionID;
+            this.recalculatedChecksums = recalculatedChecksums;
+            this.progress = progress;
+            this.queuedFiles = queuedFiles;
+        }
+
+        @Override
+        public void run() {
+            try {
+                FileInfo fileInfo = fileArchive.getFileInfo(fileID, collectionID);
+                Semaphore permits = getVolumePermits(fileInfo);
+                ChecksumEntry entry;
+                permits.acquire();
+                try {
+                    if(throughputLimiter != null) {
+                        fileInfo = new ThrottledFileInfo(fileInfo);
+                    }
+                    entry = model.calculateChecksumEntry(fileID, fileInfo);
+                } finally {
+                    permits.release();
+                }
+                recalculatedChecksums.add(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Could not recalculate the checksum of the file '" + fileID + "' in collection '" 
+                        + collectionID + "'.", e);
+                progress.fileFailed();
+            } finally {
+                queuedFiles.release();
+            }
+        }
+    }
+
+    /**
+     * File info, whose content is read within the throughput limit.
+     */
+    private class ThrottledFileInfo implements FileInfo {
+        private final FileInfo fileInfo;
+
+        ThrottledFileInfo(FileInfo fileInfo) {
+            this.fileInfo = fileInfo;
+        }
+
+        @Override
+        public String getFileID() {
+            return fileInfo.getFileID();
+        }
+
+        @Override
+        public InputStream getInputstream() throws IOException {
+            return new FilterInputStream(fileInfo.getInputstream()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if(b != -1) {
+                        acquire(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int bytesRead = super.read(b, off, len);
+                    if(bytesRead > 0) {
+                        acquire(bytesRead);
+                    }
+                    return bytesRead;
+                }
+
+                private void acquire(int bytes) throws InterruptedIOException {
+                    try {
+                        throughputLimiter.acquire(bytes);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while reading '" + getFileID() + "'");
+                    }
+                }
+            };
+        }
+
+        @Override
+        public Long getLastModifiedDate() {
+            return fileInfo.getLastModifiedDate();
+        }
+
+        @Override
+        public long getSize() {
+            return fileInfo.getSize();
+        }
+    }
+}
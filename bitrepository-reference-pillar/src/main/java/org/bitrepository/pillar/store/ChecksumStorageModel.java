@@ -102,6 +102,11 @@ public class ChecksumStorageModel extends StorageModel {
         // Cannot verify, since we do not have the file.
     }
 
+    @Override
+    public void updateMissingFileInfo(String collectionID) {
+        // Cannot update, since we do not have the files.
+    }
+
     @Override
     protected String getNonDefaultChecksum(String fileID, String collectionID, ChecksumSpecTYPE csType)
             throws RequestHandlerException {
@@ -123,8 +128,8 @@ public class ChecksumStorageModel extends StorageModel {
     }
 
     @Override
-    protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID, 
-            ChecksumSpecTYPE csSpec) throws RequestHandlerException {
+    protected void extractNonDefaultChecksumResults(Long maxResults, String collectionID, 
+            ChecksumSpecTYPE csSpec, ExtractedChecksumResultSet results) throws RequestHandlerException {
         throw new InvalidMessageException(ResponseCode.REQUEST_NOT_SUPPORTED, "This is a checksum pillar and it does "
                 + "not have the actual file. Only it's checksum.", collectionID);
     }
@@ -255,4 +260,9 @@ public class ChecksumStorageModel extends StorageModel {
     public void verifyFileToCacheConsistencyOfAllData(String collectionID) {
         log.warn("Should not make a call to verify all data on a ChecksumPillar.");
     }
+
+    @Override
+    public void verifyFileToCacheConsistencyOfAllData(String collectionID, ChecksumRecalculationProgress progress) {
+        verifyFileToCacheConsistencyOfAllData(collectionID);
+    }
 }
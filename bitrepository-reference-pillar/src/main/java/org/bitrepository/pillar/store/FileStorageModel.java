@@ -25,10 +25,12 @@
 package org.bitrepository.pillar.store;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.List;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
@@ -42,6 +44,7 @@ import org.bitrepository.common.filestore.FileStore;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.Base16Utils;
 import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.ChecksumCalculatingInputStream;
 import org.bitrepository.common.utils.ChecksumUtils;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
@@ -53,6 +56,7 @@ import org.bitrepository.service.exception.IdentifyContributorException;
 import org.bitrepository.service.exception.IllegalOperationException;
 import org.bitrepository.service.exception.InvalidMessageException;
 import org.bitrepository.service.exception.RequestHandlerException;
+import org.bitrepository.settings.referencesettings.PillarSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +65,8 @@ import org.slf4j.LoggerFactory;
  */
 public class FileStorageModel extends StorageModel {
     private Logger log = LoggerFactory.getLogger(getClass());
+    /** The number of entries to update the last modified timestamp of at a time.*/
+    private static final long FILE_INFO_BATCH_SIZE = 1000L;
 
     /**
      * @param archives        The file archives.
@@ -106,6 +112,10 @@ public class FileStorageModel extends StorageModel {
     @Override
     public ExtractedFileIDsResultSet getFileIDsResultSet(String fileID, XMLGregorianCalendar minTimestamp,
             XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID) {
+        if(fileID == null) {
+            return getFileIds(minTimestamp, maxTimestamp, maxResults, collectionID);
+        }
+
         Long minTime = null;
         if(minTimestamp != null) {
             minTime = CalendarUtils.convertFromXMLGregorianCalendar(minTimestamp).getTime();
@@ -115,10 +125,6 @@ public class FileStorageModel extends StorageModel {
             maxTime = CalendarUtils.convertFromXMLGregorianCalendar(maxTimestamp).getTime();
         }
 
-        if(fileID == null) {
-            return getFileIds(minTime, maxTime, maxResults, collectionID);
-        }
-
         ExtractedFileIDsResultSet res = new ExtractedFileIDsResultSet();
         FileInfo entry = fileArchive.getFileInfo(fileID, collectionID);
         if((minTime == null || minTime <= entry.getLastModifiedDate()) &&
@@ -142,10 +148,8 @@ public class FileStorageModel extends StorageModel {
     }
 
     @Override
-    protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(
-            Long maxResults, String collectionID, ChecksumSpecTYPE csSpec) {
-        ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
-
+    protected void extractNonDefaultChecksumResults(Long maxResults, String collectionID, 
+            ChecksumSpecTYPE csSpec, ExtractedChecksumResultSet results) {
         long i = 0;
         for(String fileID : cache.getAllFileIDs(collectionID)) {
             if(maxResults != null && i > maxResults) {
@@ -155,9 +159,8 @@ public class FileStorageModel extends StorageModel {
 
             String checksum = getNonDefaultChecksum(fileID, collectionID, csSpec);
             ChecksumEntry entry = new ChecksumEntry(fileID, checksum, new Date());
-            res.insertChecksumEntry(entry);
+            results.insertChecksumEntry(entry);
         }
-        return res;
     }
 
     @Override
@@ -179,19 +182,19 @@ public class FileStorageModel extends StorageModel {
     @Override
     public void putFile(String collectionID, String fileID, String fileAddress,
             ChecksumDataForFileTYPE expectedChecksum) throws RequestHandlerException {
-        transferFileToTmp(fileID, collectionID, fileAddress);
-        verifyFileInTmp(fileID, collectionID, expectedChecksum);
+        List<String> calculatedChecksums = transferFileToTmp(fileID, collectionID, fileAddress, expectedChecksum);
+        String checksum = verifyFileInTmp(fileID, collectionID, expectedChecksum, calculatedChecksums);
         fileArchive.moveToArchive(fileID, collectionID);
-        recalculateChecksum(fileID, collectionID);
+        storeChecksum(fileID, collectionID, checksum);
     }
 
     @Override
     public void replaceFile(String fileID, String collectionID, String fileAddress,
             ChecksumDataForFileTYPE expectedChecksum) throws RequestHandlerException {
-        transferFileToTmp(fileID, collectionID, fileAddress);
-        verifyFileInTmp(fileID, collectionID, expectedChecksum);
+        List<String> calculatedChecksums = transferFileToTmp(fileID, collectionID, fileAddress, expectedChecksum);
+        String checksum = verifyFileInTmp(fileID, collectionID, expectedChecksum, calculatedChecksums);
         fileArchive.replaceFile(fileID, collectionID);
-        recalculateChecksum(fileID, collectionID);
+        storeChecksum(fileID, collectionID, checksum);
     }
 
     /**
@@ -200,75 +203,137 @@ public class FileStorageModel extends StorageModel {
      * @param collectionID The id of the collection of the file.
      */
     protected void recalculateChecksum(String fileID, String collectionID) {
+        recalculateChecksum(fileID, collectionID, fileArchive.getFileInfo(fileID, collectionID));
+    }
+
+    /**
+     * Recalculates the checksum of a given file based on the default checksum specification.
+     * @param fileID The id of the file to recalculate its default checksum for.
+     * @param collectionID The id of the collection of the file.
+     * @param fi The file in the archive.
+     */
+    protected void recalculateChecksum(String fileID, String collectionID, FileInfo fi) {
+        cache.insertChecksumCalculations(Collections.singletonList(calculateChecksumEntry(fileID, fi)), collectionID);
+    }
+
+    /**
+     * Calculates the checksum of a given file based on the default checksum specification, without storing it.
+     * @param fileID The id of the file to calculate its default checksum for.
+     * @param fi The file in the archive.
+     * @return The entry for the checksum store, with the checksum and the last modified timestamp and size of the 
+     * file.
+     */
+    protected ChecksumEntry calculateChecksumEntry(String fileID, FileInfo fi) {
         log.info("Recalculating the checksum of file '" + fileID + "'.");
-        FileInfo fi = fileArchive.getFileInfo(fileID, collectionID);
         String checksum = ChecksumUtils.generateChecksum(fi, defaultChecksumSpec);
-        cache.insertChecksumCalculation(fileID, collectionID, checksum, new Date());
+        return new ChecksumEntry(fileID, checksum, new Date(), fi.getLastModifiedDate(), fi.getSize());
     }
 
     /**
-     * Calculates the checksum of a file within the tmpDir.
-     * @param fileID The id of the file to calculate the checksum for.
+     * Stores the default checksum of a file, which has just been put into the archive, together with the last 
+     * modified timestamp and size of the file.
+     * @param fileID The id of the file.
      * @param collectionID The id of the collection of the file.
-     * @param csType The specification for the type of checksum to calculate.
-     * @return The checksum of the given type for the file with the given id.
+     * @param checksum The default checksum of the file.
      */
-    private String getChecksumForTempFile(String fileID, String collectionID, ChecksumSpecTYPE csType) {
-        FileInfo fi = fileArchive.getFileInTmpDir(fileID, collectionID);
-        return ChecksumUtils.generateChecksum(fi, csType);
+    private void storeChecksum(String fileID, String collectionID, String checksum) {
+        FileInfo fi = fileArchive.getFileInfo(fileID, collectionID);
+        cache.insertChecksumCalculations(Collections.singletonList(new ChecksumEntry(fileID, checksum, new Date(), 
+                fi.getLastModifiedDate(), fi.getSize())), collectionID);
     }
 
     /**
-     * TODO this should be in the database instead.
-     * @param minTime The minimum date for the timestamp of the extracted file ids entries.
-     * @param maxTime The maximum date for the timestamp of the extracted file ids entries.
+     * Extracts the file ids ordered by last modified timestamp from the checksum store, so only the requested number 
+     * of files are read. Entries in the store without a last modified timestamp, e.g. from before it was kept in the 
+     * store, are not delivered until {@link #updateMissingFileInfo(String)} has given them one.
+     * @param minTimestamp The minimum date for the timestamp of the extracted file ids entries.
+     * @param maxTimestamp The maximum date for the timestamp of the extracted file ids entries.
      * @param maxNumberOfResults The maximum number of results.
      * @param collectionID The id of the collection.
      * @return The requested file ids.
      */
-    private ExtractedFileIDsResultSet getFileIds(Long minTime, Long maxTime, Long maxNumberOfResults, String collectionID) {
-        ExtractedFileIDsResultSet res = new ExtractedFileIDsResultSet();
+    private ExtractedFileIDsResultSet getFileIds(XMLGregorianCalendar minTimestamp, XMLGregorianCalendar maxTimestamp,
+            Long maxNumberOfResults, String collectionID) {
+        return cache.getFileIDsByLastModified(minTimestamp, maxTimestamp, maxNumberOfResults, collectionID);
+    }
 
-        // Map between lastModifiedDate and fileInfo.
-        ConcurrentSkipListMap<Long, FileInfo> sortedDateFileIDMap = new ConcurrentSkipListMap<Long, FileInfo>();
-        for(String fileID : fileArchive.getAllFileIds(collectionID)) {
-            FileInfo fi = fileArchive.getFileInfo(fileID, collectionID);
-            if((minTime == null || minTime <= fi.getLastModifiedDate()) &&
-                    (maxTime == null || maxTime >= fi.getLastModifiedDate())) {
-                sortedDateFileIDMap.put(fi.getLastModifiedDate(), fi);
+    /**
+     * {@inheritDoc}
+     * The entries are read and updated in batches. Entries for files, which are no longer in the archive, are 
+     * removed from the cache with an alarm, like by the consistency check, so they are not read again.
+     */
+    @Override
+    public void updateMissingFileInfo(String collectionID) {
+        long updated = 0;
+        List<String> fileIDs;
+        while(!(fileIDs = cache.getFileIDsWithoutFileInfo(collectionID, FILE_INFO_BATCH_SIZE)).isEmpty()) {
+            List<ChecksumEntry> entries = new ArrayList<ChecksumEntry>();
+            for(String fileID : fileIDs) {
+                if(fileArchive.hasFile(fileID, collectionID)) {
+                    FileInfo fi = fileArchive.getFileInfo(fileID, collectionID);
+                    entries.add(new ChecksumEntry(fileID, null, null, fi.getLastModifiedDate(), fi.getSize()));
+                } else {
+                    verifyCacheToArchiveConsistencyForFile(fileID, collectionID);
+                }
+            }
+            cache.updateMissingFileInfo(entries, collectionID);
+            updated += entries.size();
+            if(Thread.currentThread().isInterrupted()) {
+                log.info("Interrupted the update of the last modified timestamps for collection '" + collectionID 
+                        + "' after " + updated + " files.");
+                return;
             }
         }
-
-        int i = 0;
-        Map.Entry<Long, FileInfo> entry;
-        while((entry = sortedDateFileIDMap.pollFirstEntry()) != null && 
-                (maxNumberOfResults == null || i < maxNumberOfResults)) {
-            res.insertFileInfo(entry.getValue());
-            i++;
-        }
-
-        if(maxNumberOfResults != null && i >= maxNumberOfResults) {
-            res.reportMoreEntriesFound();
+        if(updated > 0) {
+            log.info("Updated the last modified timestamp of " + updated + " files in collection '" + collectionID 
+                    + "'.");
         }
-
-        return res;
     }
 
     @Override
     public void verifyFileToCacheConsistencyOfAllData(String collectionID) {
-        for(String fileID : cache.getAllFileIDs(collectionID)) {
-            verifyCacheToArchiveConsistencyForFile(fileID, collectionID);
-        }
+        verifyFileToCacheConsistencyOfAllData(collectionID, new ChecksumRecalculationProgress());
+    }
 
-        for(String fileID : fileArchive.getAllFileIds(collectionID)) {
-            verifyArchiveToCacheConsistencyForFile(fileID, collectionID);
+    /**
+     * {@inheritDoc}
+     * The checksums are recalculated in parallel as described by the ChecksumRecalculation settings. The date, which 
+     * checksums older than are recalculated, is kept in a checkpoint until the recalculation has finished. If the 
+     * pillar is restarted meanwhile, the recalculation is resumed with the same date, thus the checksums already
+     * recalculated are not recalculated again.
+     */
+    @Override
+    public void verifyFileToCacheConsistencyOfAllData(String collectionID, ChecksumRecalculationProgress progress) {
+        PillarSettings pillarSettings = settings.getReferenceSettings().getPillarSettings();
+        RecalculationCheckpoint checkpoint = new RecalculationCheckpoint(
+                RecalculationCheckpoint.getCheckpointDir(pillarSettings, collectionID), collectionID);
+        Date checksumDate = checkpoint.getChecksumDate();
+        if(checksumDate == null) {
+            Long maxAgeForChecksums = pillarSettings.getMaxAgeForChecksums().longValue();
+            checksumDate = new Date(System.currentTimeMillis() - maxAgeForChecksums);
+            checkpoint.save(checksumDate);
+            progress.start(false);
+        } else {
+            log.info("Resuming the recalculation of checksums older than '" + checksumDate + "' for collection '" 
+                    + collectionID + "'.");
+            progress.start(true);
         }
 
-        Long maxAgeForChecksums = settings.getReferenceSettings().getPillarSettings()
-                .getMaxAgeForChecksums().longValue();
-        Date checksumDate = new Date(System.currentTimeMillis() - maxAgeForChecksums);
-        for(String fileID : cache.getFileIDsWithOldChecksums(checksumDate, collectionID)) {
-            recalculateChecksum(fileID, collectionID);
+        ChecksumRecalculator recalculator = new ChecksumRecalculator(this, fileArchive, cache, 
+                pillarSettings.getChecksumRecalculation());
+        try {
+            for(String fileID : cache.getAllFileIDs(collectionID)) {
+                verifyCacheToArchiveConsistencyForFile(fileID, collectionID);
+            }
+            recalculator.recalculate(getFileIDsMissingFromCache(collectionID), collectionID, progress);
+            recalculator.recalculate(cache.getFileIDsWithOldChecksums(checksumDate, collectionID), collectionID, 
+                    progress);
+            checkpoint.delete();
+            log.info("Finished the recalculation of checksums for collection '" + collectionID + "': " + progress);
+        } catch (InterruptedException e) {
+            log.warn("The recalculation of checksums for collection '" + collectionID + "' was interrupted: " 
+                    + progress);
+            Thread.currentThread().interrupt();
         }
         // TODO: validate the 'last modified' timestamp ? 
     }
@@ -295,32 +360,45 @@ public class FileStorageModel extends StorageModel {
     }
 
     /**
-     * Ensures that the cache has an non-obsolete checksum for the given file.
-     * Also validates, that the checksum is up to date with the file.
-     * @param fileID The id of the file.
-     * @param collectionID The id of the collection of the file.
+     * Finds the files in the archive, which the cache does not have a checksum for.
+     * @param collectionID The id of the collection.
+     * @return The ids of the files in the archive, which are missing from the cache.
      */
-    private void verifyArchiveToCacheConsistencyForFile(String fileID, String collectionID) {
-        if(!cache.hasFile(fileID, collectionID)) {
-            log.debug("No checksum cached for file '" + fileID + "'. Calculating the checksum.");
-            recalculateChecksum(fileID, collectionID);
+    private List<String> getFileIDsMissingFromCache(String collectionID) {
+        List<String> missingFileIDs = new ArrayList<String>();
+        for(String fileID : fileArchive.getAllFileIds(collectionID)) {
+            if(!cache.hasFile(fileID, collectionID)) {
+                log.debug("No checksum cached for file '" + fileID + "'. Calculating the checksum.");
+                missingFileIDs.add(fileID);
+            }
         }
+        return missingFileIDs;
     }
 
     /**
-     * Downloads the file to temporary area.
+     * Downloads the file to temporary area. The default checksum of the file, and the expected checksum if any, are 
+     * calculated while the file is downloaded, so the file does not have to be read again to validate it.
      * 
      * @param fileID The id of the file.
      * @param collectionID The id of the collection.
      * @param fileAddress The address to download the file from.
+     * @param expectedChecksum The expected checksum for the downloaded file, or null if none is expected.
+     * @return The default checksum of the file, followed by the checksum of the type of the expected checksum if any.
      * @throws RequestHandlerException If the download fails.
      */
-    private void transferFileToTmp(String fileID, String collectionID, String fileAddress) throws RequestHandlerException {
+    private List<String> transferFileToTmp(String fileID, String collectionID, String fileAddress, 
+            ChecksumDataForFileTYPE expectedChecksum) throws RequestHandlerException {
         log.debug("Retrieving the data to be stored from URL: '" + fileAddress + "'");
+        List<ChecksumSpecTYPE> csSpecs = new ArrayList<ChecksumSpecTYPE>();
+        csSpecs.add(defaultChecksumSpec);
+        if(expectedChecksum != null) {
+            csSpecs.add(expectedChecksum.getChecksumSpec());
+        }
 
-        try {
-            fileArchive.downloadFileForValidation(fileID, collectionID,
-                    fileExchange.getFile(new URL(fileAddress)));
+        try (InputStream in = fileExchange.getFile(new URL(fileAddress));
+                ChecksumCalculatingInputStream content = new ChecksumCalculatingInputStream(in, csSpecs)) {
+            fileArchive.downloadFileForValidation(fileID, collectionID, content);
+            return content.getChecksums();
         } catch (IOException e) {
             String errMsg = "Could not retrieve the file from '" + fileAddress + "'";
             log.error(errMsg, e);
@@ -334,12 +412,15 @@ public class FileStorageModel extends StorageModel {
      * @param fileID The id of the file.
      * @param collectionID The id of the collection.
      * @param expectedChecksum The expected checksum for the downloaded file.
+     * @param calculatedChecksums The checksums calculated while downloading the file, as delivered by 
+     * {@link #transferFileToTmp(String, String, String, ChecksumDataForFileTYPE)}.
+     * @return The default checksum of the file.
      * @throws RequestHandlerException If it does not have the expected checksum. 
      */
-    private void verifyFileInTmp(String fileID, String collectionID, ChecksumDataForFileTYPE expectedChecksum) 
-            throws RequestHandlerException {
+    private String verifyFileInTmp(String fileID, String collectionID, ChecksumDataForFileTYPE expectedChecksum, 
+            List<String> calculatedChecksums) throws RequestHandlerException {
         if(expectedChecksum != null) {
-            String calculatedChecksum = getChecksumForTempFile(fileID, collectionID, expectedChecksum.getChecksumSpec());
+            String calculatedChecksum = calculatedChecksums.get(1);
             String expectedChecksumValue = Base16Utils.decodeBase16(expectedChecksum.getChecksumValue());
             log.debug("Validating newly downloaded file, '" + fileID + "', against expected checksum '" + expectedChecksumValue + "'.");
             if(!calculatedChecksum.equals(expectedChecksumValue)) {
@@ -350,6 +431,7 @@ public class FileStorageModel extends StorageModel {
             }
         } else {
             log.debug("No checksums for validating the newly downloaded file '" + fileID + "'.");
-        }        
+        }
+        return calculatedChecksums.get(0);
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import org.bitrepository.settings.referencesettings.CollectionDirs;
+import org.bitrepository.settings.referencesettings.PillarSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The checkpoint of a running recalculation of checksums for a collection, kept in a file so a recalculation 
+ * interrupted by a restart of the pillar can be resumed.
+ * <p>
+ * The checkpoint only has to contain the date, which checksums older than are recalculated. The checksums 
+ * recalculated before the restart have later calculation dates in the checksum store, thus they are not recalculated
+ * again when the recalculation is resumed with the same date.
+ */
+class RecalculationCheckpoint {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The property with the date, which checksums older than are recalculated.*/
+    private static final String CHECKSUM_DATE_PROPERTY = "checksumDate";
+
+    /** The checkpoint file.*/
+    private final File file;
+
+    /**
+     * @param dir The directory for the checkpoint file.
+     * @param collectionID The id of the collection being recalculated.
+     */
+    RecalculationCheckpoint(File dir, String collectionID) {
+        this.file = new File(dir, "checksum-recalculation-" + collectionID + ".checkpoint");
+    }
+
+    /**
+     * Finds the directory for the checkpoints of a collection. This is the CheckpointDir of the ChecksumRecalculation 
+     * settings, or otherwise the first archive directory of the collection.
+     * @param pillarSettings The settings for the pillar.
+     * @param collectionID The id of the collection.
+     * @return The directory for the checkpoints of the collection.
+     */
+    static File getCheckpointDir(PillarSettings pillarSettings, String collectionID) {
+        if(pillarSettings.getChecksumRecalculation() != null 
+                && pillarSettings.getChecksumRecalculation().getCheckpointDir() != null) {
+            return new File(pillarSettings.getChecksumRecalculation().getCheckpointDir());
+        }
+        String defaultDir = null;
+        for(CollectionDirs cd : pillarSettings.getCollectionDirs()) {
+            if(cd.getFileDirs().isEmpty()) {
+                continue;
+            }
+            if(cd.getCollectionID().contains(collectionID)) {
+                return new File(cd.getFileDirs().get(0), collectionID);
+            }
+            if(cd.getCollectionID().isEmpty() && defaultDir == null) {
+                defaultDir = cd.getFileDirs().get(0);
+            }
+        }
+        if(defaultDir == null) {
+            return new File(System.getProperty("java.io.tmpdir"));
+        }
+        return new File(defaultDir, collectionID);
+    }
+
+    /**
+     * @return The date of the unfinished recalculation, which checksums older than are recalculated, or null if no 
+     * recalculation is unfinished.
+     */
+    Date getChecksumDate() {
+        if(!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+            return new Date(Long.parseLong(properties.getProperty(CHECKSUM_DATE_PROPERTY)));
+        } catch (IOException e) {
+            log.warn("Could not read the checkpoint '" + file + "'. Starting a new recalculation.", e);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid checkpoint '" + file + "'. Starting a new recalculation.", e);
+        }
+        return null;
+    }
+
+    /**
+     * Saves the checkpoint for a new recalculation. The file is replaced in one step, so the checkpoint is never 
+     * partially written.
+     * @param checksumDate The date, which checksums older than are recalculated.
+     */
+    void save(Date checksumDate) {
+        Properties properties = new Properties();
+        properties.setProperty(CHECKSUM_DATE_PROPERTY, Long.toString(checksumDate.getTime()));
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                properties.store(out, "Checkpoint of the checksum recalculation");
+            }
+            if(!tmpFile.renameTo(file)) {
+                file.delete();
+                if(!tmpFile.renameTo(file)) {
+                    throw new IOException("Could not move '" + tmpFile + "' to '" + file + "'");
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not save the checkpoint '" + file + "'. The recalculation cannot be resumed after a "
+                    + "restart.", e);
+        }
+    }
+
+    /**
+     * Removes the checkpoint, when the recalculation has finished.
+     */
+    void delete() {
+        if(file.exists() && !file.delete()) {
+            log.warn("Could not delete the checkpoint '" + file + "'.");
+        }
+    }
+}
@@ -196,14 +196,34 @@ public abstract class StorageModel {
     public ExtractedChecksumResultSet getChecksumResultSet(XMLGregorianCalendar minTimestamp, 
             XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID, ChecksumSpecTYPE csSpec) 
                     throws RequestHandlerException {
+        ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
+        extractChecksumResults(minTimestamp, maxTimestamp, maxResults, collectionID, csSpec, res);
+        return res;
+    }
+    
+    /**
+     * Ensures, that all files are up to date, and inserts the requested entries into the given result set one at a 
+     * time, as they are extracted.
+     * @param minTimestamp The minimum date for the timestamp of the extracted checksum entries.
+     * @param maxTimestamp The maximum date for the timestamp of the extracted checksum entries.
+     * @param maxResults The maximum number of results.
+     * @param collectionID The id of the collection.
+     * @param csSpec The checksum specification.
+     * @param results The result set to insert the checksum entries into.
+     * @throws RequestHandlerException If it is a non-default checksum specification, which is not supported (e.g. if
+     * it is a ChecksumPillar).
+     */
+    public void extractChecksumResults(XMLGregorianCalendar minTimestamp, XMLGregorianCalendar maxTimestamp, 
+            Long maxResults, String collectionID, ChecksumSpecTYPE csSpec, ExtractedChecksumResultSet results) 
+                    throws RequestHandlerException {
         verifyFileToCacheConsistencyOfAllDataIfRequired(collectionID);
         if(csSpec.equals(defaultChecksumSpec)) {
-            return cache.getChecksumResults(minTimestamp, maxTimestamp, maxResults, collectionID);
+            cache.getChecksumResults(minTimestamp, maxTimestamp, maxResults, collectionID, results);
         } else {
             log.info("Bulk-extraction of non-default checksums for spec: " + csSpec 
                     + ", on collection " + collectionID + ", with maximum " + maxResults + " results.");
             // We ignore minTimestamp and maxTimestamp when dealing with non-default checksums.
-            return getNonDefaultChecksumResultSet(maxResults, collectionID, csSpec);
+            extractNonDefaultChecksumResults(maxResults, collectionID, csSpec, results);
         }
     }
     
@@ -360,6 +380,14 @@ public abstract class StorageModel {
      */
     protected abstract void verifyFileToCacheConsistencyIfRequired(String fileID, String collectionID);
 
+    /**
+     * Gives the entries in the cache without a last modified timestamp, e.g. from before it was kept in the cache, 
+     * the last modified timestamp and size of their file. Until then, the files are not delivered by 
+     * {@link #getFileIDsResultSet(String, XMLGregorianCalendar, XMLGregorianCalendar, Long, String)}.
+     * @param collectionID The id of the collection.
+     */
+    public abstract void updateMissingFileInfo(String collectionID);
+
     /**
      * Validates that all files in the cache is also in the archive, and that all files in the archive
      * is also in the cache.
@@ -367,6 +395,16 @@ public abstract class StorageModel {
      */
     public abstract void verifyFileToCacheConsistencyOfAllData(String collectionID);
 
+    /**
+     * Validates the consistency between all the data in the file archive and in the cache, and recalculates the old 
+     * checksums, like {@link #verifyFileToCacheConsistencyOfAllData(String)}. The progress is kept up to date while 
+     * running, and an interrupted run is resumed by the next.
+     * @param collectionID The id of the collection where the data should be ensured.
+     * @param progress The progress of the recalculation.
+     */
+    public abstract void verifyFileToCacheConsistencyOfAllData(String collectionID, 
+            ChecksumRecalculationProgress progress);
+
     /**
      * Retrieves the non-default checksum for a file, thus calculating the checksum of the file with the new 
      * checksum specification.
@@ -413,8 +451,25 @@ public abstract class StorageModel {
      * @throws RequestHandlerException If the non-default checksum specification is not supported, e.g. if it is a
      * ChecksumPillar.
      */
-    protected abstract ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID, 
-            ChecksumSpecTYPE csSpec) throws RequestHandlerException;
+    protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID, 
+            ChecksumSpecTYPE csSpec) throws RequestHandlerException {
+        ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
+        extractNonDefaultChecksumResults(maxResults, collectionID, csSpec, res);
+        return res;
+    }
+    
+    /**
+     * Calculates the checksums with a non-default checksum specification for some files, and inserts them into the 
+     * given result set one at a time.
+     * @param maxResults The maximum number of results.
+     * @param collectionID The id of the collection.
+     * @param csSpec The checksum specification.
+     * @param results The result set to insert the checksum-results into.
+     * @throws RequestHandlerException If the non-default checksum specification is not supported, e.g. if it is a
+     * ChecksumPillar.
+     */
+    protected abstract void extractNonDefaultChecksumResults(Long maxResults, String collectionID, 
+            ChecksumSpecTYPE csSpec, ExtractedChecksumResultSet results) throws RequestHandlerException;
 
     /**
      * Throws an exception unless the actual file exists and is available.
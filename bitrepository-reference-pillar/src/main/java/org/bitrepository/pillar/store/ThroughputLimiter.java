@@ -0,0 +1,67 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of bytes handled per second by a number of threads in total.
+ * Each thread registers the bytes it has handled, and is held back until the limit allows them.
+ */
+class ThroughputLimiter {
+    /** The time in nanoseconds it takes to handle one byte at the maximum throughput.*/
+    private final double nanosPerByte;
+    /** The time in nanoseconds from which the throughput has not yet been used.*/
+    private long nextFreeTime = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond The maximum number of bytes per second.
+     */
+    ThroughputLimiter(long bytesPerSecond) {
+        if(bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("The throughput must be positive, was " + bytesPerSecond);
+        }
+        nanosPerByte = TimeUnit.SECONDS.toNanos(1) / (double) bytesPerSecond;
+    }
+
+    /**
+     * Registers a number of bytes handled, and waits until they are within the limit.
+     * Throughput not used while no bytes are handled is not saved for later.
+     * @param bytes The number of bytes handled.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void acquire(long bytes) throws InterruptedException {
+        long waitUntil;
+        synchronized(this) {
+            long now = System.nanoTime();
+            if(nextFreeTime < now) {
+                nextFreeTime = now;
+            }
+            waitUntil = nextFreeTime;
+            nextFreeTime += (long) (bytes * nanosPerByte);
+        }
+        long waitTime = waitUntil - System.nanoTime();
+        if(waitTime > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitTime);
+        }
+    }
+}
@@ -22,6 +22,7 @@
 package org.bitrepository.pillar.store.checksumdatabase;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -60,11 +61,16 @@ public class ChecksumDAO implements ChecksumStore {
         ArgumentValidator.checkNotNull(fileID, "String fileID");
         ArgumentValidator.checkNotNull(collectionID, "String collectionID");
         
-        if(extractor.hasFile(fileID, collectionID)) {
-            ingestor.updateEntry(fileID, collectionID, checksum, calculationDate);
-        } else {
-            ingestor.insertNewEntry(fileID, collectionID, checksum, calculationDate);
-        }
+        ingestor.upsertEntries(Collections.singletonList(new ChecksumEntry(fileID, checksum, calculationDate)), 
+                collectionID);
+    }
+
+    @Override
+    public void insertChecksumCalculations(Collection<ChecksumEntry> entries, String collectionID) {
+        ArgumentValidator.checkNotNull(entries, "Collection<ChecksumEntry> entries");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        
+        ingestor.upsertEntries(entries, collectionID);
     }
 
     @Override
@@ -92,6 +98,14 @@ public class ChecksumDAO implements ChecksumStore {
         ArgumentValidator.checkNotNull(collectionID, "String collectionID");
         return extractor.extractEntries(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID);
     }
+
+    @Override
+    public void getChecksumResults(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, 
+            Long maxNumberOfResults, String collectionID, ExtractedChecksumResultSet results) {
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNull(results, "ExtractedChecksumResultSet results");
+        extractor.extractEntries(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID, results);
+    }
     
     @Override
     public Date getCalculationDate(String fileID, String collectionID) {
@@ -113,6 +127,27 @@ public class ChecksumDAO implements ChecksumStore {
         return extractor.getFileIDs(minTimeStamp, maxTimeStamp, maxNumberOfResults, fileID, collectionID);
     }
 
+    @Override
+    public void updateMissingFileInfo(Collection<ChecksumEntry> entries, String collectionID) {
+        ArgumentValidator.checkNotNull(entries, "Collection<ChecksumEntry> entries");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        ingestor.updateMissingFileInfo(entries, collectionID);
+    }
+
+    @Override
+    public ExtractedFileIDsResultSet getFileIDsByLastModified(XMLGregorianCalendar minTimeStamp, 
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        return extractor.getFileIDsByLastModified(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID);
+    }
+
+    @Override
+    public List<String> getFileIDsWithoutFileInfo(String collectionID, long maxNumberOfResults) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkPositive(maxNumberOfResults, "long maxNumberOfResults");
+        return extractor.extractFileIDsWithoutFileInfo(collectionID, maxNumberOfResults);
+    }
+
     @Override
     public boolean hasFile(String fileID, String collectionID) {
         ArgumentValidator.checkNotNull(fileID, "String fileID");
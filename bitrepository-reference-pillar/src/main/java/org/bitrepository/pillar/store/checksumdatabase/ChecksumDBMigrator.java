@@ -42,11 +42,17 @@ public class ChecksumDBMigrator extends DatabaseMigrator {
     /** The settings.*/
     private final Settings settings;
     /** The current version of the database. */
-    private final Integer currentVersion = 4;
+    private final Integer currentVersion = 7;
     /** The name of the update script for version 2 to 3.*/
     private static final String UPDATE_SCRIPT_VERSION_2_TO_3 = "sql/derby/checksumDB2to3Migration.sql";
     /** The name of the update script for version 3 to 4.*/
     private static final String UPDATE_SCRIPT_VERSION_3_TO_4 = "sql/derby/checksumDB3to4Migration.sql";
+    /** The name of the update script for version 4 to 5.*/
+    private static final String UPDATE_SCRIPT_VERSION_4_TO_5 = "sql/derby/checksumDB4to5Migration.sql";
+    /** The name of the update script for version 5 to 6.*/
+    private static final String UPDATE_SCRIPT_VERSION_5_TO_6 = "sql/derby/checksumDB5to6Migration.sql";
+    /** The name of the update script for version 6 to 7.*/
+    private static final String UPDATE_SCRIPT_VERSION_6_TO_7 = "sql/derby/checksumDB6to7Migration.sql";
     
     /**
      * @param connector The connection to the database.
@@ -77,6 +83,18 @@ public class ChecksumDBMigrator extends DatabaseMigrator {
             log.warn("Migrating ChecksumDB from version 3 to 4.");
             migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_3_TO_4);
         }
+        if(!versions.containsKey(CHECKSUM_TABLE) || versions.get(CHECKSUM_TABLE) < 5) {
+            log.warn("Migrating ChecksumDB from version 4 to 5.");
+            migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_4_TO_5);
+        }
+        if(!versions.containsKey(CHECKSUM_TABLE) || versions.get(CHECKSUM_TABLE) < 6) {
+            log.warn("Migrating ChecksumDB from version 5 to 6.");
+            migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_5_TO_6);
+        }
+        if(!versions.containsKey(CHECKSUM_TABLE) || versions.get(CHECKSUM_TABLE) < 7) {
+            log.warn("Migrating ChecksumDB from version 6 to 7.");
+            migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_6_TO_7);
+        }
     }
     
     /**
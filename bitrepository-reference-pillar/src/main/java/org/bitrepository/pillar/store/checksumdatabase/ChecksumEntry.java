@@ -35,6 +35,10 @@ public class ChecksumEntry {
     private String checksum;
     /** The calculation date for the checksum of the file.*/
     private Date calculationDate;
+    /** The last modified timestamp of the file, or null if unknown.*/
+    private final Long lastModified;
+    /** The size of the file, or null if unknown.*/
+    private final Long fileSize;
     
     /**
      * Constructor.
@@ -43,11 +47,25 @@ public class ChecksumEntry {
      * @param calculationDate The calculation date for the checksum of the file.
      */
     public ChecksumEntry(String fileID, String checksum, Date calculationDate) {
+        this(fileID, checksum, calculationDate, null, null);
+    }
+    
+    /**
+     * Constructor for an entry, which also has the last modified timestamp and size of the file.
+     * @param fileID The id of the file.
+     * @param checksum The checksum of the file.
+     * @param calculationDate The calculation date for the checksum of the file.
+     * @param lastModified The last modified timestamp of the file in millis since epoch, or null if unknown.
+     * @param fileSize The size of the file, or null if unknown.
+     */
+    public ChecksumEntry(String fileID, String checksum, Date calculationDate, Long lastModified, Long fileSize) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         
         this.fileID = fileID;
         this.checksum = checksum;
         this.calculationDate = calculationDate;
+        this.lastModified = lastModified;
+        this.fileSize = fileSize;
     }
     
     /**
@@ -86,4 +104,18 @@ public class ChecksumEntry {
     public Date getCalculationDate() {
         return calculationDate;
     }
+    
+    /**
+     * @return The last modified timestamp of the file in millis since epoch, or null if unknown.
+     */
+    public Long getLastModified() {
+        return lastModified;
+    }
+    
+    /**
+     * @return The size of the file, or null if unknown.
+     */
+    public Long getFileSize() {
+        return fileSize;
+    }
 }
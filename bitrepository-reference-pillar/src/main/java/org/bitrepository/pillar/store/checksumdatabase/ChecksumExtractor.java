@@ -26,7 +26,10 @@ import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_COLLECTION_ID;
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_DATE;
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_FILE_ID;
+import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_FILE_SIZE;
+import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_LAST_MODIFIED;
 
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -180,7 +183,11 @@ public class ChecksumExtractor {
     }
 
     /**
-     * Extracts the file ids within the given optional limitations.
+     * Extracts the file ids within the given optional limitations, ordered by the calculation date of their checksum.
+     * Files with the same calculation date are ordered by their id, so a page starting at the calculation date of
+     * the last file in the previous page delivers them in the same order. Only the requested number of entries are
+     * read from the database, and one more to tell whether more entries exist. See
+     * {@link #warnIfPageCannotProgress(XMLGregorianCalendar, long, String)} for the limit of paging by timestamp.
      *
      * @param minTimeStamp       The minimum date for the timestamp of the extracted file ids.
      * @param maxTimeStamp       The maximum date for the timestamp of the extracted file ids.
@@ -209,23 +216,27 @@ public class ChecksumExtractor {
             sql.append(" AND " + CS_FILE_ID + " = ? ");
             args.add(fileID);
         }
-        sql.append(" ORDER BY " + CS_DATE + " ASC ");
+        sql.append(" ORDER BY " + CS_DATE + " ASC , " + CS_FILE_ID + " ASC ");
         
         ExtractedFileIDsResultSet results = new ExtractedFileIDsResultSet();
         try (Connection conn = connector.getConnection();
             PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sql.toString(), args.toArray())){
             conn.setAutoCommit(false);
+            limitRows(ps, maxNumberOfResults);
             ps.setFetchSize(100);
             try (ResultSet res = ps.executeQuery()){
-                int i = 0;
-                while(res.next() && (maxNumberOfResults == null || i < maxNumberOfResults)) {
-                    results.insertFileID(res.getString(1), new Date(res.getLong(2)));
+                long i = 0;
+                long lastDate = 0;
+                while(res.next()) {
+                    if(maxNumberOfResults != null && i >= maxNumberOfResults) {
+                        results.reportMoreEntriesFound();
+                        warnIfPageCannotProgress(minTimeStamp, lastDate, collectionID);
+                        break;
+                    }
+                    lastDate = res.getLong(2);
+                    results.insertFileID(res.getString(1), new Date(lastDate));
                     i++;
                 }
-                
-                if(maxNumberOfResults != null && i >= maxNumberOfResults) {
-                    results.reportMoreEntriesFound();
-                }
             } finally {
                 if(conn != null) {
                     conn.setAutoCommit(true);
@@ -241,6 +252,101 @@ public class ChecksumExtractor {
         return results;
     }
     
+    /**
+     * Extracts the file ids ordered by their last modified timestamp within the given optional limitations.
+     * Files with the same timestamp are ordered by their id, so all of them are delivered in a stable order.
+     * Only the requested number of entries are read from the database, and one more to tell whether more entries
+     * exist. See {@link #warnIfPageCannotProgress(XMLGregorianCalendar, long, String)} for the limit of paging by
+     * timestamp.
+     *
+     * @param minTimeStamp       The minimum date for the last modified timestamp of the extracted file ids.
+     * @param maxTimeStamp       The maximum date for the last modified timestamp of the extracted file ids.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param collectionID       The collection id for the extraction.
+     * @return The requested file ids with their last modified timestamp and size.
+     */
+    public ExtractedFileIDsResultSet getFileIDsByLastModified(XMLGregorianCalendar minTimeStamp, 
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        List<Object> args = new ArrayList<Object>(); 
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT " + CS_FILE_ID + " , " + CS_LAST_MODIFIED + " , " + CS_FILE_SIZE + " FROM " 
+                + CHECKSUM_TABLE + " WHERE " + CS_COLLECTION_ID + " = ? AND " + CS_LAST_MODIFIED + " IS NOT NULL");
+        args.add(collectionID);
+        
+        if(minTimeStamp != null) {
+            sql.append(" AND " + CS_LAST_MODIFIED + " >= ? ");
+            args.add(CalendarUtils.convertFromXMLGregorianCalendar(minTimeStamp).getTime());
+        }
+        if(maxTimeStamp != null) {
+            sql.append(" AND " + CS_LAST_MODIFIED + " <= ? ");
+            args.add(CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime());
+        }
+        sql.append(" ORDER BY " + CS_LAST_MODIFIED + " ASC , " + CS_FILE_ID + " ASC ");
+        
+        ExtractedFileIDsResultSet results = new ExtractedFileIDsResultSet();
+        try (Connection conn = connector.getConnection();
+            PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sql.toString(), args.toArray())){
+            conn.setAutoCommit(false);
+            limitRows(ps, maxNumberOfResults);
+            ps.setFetchSize(100);
+            try (ResultSet res = ps.executeQuery()){
+                long i = 0;
+                long lastModified = 0;
+                while(res.next()) {
+                    if(maxNumberOfResults != null && i >= maxNumberOfResults) {
+                        results.reportMoreEntriesFound();
+                        warnIfPageCannotProgress(minTimeStamp, lastModified, collectionID);
+                        break;
+                    }
+                    String fileID = res.getString(1);
+                    lastModified = res.getLong(2);
+                    long size = res.getLong(3);
+                    BigInteger fileSize = res.wasNull() ? null : BigInteger.valueOf(size);
+                    results.insertFileID(fileID, fileSize, CalendarUtils.getFromMillis(lastModified));
+                    i++;
+                }
+            } finally {
+                if(conn != null) {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot extract the file ids by last modified timestamp with the arguments, "
+                    + "minTimestamp = '" + minTimeStamp + "', maxTimestamp = '"+ maxTimeStamp 
+                    + "', maxNumberOfResults = '" + maxNumberOfResults + "'", e);
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Retrieves the file ids for the entries without a last modified timestamp for the file.
+     * @param collectionID The collection id for the extraction.
+     * @param maxNumberOfResults The maximum number of file ids to retrieve.
+     * @return The list of file ids extracted from the database.
+     */
+    public List<String> extractFileIDsWithoutFileInfo(String collectionID, long maxNumberOfResults) {
+        String sql = "SELECT " + CS_FILE_ID + " FROM " + CHECKSUM_TABLE + " WHERE " + CS_COLLECTION_ID + " = ? AND " 
+                + CS_LAST_MODIFIED + " IS NULL";
+        List<String> results = new ArrayList<String>();
+        try (Connection conn = connector.getConnection();
+            PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sql, collectionID)) {
+            if(maxNumberOfResults < Integer.MAX_VALUE) {
+                ps.setMaxRows((int) maxNumberOfResults);
+            }
+            try (ResultSet res = ps.executeQuery()) {
+                while(res.next()) {
+                    results.add(res.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot extract the file ids without a last modified timestamp in "
+                    + "collection '" + collectionID + "'", e);
+        }
+        return results;
+    }
+    
     /**
      * Retrieves all the file ids for a given collection id within the database.
      * @param collectionID The collection id for the extraction.
@@ -262,6 +368,28 @@ public class ChecksumExtractor {
      */
     public ExtractedChecksumResultSet extractEntries(XMLGregorianCalendar minTimeStamp, 
             XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        ExtractedChecksumResultSet results = new ExtractedChecksumResultSet();
+        extractEntries(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID, results);
+        return results;
+    }
+    
+    /**
+     * Extracts the checksum entries within the given optional limitations into the given result set.
+     * The entries are inserted one at a time, while they are read from the database.
+     * The entries are ordered by their calculation date, and entries with the same calculation date by their file id,
+     * so a page starting at the calculation date of the last entry in the previous page delivers them in the same
+     * order. Only the requested number of entries are read from the database, and one more to tell whether more
+     * entries exist. See {@link #warnIfPageCannotProgress(XMLGregorianCalendar, long, String)} for the limit of
+     * paging by timestamp.
+     * 
+     * @param minTimeStamp The minimum date for the timestamp of the extracted checksum entries.
+     * @param maxTimeStamp The maximum date for the timestamp of the extracted checksum entries.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param collectionID The collection id for the extraction.
+     * @param results The result set to insert the extracted entries into.
+     */
+    public void extractEntries(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, 
+            Long maxNumberOfResults, String collectionID, ExtractedChecksumResultSet results) {
         List<Object> args = new ArrayList<Object>(); 
         StringBuilder sql = new StringBuilder();
         sql.append("SELECT " + CS_FILE_ID + " , " + CS_CHECKSUM + " , " + CS_DATE + " FROM " + CHECKSUM_TABLE 
@@ -276,23 +404,27 @@ public class ChecksumExtractor {
             sql.append(" AND " + CS_DATE + " <= ? ");
             args.add(CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime());
         }
-        sql.append(" ORDER BY " + CS_DATE + " ASC ");
+        sql.append(" ORDER BY " + CS_DATE + " ASC , " + CS_FILE_ID + " ASC ");
         
-        ExtractedChecksumResultSet results = new ExtractedChecksumResultSet();
         try (Connection conn = connector.getConnection();
              PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sql.toString(), args.toArray())){
             conn.setAutoCommit(false);
+            limitRows(ps, maxNumberOfResults);
             ps.setFetchSize(100);
             try (ResultSet res = ps.executeQuery()) {
-                int i = 0;
-                while(res.next() && (maxNumberOfResults == null || i < maxNumberOfResults)) {
-                    results.insertChecksumEntry(extractChecksumEntry(res));
+                long i = 0;
+                long lastDate = 0;
+                while(res.next()) {
+                    if(maxNumberOfResults != null && i >= maxNumberOfResults) {
+                        results.reportMoreEntriesFound();
+                        warnIfPageCannotProgress(minTimeStamp, lastDate, collectionID);
+                        break;
+                    }
+                    ChecksumEntry entry = extractChecksumEntry(res);
+                    lastDate = entry.getCalculationDate().getTime();
+                    results.insertChecksumEntry(entry);
                     i++;
                 }
-                
-                if(maxNumberOfResults != null && i >= maxNumberOfResults) {
-                    results.reportMoreEntriesFound();
-                }
             } finally {
                 if(conn != null) {
                     conn.setAutoCommit(true);
@@ -304,8 +436,6 @@ public class ChecksumExtractor {
                     + minTimeStamp + "', maxTimestamp = '"+ maxTimeStamp + "', maxNumberOfResults = '" 
                     + maxNumberOfResults + "'", e);
         }
-        
-        return results;
     }
     
     /**
@@ -320,8 +450,8 @@ public class ChecksumExtractor {
         ArgumentValidator.checkNotNull(maxTimeStamp, "Long maxTimeStamp");
         List<Object> args = new ArrayList<Object>(); 
         StringBuilder sql = new StringBuilder();
-        sql.append("SELECT " + CS_FILE_ID + " WHERE " + CS_COLLECTION_ID + " = ? AND " + CS_DATE + " <= ? "
-                + " ORDER BY " + CS_DATE + " ASC ");
+        sql.append("SELECT " + CS_FILE_ID + " FROM " + CHECKSUM_TABLE + " WHERE " + CS_COLLECTION_ID + " = ? AND " 
+                + CS_DATE + " <= ? ORDER BY " + CS_DATE + " ASC , " + CS_FILE_ID + " ASC ");
         args.add(collectionID);
         args.add(maxTimeStamp);
         
@@ -331,10 +461,8 @@ public class ChecksumExtractor {
             conn.setAutoCommit(false);
             ps.setFetchSize(100);
             try (ResultSet res = ps.executeQuery()) {
-                while(res.next() ) {
-                    if(!res.wasNull()) {
-                        results.add(res.getString(0));
-                    }
+                while(res.next()) {
+                    results.add(res.getString(1));
                 }
             } finally {
                 if(conn != null) {
@@ -350,6 +478,35 @@ public class ChecksumExtractor {
         return results;
     }
     
+    /**
+     * Limits the rows read by a query to the requested number of results and one more, which tells whether more
+     * results exist. As the results are ordered by the columns of an index, only these rows are read from the index.
+     * @param ps The statement for the query.
+     * @param maxNumberOfResults The maximum number of results, or null if not limited.
+     */
+    private void limitRows(PreparedStatement ps, Long maxNumberOfResults) throws SQLException {
+        if(maxNumberOfResults != null && maxNumberOfResults < Integer.MAX_VALUE) {
+            ps.setMaxRows(maxNumberOfResults.intValue() + 1);
+        }
+    }
+    
+    /**
+     * Warns about a page, where all the entries have the minimum timestamp of the page.
+     * The protocol only carries a minimum timestamp to continue from, not a file id, so the next page starts at the
+     * same timestamp and delivers the same entries. Thus a client can not page past more entries with the same
+     * timestamp than fit in a page, unless it requests larger pages.
+     * @param minTimeStamp The minimum timestamp of the page, or null if not limited.
+     * @param lastDate The timestamp of the last entry in the page, in millis.
+     * @param collectionID The collection id for the extraction.
+     */
+    private void warnIfPageCannotProgress(XMLGregorianCalendar minTimeStamp, long lastDate, String collectionID) {
+        if(minTimeStamp != null && CalendarUtils.convertFromXMLGregorianCalendar(minTimeStamp).getTime() == lastDate) {
+            log.warn("All entries in the page for collection '" + collectionID + "' have the minimum timestamp '" 
+                    + minTimeStamp + "', and more entries with that timestamp exist. Paging from this timestamp "
+                    + "can not get past them, unless larger pages are requested.");
+        }
+    }
+
     /**
      * Extracts a checksum entry from a result set. 
      * The result set needs to have requested the elements in the right order:
@@ -26,17 +26,55 @@ import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_COLLECTION_ID;
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_DATE;
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_FILE_ID;
+import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_FILE_SIZE;
+import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_LAST_MODIFIED;
 
-import java.util.Date;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.service.database.DBConnector;
+import org.bitrepository.service.database.DatabaseFactory;
 import org.bitrepository.service.database.DatabaseUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Ingests data to the checksum database. And also deals with the deletion of entries.
  */
 public class ChecksumIngestor {
+    /** The statement for inserting an entry.*/
+    private static final String INSERT_SQL = "INSERT INTO " + CHECKSUM_TABLE + " ( " + CS_FILE_ID + " , " 
+            + CS_COLLECTION_ID + " , " + CS_CHECKSUM + " , " + CS_DATE + " , " + CS_LAST_MODIFIED + " , " 
+            + CS_FILE_SIZE + " ) VALUES ( ? , ? , ? , ? , ? , ? )";
+    /** The statement for inserting an entry, or updating the existing entry for the file, on PostgreSQL.*/
+    private static final String UPSERT_POSTGRES_SQL = INSERT_SQL + " ON CONFLICT ( " + CS_FILE_ID + " , " 
+            + CS_COLLECTION_ID + " ) DO UPDATE SET " + CS_CHECKSUM + " = EXCLUDED." + CS_CHECKSUM + " , " 
+            + CS_DATE + " = EXCLUDED." + CS_DATE + " , " 
+            + CS_LAST_MODIFIED + " = COALESCE(EXCLUDED." + CS_LAST_MODIFIED + " , " + CHECKSUM_TABLE + "." 
+            + CS_LAST_MODIFIED + ") , " 
+            + CS_FILE_SIZE + " = COALESCE(EXCLUDED." + CS_FILE_SIZE + " , " + CHECKSUM_TABLE + "." + CS_FILE_SIZE + ")";
+    /** The statement for updating an existing entry.*/
+    private static final String UPDATE_SQL = "UPDATE " + CHECKSUM_TABLE + " SET " + CS_CHECKSUM + " = ? , " + CS_DATE 
+            + " = ? , " + CS_LAST_MODIFIED + " = COALESCE(CAST(? AS BIGINT), " + CS_LAST_MODIFIED + ") , " 
+            + CS_FILE_SIZE + " = COALESCE(CAST(? AS BIGINT), " + CS_FILE_SIZE + ") WHERE " + CS_FILE_ID + " = ? AND " 
+            + CS_COLLECTION_ID + " = ?";
+    /** The statement for setting the file info of an existing entry, which does not have it.*/
+    private static final String UPDATE_MISSING_FILE_INFO_SQL = "UPDATE " + CHECKSUM_TABLE + " SET " 
+            + CS_LAST_MODIFIED + " = ? , " + CS_FILE_SIZE + " = ? WHERE " + CS_FILE_ID + " = ? AND " 
+            + CS_COLLECTION_ID + " = ? AND " + CS_LAST_MODIFIED + " IS NULL";
+    /** The SQL state of a violation of a unique index or primary key.*/
+    private static final String DUPLICATE_KEY_SQL_STATE = "23505";
+    /** The number of attempts to update and insert entries, which are inserted by other transactions meanwhile.*/
+    private static final int MAX_UPSERT_ATTEMPTS = 3;
+    
+    /** The log.*/
+    private Logger log = LoggerFactory.getLogger(getClass());
     /** The connector for the database.*/
     private final DBConnector connector;
     
@@ -51,29 +89,196 @@ public class ChecksumIngestor {
     }
     
     /**
-     * Inserts a new entry into the database.
-     * @param fileID The id of the file for the entry.
-     * @param collectionID The id of the collection of the file.
-     * @param checksum The checksum of the file.
-     * @param date The calculation timestamp for the file.
+     * Inserts the entries into the database, or updates the existing entries for the same files, in a single
+     * transaction. The statements are sent to the database in batches. 
+     * <p>
+     * On PostgreSQL each entry is inserted or updated by a single 'INSERT ... ON CONFLICT' statement. On other
+     * databases, e.g. Derby, the entries are first updated, and the entries which did not exist are inserted 
+     * afterwards in the same transaction. If another transaction inserts one of the files in between, the insert 
+     * violates the unique index of the files. The transaction is then rolled back and retried, so the file 
+     * inserted by the other transaction is updated instead.
+     * <p>
+     * The last modified timestamp and size of the files are only set for the entries which has them, thus they are
+     * kept for existing entries without them.
+     * @param entries The entries to insert or update.
+     * @param collectionID The id of the collection of the files.
      */
-    public synchronized void insertNewEntry(String fileID, String collectionID, String checksum, Date date) {
-        String sql = "INSERT INTO " + CHECKSUM_TABLE + " ( " + CS_FILE_ID + " , " + CS_CHECKSUM + " , " + CS_DATE 
-                + " , " + CS_COLLECTION_ID + " ) VALUES ( ? , ? , ? , ? )";
-        DatabaseUtils.executeStatement(connector, sql, fileID, checksum, date.getTime(), collectionID);
+    public void upsertEntries(Collection<ChecksumEntry> entries, String collectionID) {
+        if(entries.isEmpty()) {
+            return;
+        }
+        try (Connection conn = connector.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if(DatabaseFactory.postgressDriver.equals(connector.getDatabaseDriverClass())) {
+                    executeBatch(conn, UPSERT_POSTGRES_SQL, entries, collectionID);
+                    conn.commit();
+                } else {
+                    updateAndInsertEntries(conn, entries, collectionID);
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not insert or update the checksums of " + entries.size() 
+                    + " files in collection '" + collectionID + "'.", e);
+        }
     }
     
     /**
-     * Updates an existing entry in the database.
-     * @param fileID The id of the file to update.
-     * @param collectionID The id of the collection of the file.
-     * @param checksum The new checksum for the file.
-     * @param date The new date for the calculation of the checksum of the file.
+     * Updates the existing entries and inserts the new entries in a transaction. The transaction is retried, 
+     * if one of the new entries is inserted by another transaction at the same time.
+     * @param conn The connection to update and insert the entries with.
+     * @param entries The entries to insert or update.
+     * @param collectionID The id of the collection of the files.
+     * @throws SQLException If the update or insert fails.
+     */
+    private void updateAndInsertEntries(Connection conn, Collection<ChecksumEntry> entries, String collectionID) 
+            throws SQLException {
+        for(int attempt = 1; ; attempt++) {
+            try {
+                List<ChecksumEntry> newEntries = updateExistingEntries(conn, entries, collectionID);
+                executeBatch(conn, INSERT_SQL, newEntries, collectionID);
+                conn.commit();
+                return;
+            } catch (SQLException e) {
+                if(attempt >= MAX_UPSERT_ATTEMPTS || !isDuplicateKeyViolation(e)) {
+                    throw e;
+                }
+                log.debug("Entries in collection '" + collectionID + "' were inserted by another transaction. "
+                        + "Retrying the update.", e);
+                conn.rollback();
+            }
+        }
+    }
+    
+    /**
+     * @param e The exception from a statement.
+     * @return Whether the exception, or the exceptions chained to it, is a violation of a unique index.
+     */
+    private boolean isDuplicateKeyViolation(SQLException e) {
+        Throwable cause = e;
+        while(cause != null) {
+            if(cause instanceof SQLException) {
+                SQLException sqlException = (SQLException) cause;
+                if(DUPLICATE_KEY_SQL_STATE.equals(sqlException.getSQLState())) {
+                    return true;
+                }
+                if(sqlException.getNextException() != null) {
+                    cause = sqlException.getNextException();
+                    continue;
+                }
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+    
+    /**
+     * Updates the entries, which are already in the database.
+     * @param conn The connection to update the entries with.
+     * @param entries The entries to update.
+     * @param collectionID The id of the collection of the files.
+     * @return The entries, which were not in the database.
+     * @throws SQLException If the update fails.
+     */
+    private List<ChecksumEntry> updateExistingEntries(Connection conn, Collection<ChecksumEntry> entries, 
+            String collectionID) throws SQLException {
+        List<ChecksumEntry> orderedEntries = new ArrayList<ChecksumEntry>(entries);
+        int[] updateCounts;
+        try (PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
+            for(ChecksumEntry entry : orderedEntries) {
+                ps.setString(1, entry.getChecksum());
+                ps.setLong(2, entry.getCalculationDate().getTime());
+                setNullableLong(ps, 3, entry.getLastModified());
+                setNullableLong(ps, 4, entry.getFileSize());
+                ps.setString(5, entry.getFileId());
+                ps.setString(6, collectionID);
+                ps.addBatch();
+            }
+            updateCounts = ps.executeBatch();
+        }
+        
+        List<ChecksumEntry> newEntries = new ArrayList<ChecksumEntry>();
+        for(int i = 0; i < orderedEntries.size(); i++) {
+            if(updateCounts[i] == 0) {
+                newEntries.add(orderedEntries.get(i));
+            }
+        }
+        return newEntries;
+    }
+    
+    /**
+     * Executes an insert statement for each of the entries in a single batch.
+     * @param conn The connection to execute the statements with.
+     * @param sql The insert statement, with the parameters in the same order as {@link #INSERT_SQL}.
+     * @param entries The entries to insert.
+     * @param collectionID The id of the collection of the files.
+     * @throws SQLException If the insert fails.
+     */
+    private void executeBatch(Connection conn, String sql, Collection<ChecksumEntry> entries, String collectionID) 
+            throws SQLException {
+        if(entries.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for(ChecksumEntry entry : entries) {
+                ps.setString(1, entry.getFileId());
+                ps.setString(2, collectionID);
+                ps.setString(3, entry.getChecksum());
+                ps.setLong(4, entry.getCalculationDate().getTime());
+                setNullableLong(ps, 5, entry.getLastModified());
+                setNullableLong(ps, 6, entry.getFileSize());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+    
+    private void setNullableLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if(value == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, value);
+        }
+    }
+    
+    /**
+     * Sets the last modified timestamp and size of the files for existing entries without a last modified timestamp,
+     * in a single transaction. The statements are sent to the database in a single batch. Entries, which have been 
+     * given a last modified timestamp meanwhile, e.g. by a recalculation of the checksum, are not changed.
+     * @param entries The entries with the last modified timestamp and size of the files.
+     * @param collectionID The id of the collection of the files.
      */
-    public void updateEntry(String fileID, String collectionID, String checksum, Date date) {
-        String sql = "UPDATE " + CHECKSUM_TABLE + " SET " + CS_CHECKSUM + " = ? , " + CS_DATE + " = ? WHERE " 
-                + CS_FILE_ID + " = ? AND " + CS_COLLECTION_ID + " = ?";
-        DatabaseUtils.executeStatement(connector, sql, checksum, date.getTime(), fileID, collectionID);
+    public void updateMissingFileInfo(Collection<ChecksumEntry> entries, String collectionID) {
+        if(entries.isEmpty()) {
+            return;
+        }
+        try (Connection conn = connector.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_MISSING_FILE_INFO_SQL)) {
+                for(ChecksumEntry entry : entries) {
+                    setNullableLong(ps, 1, entry.getLastModified());
+                    setNullableLong(ps, 2, entry.getFileSize());
+                    ps.setString(3, entry.getFileId());
+                    ps.setString(4, collectionID);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not update the last modified timestamp of " + entries.size() 
+                    + " files in collection '" + collectionID + "'.", e);
+        }
     }
     
     /**
@@ -65,6 +65,19 @@ public interface ChecksumStore {
     ExtractedChecksumResultSet getChecksumResults(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, 
             Long maxNumberOfResults, String collectionID);
 
+    /**
+     * Retrieves the checksum result entries for the given restrictions from the store into the given result set.
+     * The entries are inserted one at a time while they are read, so a result set which does not keep the entries 
+     * can handle any number of results.
+     * @param minTimeStamp The minimum date for the timestamp of the extracted checksum entries.
+     * @param maxTimeStamp The maximum date for the timestamp of the extracted checksum entries.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param collectionID The id of the collection for the files.
+     * @param results The result set to insert the checksum entries into.
+     */
+    void getChecksumResults(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, 
+            Long maxNumberOfResults, String collectionID, ExtractedChecksumResultSet results);
+
     /**
      * Retrieves the checksum result entry for the given file from the store.
      * @param minTimeStamp The minimum date for the timestamp of the extracted checksum entry.
@@ -85,6 +98,15 @@ public interface ChecksumStore {
      */
     void insertChecksumCalculation(String fileID, String collectionID, String checksum, Date calculationDate);
     
+    /**
+     * Inserts the checksum calculations for several files at once, replacing any existing checksums for the files.
+     * The last modified timestamp and size of the files are also set for the entries which has them.
+     * Intended for bulk operations, where it is much faster than inserting the checksums one file at a time.
+     * @param entries The checksum calculations for the files.
+     * @param collectionID The id of the collection for the files.
+     */
+    void insertChecksumCalculations(Collection<ChecksumEntry> entries, String collectionID);
+    
     /**
      * Retrieval of file ids.
      * @param minTimeStamp The minimum date for the timestamp of the extracted file ids.
@@ -97,6 +119,34 @@ public interface ChecksumStore {
     ExtractedFileIDsResultSet getFileIDs(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, 
             Long maxNumberOfResults, String fileID, String collectionID);
     
+    /**
+     * Sets the last modified timestamp and the size of files, which already have entries in the store without a 
+     * last modified timestamp. Entries, which have been given a last modified timestamp meanwhile, are kept.
+     * @param entries The entries with the last modified timestamp and size of the files.
+     * @param collectionID The id of the collection for the files.
+     */
+    void updateMissingFileInfo(Collection<ChecksumEntry> entries, String collectionID);
+    
+    /**
+     * Retrieval of file ids ordered by the last modified timestamp of the files, and by file id for files with the 
+     * same timestamp. Only files with a last modified timestamp in the store are delivered.
+     * @param minTimeStamp The minimum date for the last modified timestamp of the extracted file ids.
+     * @param maxTimeStamp The maximum date for the last modified timestamp of the extracted file ids.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param collectionID The id of the collection for the files.
+     * @return The file ids in the store within the restrictions, with their last modified timestamp and size.
+     */
+    ExtractedFileIDsResultSet getFileIDsByLastModified(XMLGregorianCalendar minTimeStamp, 
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID);
+    
+    /**
+     * Retrieval of the ids for the files without a last modified timestamp in the store.
+     * @param collectionID The id of the collection for the files.
+     * @param maxNumberOfResults The maximum number of ids to retrieve.
+     * @return The list of ids for the files without a last modified timestamp.
+     */
+    List<String> getFileIDsWithoutFileInfo(String collectionID, long maxNumberOfResults);
+    
     /**
      * Retrieval of all the file ids in the store.
      * @param collectionID The id of the collection for the files.
@@ -38,6 +38,10 @@ public class DatabaseConstants {
     public static final String CS_DATE = "calculationdate";
     /** The column for the collection id for the file.*/
     public static final String CS_COLLECTION_ID = "collectionid";
+    /** The column for the last modified timestamp of the file.*/
+    public static final String CS_LAST_MODIFIED = "lastmodified";
+    /** The column for the size of the file.*/
+    public static final String CS_FILE_SIZE = "filesize";
     
     /** The column for the guid of the entry.*/
     public static final String CS_GUID = "guid";
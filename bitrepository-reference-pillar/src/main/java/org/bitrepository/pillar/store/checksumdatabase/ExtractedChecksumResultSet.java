@@ -62,7 +62,7 @@ public class ExtractedChecksumResultSet {
         res.setCalculationTimestamp(CalendarUtils.getXmlGregorianCalendar(entry.getCalculationDate()));
         res.setChecksumValue(Base16Utils.encodeBase16(entry.getChecksum()));
         res.setFileID(entry.getFileId());
-        entries.add(res);
+        insertChecksumEntry(res);
     }
     
     /**
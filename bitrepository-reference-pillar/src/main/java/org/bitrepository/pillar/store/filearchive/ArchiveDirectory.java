@@ -22,16 +22,31 @@
 package org.bitrepository.pillar.store.filearchive;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.common.utils.FileUtils;
+import org.bitrepository.settings.referencesettings.DirectoryLayout;
 
 /**
  * Manager interface for a given archival directory, with the subdirectories 'tempDir', 'fileDir' and 'retainDir'.
  * A new file is ingested into the 'tempDir', where it can be validated before it is moved to the 'fileDir'.
  * If a file is to be deleted, then it is moved from the 'fileDir' to the 'retainDir'.
+ * <p>
+ * With the {@link DirectoryLayout#SHARDED} layout the files in the 'fileDir' are placed in two levels of
+ * sub-directories named by the first four hex digits of the MD5 of the file id, e.g. 'fileDir/3f/a2/file1'.
+ * Files placed directly in the 'fileDir' by the flat layout are still found, until they have been moved with
+ * {@link #migrateFlatFiles(int)}.
  */
 public class ArchiveDirectory {
     /** Constant for the temporary directory name.*/
@@ -40,6 +55,8 @@ public class ArchiveDirectory {
     public static final String ARCHIVE_DIR = "fileDir";
     /** Constant for the retain directory name.*/
     public static final String RETAIN_DIR = "retainDir";
+    /** The number of hex digits used for naming each level of sub-directories in the sharded layout.*/
+    private static final int SHARD_NAME_LENGTH = 2;
 
     /** The directory for the files. Contains three sub directories: tempDir, fileDir and retainDir.*/
     private File baseDepositDir;
@@ -50,13 +67,27 @@ public class ArchiveDirectory {
     private final File fileDir;
     /** The directory where the files are moved, when they are removed from the archive.*/
     private final File retainDir;
+    /** Whether the files are placed in sharded sub-directories of the fileDir.*/
+    private final boolean sharded;
+    /** Whether the fileDir of a sharded archive may still contain files placed by the flat layout.*/
+    private volatile boolean hasFlatFiles;
 
     /** 
-     * Constructor. Initialises the file directory. 
+     * Constructor. Initialises the file directory with the flat layout.
      * 
      * @param dirName The directory for this archive.
      */
     public ArchiveDirectory(String dirName) {
+        this(dirName, DirectoryLayout.FLAT);
+    }
+
+    /** 
+     * Constructor. Initialises the file directory. 
+     * 
+     * @param dirName The directory for this archive.
+     * @param layout The layout of the files in the fileDir. Null means {@link DirectoryLayout#FLAT}.
+     */
+    public ArchiveDirectory(String dirName, DirectoryLayout layout) {
         ArgumentValidator.checkNotNullOrEmpty(dirName, "String dirName");
 
         // Instantiate the directories for this archive.
@@ -64,6 +95,8 @@ public class ArchiveDirectory {
         tmpDir = FileUtils.retrieveSubDirectory(baseDepositDir, TEMPORARY_DIR);
         fileDir = FileUtils.retrieveSubDirectory(baseDepositDir, ARCHIVE_DIR);
         retainDir = FileUtils.retrieveSubDirectory(baseDepositDir, RETAIN_DIR);
+        sharded = (layout == DirectoryLayout.SHARDED);
+        hasFlatFiles = sharded && containsFlatFile();
     }
     
     /**
@@ -71,13 +104,7 @@ public class ArchiveDirectory {
      * @return The requested file, or a null if no such file exists.
      */
     public File getFile(String fileID) {
-        File res = new File(fileDir, fileID);
-        
-        if(res.isFile()) {
-            return res;
-        } else {
-            return null;
-        }
+        return locateFile(fileID);
     }
     
     /**
@@ -85,14 +112,84 @@ public class ArchiveDirectory {
      * @return Whether the given file exists within the archive.
      */
     public boolean hasFile(String fileID) {
-        return new File(fileDir, fileID).isFile();
+        return locateFile(fileID) != null;
     }
     
     /**
      * @return Retrieves the list of archived files.
      */
     public List<String> getFileIds() {
-        return Arrays.asList(fileDir.list());
+        if(!sharded) {
+            return Arrays.asList(fileDir.list());
+        }
+        boolean migrating = hasFlatFiles;
+        List<String> res = new ArrayList<String>();
+        for(File entry : fileDir.listFiles()) {
+            if(entry.isFile()) {
+                res.add(entry.getName());
+            } else {
+                for(File shard : entry.listFiles()) {
+                    res.addAll(Arrays.asList(shard.list()));
+                }
+            }
+        }
+        if(migrating) {
+            // A file being migrated may be seen both directly in the fileDir and in its sub-directory.
+            return new ArrayList<String>(new LinkedHashSet<String>(res));
+        }
+        return res;
+    }
+
+    /**
+     * @return Whether the files are placed in sharded sub-directories.
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * @return Whether the fileDir of this sharded archive may still contain files placed by the flat layout.
+     */
+    public boolean hasFlatFiles() {
+        return hasFlatFiles;
+    }
+
+    /**
+     * Moves files placed directly in the fileDir by the flat layout into their sharded sub-directories.
+     * Each file is moved while synchronized on this directory, so it can be done while the archive is in use.
+     * @param maxFiles The maximum number of files to move.
+     * @return The number of files moved. When no more files are moved, the migration is complete.
+     * @throws IOException If the fileDir could not be listed.
+     */
+    public int migrateFlatFiles(int maxFiles) throws IOException {
+        if(!sharded) {
+            throw new IllegalStateException("Only an archive with the sharded layout can be migrated.");
+        }
+        int moved = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(fileDir.toPath())) {
+            for(Path entry : entries) {
+                if(moved >= maxFiles) {
+                    return moved;
+                }
+                if(Files.isRegularFile(entry)) {
+                    synchronized(this) {
+                        File flatFile = entry.toFile();
+                        if(flatFile.isFile()) {
+                            File shardedFile = getShardedFile(flatFile.getName());
+                            moved += createShardDirectories(shardedFile);
+                            FileUtils.moveFile(flatFile, shardedFile);
+                            if(shardedFile.isFile()) {
+                                moved++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if(moved == 0) {
+            hasFlatFiles = containsFlatFile();
+        }
+        return moved;
     }
     
     /**
@@ -140,16 +237,17 @@ public class ArchiveDirectory {
      */
     public void moveFromTmpToArchive(String fileID) {
         File tmpFile = new File(tmpDir, fileID);
-        File archiveFile = new File(fileDir, fileID);
+        File archiveFile = getShardedFile(fileID);
         
         if(!tmpFile.isFile()) {
             throw new IllegalStateException("The file '" + fileID + "' does not exist within the tmpDir.");
         }
-        if(archiveFile.isFile()) {
+        if(hasFile(fileID)) {
             throw new IllegalStateException("The file '" + fileID + "' does already exist within the fileDir.");
         }
         
         // Move the file to the fileDir.
+        createShardDirectories(archiveFile);
         FileUtils.moveFile(tmpFile, archiveFile);
     }
     
@@ -158,9 +256,10 @@ public class ArchiveDirectory {
      * @param fileID The id of the file to remove from archive.
      */
     public void removeFileFromArchive(String fileID) {
-        File oldFile = new File(fileDir, fileID);
-        if(!oldFile.isFile()) {
-            throw new IllegalStateException("Cannot locate the file to delete '" + oldFile.getAbsolutePath() + "'!");
+        File oldFile = locateFile(fileID);
+        if(oldFile == null) {
+            throw new IllegalStateException("Cannot locate the file to delete '" 
+                    + getShardedFile(fileID).getAbsolutePath() + "'!");
         }
         File retainFile = new File(retainDir, fileID);
         
@@ -191,4 +290,108 @@ public class ArchiveDirectory {
         
         FileUtils.moveFile(oldFile, retainFile);
     }
+
+    /**
+     * Finds an archived file. In a sharded archive with flat files, the file may be moved between its flat and
+     * sharded location while looking, so the sharded location is checked again after the flat.
+     * @param fileID The id of the file.
+     * @return The archived file, or null if no such file exists.
+     */
+    private File locateFile(String fileID) {
+        File file = getShardedFile(fileID);
+        if(file.isFile()) {
+            return file;
+        }
+        if(sharded && hasFlatFiles) {
+            File flatFile = new File(fileDir, fileID);
+            if(flatFile.isFile()) {
+                return flatFile;
+            }
+            if(file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param fileID The id of the file.
+     * @return The location of the file in the fileDir according to the layout of the archive.
+     */
+    private File getShardedFile(String fileID) {
+        if(!sharded) {
+            return new File(fileDir, fileID);
+        }
+        String hash = md5Hex(fileID);
+        File firstLevel = new File(fileDir, hash.substring(0, SHARD_NAME_LENGTH));
+        File secondLevel = new File(firstLevel, hash.substring(SHARD_NAME_LENGTH, 2 * SHARD_NAME_LENGTH));
+        return new File(secondLevel, fileID);
+    }
+
+    /**
+     * Creates the sub-directories for a file in the fileDir. A file placed by the flat layout, which has the name of
+     * the first level sub-directory, is moved into its own sub-directories first.
+     * @param archiveFile The location of the file in the fileDir.
+     * @return The number of files placed by the flat layout, which were moved out of the way.
+     */
+    private int createShardDirectories(File archiveFile) {
+        int moved = 0;
+        File shardDir = archiveFile.getParentFile();
+        if(sharded) {
+            File firstLevel = shardDir.getParentFile();
+            if(firstLevel.isFile()) {
+                File movedFlatFile = getShardedFile(firstLevel.getName());
+                File movedShardDir = movedFlatFile.getParentFile();
+                if(movedShardDir.getParentFile().exists() && !movedShardDir.getParentFile().isDirectory()) {
+                    throw new IllegalStateException("Cannot move the file '" + firstLevel.getAbsolutePath() 
+                            + "' out of the way of its sub-directory, since its own sub-directory is blocked too.");
+                }
+                movedShardDir.mkdirs();
+                FileUtils.moveFile(firstLevel, movedFlatFile);
+                if(movedFlatFile.isFile()) {
+                    moved++;
+                }
+            }
+        }
+        shardDir.mkdirs();
+        if(!shardDir.isDirectory()) {
+            throw new IllegalStateException("Cannot create the directory '" + shardDir.getAbsolutePath() 
+                    + "' for the file '" + archiveFile.getName() + "'.");
+        }
+        return moved;
+    }
+
+    /**
+     * @return Whether the fileDir contains any files directly, instead of only sub-directories.
+     */
+    private boolean containsFlatFile() {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(fileDir.toPath())) {
+            for(Path entry : entries) {
+                if(Files.isRegularFile(entry)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not list the fileDir '" + fileDir.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private static String md5Hex(String fileID) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(fileID.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < SHARD_NAME_LENGTH; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ArchiveDirectory [" + baseDepositDir.getAbsolutePath() + (sharded ? ", sharded" : "") + "]";
+    }
 }
@@ -36,6 +36,7 @@ import org.bitrepository.common.filestore.FileStore;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.SettingsUtils;
 import org.bitrepository.settings.referencesettings.CollectionDirs;
+import org.bitrepository.settings.referencesettings.DirectoryLayout;
 
 /**
  * The CollectionArchiveManager manages the archives of the different collections for the Pillar.
@@ -62,7 +63,7 @@ public class CollectionArchiveManager implements FileStore {
             if(cd.getCollectionID().isEmpty()) {
                 continue;
             } else {
-                initiateArchive(cd.getCollectionID(), cd.getFileDirs());
+                initiateArchive(cd.getCollectionID(), cd.getFileDirs(), cd.getDirectoryLayout());
             }
         }        
     }
@@ -76,7 +77,7 @@ public class CollectionArchiveManager implements FileStore {
         for(CollectionDirs cd : settings.getReferenceSettings().getPillarSettings().getCollectionDirs()){
             if(cd.getCollectionID().isEmpty()) {
                 initiateArchive(SettingsUtils.getCollectionIDsForPillar(settings.getComponentID()),
-                        cd.getFileDirs());
+                        cd.getFileDirs(), cd.getDirectoryLayout());
             }
         }        
     }
@@ -86,8 +87,10 @@ public class CollectionArchiveManager implements FileStore {
      * Only creates archives for the collection, if it does not already has one.
      * @param collectionIDs The ids of the collections.
      * @param fileDirs The paths to the directories.
+     * @param layout The layout of the files in the directories.
      */
-    private void initiateArchive(Collection<String> collectionIDs, Collection<String> fileDirs) {
+    private void initiateArchive(Collection<String> collectionIDs, Collection<String> fileDirs,
+            DirectoryLayout layout) {
         for(String colId : collectionIDs) {
             List<String> dirs = new ArrayList<String>();
             for(String dir : fileDirs) {
@@ -95,7 +98,7 @@ public class CollectionArchiveManager implements FileStore {
             }
             
             if(!archives.containsKey(colId)) {
-                archives.put(colId, new ReferenceArchive(dirs));
+                archives.put(colId, new ReferenceArchive(dirs, layout));
             }
         }
     }
@@ -32,14 +32,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.settings.referencesettings.DirectoryLayout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Class for managing the files for the reference pillar. This supports a single CollectionID.
+ * <p>
+ * The directory of each archived file is kept in an index, which is built by scanning the directories in parallel
+ * at startup and kept up to date by the operations on the archive. A file found in the index is thereby located
+ * with a single lookup on disk, instead of one for each directory. If the index and the disk disagree, e.g. because
+ * files have been moved outside the pillar, the directories are searched and the index is repaired.
  */
 public class ReferenceArchive {
     private Logger log = LoggerFactory.getLogger(getClass());
@@ -48,17 +63,88 @@ public class ReferenceArchive {
 
     /** The list of directories to manage.*/
     private final List<ArchiveDirectory> directories = new ArrayList<ArchiveDirectory>();
+    /** The directory containing each archived file.*/
+    private final Map<String, ArchiveDirectory> fileIndex = new ConcurrentHashMap<String, ArchiveDirectory>();
+    /** The directory containing each file downloaded to a tmpDir by this archive.*/
+    private final Map<String, ArchiveDirectory> tmpFileIndex = new ConcurrentHashMap<String, ArchiveDirectory>();
+    /** The threads migrating flat directories to the sharded layout.*/
+    private final List<Thread> migrationThreads = new ArrayList<Thread>();
+    /** The migrations of flat directories to the sharded layout, for following their progress.*/
+    private final List<ShardedLayoutMigrator> migrators = new ArrayList<ShardedLayoutMigrator>();
     
     /** 
-     * Constructor. Initializes the file directory. 
+     * Constructor. Initializes the file directory with the flat layout.
      * 
      * @param dirPaths The list of paths to the archival base directories.
      */
     public ReferenceArchive(List<String> dirPaths) {
+        this(dirPaths, DirectoryLayout.FLAT);
+    }
+
+    /** 
+     * Constructor. Initializes the file directory. If the layout is sharded, then any files placed by the flat
+     * layout are moved to the sharded layout in the background.
+     * 
+     * @param dirPaths The list of paths to the archival base directories.
+     * @param layout The layout of the files in the directories.
+     */
+    public ReferenceArchive(List<String> dirPaths, DirectoryLayout layout) {
         ArgumentValidator.checkNotNullOrEmpty(dirPaths, "List<String> dirPaths");
 
         for(String dir : dirPaths) {
-            directories.add(new ArchiveDirectory(dir));
+            directories.add(new ArchiveDirectory(dir, layout));
+        }
+        fileIndex.putAll(scanDirectories());
+        log.info("Indexed " + fileIndex.size() + " files in " + directories.size() + " directories.");
+        startMigrations();
+    }
+
+    /**
+     * Lists the files of all the directories in parallel.
+     * @return The directory of each file found.
+     */
+    private Map<String, ArchiveDirectory> scanDirectories() {
+        ExecutorService executor = Executors.newFixedThreadPool(directories.size());
+        try {
+            List<Future<List<String>>> listings = new ArrayList<Future<List<String>>>();
+            for(final ArchiveDirectory dir : directories) {
+                listings.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        return dir.getFileIds();
+                    }
+                }));
+            }
+            Map<String, ArchiveDirectory> res = new HashMap<String, ArchiveDirectory>();
+            for(int i = 0; i < directories.size(); i++) {
+                for(String fileID : listings.get(i).get()) {
+                    res.put(fileID, directories.get(i));
+                }
+            }
+            return res;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning the archive directories.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not scan the archive directories.", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Starts the migration of the directories, which still contains files placed by the flat layout.
+     */
+    private void startMigrations() {
+        for(ArchiveDirectory dir : directories) {
+            if(dir.isSharded() && dir.hasFlatFiles()) {
+                ShardedLayoutMigrator migrator = new ShardedLayoutMigrator(dir);
+                Thread migrationThread = new Thread(migrator, "ShardedLayoutMigrator");
+                migrationThread.setDaemon(true);
+                migrationThread.start();
+                migrationThreads.add(migrationThread);
+                migrators.add(migrator);
+            }
         }
     }
 
@@ -70,12 +156,11 @@ public class ReferenceArchive {
     public File getFile(String fileID) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         
-        for(ArchiveDirectory dir : directories) {
-            if(dir.hasFile(fileID)) {
-                return dir.getFile(fileID);
-            }
+        File res = locateFile(fileID);
+        if(res == null) {
+            throw new IllegalArgumentException("The file '" + fileID + "' is not within the archives.");
         }
-        throw new IllegalArgumentException("The file '" + fileID + "' is not within the archives.");
+        return res;
     }
 
     /**
@@ -85,23 +170,17 @@ public class ReferenceArchive {
     public boolean hasFile(String fileID) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         
-        for(ArchiveDirectory dir : directories) {
-            if(dir.hasFile(fileID)) {
-                return true;
-            }
-        }
-        return false;
+        return locateFile(fileID) != null;
     }
 
     /**
+     * Lists the files on disk, and repairs the index where it disagrees with the listing.
      * @return All the file ids within this archive.
      */
     public Collection<String> getAllFileIds() {
-        List<String> res = new ArrayList<String>();
-        for(ArchiveDirectory dir : directories) {
-            res.addAll(dir.getFileIds());
-        }
-        return res;
+        Map<String, ArchiveDirectory> scanned = scanDirectories();
+        repairIndex(scanned);
+        return new ArrayList<String>(scanned.keySet());
     }
 
     /**
@@ -132,6 +211,7 @@ public class ReferenceArchive {
         File downloadedFile = null;
         synchronized(dir) {
             downloadedFile = dir.getNewFileInTempDir(fileID);
+            tmpFileIndex.put(fileID, dir);
             log.debug("Downloading the file '" + fileID + "' for validation.");
             
             // Save InputStream to the file.
@@ -158,6 +238,8 @@ public class ReferenceArchive {
         ArchiveDirectory dir = getDirWithTmpFile(fileID);
         synchronized(dir) {
             dir.moveFromTmpToArchive(fileID);
+            tmpFileIndex.remove(fileID);
+            fileIndex.put(fileID, dir);
         }
     }
 
@@ -171,6 +253,7 @@ public class ReferenceArchive {
         ArchiveDirectory dir = getDirWithFile(fileID);
         synchronized(dir) {
             dir.removeFileFromArchive(fileID);
+            fileIndex.remove(fileID);
         }
     }
     
@@ -187,8 +270,12 @@ public class ReferenceArchive {
         
         synchronized(tmpDir) {
             ArchiveDirectory fileDir = getDirWithFile(fileID);
-            fileDir.removeFileFromArchive(fileID);
-            tmpDir.moveFromTmpToArchive(fileID);
+            synchronized(fileDir) {
+                fileDir.removeFileFromArchive(fileID);
+                tmpDir.moveFromTmpToArchive(fileID);
+                tmpFileIndex.remove(fileID);
+                fileIndex.put(fileID, tmpDir);
+            }
         }
     }
     
@@ -221,6 +308,7 @@ public class ReferenceArchive {
                 dir.removeFileFromTmp(fileID);
             }
         }
+        tmpFileIndex.remove(fileID);
     }
     
     /**
@@ -246,13 +334,83 @@ public class ReferenceArchive {
      * @return The archive directory with the file.
      */
     private ArchiveDirectory getDirWithFile(String fileID) {
+        ArchiveDirectory dir = fileIndex.get(fileID);
+        if(dir != null && dir.hasFile(fileID)) {
+            return dir;
+        }
+        dir = repairIndexEntry(fileID);
+        if(dir != null) {
+            return dir;
+        }
+        
+        throw new IllegalStateException("Does not have the file '" + fileID + "' within any archive dirs.");
+    }
+
+    /**
+     * Finds an archived file through the index, and repairs the index if the file isn't where the index says.
+     * @param fileID The id of the file.
+     * @return The file, or null if it isn't within any of the directories.
+     */
+    private File locateFile(String fileID) {
+        ArchiveDirectory dir = fileIndex.get(fileID);
+        if(dir != null) {
+            File res = dir.getFile(fileID);
+            if(res != null) {
+                return res;
+            }
+        }
+        dir = repairIndexEntry(fileID);
+        return (dir == null) ? null : dir.getFile(fileID);
+    }
+
+    /**
+     * Searches all the directories for a file, which isn't where the index says, and updates the index.
+     * @param fileID The id of the file.
+     * @return The directory with the file, or null if it isn't within any of the directories.
+     */
+    private ArchiveDirectory repairIndexEntry(String fileID) {
+        ArchiveDirectory indexedDir = fileIndex.get(fileID);
         for(ArchiveDirectory dir : directories) {
             if(dir.hasFile(fileID)) {
+                if(dir != indexedDir) {
+                    log.debug("Repairing the index entry for '" + fileID + "', which is located in '" + dir + "'.");
+                    fileIndex.put(fileID, dir);
+                }
                 return dir;
             }
         }
-        
-        throw new IllegalStateException("Does not have the file '" + fileID + "' within any archive dirs.");
+        if(indexedDir != null) {
+            log.warn("The indexed file '" + fileID + "' is missing from '" + indexedDir + "'. Removing it from the "
+                    + "index.");
+            fileIndex.remove(fileID);
+        }
+        return null;
+    }
+
+    /**
+     * Updates the index with a listing of the directories. Files missing from the index are added, and indexed
+     * files missing from the listing are checked on disk, as they may have been added after the listing.
+     * @param scanned The directory of each file in the listing.
+     */
+    private void repairIndex(Map<String, ArchiveDirectory> scanned) {
+        int added = 0;
+        for(Map.Entry<String, ArchiveDirectory> entry : scanned.entrySet()) {
+            if(fileIndex.get(entry.getKey()) != entry.getValue()) {
+                repairIndexEntry(entry.getKey());
+                added++;
+            }
+        }
+        int checked = 0;
+        for(String fileID : fileIndex.keySet()) {
+            if(!scanned.containsKey(fileID)) {
+                repairIndexEntry(fileID);
+                checked++;
+            }
+        }
+        if(added > 0 || checked > 0) {
+            log.info("Repaired the file index with " + added + " files not indexed in their directory, and "
+                    + checked + " indexed files not found in the listing.");
+        }
     }
 
     /**
@@ -261,6 +419,10 @@ public class ReferenceArchive {
      * @return The archive directory with the file in its tmp dir.
      */
     private ArchiveDirectory getDirWithTmpFile(String fileID) {
+        ArchiveDirectory indexedDir = tmpFileIndex.get(fileID);
+        if(indexedDir != null && indexedDir.hasFileInTempDir(fileID)) {
+            return indexedDir;
+        }
         for(ArchiveDirectory dir : directories) {
             if(dir.hasFileInTempDir(fileID)) {
                 return dir;
@@ -270,10 +432,24 @@ public class ReferenceArchive {
         throw new IllegalStateException("Does not have the file '" + fileID + "' within any archive dirs.");
     }
     
+    /**
+     * @return The migrations to the sharded layout started for the archive directories, with their status.
+     */
+    public List<ShardedLayoutMigrator> getMigrations() {
+        return Collections.unmodifiableList(migrators);
+    }
+    
     /**
      * Closes the reference archive.
      */
     public void close() {
+        for(Thread migrationThread : migrationThreads) {
+            migrationThread.interrupt();
+        }
+        migrationThreads.clear();
+        migrators.clear();
         directories.clear();
+        fileIndex.clear();
+        tmpFileIndex.clear();
     }
 }
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2012 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.filearchive;
+
+import java.io.IOException;
+
+import org.bitrepository.settings.referencesettings.DirectoryLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts an archive directory with the flat layout to the sharded layout in place, by moving the files into their
+ * sharded sub-directories in batches.
+ * <p>
+ * The reference pillar runs the migration in the background for every collection configured with the sharded
+ * layout, which still has flat files. The files stay available while they are moved. The migration can also be run
+ * while the pillar is stopped, with the archive directories of the collections as arguments, e.g.
+ * <code>/bitrepository/archive/collection1</code>.
+ * <p>
+ * The progress and outcome of the migration is available from {@link #getStatus()}, {@link #getMigratedFiles()} 
+ * and {@link #getFailure()}.
+ */
+public class ShardedLayoutMigrator implements Runnable {
+    /** The states of a migration.*/
+    public enum MigrationStatus {
+        /** The migration has not been started.*/
+        NOT_STARTED,
+        /** The migration is running.*/
+        RUNNING,
+        /** All the flat files have been moved.*/
+        FINISHED,
+        /** The migration stopped, as the remaining flat files could not be moved.*/
+        INCOMPLETE,
+        /** The migration was interrupted, e.g. by closing the archive.*/
+        INTERRUPTED,
+        /** The migration failed, see {@link ShardedLayoutMigrator#getFailure()}.*/
+        FAILED
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The number of files moved between checking for interruption.*/
+    public static final int BATCH_SIZE = 1000;
+    /** The number of files moved between logging the progress.*/
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    /** The archive directory to migrate.*/
+    private final ArchiveDirectory directory;
+    /** The current state of the migration.*/
+    private volatile MigrationStatus status = MigrationStatus.NOT_STARTED;
+    /** The number of files moved so far.*/
+    private volatile long migrated = 0;
+    /** The failure stopping the migration, if it failed.*/
+    private volatile Exception failure;
+
+    /**
+     * @param directory The archive directory to migrate. Must have the sharded layout.
+     */
+    public ShardedLayoutMigrator(ArchiveDirectory directory) {
+        if(!directory.isSharded()) {
+            throw new IllegalArgumentException("The archive directory '" + directory + "' is not sharded.");
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Moves the flat files in batches until none are left, or the thread is interrupted. 
+     * Any failure is logged and registered, as nobody waits for the background migration.
+     */
+    @Override
+    public void run() {
+        log.info("Starting migration of '" + directory + "' to the sharded layout.");
+        status = MigrationStatus.RUNNING;
+        try {
+            while(!Thread.currentThread().isInterrupted()) {
+                int moved = directory.migrateFlatFiles(BATCH_SIZE);
+                if(moved == 0) {
+                    if(directory.hasFlatFiles()) {
+                        log.warn("Stopped migration of '" + directory + "' after " + migrated + " files, as the "
+                                + "remaining flat files could not be moved.");
+                        status = MigrationStatus.INCOMPLETE;
+                    } else {
+                        log.info("Finished migration of '" + directory + "' after " + migrated + " files.");
+                        status = MigrationStatus.FINISHED;
+                    }
+                    return;
+                }
+                if((migrated + moved) / PROGRESS_INTERVAL > migrated / PROGRESS_INTERVAL) {
+                    log.info("Migrated " + (migrated + moved) + " files of '" + directory + "' so far.");
+                }
+                migrated += moved;
+            }
+            log.info("Migration of '" + directory + "' interrupted after " + migrated + " files.");
+            status = MigrationStatus.INTERRUPTED;
+        } catch (IOException | RuntimeException e) {
+            log.error("Migration of '" + directory + "' failed after " + migrated + " files.", e);
+            failure = e;
+            status = MigrationStatus.FAILED;
+        }
+    }
+
+    /**
+     * @return The archive directory being migrated.
+     */
+    public ArchiveDirectory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The current state of the migration.
+     */
+    public MigrationStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The number of files moved so far.
+     */
+    public long getMigratedFiles() {
+        return migrated;
+    }
+
+    /**
+     * @return The failure stopping the migration, or null if it has not failed.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedLayoutMigrator [directory=" + directory + ", status=" + status + ", migratedFiles="
+                + migrated + "]";
+    }
+
+    /**
+     * Migrates archive directories to the sharded layout.
+     * @param args The paths to the archive directories, which contains the fileDir.
+     */
+    public static void main(String[] args) {
+        if(args.length == 0) {
+            System.err.println("Usage: ShardedLayoutMigrator <archive directory> [<archive directory> ...]");
+            System.exit(1);
+        }
+        boolean failed = false;
+        for(String dirPath : args) {
+            ShardedLayoutMigrator migrator = new ShardedLayoutMigrator(
+                    new ArchiveDirectory(dirPath, DirectoryLayout.SHARDED));
+            migrator.run();
+            if(migrator.getStatus() != MigrationStatus.FINISHED) {
+                System.err.println("Migration of '" + dirPath + "' ended as " + migrator.getStatus());
+                failed = true;
+            }
+        }
+        if(failed) {
+            System.exit(1);
+        }
+    }
+}
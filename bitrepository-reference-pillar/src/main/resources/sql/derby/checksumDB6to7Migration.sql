@@ -0,0 +1,31 @@
+---
+-- #%L
+-- Bitrepository Reference Pillar
+-- %%
+-- Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+-- %%
+-- This program is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU Lesser General Public License as 
+-- published by the Free Software Foundation, either version 2.1 of the 
+-- License, or (at your option) any later version.
+-- 
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Lesser Public License for more details.
+-- 
+-- You should have received a copy of the GNU General Lesser Public 
+-- License along with this program.  If not, see
+-- <http://www.gnu.org/licenses/lgpl-2.1.html>.
+-- #L%
+---
+
+connect 'jdbc:derby:checksumdb';
+
+-- Update table versions.
+UPDATE tableversions SET version = 7 WHERE tablename = 'checksums';
+
+-- The checksums and file ids are delivered in pages ordered by calculation date and file id within a collection.
+-- This index lets each page be read directly from its first entry, and replaces the index on the calculation date.
+DROP INDEX calculationindex;
+CREATE INDEX collectiondateindex ON checksums ( collectionid, calculationdate, fileid );
@@ -37,13 +37,14 @@ create table tableversions (
 );
 
 insert into tableversions ( tablename, version )
-            values ( 'checksums', 4);
+            values ( 'checksums', 7);
 
 --*************************************************************************--
 -- Name:     checksums
 -- Descr.:   Container for the checksum entry information: the file ids and 
 --           collection ids, their checksums and the timestamp of the
---           calculation of this checksum. 
+--           calculation of this checksum. Also the last modified timestamp
+--           and size of the file, when the file is in a file archive. 
 -- Purpose:  Keep track of the checksum entries. 
 -- Expected entry count: Very many, one for each file..
 --*************************************************************************--
@@ -53,10 +54,12 @@ create table checksums (
     fileid varchar(255) not null,       -- The id of the file.
     collectionid varchar(255) not null, -- The id of the collection.
     checksum varchar(255),              -- The checksum of the file.
-    calculationdate BIGINT              -- The timestamp (in millis since epoch) for the calculation of the checksum.
+    calculationdate BIGINT,             -- The timestamp (in millis since epoch) for the calculation of the checksum.
+    lastmodified BIGINT,                -- The timestamp (in millis since epoch) for the last modification of the file.
+    filesize BIGINT                     -- The size of the file.
 );
 
-create index fileindex on checksums ( fileid, collectionid );
+create unique index fileindex on checksums ( fileid, collectionid );
 create index filedateindex on checksums ( fileid, calculationdate );
-CREATE INDEX calculationindex ON checksums ( calculationdate );
-
+create index collectiondateindex on checksums ( collectionid, calculationdate, fileid );
+create index lastmodifiedindex on checksums ( collectionid, lastmodified, fileid );
@@ -0,0 +1,31 @@
+---
+-- #%L
+-- Bitrepository Reference Pillar
+-- %%
+-- Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+-- %%
+-- This program is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU Lesser General Public License as 
+-- published by the Free Software Foundation, either version 2.1 of the 
+-- License, or (at your option) any later version.
+-- 
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Lesser Public License for more details.
+-- 
+-- You should have received a copy of the GNU General Lesser Public 
+-- License along with this program.  If not, see
+-- <http://www.gnu.org/licenses/lgpl-2.1.html>.
+-- #L%
+---
+
+-- Update table versions.
+UPDATE tableversions SET version = 5 WHERE tablename = 'checksums';
+
+-- The last modified timestamp and size of the files, for listing the files by their last modified timestamp.
+-- Existing entries are left without a timestamp, and are updated by the pillar.
+ALTER TABLE checksums ADD COLUMN lastmodified BIGINT;
+ALTER TABLE checksums ADD COLUMN filesize BIGINT;
+
+CREATE INDEX lastmodifiedindex ON checksums ( collectionid, lastmodified, fileid );
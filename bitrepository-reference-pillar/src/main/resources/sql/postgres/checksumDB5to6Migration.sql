@@ -0,0 +1,31 @@
+---
+-- #%L
+-- Bitrepository Reference Pillar
+-- %%
+-- Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+-- %%
+-- This program is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU Lesser General Public License as 
+-- published by the Free Software Foundation, either version 2.1 of the 
+-- License, or (at your option) any later version.
+-- 
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Lesser Public License for more details.
+-- 
+-- You should have received a copy of the GNU General Lesser Public 
+-- License along with this program.  If not, see
+-- <http://www.gnu.org/licenses/lgpl-2.1.html>.
+-- #L%
+---
+
+-- Update table versions.
+UPDATE tableversions SET version = 6 WHERE tablename = 'checksums';
+
+-- A file can only have one entry in each collection, so the entries can be inserted or updated in a single
+-- statement. Only the newest entry is kept for files with duplicate entries.
+DELETE FROM checksums WHERE guid NOT IN ( SELECT MAX(guid) FROM checksums GROUP BY fileid, collectionid );
+
+DROP INDEX fileindex;
+CREATE UNIQUE INDEX fileindex ON checksums ( fileid, collectionid );
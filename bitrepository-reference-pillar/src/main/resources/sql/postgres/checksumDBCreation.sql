@@ -34,7 +34,7 @@ CREATE TABLE tableversions (
     version INT NOT NULL             -- version of table
 );
 
-INSERT INTO tableversions ( tablename, version ) VALUES ( 'checksums', 4);
+INSERT INTO tableversions ( tablename, version ) VALUES ( 'checksums', 7);
 
 --*************************************************************************--
 -- Name:     checksums
@@ -49,9 +49,12 @@ CREATE TABLE checksums (
     fileid VARCHAR(255) NOT NULL,       -- The id of the file.
     collectionid VARCHAR(255) NOT NULL, -- The id of the collection.
     checksum VARCHAR(255),              -- The checksum of the file.
-    calculationdate BIGINT              -- The timestamp for the calculation of the checksum.
+    calculationdate BIGINT,             -- The timestamp for the calculation of the checksum.
+    lastmodified BIGINT,                -- The timestamp for the last modification of the file.
+    filesize BIGINT                     -- The size of the file.
 );
 
-CREATE INDEX fileindex ON checksums ( fileid, collectionid );
+CREATE UNIQUE INDEX fileindex ON checksums ( fileid, collectionid );
 CREATE INDEX filedateindex ON checksums ( fileid, calculationdate );
-CREATE INDEX calculationindex ON checksums ( calculationdate );
+CREATE INDEX collectiondateindex ON checksums ( collectionid, calculationdate, fileid );
+CREATE INDEX lastmodifiedindex ON checksums ( collectionid, lastmodified, fileid );
@@ -29,13 +29,22 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.Date;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.apache.commons.io.IOUtils;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDs;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
@@ -51,6 +60,7 @@ import org.bitrepository.pillar.MockedPillarTest;
 import org.bitrepository.pillar.messagefactories.GetChecksumsMessageFactory;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
+import org.bitrepository.protocol.ContentWriter;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.Test;
@@ -319,4 +329,169 @@ public class GetChecksumsTest extends MockedPillarTest {
         assertEquals(finalResponse.getResultingChecksums().getChecksumDataItems().size(), 1);
         assertEquals(finalResponse.getResultingChecksums().getChecksumDataItems().get(0).getFileID(), DEFAULT_FILE_ID);
     }
+
+    @SuppressWarnings("rawtypes")
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void uploadThroughTemporaryFileWhenDirectUploadFails() throws Exception {
+        addDescription("Tests that the checksum results are uploaded again through a temporary file, when the "
+                + "direct upload of the results fails during the transfer.");
+        addStep("Set up constants and variables.", "Should not fail here!");
+        final String FILE_ID = DEFAULT_FILE_ID + testMethodName;
+        final String RESULT_ADDRESS = "http://localhost/" + testMethodName;
+        FileIDs fileids = FileIDsUtils.getSpecificFileIDs(FILE_ID);
+        setupSingleChecksumResult(FILE_ID);
+
+        addStep("Setup the direct upload to fail when the written results are flushed, and record the results "
+                + "uploaded from the temporary file.", "No failure here");
+        final ByteArrayOutputStream directContent = new ByteArrayOutputStream();
+        doAnswer(new Answer() {
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                ContentWriter writer = (ContentWriter) invocation.getArguments()[0];
+                writer.writeContent(new FilterOutputStream(directContent) {
+                    @Override
+                    public void flush() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                });
+                return null;
+            }
+        }).when(fileExchangeMock).putFile(any(ContentWriter.class), eq(new URL(RESULT_ADDRESS)));
+        final ByteArrayOutputStream retriedContent = new ByteArrayOutputStream();
+        doAnswer(new Answer() {
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                IOUtils.copy((InputStream) invocation.getArguments()[0], retriedContent);
+                return null;
+            }
+        }).when(fileExchangeMock).putFile(any(InputStream.class), eq(new URL(RESULT_ADDRESS)));
+
+        addStep("Create and send the actual GetChecksums message to the pillar.",
+                "Should be received and handled by the pillar.");
+        GetChecksumsRequest getChecksumsRequest = msgFactory.createGetChecksumsRequest(csSpec, fileids, 
+                RESULT_ADDRESS);
+        messageBus.sendMessage(getChecksumsRequest);
+        clientReceiver.waitForMessage(GetChecksumsProgressResponse.class);
+
+        addStep("Retrieve the FinalResponse for the GetChecksums request",
+                "The final response should say 'operation_complete', and the temporary file should contain the "
+                + "same results as the failed direct upload.");
+        GetChecksumsFinalResponse finalResponse = clientReceiver.waitForMessage(GetChecksumsFinalResponse.class);
+        assertEquals(finalResponse.getResponseInfo().getResponseCode(), ResponseCode.OPERATION_COMPLETED);
+        assertEquals(finalResponse.getResultingChecksums().getResultAddress(), RESULT_ADDRESS);
+        verify(fileExchangeMock, times(1)).putFile(any(InputStream.class), eq(new URL(RESULT_ADDRESS)));
+        assertTrue(retriedContent.toString("UTF-8").contains(FILE_ID), retriedContent.toString("UTF-8"));
+        assertEquals(retriedContent.toString("UTF-8"), directContent.toString("UTF-8"));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void uploadThroughTemporaryFileWhenResultsAreNotWritten() throws Exception {
+        addDescription("Tests that the checksum results are uploaded through a temporary file, when the direct "
+                + "upload returns without writing the results.");
+        addStep("Set up constants and variables.", "Should not fail here!");
+        final String FILE_ID = DEFAULT_FILE_ID + testMethodName;
+        final String RESULT_ADDRESS = "http://localhost/" + testMethodName;
+        FileIDs fileids = FileIDsUtils.getSpecificFileIDs(FILE_ID);
+        setupSingleChecksumResult(FILE_ID);
+
+        addStep("Setup the direct upload to ignore the results, and record the results uploaded from the "
+                + "temporary file.", "No failure here");
+        final ByteArrayOutputStream retriedContent = new ByteArrayOutputStream();
+        doAnswer(new Answer() {
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                IOUtils.copy((InputStream) invocation.getArguments()[0], retriedContent);
+                return null;
+            }
+        }).when(fileExchangeMock).putFile(any(InputStream.class), eq(new URL(RESULT_ADDRESS)));
+
+        addStep("Create and send the actual GetChecksums message to the pillar.",
+                "Should be received and handled by the pillar.");
+        GetChecksumsRequest getChecksumsRequest = msgFactory.createGetChecksumsRequest(csSpec, fileids, 
+                RESULT_ADDRESS);
+        messageBus.sendMessage(getChecksumsRequest);
+        clientReceiver.waitForMessage(GetChecksumsProgressResponse.class);
+
+        addStep("Retrieve the FinalResponse for the GetChecksums request",
+                "The final response should say 'operation_complete', and the results should be uploaded from "
+                + "the temporary file.");
+        GetChecksumsFinalResponse finalResponse = clientReceiver.waitForMessage(GetChecksumsFinalResponse.class);
+        assertEquals(finalResponse.getResponseInfo().getResponseCode(), ResponseCode.OPERATION_COMPLETED);
+        assertTrue(retriedContent.toString("UTF-8").contains(FILE_ID), retriedContent.toString("UTF-8"));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void noRetryWhenResultsCannotBeWritten() throws Exception {
+        addDescription("Tests that the checksum results are not uploaded through a temporary file, when they "
+                + "cannot be written.");
+        addStep("Set up constants and variables.", "Should not fail here!");
+        final String FILE_ID = DEFAULT_FILE_ID + testMethodName;
+        final String RESULT_ADDRESS = "http://localhost/" + testMethodName;
+        FileIDs fileids = FileIDsUtils.getSpecificFileIDs(FILE_ID);
+        doAnswer(new Answer() {
+            public Boolean answer(InvocationOnMock invocation) {
+                return true;
+            }
+        }).when(model).hasFileID(eq(FILE_ID), anyString());
+        doAnswer(new Answer() {
+            public String answer(InvocationOnMock invocation) {
+                return settingsForCUT.getComponentID();
+            }
+        }).when(model).getPillarID();
+
+        addStep("Setup the storage model to fail while the results are extracted, and the direct upload to "
+                + "write the results.", "No failure here");
+        doAnswer(new Answer() {
+            public ExtractedChecksumResultSet answer(InvocationOnMock invocation) {
+                throw new IllegalStateException("The checksum database is unavailable");
+            }
+        }).when(model).getSingleChecksumResultSet(eq(FILE_ID), anyString(), any(XMLGregorianCalendar.class), 
+                any(XMLGregorianCalendar.class), any(ChecksumSpecTYPE.class));
+        doAnswer(new Answer() {
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                ((ContentWriter) invocation.getArguments()[0]).writeContent(new ByteArrayOutputStream());
+                return null;
+            }
+        }).when(fileExchangeMock).putFile(any(ContentWriter.class), eq(new URL(RESULT_ADDRESS)));
+
+        addStep("Create and send the actual GetChecksums message to the pillar.",
+                "Should be received and handled by the pillar.");
+        GetChecksumsRequest getChecksumsRequest = msgFactory.createGetChecksumsRequest(csSpec, fileids, 
+                RESULT_ADDRESS);
+        messageBus.sendMessage(getChecksumsRequest);
+        clientReceiver.waitForMessage(GetChecksumsProgressResponse.class);
+
+        addStep("Retrieve the FinalResponse for the GetChecksums request",
+                "The final response should report a FILE_TRANSFER_FAILURE, without any upload from a temporary "
+                + "file.");
+        GetChecksumsFinalResponse finalResponse = clientReceiver.waitForMessage(GetChecksumsFinalResponse.class);
+        assertEquals(finalResponse.getResponseInfo().getResponseCode(), ResponseCode.FILE_TRANSFER_FAILURE);
+        verify(fileExchangeMock, times(0)).putFile(any(InputStream.class), any(URL.class));
+    }
+
+    /**
+     * Sets up the storage model to have the file, and to deliver the same single checksum for it every time.
+     * @param fileID The id of the file.
+     */
+    @SuppressWarnings("rawtypes")
+    private void setupSingleChecksumResult(final String fileID) {
+        final Date calculationDate = new Date();
+        doAnswer(new Answer() {
+            public Boolean answer(InvocationOnMock invocation) {
+                return true;
+            }
+        }).when(model).hasFileID(eq(fileID), anyString());
+        doAnswer(new Answer() {
+            public String answer(InvocationOnMock invocation) {
+                return settingsForCUT.getComponentID();
+            }
+        }).when(model).getPillarID();
+        doAnswer(new Answer() {
+            public ExtractedChecksumResultSet answer(InvocationOnMock invocation) {
+                ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
+                res.insertChecksumEntry(new ChecksumEntry(fileID, DEFAULT_MD5_CHECKSUM, calculationDate));
+                return res;
+            }
+        }).when(model).getSingleChecksumResultSet(eq(fileID), anyString(), any(XMLGregorianCalendar.class), 
+                any(XMLGregorianCalendar.class), any(ChecksumSpecTYPE.class));
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2016 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.messagehandling;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.bitrepository.bitrepositorydata.GetChecksumsResults;
+import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.pillar.messagehandler.StreamingChecksumResultSet;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+public class StreamingChecksumResultSetTest extends ExtendedTestCase {
+    private static final String PILLAR_ID = "streaming-pillar";
+    private static final String COLLECTION_ID = "streaming-collection";
+    private static final String CHECKSUM = "1234567890abcdef1234567890abcdef";
+
+    @Test(groups = {"regressiontest"})
+    public void testWritingChecksumResults() throws Exception {
+        addDescription("Tests that the checksum entries inserted into the streaming result set are written to a "
+                + "valid GetChecksumsResults file.");
+        JaxbHelper jaxb = new JaxbHelper("xsd/", "BitRepositoryData.xsd");
+        File file = File.createTempFile("streaming", ".cs");
+        file.deleteOnExit();
+
+        addStep("Write three checksum entries and finish the document", "Three entries are written");
+        StreamingChecksumResultSet results;
+        try (OutputStream out = new FileOutputStream(file)) {
+            results = new StreamingChecksumResultSet(out, createHeader(), jaxb);
+            for(int i = 0; i < 3; i++) {
+                results.insertChecksumEntry(new ChecksumEntry("file-" + i, CHECKSUM, new Date()));
+            }
+            results.reportMoreEntriesFound();
+            results.finish();
+        }
+        assertEquals(results.getNumberOfEntries(), 3);
+        assertTrue(results.getEntries().isEmpty());
+        assertTrue(results.hasMoreEntries());
+
+        addStep("Load and validate the written file", "It contains the header and the three entries in order");
+        GetChecksumsResults loaded;
+        try (InputStream in = new FileInputStream(file)) {
+            loaded = jaxb.loadAndValidateXml(GetChecksumsResults.class, in);
+        }
+        assertEquals(loaded.getPillarID(), PILLAR_ID);
+        assertEquals(loaded.getCollectionID(), COLLECTION_ID);
+        assertEquals(loaded.getChecksumDataItems().size(), 3);
+        for(int i = 0; i < 3; i++) {
+            assertEquals(loaded.getChecksumDataItems().get(i).getFileID(), "file-" + i);
+            assertEquals(Base16Utils.decodeBase16(loaded.getChecksumDataItems().get(i).getChecksumValue()),
+                    CHECKSUM);
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void testWritingEmptyChecksumResults() throws Exception {
+        addDescription("Tests that a streaming result set without any entries gives a valid results document.");
+        JaxbHelper jaxb = new JaxbHelper("xsd/", "BitRepositoryData.xsd");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingChecksumResultSet(out, createHeader(), jaxb).finish();
+
+        GetChecksumsResults loaded = jaxb.loadAndValidateXml(GetChecksumsResults.class, 
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(loaded.getPillarID(), PILLAR_ID);
+        assertTrue(loaded.getChecksumDataItems().isEmpty());
+    }
+
+    private GetChecksumsResults createHeader() {
+        GetChecksumsResults header = new GetChecksumsResults();
+        header.setVersion(BigInteger.ONE);
+        header.setMinVersion(BigInteger.ONE);
+        header.setPillarID(PILLAR_ID);
+        header.setCollectionID(COLLECTION_ID);
+        return header;
+    }
+}
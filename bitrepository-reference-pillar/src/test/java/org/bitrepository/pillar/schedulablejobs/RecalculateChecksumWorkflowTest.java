@@ -24,11 +24,16 @@ package org.bitrepository.pillar.schedulablejobs;
 import org.bitrepository.pillar.DefaultPillarTest;
 import org.bitrepository.pillar.schedulablejobs.RecalculateChecksumJob;
 import org.bitrepository.service.workflow.SchedulableJob;
+import org.bitrepository.settings.referencesettings.ChecksumRecalculation;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.util.Date;
+import java.util.Properties;
 
 public class RecalculateChecksumWorkflowTest extends DefaultPillarTest {
     @Test( groups = {"regressiontest", "pillartest"})
@@ -73,4 +78,63 @@ public class RecalculateChecksumWorkflowTest extends DefaultPillarTest {
         Assert.assertEquals(beforeWorkflowDate.getTime(), afterWorkflowDate.getTime(), 
                 beforeWorkflowDate.getTime() + " == "+ afterWorkflowDate.getTime());
     }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testWorkflowReportsProgress() throws Exception {
+        addDescription("Test that the workflow reports the progress of the recalculation in its state.");
+        settingsForCUT.getReferenceSettings().getPillarSettings().setMaxAgeForChecksums(BigInteger.ZERO);
+        ChecksumRecalculation recalculationSettings = new ChecksumRecalculation();
+        recalculationSettings.setThreads(BigInteger.valueOf(2));
+        recalculationSettings.setThreadsPerVolume(BigInteger.ONE);
+        recalculationSettings.setMaxMegabytesPerSecond(BigInteger.ONE);
+        settingsForCUT.getReferenceSettings().getPillarSettings().setChecksumRecalculation(recalculationSettings);
+        
+        synchronized(this) {
+            wait(100);
+        }
+        
+        try {
+            addStep("Create and run workflow with a limited number of threads and throughput", 
+                    "The state reports the single file as recalculated");
+            SchedulableJob workflow = new RecalculateChecksumJob(collectionID, model);
+            Assert.assertEquals(workflow.getHumanReadableState(), "NOT_RUNNING");
+            workflow.start();
+            Assert.assertTrue(workflow.getHumanReadableState().contains("1 of 1 files recalculated, 0 failed"), 
+                    workflow.getHumanReadableState());
+        } finally {
+            settingsForCUT.getReferenceSettings().getPillarSettings().setChecksumRecalculation(null);
+        }
+    }
+    
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testWorkflowResumesFromCheckpoint() throws Exception {
+        addDescription("Test that the workflow resumes an unfinished recalculation from its checkpoint, even though "
+                + "the maximum age has not yet been met.");
+        Date beforeWorkflowDate = csCache.getCalculationDate(DEFAULT_FILE_ID, collectionID);
+        settingsForCUT.getReferenceSettings().getPillarSettings().setMaxAgeForChecksums(BigInteger.valueOf(Long.MAX_VALUE));
+        
+        addStep("Create a checkpoint for recalculating all checksums older than now", 
+                "The checkpoint is in the first archive directory of the collection");
+        synchronized(this) {
+            wait(100);
+        }
+        File checkpoint = new File(new File(settingsForCUT.getReferenceSettings().getPillarSettings()
+                .getCollectionDirs().get(0).getFileDirs().get(0), collectionID), 
+                "checksum-recalculation-" + collectionID + ".checkpoint");
+        Properties properties = new Properties();
+        properties.setProperty("checksumDate", Long.toString(System.currentTimeMillis()));
+        try (OutputStream out = new FileOutputStream(checkpoint)) {
+            properties.store(out, null);
+        }
+        
+        addStep("Create and run workflow", "The checksum is recalculated and the checkpoint is removed");
+        SchedulableJob workflow = new RecalculateChecksumJob(collectionID, model);
+        workflow.start();
+        Date afterWorkflowDate = csCache.getCalculationDate(DEFAULT_FILE_ID, collectionID);
+        
+        Assert.assertTrue(beforeWorkflowDate.getTime() < afterWorkflowDate.getTime(), 
+                beforeWorkflowDate.getTime() + " < "+ afterWorkflowDate.getTime());
+        Assert.assertTrue(workflow.getHumanReadableState().contains("Resumed"), workflow.getHumanReadableState());
+        Assert.assertFalse(checkpoint.exists());
+    }
 }
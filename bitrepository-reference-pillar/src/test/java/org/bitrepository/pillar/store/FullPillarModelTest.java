@@ -21,6 +21,13 @@
  */
 package org.bitrepository.pillar.store;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
@@ -28,20 +35,31 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 
+import org.bitrepository.bitrepositoryelements.Alarm;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.filestore.FileStore;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.common.utils.ChecksumUtils;
 import org.bitrepository.pillar.DefaultFixturePillarTest;
 import org.bitrepository.pillar.store.checksumcache.MemoryCacheMock;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
 import org.bitrepository.pillar.store.filearchive.CollectionArchiveManager;
 import org.bitrepository.protocol.LocalFileExchange;
 import org.bitrepository.service.AlarmDispatcher;
 import org.bitrepository.service.exception.RequestHandlerException;
+import org.mockito.ArgumentCaptor;
 import org.testng.annotations.Test;
 
 public class FullPillarModelTest extends DefaultFixturePillarTest {
@@ -144,6 +162,89 @@ public class FullPillarModelTest extends DefaultFixturePillarTest {
 //        pillarModel.
     }
     
+    @Test( groups = {"regressiontest", "pillartest"})
+    @SuppressWarnings("unchecked")
+    public void testUpdateMissingFileInfo() throws Exception {
+        addDescription("Test that the entries without a last modified timestamp are given the timestamp of their "
+                + "file, and that the entries for files no longer in the archive are removed.");
+        String MISSING_FILE_ID = DEFAULT_FILE_ID + "-missing";
+        ChecksumStore mockCache = mock(ChecksumStore.class);
+        FileStore mockArchives = mock(FileStore.class);
+        AlarmDispatcher mockAlarmDispatcher = mock(AlarmDispatcher.class);
+        FileStorageModel model = new FileStorageModel(mockArchives, mockCache, mockAlarmDispatcher, settingsForCUT,
+                new LocalFileExchange("src/test/resources"));
+        
+        addStep("Setup the cache with two entries without a last modified timestamp, where only the first file is "
+                + "in the archive", "");
+        when(mockCache.getFileIDsWithoutFileInfo(eq(collectionID), anyLong()))
+            .thenReturn(Arrays.asList(DEFAULT_FILE_ID, MISSING_FILE_ID))
+            .thenReturn(new ArrayList<String>());
+        FileInfo fileInfo = mock(FileInfo.class);
+        when(fileInfo.getLastModifiedDate()).thenReturn(12345L);
+        when(fileInfo.getSize()).thenReturn(1L);
+        when(mockArchives.hasFile(DEFAULT_FILE_ID, collectionID)).thenReturn(true);
+        when(mockArchives.getFileInfo(DEFAULT_FILE_ID, collectionID)).thenReturn(fileInfo);
+        when(mockArchives.hasFile(MISSING_FILE_ID, collectionID)).thenReturn(false);
+        
+        addStep("Update the missing last modified timestamps", "The timestamp of the first file is set in a "
+                + "batch, and the entry for the missing file is removed with an alarm.");
+        model.updateMissingFileInfo(collectionID);
+        ArgumentCaptor<Collection> entries = ArgumentCaptor.forClass(Collection.class);
+        verify(mockCache).updateMissingFileInfo(entries.capture(), eq(collectionID));
+        assertEquals(entries.getValue().size(), 1);
+        ChecksumEntry entry = (ChecksumEntry) entries.getValue().iterator().next();
+        assertEquals(entry.getFileId(), DEFAULT_FILE_ID);
+        assertEquals(entry.getLastModified(), Long.valueOf(12345L));
+        assertEquals(entry.getFileSize(), Long.valueOf(1L));
+        verify(mockCache).deleteEntry(MISSING_FILE_ID, collectionID);
+        verify(mockAlarmDispatcher).error(any(Alarm.class));
+        
+        addStep("Request the file ids", "Only the entries with a last modified timestamp are read.");
+        model.getFileIDsResultSet(null, null, null, 10L, collectionID);
+        verify(mockCache).getFileIDsByLastModified(null, null, 10L, collectionID);
+        verify(mockCache, times(2)).getFileIDsWithoutFileInfo(eq(collectionID), anyLong());
+    }
+    
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testPutFileCalculatesChecksumsOfDownloadedContent() throws Exception {
+        addDescription("Test that the checksums calculated while a file is downloaded match the downloaded content.");
+        addStep("Setup", "Should have no file in the archive.");
+        emptyArchive();
+        File testFile = new File("src/test/resources/default-test-file.txt");
+        String fileAddress = testFile.toURI().toURL().toExternalForm();
+
+        addStep("Put the file with the wrong expected checksum", 
+                "Should fail with NEW_FILE_CHECKSUM_FAILURE, and not add the file to the archive");
+        try {
+            pillarModel.putFile(collectionID, DEFAULT_FILE_ID, fileAddress, 
+                    createChecksumData(EMPTY_HMAC_SHA385_CHECKSUM, nonDefaultCsType));
+            fail("Must throw an exception, when the downloaded file does not have the expected checksum.");
+        } catch (RequestHandlerException e) {
+            assertEquals(e.getResponseInfo().getResponseCode(), ResponseCode.NEW_FILE_CHECKSUM_FAILURE);
+        }
+        assertFalse(pillarModel.hasFileID(DEFAULT_FILE_ID, collectionID));
+        archives.ensureFileNotInTmpDir(DEFAULT_FILE_ID, collectionID);
+
+        addStep("Put the file with the expected checksum of its content", 
+                "Should add the file, and cache the default checksum of its content");
+        String expectedChecksum = ChecksumUtils.generateChecksum(testFile, nonDefaultCsType);
+        pillarModel.putFile(collectionID, DEFAULT_FILE_ID, fileAddress, 
+                createChecksumData(expectedChecksum, nonDefaultCsType));
+        assertTrue(pillarModel.hasFileID(DEFAULT_FILE_ID, collectionID));
+        assertEquals(cache.getChecksum(DEFAULT_FILE_ID, collectionID), 
+                ChecksumUtils.generateChecksum(testFile, defaultCsType));
+        FileInfo fileInfo = pillarModel.getFileInfoForActualFile(DEFAULT_FILE_ID, collectionID);
+        assertEquals(fileInfo.getSize(), testFile.length());
+    }
+    
+    private ChecksumDataForFileTYPE createChecksumData(String checksum, ChecksumSpecTYPE csSpec) {
+        ChecksumDataForFileTYPE res = new ChecksumDataForFileTYPE();
+        res.setCalculationTimestamp(CalendarUtils.getNow());
+        res.setChecksumSpec(csSpec);
+        res.setChecksumValue(Base16Utils.encodeBase16(checksum));
+        return res;
+    }
+    
     private void emptyArchive() throws IOException {
         if(archives.hasFile(DEFAULT_FILE_ID, collectionID)) {
             archives.deleteFile(DEFAULT_FILE_ID, collectionID);
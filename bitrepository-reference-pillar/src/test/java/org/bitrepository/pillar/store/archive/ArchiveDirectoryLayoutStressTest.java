@@ -0,0 +1,116 @@
+package org.bitrepository.pillar.store.archive;
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2012 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.Random;
+
+import org.bitrepository.common.utils.FileUtils;
+import org.bitrepository.pillar.store.filearchive.ArchiveDirectory;
+import org.bitrepository.settings.referencesettings.DirectoryLayout;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Measures the lookup and listing times of an ArchiveDirectory with the flat and the sharded layout, and the time
+ * it takes to migrate from the flat to the sharded layout.
+ * <p>
+ * The number of files defaults to 1M, and can be set with the system property 'archive.benchmark.files', e.g. to
+ * 10000000. The files are empty, but the test still needs the inodes on the filesystem of the working directory.
+ */
+public class ArchiveDirectoryLayoutStressTest extends ExtendedTestCase {
+    private static final String DIR_NAME = "archive-layout-benchmark";
+    private static final String FILE_DIR_NAME = DIR_NAME + "/" + ArchiveDirectory.ARCHIVE_DIR;
+    /** The number of random lookups to time. */
+    private static final int NUMBER_OF_LOOKUPS = 100000;
+
+    private final int numberOfFiles = Integer.getInteger("archive.benchmark.files", 1000000);
+
+    @AfterMethod(alwaysRun = true)
+    public void cleanup() {
+        File dir = new File(DIR_NAME);
+        if(dir.exists()) {
+            FileUtils.delete(dir);
+        }
+    }
+
+    @Test( groups = {"StressTest"} )
+    public void compareFlatAndShardedLayout() throws Exception {
+        addDescription("Compares the lookup and listing times of the flat and sharded layout with "
+                + numberOfFiles + " files.");
+        addStep("Create the files in a flat archive", "");
+        ArchiveDirectory flatDirectory = new ArchiveDirectory(DIR_NAME, DirectoryLayout.FLAT);
+        long start = System.nanoTime();
+        for(int i = 0; i < numberOfFiles; i++) {
+            Assert.assertTrue(new File(FILE_DIR_NAME, fileID(i)).createNewFile());
+        }
+        report("Created", numberOfFiles, System.nanoTime() - start);
+
+        addStep("Time lookups and listing in the flat archive", "");
+        timeLookups(flatDirectory, "flat");
+        timeListing(flatDirectory, "flat");
+
+        addStep("Migrate the archive to the sharded layout", "All files should be migrated");
+        ArchiveDirectory shardedDirectory = new ArchiveDirectory(DIR_NAME, DirectoryLayout.SHARDED);
+        start = System.nanoTime();
+        int migrated = 0;
+        int moved;
+        while((moved = shardedDirectory.migrateFlatFiles(10000)) > 0) {
+            migrated += moved;
+        }
+        report("Migrated", migrated, System.nanoTime() - start);
+        Assert.assertEquals(migrated, numberOfFiles);
+        Assert.assertFalse(shardedDirectory.hasFlatFiles());
+
+        addStep("Time lookups and listing in the sharded archive", "");
+        timeLookups(shardedDirectory, "sharded");
+        timeListing(shardedDirectory, "sharded");
+    }
+
+    private void timeLookups(ArchiveDirectory directory, String layout) {
+        Random random = new Random(0);
+        long start = System.nanoTime();
+        for(int i = 0; i < NUMBER_OF_LOOKUPS; i++) {
+            boolean existing = random.nextBoolean();
+            String fileID = existing ? fileID(random.nextInt(numberOfFiles)) : "missing-" + i;
+            Assert.assertEquals(directory.hasFile(fileID), existing);
+        }
+        report("Looked up (" + layout + ")", NUMBER_OF_LOOKUPS, System.nanoTime() - start);
+    }
+
+    private void timeListing(ArchiveDirectory directory, String layout) {
+        long start = System.nanoTime();
+        Assert.assertEquals(directory.getFileIds().size(), numberOfFiles);
+        report("Listed (" + layout + ")", numberOfFiles, System.nanoTime() - start);
+    }
+
+    private void report(String action, int files, long nanos) {
+        System.out.println(action + " " + files + " files in " + nanos / 1000000 + " ms ("
+                + nanos / Math.max(files, 1) + " ns per file).");
+    }
+
+    private String fileID(int i) {
+        return "file-" + i;
+    }
+}
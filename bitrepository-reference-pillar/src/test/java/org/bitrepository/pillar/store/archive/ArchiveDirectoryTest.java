@@ -24,14 +24,22 @@ package org.bitrepository.pillar.store.archive;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.Arrays;
+import java.util.HashSet;
 
 import org.bitrepository.common.utils.FileUtils;
 import org.bitrepository.pillar.store.filearchive.ArchiveDirectory;
+import org.bitrepository.pillar.store.filearchive.ShardedLayoutMigrator;
+import org.bitrepository.pillar.store.filearchive.ShardedLayoutMigrator.MigrationStatus;
+import org.bitrepository.settings.referencesettings.DirectoryLayout;
 import org.jaccept.structure.ExtendedTestCase;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 public class ArchiveDirectoryTest extends ExtendedTestCase {
     private static String DIR_NAME = "archive-directory";
     private static String FILE_DIR_NAME = DIR_NAME + "/fileDir";
@@ -198,6 +206,113 @@ public class ArchiveDirectoryTest extends ExtendedTestCase {
         Assert.assertEquals(retainDir.list().length, 3);
     }
     
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testShardedArchiveDirectory() throws Exception {
+        addDescription("Testing the ArchiveDirectory with the sharded layout.");
+        addStep("Setup", "No file added to the directory.");
+        ArchiveDirectory directory = new ArchiveDirectory(DIR_NAME, DirectoryLayout.SHARDED);
+        Assert.assertFalse(directory.hasFlatFiles());
+
+        addStep("Move a new file from tmp to archive", "Should be placed two levels below the fileDir.");
+        Assert.assertTrue(directory.getNewFileInTempDir(FILE_ID).createNewFile());
+        directory.moveFromTmpToArchive(FILE_ID);
+        Assert.assertTrue(directory.hasFile(FILE_ID));
+        File archivedFile = directory.getFile(FILE_ID);
+        Assert.assertEquals(archivedFile.getParentFile().getParentFile().getParentFile().getAbsolutePath(),
+                new File(FILE_DIR_NAME).getAbsolutePath());
+        Assert.assertEquals(directory.getFileIds(), Arrays.asList(FILE_ID));
+
+        addStep("Delete the file.", "Should not be extractable.");
+        directory.removeFileFromArchive(FILE_ID);
+        Assert.assertFalse(directory.hasFile(FILE_ID));
+        Assert.assertEquals(directory.getFileIds(), Arrays.asList());
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testMigrationToShardedLayout() throws Exception {
+        addDescription("Testing the migration of a flat ArchiveDirectory to the sharded layout.");
+        addStep("Setup", "Place two files in a flat archive.");
+        new ArchiveDirectory(DIR_NAME);
+        createExistingFile();
+        String otherFileID = "file2";
+        Assert.assertTrue(new File(FILE_DIR_NAME, otherFileID).createNewFile());
+
+        addStep("Open the archive with the sharded layout", "The flat files should be found.");
+        ArchiveDirectory directory = new ArchiveDirectory(DIR_NAME, DirectoryLayout.SHARDED);
+        Assert.assertTrue(directory.hasFlatFiles());
+        Assert.assertTrue(directory.hasFile(FILE_ID));
+        Assert.assertEquals(new HashSet<String>(directory.getFileIds()),
+                new HashSet<String>(Arrays.asList(FILE_ID, otherFileID)));
+
+        addStep("Migrate one file at a time", "Both files should be moved, and still be found.");
+        Assert.assertEquals(directory.migrateFlatFiles(1), 1);
+        Assert.assertEquals(directory.migrateFlatFiles(1), 1);
+        Assert.assertEquals(directory.migrateFlatFiles(1), 0);
+        Assert.assertFalse(directory.hasFlatFiles());
+        Assert.assertFalse(new File(FILE_DIR_NAME, FILE_ID).exists());
+        Assert.assertTrue(directory.hasFile(FILE_ID));
+        Assert.assertTrue(directory.hasFile(otherFileID));
+        Assert.assertEquals(new HashSet<String>(directory.getFileIds()),
+                new HashSet<String>(Arrays.asList(FILE_ID, otherFileID)));
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testMigrationOfFileNamedAsSubDirectory() throws Exception {
+        addDescription("Testing the migration of a flat file, which has the name of a sub-directory of another file.");
+        addStep("Setup", "Place a file and a file named as its first level sub-directory in a flat archive.");
+        new ArchiveDirectory(DIR_NAME);
+        createExistingFile();
+        // The MD5 of 'file1' starts with '82'.
+        String shardNamedFileID = "82";
+        Assert.assertTrue(new File(FILE_DIR_NAME, shardNamedFileID).createNewFile());
+        ArchiveDirectory directory = new ArchiveDirectory(DIR_NAME, DirectoryLayout.SHARDED);
+
+        addStep("Migrate the files", "Both files should be moved, and the sub-directory should be created.");
+        Assert.assertEquals(directory.migrateFlatFiles(10), 2);
+        Assert.assertEquals(directory.migrateFlatFiles(10), 0);
+        Assert.assertFalse(directory.hasFlatFiles());
+        Assert.assertTrue(new File(FILE_DIR_NAME, shardNamedFileID).isDirectory());
+        Assert.assertTrue(directory.hasFile(FILE_ID));
+        Assert.assertTrue(directory.hasFile(shardNamedFileID));
+        Assert.assertEquals(new HashSet<String>(directory.getFileIds()),
+                new HashSet<String>(Arrays.asList(FILE_ID, shardNamedFileID)));
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testShardedLayoutMigrator() throws Exception {
+        addDescription("Testing the status of the background migration to the sharded layout.");
+        addStep("Setup", "Place two files in a flat archive, and open it with the sharded layout.");
+        new ArchiveDirectory(DIR_NAME);
+        createExistingFile();
+        Assert.assertTrue(new File(FILE_DIR_NAME, "file2").createNewFile());
+        ShardedLayoutMigrator migrator = new ShardedLayoutMigrator(
+                new ArchiveDirectory(DIR_NAME, DirectoryLayout.SHARDED));
+        Assert.assertEquals(migrator.getStatus(), MigrationStatus.NOT_STARTED);
+
+        addStep("Run the migration", "It should finish after moving both files.");
+        migrator.run();
+        Assert.assertEquals(migrator.getStatus(), MigrationStatus.FINISHED);
+        Assert.assertEquals(migrator.getMigratedFiles(), 2);
+        Assert.assertNull(migrator.getFailure());
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testShardedLayoutMigratorFailure() throws Exception {
+        addDescription("Testing that any failure of the migration to the sharded layout is registered.");
+        addStep("Setup", "A sharded archive, which fails with a runtime exception when files are moved.");
+        ArchiveDirectory directory = mock(ArchiveDirectory.class);
+        when(directory.isSharded()).thenReturn(true);
+        IllegalStateException moveFailure = new IllegalStateException("Could not move the file.");
+        when(directory.migrateFlatFiles(anyInt())).thenReturn(1).thenThrow(moveFailure);
+        ShardedLayoutMigrator migrator = new ShardedLayoutMigrator(directory);
+
+        addStep("Run the migration", "It should end as failed with the exception, after moving one file.");
+        migrator.run();
+        Assert.assertEquals(migrator.getStatus(), MigrationStatus.FAILED);
+        Assert.assertEquals(migrator.getFailure(), moveFailure);
+        Assert.assertEquals(migrator.getMigratedFiles(), 1);
+    }
+
     private void createExistingFile() throws Exception {
         FileWriter fw = new FileWriter(new File(FILE_DIR_NAME, FILE_ID), false);
         fw.write("test-data\n");
@@ -132,6 +132,31 @@ public class ReferenceArchiveTest extends DefaultPillarTest {
         archive.close();
     }
     
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testFileIndexRepair() throws Exception {
+        addDescription("Test that the ReferenceArchive finds files, which has been moved between its directories "
+                + "outside the archive.");
+        addStep("Setup an archive with two directories, with a file in the second", "Should find the file.");
+        String secondDirName = DIR_NAME + "/second";
+        new ReferenceArchive(Arrays.asList(DIR_NAME)).close();
+        createExistingFile();
+        ReferenceArchive archive = new ReferenceArchive(Arrays.asList(secondDirName, DIR_NAME));
+        File existingFile = new File(FILE_DIR_NAME, EXISTING_FILE);
+        Assert.assertEquals(archive.getFile(EXISTING_FILE).getAbsolutePath(), existingFile.getAbsolutePath());
+
+        addStep("Move the file to the first directory outside the archive", "Should find the file in its new place.");
+        File movedFile = new File(secondDirName + "/fileDir", EXISTING_FILE);
+        Assert.assertTrue(existingFile.renameTo(movedFile));
+        Assert.assertTrue(archive.hasFile(EXISTING_FILE));
+        Assert.assertEquals(archive.getFile(EXISTING_FILE).getAbsolutePath(), movedFile.getAbsolutePath());
+
+        addStep("Delete the file outside the archive", "Should no longer find the file.");
+        Assert.assertTrue(movedFile.delete());
+        Assert.assertFalse(archive.hasFile(EXISTING_FILE));
+        Assert.assertEquals(archive.getAllFileIds(), Arrays.asList());
+        archive.close();
+    }
+
     private void createExistingFile() throws Exception {
         FileWriter fw = new FileWriter(new File(FILE_DIR_NAME, EXISTING_FILE), false);
         fw.write("test-data\n");
@@ -104,7 +104,7 @@ public class ChecksumDatabaseMigrationTest extends ExtendedTestCase {
         ChecksumDBMigrator migrator = new ChecksumDBMigrator(connector, settings);
         migrator.migrate();
         int versionAfter = DatabaseUtils.selectIntValue(connector, extractVersionSql, CHECKSUM_TABLE);
-        Assert.assertEquals(versionAfter, 4, "Table version after migration");
+        Assert.assertEquals(versionAfter, 7, "Table version after migration");
         
         addStep("Validate the entry", "The collection id has been set to the default collection id");
         String retrieveCollectionIdSql = "SELECT " + CS_COLLECTION_ID + " FROM " + CHECKSUM_TABLE + " WHERE " 
@@ -142,7 +142,7 @@ public class ChecksumDatabaseMigrationTest extends ExtendedTestCase {
         ChecksumDBMigrator migrator = new ChecksumDBMigrator(connector, settings);
         migrator.migrate();
         int versionAfter = DatabaseUtils.selectIntValue(connector, extractVersionSql, CHECKSUM_TABLE);
-        Assert.assertEquals(versionAfter, 4, "Table version after migration");
+        Assert.assertEquals(versionAfter, 7, "Table version after migration");
         
         addStep("Validate the migration", "The timestamp is now the millis from epoch");
         String retrieveCollectionIdSql = "SELECT " + CS_DATE + " FROM " + CHECKSUM_TABLE + " WHERE " 
@@ -21,10 +21,18 @@
  */
 package org.bitrepository.pillar.store.checksumcache;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.TestSettingsProvider;
 import org.bitrepository.common.utils.Base16Utils;
@@ -276,6 +284,213 @@ public class ChecksumDatabaseTest extends ExtendedTestCase {
         Assert.assertEquals(efirs.getEntries().getFileIDsDataItems().getFileIDsDataItem().size(), 0);
     }
 
+    
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testInsertingSeveralChecksumCalculations() {
+        addDescription("Test that the checksums of several files can be inserted and updated at once.");
+        ChecksumDAO cache = getCacheWithData();
+        cache.updateMissingFileInfo(Arrays.asList(new ChecksumEntry(DEFAULT_FILE_ID, null, null, 12345L, 1L)), 
+                collectionID);
+        String NEW_FILE_ID = DEFAULT_FILE_ID + "_new";
+        String newChecksum = "new-checksum";
+        Date newDate = new Date(System.currentTimeMillis() + 123456789L);
+
+        addStep("Insert a new checksum for the default file without file info, and an entry for a new file with "
+                + "file info", "Both files have the new checksums.");
+        cache.insertChecksumCalculations(Arrays.asList(new ChecksumEntry(DEFAULT_FILE_ID, newChecksum, newDate),
+                new ChecksumEntry(NEW_FILE_ID, newChecksum, newDate, 23456L, 2L)), collectionID);
+        Assert.assertEquals(cache.getAllFileIDs(collectionID).size(), 2);
+        Assert.assertEquals(cache.getChecksum(DEFAULT_FILE_ID, collectionID), newChecksum);
+        Assert.assertEquals(cache.getCalculationDate(DEFAULT_FILE_ID, collectionID), newDate);
+        Assert.assertEquals(cache.getChecksum(NEW_FILE_ID, collectionID), newChecksum);
+        
+        addStep("Extract the files by last modified timestamp", "The default file has kept its file info, and the "
+                + "new file has the inserted file info.");
+        List<FileIDsDataItem> items = cache.getFileIDsByLastModified(null, null, null, collectionID).getEntries()
+                .getFileIDsDataItems().getFileIDsDataItem();
+        Assert.assertEquals(items.size(), 2);
+        Assert.assertEquals(items.get(0).getFileID(), DEFAULT_FILE_ID);
+        Assert.assertEquals(items.get(0).getFileSize().longValue(), 1L);
+        Assert.assertEquals(items.get(1).getFileID(), NEW_FILE_ID);
+        Assert.assertEquals(items.get(1).getFileSize().longValue(), 2L);
+        Assert.assertEquals(CalendarUtils.convertFromXMLGregorianCalendar(items.get(1).getLastModificationTime())
+                .getTime(), 23456L);
+    }
+    
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testExtractingPagesOfEntries() {
+        addDescription("Tests that checksum entries and file ids are delivered in pages ordered by calculation date "
+                + "and file id, so files with the same calculation date are delivered in the same order.");
+        addStep("Instantiate database with four files, where the middle two have the same calculation date", "");
+        ChecksumDAO cache = new ChecksumDAO(new ChecksumDatabaseManager(settings));
+        String FILE_ID_1 = DEFAULT_FILE_ID + "_1";
+        String FILE_ID_2 = DEFAULT_FILE_ID + "_2";
+        String FILE_ID_3 = DEFAULT_FILE_ID + "_3";
+        String FILE_ID_4 = DEFAULT_FILE_ID + "_4";
+        cache.insertChecksumCalculation(FILE_ID_3, collectionID, DEFAULT_CHECKSUM, new Date(2000));
+        cache.insertChecksumCalculation(FILE_ID_4, collectionID, DEFAULT_CHECKSUM, new Date(3000));
+        cache.insertChecksumCalculation(FILE_ID_2, collectionID, DEFAULT_CHECKSUM, new Date(2000));
+        cache.insertChecksumCalculation(FILE_ID_1, collectionID, DEFAULT_CHECKSUM, new Date(1000));
+        
+        addStep("Extract a page of two checksum entries", "Delivers the first two files, and reports more entries");
+        ExtractedChecksumResultSet checksums = cache.getChecksumResults(null, null, 2L, collectionID);
+        Assert.assertEquals(checksums.getEntries().size(), 2);
+        Assert.assertEquals(checksums.getEntries().get(0).getFileID(), FILE_ID_1);
+        Assert.assertEquals(checksums.getEntries().get(1).getFileID(), FILE_ID_2);
+        Assert.assertTrue(checksums.hasMoreEntries());
+        
+        addStep("Extract the next page from the calculation date of the last delivered entry", 
+                "Delivers both files with that date in the same order, and reports more entries");
+        checksums = cache.getChecksumResults(CalendarUtils.getFromMillis(2000L), null, 2L, collectionID);
+        Assert.assertEquals(checksums.getEntries().size(), 2);
+        Assert.assertEquals(checksums.getEntries().get(0).getFileID(), FILE_ID_2);
+        Assert.assertEquals(checksums.getEntries().get(1).getFileID(), FILE_ID_3);
+        Assert.assertTrue(checksums.hasMoreEntries());
+        
+        addStep("Extract the last page", "Delivers the last file, without more entries");
+        checksums = cache.getChecksumResults(CalendarUtils.getFromMillis(3000L), null, 1L, collectionID);
+        Assert.assertEquals(checksums.getEntries().size(), 1);
+        Assert.assertEquals(checksums.getEntries().get(0).getFileID(), FILE_ID_4);
+        Assert.assertFalse(checksums.hasMoreEntries());
+        
+        addStep("Extract a page of three file ids from the calculation date of the second file", 
+                "Delivers the last three files in order, without more entries");
+        ExtractedFileIDsResultSet fileIDs = cache.getFileIDs(CalendarUtils.getFromMillis(2000L), null, 3L, null, 
+                collectionID);
+        List<FileIDsDataItem> items = fileIDs.getEntries().getFileIDsDataItems().getFileIDsDataItem();
+        Assert.assertEquals(items.size(), 3);
+        Assert.assertEquals(items.get(0).getFileID(), FILE_ID_2);
+        Assert.assertEquals(items.get(1).getFileID(), FILE_ID_3);
+        Assert.assertEquals(items.get(2).getFileID(), FILE_ID_4);
+        Assert.assertFalse(fileIDs.hasMoreEntries());
+        
+        addStep("Extract the files with checksums calculated at the date of the middle files or earlier", 
+                "Delivers the first three files in order");
+        Assert.assertEquals(cache.getFileIDsWithOldChecksums(new Date(2000), collectionID), 
+                Arrays.asList(FILE_ID_1, FILE_ID_2, FILE_ID_3));
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testGetFileIDsByLastModified() {
+        addDescription("Tests the extraction of file ids ordered by the last modified timestamp of the files.");
+        addStep("Instantiate database with files, where two files have the same last modified timestamp, "
+                + "and one file has no last modified timestamp.", "");
+        ChecksumDAO cache = new ChecksumDAO(new ChecksumDatabaseManager(settings));
+        String FILE_ID_1 = DEFAULT_FILE_ID + "_1";
+        String FILE_ID_2 = DEFAULT_FILE_ID + "_2";
+        String FILE_ID_3 = DEFAULT_FILE_ID + "_3";
+        String FILE_ID_4 = DEFAULT_FILE_ID + "_4";
+        cache.insertChecksumCalculation(FILE_ID_1, collectionID, DEFAULT_CHECKSUM, DEFAULT_DATE);
+        cache.insertChecksumCalculation(FILE_ID_2, collectionID, DEFAULT_CHECKSUM, DEFAULT_DATE);
+        cache.insertChecksumCalculation(FILE_ID_3, collectionID, DEFAULT_CHECKSUM, DEFAULT_DATE);
+        cache.insertChecksumCalculation(FILE_ID_4, collectionID, DEFAULT_CHECKSUM, DEFAULT_DATE);
+        
+        addStep("Extract a page of the files without last modified timestamp", "Delivers two of the four files.");
+        Assert.assertEquals(cache.getFileIDsWithoutFileInfo(collectionID, 2L).size(), 2);
+        
+        addStep("Update the last modified timestamp of three of the files", "Only the fourth file is without a "
+                + "last modified timestamp.");
+        cache.updateMissingFileInfo(Arrays.asList(new ChecksumEntry(FILE_ID_3, null, null, 12345L, 3L),
+                new ChecksumEntry(FILE_ID_2, null, null, 23456L, 2L),
+                new ChecksumEntry(FILE_ID_1, null, null, 23456L, 1L)), collectionID);
+        List<String> fileIDs = cache.getFileIDsWithoutFileInfo(collectionID, 1000L);
+        Assert.assertEquals(fileIDs.size(), 1);
+        Assert.assertEquals(fileIDs.get(0), FILE_ID_4);
+        
+        addStep("Update the last modified timestamp of a file, which already has one", "The timestamp is kept.");
+        cache.updateMissingFileInfo(Arrays.asList(new ChecksumEntry(FILE_ID_3, null, null, 34567L, 3L)), 
+                collectionID);
+        
+        addStep("Extract all files by last modified timestamp", 
+                "Delivers the three files with timestamp, ordered by timestamp and file id, with their size.");
+        ExtractedFileIDsResultSet efirs = cache.getFileIDsByLastModified(null, null, null, collectionID);
+        List<FileIDsDataItem> items = efirs.getEntries().getFileIDsDataItems().getFileIDsDataItem();
+        Assert.assertEquals(items.size(), 3);
+        Assert.assertEquals(items.get(0).getFileID(), FILE_ID_3);
+        Assert.assertEquals(items.get(1).getFileID(), FILE_ID_1);
+        Assert.assertEquals(items.get(2).getFileID(), FILE_ID_2);
+        Assert.assertEquals(items.get(0).getFileSize().longValue(), 3L);
+        Assert.assertEquals(CalendarUtils.convertFromXMLGregorianCalendar(items.get(0).getLastModificationTime())
+                .getTime(), 12345L);
+        Assert.assertFalse(efirs.hasMoreEntries());
+        
+        addStep("Extract exactly the number of files with timestamp", "Delivers all three without more entries.");
+        efirs = cache.getFileIDsByLastModified(null, null, 3L, collectionID);
+        Assert.assertEquals(efirs.getEntries().getFileIDsDataItems().getFileIDsDataItem().size(), 3);
+        Assert.assertFalse(efirs.hasMoreEntries());
+        
+        addStep("Extract a page of two files", "Delivers the first file and the first of the files with the same "
+                + "timestamp, and reports more entries.");
+        efirs = cache.getFileIDsByLastModified(null, null, 2L, collectionID);
+        items = efirs.getEntries().getFileIDsDataItems().getFileIDsDataItem();
+        Assert.assertEquals(items.size(), 2);
+        Assert.assertEquals(items.get(1).getFileID(), FILE_ID_1);
+        Assert.assertTrue(efirs.hasMoreEntries());
+        
+        addStep("Extract the next page from the timestamp of the last delivered file", 
+                "Delivers both files with that timestamp.");
+        efirs = cache.getFileIDsByLastModified(items.get(1).getLastModificationTime(), null, 2L, collectionID);
+        items = efirs.getEntries().getFileIDsDataItems().getFileIDsDataItem();
+        Assert.assertEquals(items.size(), 2);
+        Assert.assertEquals(items.get(0).getFileID(), FILE_ID_1);
+        Assert.assertEquals(items.get(1).getFileID(), FILE_ID_2);
+        Assert.assertFalse(efirs.hasMoreEntries());
+        
+        addStep("Extract with a maximum timestamp before the files with the same timestamp", 
+                "Delivers only the first file.");
+        efirs = cache.getFileIDsByLastModified(null, CalendarUtils.getFromMillis(20000L), null, collectionID);
+        items = efirs.getEntries().getFileIDsDataItems().getFileIDsDataItem();
+        Assert.assertEquals(items.size(), 1);
+        Assert.assertEquals(items.get(0).getFileID(), FILE_ID_3);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testConcurrentUpsertOfNewFile() throws Exception {
+        addDescription("Test that a new file can be inserted by two threads at the same time, e.g. by a PutFile "
+                + "and a batch of recalculated checksums.");
+        final ChecksumDAO cache = getCacheWithData();
+        final String OTHER_FILE_ID = DEFAULT_FILE_ID + "_other";
+        final String singleChecksum = "single-checksum";
+        final String batchChecksum = "batch-checksum";
+        
+        addStep("Insert the same new files from two threads at the same time, several times.", 
+                "No insert fails, and each new file has a single entry with the checksum from one of the threads.");
+        for(int i = 0; i < 20; i++) {
+            final String newFileID = DEFAULT_FILE_ID + "_concurrent_" + i;
+            final CyclicBarrier barrier = new CyclicBarrier(2);
+            Callable<Void> singleInsert = new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    barrier.await();
+                    cache.insertChecksumCalculation(newFileID, collectionID, singleChecksum, new Date());
+                    return null;
+                }
+            };
+            Callable<Void> batchInsert = new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    barrier.await();
+                    cache.insertChecksumCalculations(Arrays.asList(
+                            new ChecksumEntry(OTHER_FILE_ID, batchChecksum, new Date()),
+                            new ChecksumEntry(newFileID, batchChecksum, new Date())), collectionID);
+                    return null;
+                }
+            };
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<Void> singleResult = executor.submit(singleInsert);
+                Future<Void> batchResult = executor.submit(batchInsert);
+                singleResult.get(30, TimeUnit.SECONDS);
+                batchResult.get(30, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+            Assert.assertTrue(Arrays.asList(singleChecksum, batchChecksum).contains(
+                    cache.getChecksum(newFileID, collectionID)));
+        }
+        Assert.assertEquals(cache.getAllFileIDs(collectionID).size(), 22);
+        Assert.assertEquals(cache.getChecksum(OTHER_FILE_ID, collectionID), batchChecksum);
+    }
 
     private ChecksumDAO getCacheWithData() {
         ChecksumDAO res = new ChecksumDAO(new ChecksumDatabaseManager(settings));
@@ -24,9 +24,9 @@ package org.bitrepository.pillar.store.checksumcache;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
@@ -45,7 +45,7 @@ public class MemoryCacheMock implements ChecksumStore {
     /**
      * The checksum mapping between the file ids and their checksum.
      */
-    private Map<String, ChecksumEntry> checksumMap = new HashMap<String, ChecksumEntry>();
+    private Map<String, ChecksumEntry> checksumMap = new ConcurrentHashMap<String, ChecksumEntry>();
     
     public MemoryCacheMock() {}
     
@@ -67,6 +67,20 @@ public class MemoryCacheMock implements ChecksumStore {
         return res;
     }
     
+    @Override
+    public void updateMissingFileInfo(Collection<ChecksumEntry> entries, String collectionID) {}
+    
+    @Override
+    public ExtractedFileIDsResultSet getFileIDsByLastModified(XMLGregorianCalendar minTimeStamp, 
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        return getFileIDs(minTimeStamp, maxTimeStamp, maxNumberOfResults, null, collectionID);
+    }
+    
+    @Override
+    public List<String> getFileIDsWithoutFileInfo(String collectionID, long maxNumberOfResults) {
+        return new ArrayList<String>();
+    }
+    
     @Override
     public void deleteEntry(String fileID, String collectionID) {
         checksumMap.remove(fileID);
@@ -106,11 +120,26 @@ public class MemoryCacheMock implements ChecksumStore {
         return res;
     }
 
+    @Override
+    public void getChecksumResults(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, 
+            Long maxNumberOfResults, String collectionID, ExtractedChecksumResultSet results) {
+        for(ChecksumEntry cs : checksumMap.values()) {
+            results.insertChecksumEntry(cs);
+        }
+    }
+
     @Override
     public void insertChecksumCalculation(String fileID, String collectionID, String checksum, Date calculationDate) {
         checksumMap.put(fileID, new ChecksumEntry(fileID, checksum, calculationDate));
     }
 
+    @Override
+    public void insertChecksumCalculations(Collection<ChecksumEntry> entries, String collectionID) {
+        for(ChecksumEntry entry : entries) {
+            checksumMap.put(entry.getFileId(), entry);
+        }
+    }
+
     @Override
     public void close() {
         cleanUp();